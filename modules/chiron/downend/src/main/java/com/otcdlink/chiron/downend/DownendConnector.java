@@ -3,6 +3,7 @@ package com.otcdlink.chiron.downend;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
+import com.otcdlink.chiron.buffer.FieldEncoding;
 import com.otcdlink.chiron.codec.CommandBodyDecoder;
 import com.otcdlink.chiron.command.Command;
 import com.otcdlink.chiron.command.CommandConsumer;
@@ -23,8 +24,10 @@ import com.otcdlink.chiron.middle.session.SessionIdentifier;
 import com.otcdlink.chiron.middle.session.SessionLifecycle;
 import com.otcdlink.chiron.middle.session.SignonFailure;
 import com.otcdlink.chiron.middle.session.SignonFailureNotice;
+import com.otcdlink.chiron.middle.tier.CommandDictionary;
 import com.otcdlink.chiron.middle.tier.CommandInterceptor;
 import com.otcdlink.chiron.middle.tier.ConnectionDescriptor;
+import com.otcdlink.chiron.middle.tier.FrameBatching;
 import com.otcdlink.chiron.middle.tier.TimeBoundary;
 import com.otcdlink.chiron.middle.tier.WebsocketFragmenterTier;
 import com.otcdlink.chiron.middle.tier.WebsocketFrameSizer;
@@ -51,6 +54,7 @@ import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
@@ -169,6 +173,16 @@ public final class DownendConnector< ENDPOINT_SPECIFIC, DOWNWARD_DUTY, UPWARD_DU
 
     public final WebsocketFrameSizer websocketFrameSizer ;
 
+    /**
+     * What we ask Upend for, Upend has the last word.
+     */
+    public final FieldEncoding fieldEncoding ;
+
+    /**
+     * Asks Upend for {@link FrameBatching}, which happens only if Upend supports it.
+     */
+    public final boolean frameBatching ;
+
     public Setup(
         final EventLoopGroup eventLoopGroup,
         final URL url,
@@ -182,6 +196,72 @@ public final class DownendConnector< ENDPOINT_SPECIFIC, DOWNWARD_DUTY, UPWARD_DU
         final CommandConsumer< Command< ENDPOINT_SPECIFIC, DOWNWARD_DUTY > > commandReceiver,
         final CommandInterceptor.Factory commandInterceptorFactory,
         final WebsocketFrameSizer websocketFrameSizer
+    ) {
+      this(
+          eventLoopGroup,
+          url,
+          internetProxyAccess,
+          sslEngineFactory,
+          primingTimeBoundary,
+          signonMaterializer,
+          changeWatcher,
+          endpointSpecificCodec,
+          commandDecoder,
+          commandReceiver,
+          commandInterceptorFactory,
+          websocketFrameSizer,
+          FieldEncoding.TEXT
+      ) ;
+    }
+
+    public Setup(
+        final EventLoopGroup eventLoopGroup,
+        final URL url,
+        final InternetProxyAccess internetProxyAccess,
+        final SslEngineFactory.ForClient sslEngineFactory,
+        final TimeBoundary.PrimingForDownend primingTimeBoundary,
+        final SignonMaterializer signonMaterializer,
+        final ChangeWatcher changeWatcher,
+        final Codec< ENDPOINT_SPECIFIC > endpointSpecificCodec,
+        final CommandBodyDecoder< ENDPOINT_SPECIFIC, DOWNWARD_DUTY > commandDecoder,
+        final CommandConsumer< Command< ENDPOINT_SPECIFIC, DOWNWARD_DUTY > > commandReceiver,
+        final CommandInterceptor.Factory commandInterceptorFactory,
+        final WebsocketFrameSizer websocketFrameSizer,
+        final FieldEncoding fieldEncoding
+    ) {
+      this(
+          eventLoopGroup,
+          url,
+          internetProxyAccess,
+          sslEngineFactory,
+          primingTimeBoundary,
+          signonMaterializer,
+          changeWatcher,
+          endpointSpecificCodec,
+          commandDecoder,
+          commandReceiver,
+          commandInterceptorFactory,
+          websocketFrameSizer,
+          fieldEncoding,
+          false
+      ) ;
+    }
+
+    public Setup(
+        final EventLoopGroup eventLoopGroup,
+        final URL url,
+        final InternetProxyAccess internetProxyAccess,
+        final SslEngineFactory.ForClient sslEngineFactory,
+        final TimeBoundary.PrimingForDownend primingTimeBoundary,
+        final SignonMaterializer signonMaterializer,
+        final ChangeWatcher changeWatcher,
+        final Codec< ENDPOINT_SPECIFIC > endpointSpecificCodec,
+        final CommandBodyDecoder< ENDPOINT_SPECIFIC, DOWNWARD_DUTY > commandDecoder,
+        final CommandConsumer< Command< ENDPOINT_SPECIFIC, DOWNWARD_DUTY > > commandReceiver,
+        final CommandInterceptor.Factory commandInterceptorFactory,
+        final WebsocketFrameSizer websocketFrameSizer,
+        final FieldEncoding fieldEncoding,
+        final boolean frameBatching
     ) {
       this.eventLoopGroup = checkNotNull( eventLoopGroup ) ;
       this.url = checkNotNull( url ) ;
@@ -196,6 +276,8 @@ public final class DownendConnector< ENDPOINT_SPECIFIC, DOWNWARD_DUTY, UPWARD_DU
       this.commandReceiver = checkNotNull( commandReceiver ) ;
       this.commandInterceptorFactory = commandInterceptorFactory ;
       this.websocketFrameSizer = checkNotNull( websocketFrameSizer ) ;
+      this.fieldEncoding = checkNotNull( fieldEncoding ) ;
+      this.frameBatching = frameBatching ;
     }
 
     @Override
@@ -206,6 +288,8 @@ public final class DownendConnector< ENDPOINT_SPECIFIC, DOWNWARD_DUTY, UPWARD_DU
           ( changeWatcher == null ? "" : "stateWatcher=" +
               ToStringTools.nameAndCompactHash( changeWatcher ) + ';'  ) +
           "url=" + url.toExternalForm() + ";" +
+          "fieldEncoding=" + fieldEncoding + ";" +
+          ( frameBatching ? "frameBatching;" : "" ) +
           "initialTimeBoundary=" + TimeBoundary.PrimingForDownend.toString( primingTimeBoundary ) +
           '}'
       ;
@@ -928,6 +1012,21 @@ public final class DownendConnector< ENDPOINT_SPECIFIC, DOWNWARD_DUTY, UPWARD_DU
     ;
   }
 
+  /**
+   * Asks for {@link Setup#fieldEncoding}, and announces the names {@link Setup#commandDecoder}
+   * knows about so Upend can send {@link CommandDictionary} codes instead.
+   * Also asks for {@link FrameBatching} if {@link Setup#frameBatching} says so.
+   */
+  private HttpHeaders handshakeRequestHeaders() {
+    final HttpHeaders httpHeaders = ConnectionDescriptor.requestFieldEncoding(
+        new DefaultHttpHeaders(), setup.fieldEncoding ) ;
+    CommandDictionary.announce( httpHeaders, setup.commandDecoder ) ;
+    if( setup.frameBatching ) {
+      FrameBatching.announce( httpHeaders, setup.websocketFrameSizer.maximumPayloadSize ) ;
+    }
+    return httpHeaders ;
+  }
+
   private DownendSupervisionTier.Claim createClaim() {
     return new DownendSupervisionTier.Claim() {
       @Override
@@ -937,7 +1036,7 @@ public final class DownendConnector< ENDPOINT_SPECIFIC, DOWNWARD_DUTY, UPWARD_DU
             WebSocketVersion.V13,
             null,
             false,
-            new DefaultHttpHeaders(),
+            handshakeRequestHeaders(),
             setup.websocketFrameSizer.maximumPayloadSize,
             WebsocketTools.MASK_WEBSOCKET_FRAMES_FROM_CLIENT,
             ! WebsocketTools.MASK_WEBSOCKET_FRAMES_FROM_CLIENT
@@ -7,6 +7,10 @@ import io.netty.channel.SimpleChannelInboundHandler;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Passes each {@link Command} to a {@link CommandConsumer}, which becomes the owner of a
+ * {@link com.otcdlink.chiron.command.RecyclableCommand} and releases it.
+ */
 public class CommandReceiverTier<
     INBOUND_ENDPOINT_SPECIFIC,
     INBOUND_DUTY
@@ -23,6 +27,8 @@ public class CommandReceiverTier<
       final CommandConsumer< Command< INBOUND_ENDPOINT_SPECIFIC, INBOUND_DUTY > >
           inboundCommandConsumer
   ) {
+    /** No auto-release, the {@link CommandConsumer} owns what it gets. */
+    super( false ) ;
     this.inboundCommandConsumer = checkNotNull( inboundCommandConsumer ) ;
   }
 
@@ -1,7 +1,10 @@
 package com.otcdlink.chiron.downend.tier;
 
 import com.otcdlink.chiron.downend.DownendConnector;
+import com.otcdlink.chiron.middle.ChannelTools;
+import com.otcdlink.chiron.middle.tier.CommandDictionary;
 import com.otcdlink.chiron.middle.tier.ConnectionDescriptor;
+import com.otcdlink.chiron.middle.tier.FrameBatching;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -102,6 +105,11 @@ public class DownendSupervisionTier extends SimpleChannelInboundHandler< Object
       final FullHttpResponse fullHttpResponse = ( FullHttpResponse ) messageAsObject ;
       final ConnectionDescriptor connectionDescriptor =
           ConnectionDescriptor.from( fullHttpResponse.headers() ) ;
+      channel.attr( ChannelTools.FIELD_ENCODING_KEY ).set( connectionDescriptor.fieldEncoding ) ;
+      channel.attr( ChannelTools.COMMAND_DICTIONARY_KEY )
+          .set( CommandDictionary.from( fullHttpResponse.headers() ) ) ;
+      channel.attr( ChannelTools.FRAME_BATCHING_KEY )
+          .set( FrameBatching.from( fullHttpResponse.headers() ) ) ;
       new ClientHandshakerEnhancer( handshaker, claim )
           .finishHandshake( channel, connectionDescriptor, fullHttpResponse ) ;
       handshakeFuture.setSuccess() ;
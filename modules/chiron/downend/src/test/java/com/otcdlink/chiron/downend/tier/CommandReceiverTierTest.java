@@ -0,0 +1,68 @@
+package com.otcdlink.chiron.downend.tier;
+
+import com.otcdlink.chiron.buffer.PositionalFieldWriter;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.RecyclableCommand;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Recycler;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandReceiverTierTest {
+
+  @Test
+  public void consumerOwnsRecyclableCommand() throws Exception {
+    final List< Command< String, Void > > consumed = new ArrayList<>() ;
+    final EmbeddedChannel channel = new EmbeddedChannel(
+        new CommandReceiverTier< String, Void >( consumed::add ) ) ;
+    final PrivateCommand command = PrivateCommand.newInstance( "Hello" ) ;
+    channel.writeInbound( command ) ;
+
+    assertThat( consumed ).containsExactly( command ) ;
+    assertThat( command.refCnt() ).isEqualTo( 1 ) ;
+    assertThat( command.endpointSpecific ).isEqualTo( "Hello" ) ;
+    assertThat( command.release() ).isTrue() ;
+    assertThat( channel.finish() ).isFalse() ;
+  }
+
+// =======
+// Fixture
+// =======
+
+  private static final class PrivateCommand extends RecyclableCommand< String, Void > {
+
+    private static final Recycler< PrivateCommand > RECYCLER = new Recycler< PrivateCommand >() {
+      @Override
+      protected PrivateCommand newObject( final Handle< PrivateCommand > handle ) {
+        return new PrivateCommand( handle ) ;
+      }
+    } ;
+
+    public static PrivateCommand newInstance( final String endpointSpecific ) {
+      final PrivateCommand command = RECYCLER.get() ;
+      command.reuse( endpointSpecific ) ;
+      return command ;
+    }
+
+    private PrivateCommand( final Recycler.Handle< PrivateCommand > handle ) {
+      super( handle, false ) ;
+    }
+
+    @Override
+    protected void clear() { }
+
+    @Override
+    public void callReceiver( final Void Ø ) {
+      throw new UnsupportedOperationException( "Do not call" ) ;
+    }
+
+    @Override
+    public void encodeBody( final PositionalFieldWriter positionalFieldWriter ) {
+      throw new UnsupportedOperationException( "Do not call" ) ;
+    }
+  }
+}
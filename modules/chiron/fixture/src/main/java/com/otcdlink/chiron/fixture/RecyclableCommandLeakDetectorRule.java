@@ -0,0 +1,83 @@
+package com.otcdlink.chiron.fixture;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import com.otcdlink.chiron.command.RecyclableCommand;
+import io.netty.util.ResourceLeakDetector;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.netty.util.ResourceLeakDetector.Level.PARANOID;
+
+/**
+ * Like {@link NettyLeakDetectorRule}, but fails the test if some {@link RecyclableCommand}
+ * was garbage-collected without being released.
+ * Leaks are counted from what {@link ResourceLeakDetector} logs, which requires Logback.
+ */
+public final class RecyclableCommandLeakDetectorRule implements TestRule {
+
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger( RecyclableCommandLeakDetectorRule.class ) ;
+
+  /**
+   * Time for the reference handler thread to enqueue cleared references after a
+   * garbage collection.
+   */
+  private static final long REFERENCE_ENQUEUING_DELAY_MS = 100 ;
+
+  private static final String LEAK_MESSAGE_START =
+      "LEAK: " + RecyclableCommand.class.getSimpleName() + '.' ;
+
+  @Override
+  public Statement apply( final Statement base, final Description description ) {
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        final ResourceLeakDetector.Level initialLevel = ResourceLeakDetector.getLevel() ;
+        final ch.qos.logback.classic.Logger leakLogger = ( ch.qos.logback.classic.Logger )
+            LoggerFactory.getLogger( ResourceLeakDetector.class ) ;
+        final LeakCounter leakCounter = new LeakCounter() ;
+        ResourceLeakDetector.setLevel( PARANOID ) ;
+        /** Forget leaks that happened before. */
+        RecyclableCommand.reportLeaks() ;
+        leakCounter.start() ;
+        leakLogger.addAppender( leakCounter ) ;
+        try {
+          base.evaluate() ;
+          System.gc() ;
+          Thread.sleep( REFERENCE_ENQUEUING_DELAY_MS ) ;
+          RecyclableCommand.reportLeaks() ;
+          final int leaks = leakCounter.count.get() ;
+          if( leaks > 0 ) {
+            throw new AssertionError( "Detected " + leaks + " leak(s) of " +
+                RecyclableCommand.class.getSimpleName() + " in " + description + "." ) ;
+          }
+          LOGGER.debug( "No leak of " + RecyclableCommand.class.getSimpleName() + " in " +
+              description + "." ) ;
+        } finally {
+          leakLogger.detachAppender( leakCounter ) ;
+          leakCounter.stop() ;
+          ResourceLeakDetector.setLevel( initialLevel ) ;
+        }
+      }
+    } ;
+  }
+
+  private static final class LeakCounter extends AppenderBase< ILoggingEvent > {
+
+    private final AtomicInteger count = new AtomicInteger() ;
+
+    @Override
+    protected void append( final ILoggingEvent event ) {
+      if( event.getFormattedMessage().startsWith( LEAK_MESSAGE_START ) ) {
+        count.incrementAndGet() ;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,84 @@
+package com.otcdlink.chiron.fixture;
+
+import com.otcdlink.chiron.buffer.PositionalFieldWriter;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.RecyclableCommand;
+import io.netty.util.Recycler;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RecyclableCommandLeakDetectorRuleTest {
+
+  @Test
+  public void noLeak() throws Throwable {
+    evaluateWithRule( () -> SomeCommand.newInstance().release() ) ;
+  }
+
+  @Test
+  public void detectLeak() throws Throwable {
+    assertThatThrownBy( () -> evaluateWithRule( RecyclableCommandLeakDetectorRuleTest::leak ) )
+        .isInstanceOf( AssertionError.class )
+        .hasMessageContaining( "leak(s) of RecyclableCommand" )
+    ;
+  }
+
+// =======
+// Fixture
+// =======
+
+  private static void evaluateWithRule( final Runnable runnable ) throws Throwable {
+    new RecyclableCommandLeakDetectorRule().apply(
+        new Statement() {
+          @Override
+          public void evaluate() {
+            runnable.run() ;
+          }
+        },
+        Description.createTestDescription( RecyclableCommandLeakDetectorRuleTest.class, "rule" )
+    ).evaluate() ;
+  }
+
+  /**
+   * Not inlined, so nothing on the stack references the {@link SomeCommand}.
+   */
+  private static void leak() {
+    SomeCommand.newInstance() ;
+  }
+
+  @Command.Description( name = "some" )
+  private static final class SomeCommand extends RecyclableCommand< String, Void > {
+
+    private static final Recycler< SomeCommand > RECYCLER = new Recycler< SomeCommand >() {
+      @Override
+      protected SomeCommand newObject( final Handle< SomeCommand > handle ) {
+        return new SomeCommand( handle ) ;
+      }
+    } ;
+
+    public static SomeCommand newInstance() {
+      final SomeCommand command = RECYCLER.get() ;
+      command.reuse( "endpoint" ) ;
+      return command ;
+    }
+
+    private SomeCommand( final Recycler.Handle< SomeCommand > handle ) {
+      super( handle, false ) ;
+    }
+
+    @Override
+    protected void clear() { }
+
+    @Override
+    public void callReceiver( final Void Ø ) {
+      throw new UnsupportedOperationException( "Do not call" ) ;
+    }
+
+    @Override
+    public void encodeBody( final PositionalFieldWriter positionalFieldWriter ) {
+      throw new UnsupportedOperationException( "Do not call" ) ;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.integration.echo.EchoCodecFixture;
+import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
+import com.otcdlink.chiron.integration.echo.UpwardEchoCommand;
+import com.otcdlink.chiron.testing.MethodSupport;
+import com.otcdlink.chiron.toolbox.netty.NettyTools;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.File;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelJournalFileReaderTest {
+
+  @Test
+  public void orderPreserved() throws Exception {
+    final int commandCount = 10_000 ;
+    newJournalReplayFixture().createFile( commandCount ) ;
+    final ParallelJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        new ParallelJournalFileReader<>(
+            journalFile(),
+            FileDesignatorCodecTools.InwardDesignatorDecoder::new,
+            EchoCodecFixture.PartialUpendDecoder::new,
+            0,
+            true,
+            LineBreak.CR_UNIX,
+            4,
+            16
+        )
+    ;
+    final Scheduler scheduler = Schedulers.newParallel( "replay", 4 ) ;
+    try {
+      final List< Command< Designator, EchoUpwardDuty< Designator > > > commands =
+          reader.flux( scheduler ).collectList().block() ;
+      assertThat( commands ).hasSize( commandCount ) ;
+      for( int i = 0 ; i < commandCount ; i ++ ) {
+        final Command< Designator, EchoUpwardDuty< Designator > > command = commands.get( i ) ;
+        assertThat( ( ( UpwardEchoCommand ) command ).message ).isEqualTo( "hello-" + ( i + 1 ) ) ;
+      }
+    } finally {
+      scheduler.dispose() ;
+    }
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(
+      ParallelJournalFileReaderTest.class ) ;
+
+  @Rule
+  public final MethodSupport methodSupport = new MethodSupport() ;
+
+  private File journalFile() {
+    return new File( methodSupport.getDirectory(), "my.journal" ) ;
+  }
+
+  private JournalReplayFixture newJournalReplayFixture() {
+    return new JournalReplayFixture( LOGGER, journalFile(), LineBreak.CR_UNIX ) ;
+  }
+
+  static {
+    NettyTools.forceNettyClassesToLoad() ;
+  }
+}
@@ -1,5 +1,8 @@
 package com.otcdlink.chiron.flow.journal;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.FileWriteMode;
+import com.google.common.io.Files;
 import com.otcdlink.chiron.designator.Designator;
 import com.otcdlink.chiron.integration.echo.EchoCodecFixture;
 import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
@@ -7,6 +10,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -52,6 +56,60 @@ public class RecoveringJournalFileReaderTest
     assertThat( recoveredFile().length() ).isGreaterThan( 0 ) ;
   }
 
+  @Test
+  public void truncateTornTail() throws Exception {
+    newJournalReplayFixture().createFile( 2 ) ;
+    final long goodLength = journalFile().length() ;
+    Files.asByteSink( journalFile(), FileWriteMode.APPEND ).write(
+        "0:3 7he5e55".getBytes( Charsets.US_ASCII ) ) ;
+    final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        newJournalReader( journalFile() ) ;
+    assertThat( reader.tornTailLength() ).isEqualTo( 11 ) ;
+    assertThat( recoveryFile().length() ).isEqualTo( goodLength ) ;
+    iterateAndVerify( reader ) ;
+  }
+
+  @Test
+  public void truncateTrailingZeroes() throws Exception {
+    newJournalReplayFixture().createFile( 2 ) ;
+    final long goodLength = journalFile().length() ;
+    Files.asByteSink( journalFile(), FileWriteMode.APPEND ).write( new byte[ 100 ] ) ;
+    final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        newJournalReader( journalFile() ) ;
+    assertThat( reader.tornTailLength() ).isEqualTo( 100 ) ;
+    assertThat( recoveryFile().length() ).isEqualTo( goodLength ) ;
+    iterateAndVerify( reader ) ;
+  }
+
+  @Test
+  public void noTornTail() throws Exception {
+    newJournalReplayFixture().createFile( 2 ) ;
+    final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        newJournalReader( journalFile() ) ;
+    assertThat( reader.tornTailLength() ).isEqualTo( 0 ) ;
+  }
+
+  @Test
+  public void refuseToTruncateWithoutHeaderLine() throws Exception {
+    final byte[] noLineBreak = new byte[ 2000 ] ;
+    Arrays.fill( noLineBreak, ( byte ) 'x' ) ;
+    Files.write( noLineBreak, journalFile() ) ;
+    assertThatThrownBy( () -> newJournalReader( journalFile() ) )
+        .isInstanceOf( IOException.class )
+        .hasMessageContaining( "no header line" ) ;
+    assertThat( recoveryFile().length() ).isEqualTo( noLineBreak.length ) ;
+  }
+
+  @Test
+  public void refuseToTruncateWithoutMagic() throws Exception {
+    final byte[] noMagic = "Not a journal\nfoo".getBytes( Charsets.US_ASCII ) ;
+    Files.write( noMagic, journalFile() ) ;
+    assertThatThrownBy( () -> newJournalReader( journalFile() ) )
+        .isInstanceOf( IOException.class )
+        .hasMessageContaining( IntradayPersistenceConstants.MAGIC ) ;
+    assertThat( recoveryFile().length() ).isEqualTo( noMagic.length ) ;
+  }
+
   @Test
   public void needToResolveBeforeIterating() throws Exception {
     assertThatThrownBy( () -> newBareReader( journalFile() ).sliceIterable() )
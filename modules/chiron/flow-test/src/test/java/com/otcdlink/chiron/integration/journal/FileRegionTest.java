@@ -0,0 +1,112 @@
+package com.otcdlink.chiron.integration.journal;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.otcdlink.chiron.flow.journal.slicer.FileRegion;
+import com.otcdlink.chiron.flow.journal.slicer.FileSlicer;
+import com.otcdlink.chiron.flow.journal.slicer.Slice;
+import com.otcdlink.chiron.testing.MethodSupport;
+import com.otcdlink.chiron.toolbox.netty.NettyTools;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileRegionTest {
+
+  @Test
+  public void oneRegion() throws Exception {
+    final ImmutableList< FileRegion > regions = split( LineBreak.CR_UNIX, 1, "A", "B" ) ;
+    assertThat( regions ).hasSize( 1 ) ;
+    assertThat( regions.get( 0 ).startOffset ).isEqualTo( 0 ) ;
+    assertThat( regions.get( 0 ).endOffset ).isEqualTo( file().length() ) ;
+  }
+
+  @Test
+  public void severalRegions() throws Exception {
+    checkSlicing( LineBreak.CR_UNIX, 3, "AAA", "BBB", "CCC", "DDD", "EEE", "FFF", "GGG" ) ;
+  }
+
+  @Test
+  public void multibyteDelimiter() throws Exception {
+    checkSlicing( LineBreak.CRLF_WINDOWS, 4, "A", "BB", "CCC", "DDDD", "EEEEE", "F", "G" ) ;
+  }
+
+  @Test
+  public void moreRegionsThanLines() throws Exception {
+    final ImmutableList< FileRegion > regions =
+        checkSlicing( LineBreak.CR_UNIX, 10, "AAAAAAAAAA", "B" ) ;
+    assertThat( regions.size() ).isLessThanOrEqualTo( 2 ) ;
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( FileRegionTest.class ) ;
+
+  @Rule
+  public final MethodSupport methodSupport = new MethodSupport() ;
+
+  private File file() {
+    return new File( methodSupport.getDirectory(), "regions.txt" ) ;
+  }
+
+  private ImmutableList< FileRegion > split(
+      final LineBreak lineBreak,
+      final int regionCount,
+      final String... lines
+  ) throws IOException {
+    final StringBuilder stringBuilder = new StringBuilder() ;
+    for( final String line : lines ) {
+      stringBuilder.append( line ).append( lineBreak.asString ) ;
+    }
+    Files.asCharSink( file(), Charsets.US_ASCII ).write( stringBuilder ) ;
+    final ImmutableList< FileRegion > regions = FileRegion.split(
+        file(), lineBreak.asByteArray(), regionCount, MoreExecutors.directExecutor() ) ;
+    LOGGER.info( "Got " + regions + "." ) ;
+    return regions ;
+  }
+
+  /**
+   * Reads every {@link FileRegion} with its own {@link FileSlicer} and checks that
+   * concatenating {@link Slice}s yields the original content, with correct line indices.
+   */
+  private ImmutableList< FileRegion > checkSlicing(
+      final LineBreak lineBreak,
+      final int regionCount,
+      final String... lines
+  ) throws IOException {
+    final ImmutableList< FileRegion > regions = split( lineBreak, regionCount, lines ) ;
+    final List< String > actualLines = new ArrayList<>() ;
+    long previousEnd = 0 ;
+    for( final FileRegion region : regions ) {
+      assertThat( region.startOffset ).isEqualTo( previousEnd ) ;
+      previousEnd = region.endOffset ;
+      final FileSlicer fileSlicer = new FileSlicer(
+          file(), lineBreak.asByteArray(), 1024, 100, 10, region ) ;
+      for( final Slice slice : fileSlicer ) {
+        assertThat( slice.lineIndexInFile() ).isEqualTo( actualLines.size() ) ;
+        actualLines.add( slice.toString( Charsets.US_ASCII ) ) ;
+      }
+    }
+    assertThat( previousEnd ).isEqualTo( file().length() ) ;
+    assertThat( actualLines ).containsExactly( lines ) ;
+    return regions ;
+  }
+
+  static {
+    NettyTools.forceNettyClassesToLoad() ;
+  }
+}
@@ -0,0 +1,113 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.otcdlink.chiron.command.codec.Encoder;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes each line into a reusable {@link ByteBuffer}, then passes it to
+ * {@link #writeByteBufferToSink(Closeable, ByteBuffer, long)}.
+ */
+public abstract class AbstractByteBufferJournalPersister<
+    DESIGNATOR,
+    DUTY,
+    SINK extends Closeable
+>
+    extends AbstractJournalPersister< DESIGNATOR, DUTY, SINK >
+{
+
+  private final boolean directBuffer ;
+
+  /**
+   * Lazily allocated by {@link #prepareLine(Closeable, long)}.
+   */
+  private ByteBuffer lineByteBuffer = null ;
+  private ByteBuf lineByteBuf = null ;
+
+  protected AbstractByteBufferJournalPersister(
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion,
+      final boolean directBuffer
+  ) {
+    super( designatorEncoder, schemaVersion, applicationVersion ) ;
+    this.directBuffer = directBuffer ;
+  }
+
+  protected AbstractByteBufferJournalPersister(
+      final int lineBufferSize,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion,
+      final LineBreak lineBreak,
+      final boolean directBuffer
+  ) {
+    super( lineBufferSize, designatorEncoder, schemaVersion, applicationVersion, lineBreak ) ;
+    this.directBuffer = directBuffer ;
+  }
+
+  /**
+   * @param indexer {@code null} means no {@link JournalIndex}.
+   */
+  protected AbstractByteBufferJournalPersister(
+      final int lineBufferSize,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion,
+      final LineBreak lineBreak,
+      final boolean directBuffer,
+      final JournalIndex.Indexer< DESIGNATOR > indexer,
+      final JournalRecordFormat recordFormat
+  ) {
+    super(
+        lineBufferSize,
+        designatorEncoder,
+        schemaVersion,
+        applicationVersion,
+        lineBreak,
+        indexer,
+        recordFormat
+    ) ;
+    this.directBuffer = directBuffer ;
+  }
+
+  @Override
+  protected final ByteBuf prepareLine( final SINK sink, final long writtenBytes ) {
+    if( lineByteBuf == null ) {
+      if( directBuffer ) {
+        lineByteBuffer = ByteBuffer.allocateDirect( lineBufferSize() ) ;
+      } else {
+        lineByteBuffer = ByteBuffer.allocate( lineBufferSize() ) ;
+      }
+      lineByteBuf = Unpooled.wrappedBuffer( lineByteBuffer ) ;
+    }
+    lineByteBuf.clear() ;
+    return lineByteBuf ;
+  }
+
+  @Override
+  protected final int completeLine( final SINK sink, final long writtenBytes )
+      throws IOException
+  {
+    lineByteBuffer.position( 0 ) ;
+    lineByteBuffer.limit( lineByteBuf.writerIndex() ) ;
+    writeByteBufferToSink( sink, lineByteBuffer, writtenBytes ) ;
+    return lineByteBuf.writerIndex() ;
+  }
+
+  /**
+   *
+   * @param lineByteBuffer what to write from, position and limit are set to appropriate values.
+   * @param writtenBytes previously written bytes, so a {@code FileChannel} knows the offset.
+   */
+  protected abstract void writeByteBufferToSink(
+      SINK sink,
+      ByteBuffer lineByteBuffer,
+      long writtenBytes
+  ) throws IOException;
+}
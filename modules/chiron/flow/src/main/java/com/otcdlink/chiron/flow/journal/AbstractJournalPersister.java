@@ -4,11 +4,11 @@ import com.otcdlink.chiron.buffer.BytebufTools;
 import com.otcdlink.chiron.buffer.PositionalFieldWriter;
 import com.otcdlink.chiron.command.Command;
 import com.otcdlink.chiron.command.CommandConsumer;
+import com.otcdlink.chiron.command.RecyclableCommand;
 import com.otcdlink.chiron.command.codec.Encoder;
 import com.otcdlink.chiron.toolbox.ToStringTools;
 import com.otcdlink.chiron.toolbox.text.LineBreak;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,7 +24,14 @@ import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Persists {@link Command}s somewhere.
- * One single line (corresponding to one {@link Command} should fit in the {@link ByteBuffer}.
+ * One single line (corresponding to one {@link Command} should fit in
+ * {@link #lineBufferSize()} bytes.
+ * Lines may be replaced by binary records, see {@link JournalRecordFormat}.
+ * <p>
+ * This class doesn't know how lines reach the {@link SINK}: a subclass provides a
+ * {@link ByteBuf} for each line with {@link #prepareLine(Closeable, long)}, and writes it
+ * in {@link #completeLine(Closeable, long)}. Subclasses writing through a {@link ByteBuffer}
+ * extend {@link AbstractByteBufferJournalPersister}.
  *
  * TODO: support a {@link ByteBuf} passed through the {@link DESIGNATOR} by an
  * {@link JournalFileReader} if {@link #schemaVersion}s are compatible.
@@ -44,47 +51,95 @@ public abstract class AbstractJournalPersister< DESIGNATOR, DUTY, SINK extends C
   private final String applicationVersion ;
   private final String lineBreak ;
 
-  private final ByteBuffer lineByteBuffer;
-  private final ByteBuf lineByteBuf ;
-  private final PositionalFieldWriter fieldWriter ;
+  private final int lineBufferSize ;
+
+  /**
+   * Coats the last {@link ByteBuf} returned by {@link #prepareLine(Closeable, long)}, so we
+   * don't create a new {@link PositionalFieldWriter} for each line.
+   */
+  private ByteBuf coatedByteBuf = null ;
+  private PositionalFieldWriter fieldWriter = null ;
+
+  private final JournalRecordFormat recordFormat ;
+
+  /**
+   * Nullable.
+   */
+  private final JournalIndex.Indexer< DESIGNATOR > indexer ;
 
   protected AbstractJournalPersister(
       final Encoder< DESIGNATOR > designatorEncoder,
       final int schemaVersion,
-      final String applicationVersion,
-      final boolean directBuffer
+      final String applicationVersion
   ) {
     this(
         DEFAULT_WRITE_BUFFER_SIZE,
         designatorEncoder,
         schemaVersion,
         applicationVersion,
-        IntradayPersistenceConstants.LINE_BREAK,
-        directBuffer
+        IntradayPersistenceConstants.LINE_BREAK
     ) ;
   }
 
+  protected AbstractJournalPersister(
+      final int lineBufferSize,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion,
+      final LineBreak lineBreak
+  ) {
+    this(
+        lineBufferSize,
+        designatorEncoder,
+        schemaVersion,
+        applicationVersion,
+        lineBreak,
+        null
+    ) ;
+  }
+
+  /**
+   * @param indexer {@code null} means no {@link JournalIndex}.
+   */
   protected AbstractJournalPersister(
       final int lineBufferSize,
       final Encoder< DESIGNATOR > designatorEncoder,
       final int schemaVersion,
       final String applicationVersion,
       final LineBreak lineBreak,
-      final boolean directBuffer
+      final JournalIndex.Indexer< DESIGNATOR > indexer
+  ) {
+    this(
+        lineBufferSize,
+        designatorEncoder,
+        schemaVersion,
+        applicationVersion,
+        lineBreak,
+        indexer,
+        JournalRecordFormat.TEXT
+    ) ;
+  }
+
+  /**
+   * @param indexer {@code null} means no {@link JournalIndex}.
+   */
+  protected AbstractJournalPersister(
+      final int lineBufferSize,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion,
+      final LineBreak lineBreak,
+      final JournalIndex.Indexer< DESIGNATOR > indexer,
+      final JournalRecordFormat recordFormat
   ) {
     checkArgument( lineBufferSize > 0 ) ;
     this.designatorEncoder = checkNotNull( designatorEncoder ) ;
     this.schemaVersion = checkNotNull( schemaVersion ) ;
     this.applicationVersion = checkNotNull( applicationVersion ) ;
     this.lineBreak = lineBreak.asString ;
-
-    if( directBuffer ) {
-      this.lineByteBuffer = ByteBuffer.allocateDirect( lineBufferSize ) ;
-    } else {
-      this.lineByteBuffer = ByteBuffer.allocate( lineBufferSize ) ;
-    }
-    this.lineByteBuf = Unpooled.wrappedBuffer( lineByteBuffer ) ;
-    this.fieldWriter = BytebufTools.coat( lineByteBuf ) ;
+    this.lineBufferSize = lineBufferSize ;
+    this.indexer = indexer ;
+    this.recordFormat = checkNotNull( recordFormat ) ;
   }
 
   @Override
@@ -96,23 +151,53 @@ public abstract class AbstractJournalPersister< DESIGNATOR, DUTY, SINK extends C
     return "" ;
   }
 
+  /**
+   * The maximum length of a line, in bytes.
+   */
+  protected final int lineBufferSize() {
+    return lineBufferSize ;
+  }
+
   private SINK sink = null ;
   private long writtenBytes ;
 
+  /**
+   * Bytes written since last {@link #open()}, including header line.
+   * Some of them may not have reached the disk yet.
+   */
+  public final long writtenBytes() {
+    return writtenBytes ;
+  }
+
+  /**
+   * Counts the header line, so this is also the {@link JournalIndex.Entry#lineIndex} of
+   * next line.
+   */
+  private long writtenLines ;
+
   @SuppressWarnings( "IOResourceOpenedButNotSafelyClosed" )
   @Override
   public void open() throws IOException {
     checkState( sink == null, "Already open" ) ;
     sink = createSink() ;
     writtenBytes = 0 ;
-    prepareWrite() ;
+    writtenLines = 0 ;
+    if( indexer != null ) {
+      indexer.open() ;
+    }
+    final PositionalFieldWriter fieldWriter = coat( prepareWrite() ) ;
     fieldWriter.writeAsciiUnsafe( IntradayPersistenceConstants.MAGIC ) ;
     fieldWriter.writeAsciiUnsafe( " " + schemaVersion + " " ) ;
+    if( recordFormat != JournalRecordFormat.TEXT ) {
+      fieldWriter.writeAsciiUnsafe(
+          JournalRecordFormat.HEADER_KEYWORD + " " + recordFormat.name() + " " ) ;
+    }
     fieldWriter.writeAsciiUnsafe( "ApplicationVersion " ) ;
     fieldWriter.writeAsciiUnsafe( applicationVersion ) ;
     fieldWriter.writeAsciiUnsafe( lineBreak ) ;
     completeWrite() ;
     flush( sink ) ;
+    flushIndex() ;
     LOGGER.info( "Opened " + this + "." ) ;
   }
 
@@ -144,8 +229,16 @@ public abstract class AbstractJournalPersister< DESIGNATOR, DUTY, SINK extends C
   public void close() throws IOException {
     checkOpen() ;
     try {
-      flush( sink ) ;
-      sink.close() ;
+      try {
+        flush( sink ) ;
+      } finally {
+        /** Flushing fails if a writer thread died, we still need to release the sink. */
+        sink.close() ;
+      }
+      /** Not open if {@link #open()} failed before. */
+      if( indexer != null && indexer.isOpen() ) {
+        indexer.close() ;
+      }
       LOGGER.info( "Closed " + this + "." ) ;
     } finally {
       sink = null ;
@@ -168,52 +261,109 @@ public abstract class AbstractJournalPersister< DESIGNATOR, DUTY, SINK extends C
     this.autoFlush = flushEachLine ;
   }
 
+  /**
+   * Never releases a {@link RecyclableCommand}: encoding happens before returning, so the
+   * persister only borrows it, and the next consumer (the last one calling
+   * {@link Command#callReceiver(Object)}) remains its owner.
+   */
   @Override
   public void accept( final Command< DESIGNATOR, DUTY > command ) {
     if( command.persist() ) {
-      prepareWrite() ;
       try {
-        designatorEncoder.encodeTo( command.endpointSpecific, fieldWriter ) ;
-        fieldWriter.writeDelimitedString( command.description().name() ) ;
-        command.encodeBody( fieldWriter ) ;
-        fieldWriter.writeAsciiUnsafe( lineBreak ) ;
-        completeWrite() ;
-        if( autoFlush ) {
-          flush( sink ) ;
-        }
+        write( command ) ;
       } catch( final IOException e ) {
         LOGGER.error( "Failed to write " + command + "into " + this + ".", e ) ;
       }
     }
   }
 
+  /**
+   * Writes one line (or one record, depending on {@link JournalRecordFormat}),
+   * regardless of {@link Command#persist()}.
+   * Subclasses needing to know about a failure should call this method instead
+   * of {@link #accept(Command)}.
+   */
+  protected final void write( final Command< DESIGNATOR, DUTY > command ) throws IOException {
+    final ByteBuf byteBuf = prepareWrite() ;
+    final int recordStart = byteBuf.writerIndex() ;
+    if( recordFormat == JournalRecordFormat.BINARY ) {
+      byteBuf.writeZero( JournalRecordFormat.RECORD_HEADER_LENGTH ) ;
+    }
+    final PositionalFieldWriter fieldWriter = coat( byteBuf ) ;
+    designatorEncoder.encodeTo( command.endpointSpecific, fieldWriter ) ;
+    fieldWriter.writeDelimitedString( command.description().name() ) ;
+    command.encodeBody( fieldWriter ) ;
+    if( recordFormat == JournalRecordFormat.BINARY ) {
+      JournalRecordFormat.completeRecordHeader( byteBuf, recordStart ) ;
+    } else {
+      fieldWriter.writeAsciiUnsafe( lineBreak ) ;
+    }
+    completeWrite() ;
+    if( indexer != null ) {
+      indexer.lineWritten( command.endpointSpecific, writtenBytes, writtenLines ) ;
+    }
+    if( autoFlush ) {
+      flush( sink ) ;
+      flushIndex() ;
+    }
+  }
+
+  /**
+   * Call this after {@link #flush(Closeable)}, or after forcing the sink, so a crash doesn't
+   * lose what the {@link JournalIndex} knows about flushed lines.
+   * May happen in another thread than the one writing.
+   */
+  protected final void flushIndex() throws IOException {
+    if( indexer != null ) {
+      indexer.flush() ;
+    }
+  }
+
+  /**
+   * Tells if {@link #open()} got as far as creating the sink, even if it failed after.
+   */
+  boolean isOpen() {
+    return sink != null ;
+  }
+
   private void checkOpen() {
     checkState( sink != null, "Not open" ) ;
   }
 
-  private void prepareWrite() {
+  private ByteBuf prepareWrite() throws IOException {
     checkOpen() ;
-    lineByteBuf.clear() ;
+    return prepareLine( sink, writtenBytes ) ;
   }
 
+  private PositionalFieldWriter coat( final ByteBuf byteBuf ) {
+    if( byteBuf != coatedByteBuf ) {
+      fieldWriter = BytebufTools.coat( byteBuf ) ;
+      coatedByteBuf = byteBuf ;
+    }
+    return fieldWriter ;
+  }
 
   private void completeWrite() throws IOException {
-    lineByteBuffer.position( 0 ) ;
-    lineByteBuffer.limit( lineByteBuf.writerIndex() ) ;
-    writeByteBufferToSink( sink, lineByteBuffer, writtenBytes ) ;
-    writtenBytes += lineByteBuf.writerIndex() ;
+    writtenBytes += completeLine( sink, writtenBytes ) ;
+    writtenLines ++ ;
   }
 
   /**
+   * Returns the {@link ByteBuf} to encode next line into, starting at its
+   * {@link ByteBuf#writerIndex()}.
    *
-   * @param lineByteBuffer what to write from, position and limit are set to appropriate values.
-   * @param writtenBytes previously written bytes, so a {@code FileChannel} knows the offset.
-   */
-  protected abstract void writeByteBufferToSink(
-      SINK sink,
-      ByteBuffer lineByteBuffer,
-      long writtenBytes
-  ) throws IOException;
+   * @param writtenBytes previously written bytes.
+   */
+  protected abstract ByteBuf prepareLine( SINK sink, long writtenBytes ) throws IOException ;
+
+  /**
+   * Called once the {@link ByteBuf} returned by
+   * {@link #prepareLine(Closeable, long)} received a whole line.
+   *
+   * @param writtenBytes previously written bytes, not counting the line.
+   * @return the length of the line, in bytes.
+   */
+  protected abstract int completeLine( SINK sink, long writtenBytes ) throws IOException ;
 
   /**
    * Can't rely on {@link java.io.Flushable} because {@link FileChannel} doesn't implement it.
@@ -25,16 +25,14 @@ public final class FileDesignatorCodecTools {
         final Designator designator,
         final PositionalFieldWriter positionalFieldWriter
     ) throws IOException {
-      final String stringWithRawSeconds = designator.stamp.asStringRoundedToFlooredSecond() ;
-      positionalFieldWriter.writeAsciiUnsafe( stringWithRawSeconds ) ;
-      positionalFieldWriter.writeAsciiUnsafe( " " ) ;
+      positionalFieldWriter.writeStamp( designator.stamp ) ;
       positionalFieldWriter.writeNullableString(
           designator.sessionIdentifier == null ? null : designator.sessionIdentifier.asString() ) ;
     }
   }
 
   /**
-   * Not thread-safe because of {@link #stampParser} and {@link #lineNumber}.
+   * Not thread-safe because of {@link #lineNumber}.
    */
   public static final class InwardDesignatorDecoder
       implements
@@ -42,14 +40,11 @@ public final class FileDesignatorCodecTools {
       FileAwareDecoder
   {
 
-    private final Stamp.Parser stampParser = new Stamp.Parser() ;
-
     @Override
     public Designator decodeFrom( final PositionalFieldReader reader )
         throws IOException
     {
-      final String stampAsString = reader.readDelimitedString() ;
-      final Stamp stamp = stampParser.parse( stampAsString ) ;
+      final Stamp stamp = reader.readStamp() ;
       final String sessionAsString = reader.readNullableString() ;
       if( sessionAsString == null ) {
         return new DesignatorFromFile( INTERNAL, stamp, null, lineNumber ) ;
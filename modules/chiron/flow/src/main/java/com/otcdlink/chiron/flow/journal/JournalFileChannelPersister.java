@@ -1,7 +1,10 @@
 package com.otcdlink.chiron.flow.journal;
 
+import com.otcdlink.chiron.command.Command;
 import com.otcdlink.chiron.command.codec.Encoder;
+import com.otcdlink.chiron.toolbox.concurrent.ExecutorTools;
 import com.otcdlink.chiron.toolbox.text.LineBreak;
+import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,20 +13,46 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Default implementation using {@link FileChannel}.
+ *
+ * <h1>Group commit</h1>
+ * <p>
+ * Forcing the disk after each line is very slow (see {@link #autoFlush(boolean)}, which
+ * is not available with a {@link GroupCommit}).
+ * With a {@link GroupCommit} each call to {@link #acceptDurably(Command)} returns a
+ * {@code CompletableFuture} that completes once the {@link Command} is on the disk.
+ * Consecutive {@link Command}s share the same {@link FileChannel#force(boolean)}, which happens
+ * in a dedicated thread when {@link GroupCommit#maximumBatchSize} is reached or after
+ * {@link GroupCommit#maximumDelay}, whichever comes first. So the thread calling
+ * {@link #acceptDurably(Command)} never waits for the disk.
+ * The {@code CompletableFuture}s complete in the same order as calls to
+ * {@link #acceptDurably(Command)}.
  */
 public final class JournalFileChannelPersister< DESIGNATOR, DUTY >
-    extends AbstractJournalPersister< DESIGNATOR, DUTY, FileChannel >
+    extends AbstractByteBufferJournalPersister< DESIGNATOR, DUTY, FileChannel >
 {
 
   private static final Logger LOGGER = LoggerFactory.getLogger( JournalFileChannelPersister.class ) ;
 
   private final File journalFile ;
 
+  /**
+   * Nullable.
+   */
+  private final GroupCommit groupCommit ;
+
   public JournalFileChannelPersister(
       final File journalFile,
       final Encoder< DESIGNATOR > designatorEncoder,
@@ -32,6 +61,7 @@ public final class JournalFileChannelPersister< DESIGNATOR, DUTY >
   ) {
     super( designatorEncoder, schemaVersion, applicationVersion, true ) ;
     this.journalFile = checkNotNull( journalFile ) ;
+    this.groupCommit = null ;
   }
 
   public JournalFileChannelPersister(
@@ -41,6 +71,80 @@ public final class JournalFileChannelPersister< DESIGNATOR, DUTY >
       final int schemaVersion,
       final String applicationVersion,
       final LineBreak lineBreak
+  ) {
+    this(
+        journalFile,
+        lineBufferSize,
+        designatorEncoder,
+        schemaVersion,
+        applicationVersion,
+        lineBreak,
+        null
+    ) ;
+  }
+
+  /**
+   * @param groupCommit {@code null} means no call to {@link FileChannel#force(boolean)}
+   *     and no support for {@link #acceptDurably(Command)}.
+   */
+  public JournalFileChannelPersister(
+      final File journalFile,
+      final int lineBufferSize,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion,
+      final LineBreak lineBreak,
+      final GroupCommit groupCommit
+  ) {
+    this(
+        journalFile,
+        lineBufferSize,
+        designatorEncoder,
+        schemaVersion,
+        applicationVersion,
+        lineBreak,
+        groupCommit,
+        null
+    ) ;
+  }
+
+  /**
+   * @param indexer {@code null} means no {@link JournalIndex}, otherwise it should write into
+   *     {@link JournalIndex#sidecarFile(File)}.
+   */
+  public JournalFileChannelPersister(
+      final File journalFile,
+      final int lineBufferSize,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion,
+      final LineBreak lineBreak,
+      final GroupCommit groupCommit,
+      final JournalIndex.Indexer< DESIGNATOR > indexer
+  ) {
+    this(
+        journalFile,
+        lineBufferSize,
+        designatorEncoder,
+        schemaVersion,
+        applicationVersion,
+        lineBreak,
+        groupCommit,
+        indexer,
+        JournalRecordFormat.TEXT
+    ) ;
+  }
+
+  public JournalFileChannelPersister(
+      final File journalFile,
+      final int lineBufferSize,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion,
+      final LineBreak lineBreak,
+      final GroupCommit groupCommit,
+      final JournalIndex.Indexer< DESIGNATOR > indexer,
+      final JournalRecordFormat recordFormat
   ) {
     super(
         lineBufferSize,
@@ -48,21 +152,34 @@ public final class JournalFileChannelPersister< DESIGNATOR, DUTY >
         schemaVersion,
         applicationVersion,
         lineBreak,
-        true
+        true,
+        indexer,
+        recordFormat
     ) ;
     this.journalFile = checkNotNull( journalFile ) ;
+    this.groupCommit = groupCommit ;
   }
 
   @Override
   protected String toStringBody() {
-    return journalFile.getAbsolutePath() ;
+    return journalFile.getAbsolutePath() + ( groupCommit == null ? "" : ";" + groupCommit ) ;
   }
 
   @SuppressWarnings( "IOResourceOpenedButNotSafelyClosed" )
   @Override
   protected FileChannel createSink() throws IOException {
     ensureFileExists( this.journalFile ) ;
-    return new RandomAccessFile( this.journalFile, "rw" ).getChannel() ;
+    final FileChannel fileChannel = new RandomAccessFile( this.journalFile, "rw" ).getChannel() ;
+    if( groupCommit != null ) {
+      checkState( forceScheduler == null ) ;
+      final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+          1, ExecutorTools.newThreadFactory( "journal-force" ) ) ;
+      /** {@link #close()} forces what remains, no need to wait for delayed forces. */
+      scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy( false ) ;
+      forceScheduler = scheduler ;
+      this.fileChannel = fileChannel ;
+    }
+    return fileChannel ;
   }
 
   @Override
@@ -76,12 +193,200 @@ public final class JournalFileChannelPersister< DESIGNATOR, DUTY >
 
   @Override
   protected void flush( final FileChannel sink ) throws IOException {
-    // Don't do anything, it's a memory-mapped file, let the OS decide when to flush.
-    // sink.force( false ) ;
+    if( groupCommit == null ) {
+      // Don't do anything, let the OS decide when to write its page cache to the disk.
+      // sink.force( false ) ;
+    } else {
+      forceBatch( sink ) ;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if( forceScheduler != null ) {
+      /** Interrupting a running force would close the {@link FileChannel}. */
+      forceScheduler.shutdown() ;
+      try {
+        forceScheduler.awaitTermination( 1, TimeUnit.MINUTES ) ;
+      } catch( final InterruptedException e ) {
+        Thread.currentThread().interrupt() ;
+      }
+      forceScheduler = null ;
+      fileChannel = null ;
+    }
+    super.close() ;  // Calls #flush which forces what remains.
+  }
+
+  /**
+   * @throws IllegalArgumentException if there is a {@link GroupCommit}, because forcing
+   *     after each line would defeat it.
+   */
+  @Override
+  public void autoFlush( final boolean flushEachLine ) {
+    checkArgument( ! ( flushEachLine && groupCommit != null ),
+        "Can't auto-flush with " + groupCommit ) ;
+    super.autoFlush( flushEachLine ) ;
   }
 
   @Override
   public PersisterWhenFrozen whenFrozen() {
     return new InnerLockablePersister() ;
   }
+
+
+// ============
+// Group commit
+// ============
+
+  public static final class GroupCommit {
+
+    /**
+     * Number of {@link Command}s that cause an immediate {@link FileChannel#force(boolean)}.
+     */
+    public final int maximumBatchSize ;
+
+    /**
+     * Maximum time elapsed between the write of a {@link Command} and the
+     * {@link FileChannel#force(boolean)} that makes it durable.
+     */
+    public final Duration maximumDelay ;
+
+    public GroupCommit( final int maximumBatchSize, final Duration maximumDelay ) {
+      checkArgument( maximumBatchSize > 0 ) ;
+      this.maximumBatchSize = maximumBatchSize ;
+      checkArgument( maximumDelay.getMillis() > 0 ) ;
+      this.maximumDelay = maximumDelay ;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + '{' +
+          "maximumBatchSize=" + maximumBatchSize + ';' +
+          "maximumDelay=" + maximumDelay.getMillis() + "ms" +
+          '}'
+      ;
+    }
+  }
+
+  private ScheduledExecutorService forceScheduler = null ;
+
+  /**
+   * Needed by {@link #forceScheduler}.
+   */
+  private FileChannel fileChannel = null ;
+
+  /**
+   * Synchronizes access to {@link #batch}, which may be accessed by the thread calling
+   * {@link #acceptDurably(Command)} and the thread of {@link #forceScheduler}.
+   */
+  private final Object batchLock = new Object() ;
+
+  /**
+   * Serializes calls to {@link #forceBatch(FileChannel)} so
+   * {@code CompletableFuture}s complete in the order of {@link Command}s.
+   */
+  private final Object forceLock = new Object() ;
+
+  private List< Durable > batch = new ArrayList<>() ;
+
+  /**
+   * Writes the {@link Command} like {@link #accept(Command)} does, and returns a
+   * {@code CompletableFuture} that completes (with the same {@link Command}) when the
+   * {@link Command} has been forced to the disk.
+   * The {@code CompletableFuture} completes immediately if {@link Command#persist()} returns
+   * {@code false}.
+   * <p>
+   * This method must be called always from the same thread (like {@link #accept(Command)}).
+   * {@code CompletableFuture}'s dependant stages run in the force thread, unless the
+   * {@code CompletableFuture} completes immediately.
+   *
+   * @throws IllegalStateException if there was no {@link GroupCommit} at construction time.
+   */
+  public CompletableFuture< Command< DESIGNATOR, DUTY > > acceptDurably(
+      final Command< DESIGNATOR, DUTY > command
+  ) {
+    checkState( groupCommit != null, "No " + GroupCommit.class.getSimpleName() + " set" ) ;
+    if( ! command.persist() ) {
+      return CompletableFuture.completedFuture( command ) ;
+    }
+    final CompletableFuture< Command< DESIGNATOR, DUTY > > future = new CompletableFuture<>() ;
+    try {
+      write( command ) ;
+    } catch( final IOException e ) {
+      LOGGER.error( "Failed to write " + command + "into " + this + ".", e ) ;
+      future.completeExceptionally( e ) ;
+      return future ;
+    }
+    final FileChannel sink = fileChannel ;
+    final boolean batchComplete ;
+    synchronized( batchLock ) {
+      batch.add( new Durable( command, future ) ) ;
+      if( batch.size() == 1 ) {
+        forceScheduler.schedule(
+            () -> forceBatchQuietly( sink ),
+            groupCommit.maximumDelay.getMillis(),
+            TimeUnit.MILLISECONDS
+        ) ;
+      }
+      batchComplete = batch.size() >= groupCommit.maximumBatchSize ;
+    }
+    if( batchComplete ) {
+      forceScheduler.execute( () -> forceBatchQuietly( sink ) ) ;
+    }
+    return future ;
+  }
+
+  /**
+   * For {@link #forceScheduler}, {@link #forceBatch(FileChannel)} already propagated
+   * the exception to the {@code CompletableFuture}s.
+   */
+  private void forceBatchQuietly( final FileChannel sink ) {
+    try {
+      forceBatch( sink ) ;
+    } catch( final IOException e ) {
+      LOGGER.error( "Failed to force " + this + ".", e ) ;
+    }
+  }
+
+  /**
+   * Forces every line written so far, and completes the {@code CompletableFuture}s of
+   * current {@link #batch}. Exceptions are propagated to the {@code CompletableFuture}s.
+   */
+  private void forceBatch( final FileChannel sink ) throws IOException {
+    synchronized( forceLock ) {
+      final List< Durable > durables ;
+      synchronized( batchLock ) {
+        if( batch.isEmpty() ) {
+          return ;
+        }
+        durables = batch ;
+        batch = new ArrayList<>( durables.size() ) ;
+      }
+      try {
+        sink.force( false ) ;
+        flushIndex() ;
+      } catch( final IOException e ) {
+        for( final Durable durable : durables ) {
+          durable.future.completeExceptionally( e ) ;
+        }
+        throw e ;
+      }
+      for( final Durable durable : durables ) {
+        durable.future.complete( durable.command ) ;
+      }
+    }
+  }
+
+  private final class Durable {
+    final Command< DESIGNATOR, DUTY > command ;
+    final CompletableFuture< Command< DESIGNATOR, DUTY > > future ;
+
+    Durable(
+        final Command< DESIGNATOR, DUTY > command,
+        final CompletableFuture< Command< DESIGNATOR, DUTY > > future
+    ) {
+      this.command = command ;
+      this.future = future ;
+    }
+  }
 }
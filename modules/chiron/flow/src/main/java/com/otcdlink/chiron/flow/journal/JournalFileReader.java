@@ -1,13 +1,18 @@
 package com.otcdlink.chiron.flow.journal;
 
 import com.google.common.base.Charsets;
+import com.otcdlink.chiron.buffer.ByteTrie;
 import com.otcdlink.chiron.buffer.BytebufCoat;
 import com.otcdlink.chiron.buffer.BytebufTools;
 import com.otcdlink.chiron.codec.CommandBodyDecoder;
 import com.otcdlink.chiron.codec.DecodeException;
+import com.otcdlink.chiron.codec.IndexedCommandBodyDecoder;
 import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.Stamp;
 import com.otcdlink.chiron.command.codec.Decoder;
+import com.otcdlink.chiron.flow.journal.slicer.FileRegion;
 import com.otcdlink.chiron.flow.journal.slicer.FileSlicer;
+import com.otcdlink.chiron.flow.journal.slicer.RecordSlicer;
 import com.otcdlink.chiron.flow.journal.slicer.Slice;
 import com.otcdlink.chiron.toolbox.text.LineBreak;
 import org.slf4j.Logger;
@@ -16,7 +21,9 @@ import reactor.core.publisher.SynchronousSink;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.otcdlink.chiron.flow.journal.slicer.FileSlicer.DEFAULT_CHUNK_MAXIMUM_LENGTH;
 import static com.otcdlink.chiron.flow.journal.slicer.FileSlicer.DEFAULT_SLICE_MAXIMUM_LENGTH;
@@ -31,11 +38,17 @@ public class JournalFileReader< DESIGNATOR, DUTY >
   private final Decoder< DESIGNATOR > designatorDecoder ;
   private final boolean designatorDecoderFileAware ;
   private final CommandBodyDecoder< DESIGNATOR, DUTY > commandBodyDecoder ;
+
+  /**
+   * Same as {@link #commandBodyDecoder} if it resolves names without creating {@code String}s,
+   * {@code null} otherwise.
+   */
+  private final IndexedCommandBodyDecoder< DESIGNATOR, DUTY > indexedCommandBodyDecoder ;
   private final BytebufTools.Coating coating = BytebufTools.threadLocalRecyclableCoating() ;
   private final int expectedSchemaVersion ;
   private final boolean recycleSlice ;
-  private FileSlicer fileSlicer ;
-  private final LineBreak lineBreak ;
+  private Iterable< Slice > slicer ;
+  protected final LineBreak lineBreak ;
 
   public JournalFileReader(
       final File journalFile,
@@ -68,6 +81,8 @@ public class JournalFileReader< DESIGNATOR, DUTY >
     this.designatorDecoderFileAware =
         designatorDecoder instanceof FileDesignatorCodecTools.FileAwareDecoder ;
     this.commandBodyDecoder = checkNotNull( commandBodyDecoder ) ;
+    this.indexedCommandBodyDecoder = commandBodyDecoder instanceof IndexedCommandBodyDecoder ?
+        ( IndexedCommandBodyDecoder< DESIGNATOR, DUTY > ) commandBodyDecoder : null ;
     this.expectedSchemaVersion = expectedSchemaVersion ;
     this.recycleSlice = recycleSlice ;
     this.lineBreak = checkNotNull( lineBreak ) ;
@@ -77,22 +92,153 @@ public class JournalFileReader< DESIGNATOR, DUTY >
     return journalFile ;
   }
 
+  /**
+   * Detects {@link JournalRecordFormat} from the header line, and returns the appropriate
+   * {@link FileSlicer} or {@link RecordSlicer}.
+   */
   @Override
   public Iterable< Slice > sliceIterable() {
-    if( fileSlicer == null ) {
-      try {
-        fileSlicer = new FileSlicer(
-            resolveFile(),
+    if( slicer == null ) {
+      slicer = newSlicer( resolveFile(), 0, 0 ) ;
+    }
+    return slicer ;
+  }
+
+  /**
+   * Lazily set by {@link #readable(File)}.
+   */
+  private File inflatedFile = null ;
+
+  /**
+   * Slicers need to map the file, so a file compressed by {@link RollingJournalPersister}
+   * gets inflated into a temporary file, once per instance, until
+   * {@link #deleteInflatedFile()}.
+   * If given file doesn't exist but its compressed version does, we use the latter.
+   *
+   * @see JournalSegments#existing(File)
+   */
+  private File readable( final File file ) throws IOException {
+    final File existing = JournalSegments.existing( file ) ;
+    if( JournalSegments.isCompressed( existing ) ) {
+      if( inflatedFile == null ) {
+        inflatedFile = JournalSegments.inflate( existing ) ;
+      }
+      return inflatedFile ;
+    } else {
+      return existing ;
+    }
+  }
+
+  /**
+   * Deletes the file inflated for reading a compressed journal, if any.
+   * Must happen once every {@link Slice} got decoded.
+   */
+  public void deleteInflatedFile() {
+    if( inflatedFile != null ) {
+      JournalSegments.delete( inflatedFile ) ;
+      inflatedFile = null ;
+    }
+  }
+
+  private Iterable< Slice > newSlicer(
+      final File resolvedFile,
+      final long startOffset,
+      final int startLineIndex
+  ) {
+    try {
+      final File file = readable( resolvedFile ) ;
+      final JournalRecordFormat recordFormat = JournalRecordFormat.detect( file ) ;
+      if( recordFormat == JournalRecordFormat.BINARY ) {
+        return new RecordSlicer(
+            file,
+            lineBreak.asByteArray(),
+            DEFAULT_CHUNK_MAXIMUM_LENGTH,
+            defaultProbableSliceCountPerChunk( DEFAULT_CHUNK_MAXIMUM_LENGTH, 100 ),
+            startOffset,
+            startLineIndex
+        ) ;
+      } else {
+        return new FileSlicer(
+            file,
             lineBreak.asByteArray(),
             DEFAULT_CHUNK_MAXIMUM_LENGTH + 1000,  // Adjusting to Windows line break.
             DEFAULT_SLICE_MAXIMUM_LENGTH,
-            defaultProbableSliceCountPerChunk( DEFAULT_CHUNK_MAXIMUM_LENGTH, 100 )
+            defaultProbableSliceCountPerChunk( DEFAULT_CHUNK_MAXIMUM_LENGTH, 100 ),
+            startOffset,
+            startLineIndex
         ) ;
-      } catch( FileNotFoundException e ) {
-        throw new RuntimeException( e ) ;
       }
+    } catch( final IOException e ) {
+      throw new RuntimeException( e ) ;
     }
-    return fileSlicer;
+  }
+
+  /**
+   * Like {@link #sliceIterable()} but starts from an {@link JournalIndex.Entry}, skipping
+   * every line before it (including header line, unless it is {@link JournalIndex.Entry#START}).
+   * Each call creates a new {@link FileSlicer} or {@link RecordSlicer}.
+   */
+  public Iterable< Slice > sliceIterable( final JournalIndex.Entry start ) {
+    final File file ;
+    try {
+      file = readable( resolveFile() ) ;
+    } catch( final IOException e ) {
+      throw new RuntimeException( e ) ;
+    }
+    final JournalIndex.Entry safeStart ;
+    if( start.offset > file.length() ) {
+      /** Index may contain entries for lines that didn't reach the disk. */
+      LOGGER.warn( "Offset of " + start + " beyond the end of '" + file.getAbsolutePath() +
+          "', reading from the start." ) ;
+      safeStart = JournalIndex.Entry.START ;
+    } else {
+      safeStart = start ;
+    }
+    checkArgument( safeStart.lineIndex <= Integer.MAX_VALUE,
+        "Unsupported line index in " + safeStart ) ;
+    return newSlicer( file, safeStart.offset, ( int ) safeStart.lineIndex ) ;
+  }
+
+  /**
+   * Like {@link #sliceIterable()} but reads only given {@link FileRegion}.
+   * Each call creates a new {@link FileSlicer}.
+   * Only supports {@link JournalRecordFormat#TEXT}, because {@link FileRegion}s rely on
+   * line breaks.
+   */
+  public Iterable< Slice > sliceIterable( final FileRegion fileRegion ) {
+    try {
+      return new FileSlicer(
+          readable( resolveFile() ),
+          lineBreak.asByteArray(),
+          DEFAULT_CHUNK_MAXIMUM_LENGTH + 1000,  // Adjusting to Windows line break.
+          DEFAULT_SLICE_MAXIMUM_LENGTH,
+          defaultProbableSliceCountPerChunk( DEFAULT_CHUNK_MAXIMUM_LENGTH, 100 ),
+          fileRegion
+      ) ;
+    } catch( final IOException e ) {
+      throw new RuntimeException( e ) ;
+    }
+  }
+
+  /**
+   * Uses the {@link JournalIndex} in {@link JournalIndex#sidecarFile(File)} of the file to
+   * read, if any,
+   * to skip lines that can't have a {@link Stamp} greater than or equal to given one.
+   * Some of the {@link Command}s may have a smaller {@link Stamp}, the caller has to filter
+   * them out.
+   */
+  public Iterable< Slice > sliceIterableFrom( final Stamp stamp ) throws IOException {
+    final File indexFile =
+        JournalIndex.sidecarFile( JournalSegments.uncompressed( resolveFile() ) ) ;
+    final JournalIndex.Entry start ;
+    if( indexFile.isFile() ) {
+      start = JournalIndex.load( indexFile ).floor( stamp ) ;
+      LOGGER.debug( "Found " + start + " for " + stamp + " in '" +
+          indexFile.getAbsolutePath() + "'." ) ;
+    } else {
+      start = JournalIndex.Entry.START ;
+    }
+    return sliceIterable( start ) ;
   }
 
   /**
@@ -108,7 +254,10 @@ public class JournalFileReader< DESIGNATOR, DUTY >
       if( slice.lineIndexInFile() == 0 ) {
         firstLine( slice ) ;
       } else {
-        synchronousSink.next( decode( slice ) ) ;
+        final Command< DESIGNATOR, DUTY > command = decode( slice ) ;
+        if( shouldEmit( command ) ) {
+          synchronousSink.next( command ) ;
+        }
       }
       if( recycleSlice ) {
         slice.recycle() ;
@@ -118,6 +267,13 @@ public class JournalFileReader< DESIGNATOR, DUTY >
     }
   }
 
+  /**
+   * Lets a subclass drop some decoded {@link Command}s.
+   */
+  protected boolean shouldEmit( final Command< DESIGNATOR, DUTY > command ) {
+    return true ;
+  }
+
 // =========
 // Internals
 // =========
@@ -134,16 +290,22 @@ public class JournalFileReader< DESIGNATOR, DUTY >
     try {
       final DESIGNATOR designator ;
       designator = designatorDecoder.decodeFrom( coat ) ;
-      final String commandName = coat.readDelimitedString() ;
+      final int commandIndex = indexedCommandBodyDecoder == null ?
+          ByteTrie.NO_MATCH : indexedCommandBodyDecoder.readCommandIndex( coat ) ;
+      final String commandName = commandIndex == ByteTrie.NO_MATCH ?
+          coat.readDelimitedString() : null ;
       final long lineNumber = slice.lineIndexInFile() + 2 ;
       if( designatorDecoderFileAware ) {
         ( ( FileDesignatorCodecTools.FileAwareDecoder ) designatorDecoder ).lineNumber(
             lineNumber ) ;
       }
-      command = commandBodyDecoder.decodeBody( designator, commandName, coat ) ;
+      command = commandName == null ?
+          indexedCommandBodyDecoder.decodeBody( designator, commandIndex, coat ) :
+          commandBodyDecoder.decodeBody( designator, commandName, coat )
+      ;
       if( command == null ) {
-        throw new DecodeException( "Failed to resolve '" + commandName + "' at line " +
-            lineNumber + "." ) ;
+        throw new DecodeException( "Failed to resolve " +
+            commandLabel( commandName, commandIndex ) + " at line " + lineNumber + "." ) ;
       }
     } finally {
       coating.recycle() ;
@@ -151,4 +313,17 @@ public class JournalFileReader< DESIGNATOR, DUTY >
     return command ;
   }
 
+  /**
+   * @param commandName {@code null} if decoding by index.
+   */
+  private String commandLabel( final String commandName, final int commandIndex ) {
+    if( commandName == null ) {
+      return "#" + commandIndex + ( commandIndex >= 0 &&
+          commandIndex < indexedCommandBodyDecoder.commandNames().size() ?
+          " '" + indexedCommandBodyDecoder.commandNames().get( commandIndex ) + "'" : "" ) ;
+    } else {
+      return "'" + commandName + "'" ;
+    }
+  }
+
 }
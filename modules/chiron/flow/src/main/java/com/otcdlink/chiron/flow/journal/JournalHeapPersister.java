@@ -16,7 +16,7 @@ import static com.google.common.base.Preconditions.checkState;
  * Test-only implementation using {@link java.io.ByteArrayOutputStream}.
  */
 public final class JournalHeapPersister< DESIGNATOR, DUTY >
-    extends AbstractJournalPersister< DESIGNATOR, DUTY, ByteArrayOutputStream >
+    extends AbstractByteBufferJournalPersister< DESIGNATOR, DUTY, ByteArrayOutputStream >
 {
 
   @SuppressWarnings( "unused" )
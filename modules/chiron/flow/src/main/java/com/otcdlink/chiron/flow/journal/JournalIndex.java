@@ -0,0 +1,308 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.otcdlink.chiron.command.Stamp;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Sparse index of a journal file, telling where to start reading in order to get every
+ * {@link com.otcdlink.chiron.command.Command} with a {@link Stamp} greater than or equal to a
+ * given one.
+ * <p>
+ * The index is a sidecar file (see {@link #sidecarFile(File)}) with one {@link Entry} every
+ * N lines. An {@link Entry} contains the greatest {@link Stamp} of all lines before it (not the
+ * {@link Stamp} of the line it points to), so reading from an {@link Entry} can't miss a
+ * {@link com.otcdlink.chiron.command.Command} even if {@link Stamp}s are not perfectly ordered
+ * in the journal. The counterpart is that reading from an {@link Entry} may yield
+ * {@link com.otcdlink.chiron.command.Command}s with a {@link Stamp} lower than requested ones,
+ * the caller has to filter them.
+ * <p>
+ * Index format is US-ASCII, one {@link Entry} per line:
+ * <pre>
+ * &lt;greatest Stamp before&gt; &lt;byte offset of the line&gt; &lt;line index&gt;
+ * </pre>
+ * {@link Stamp}s use the same format as in journal files, so they have the same loss of
+ * precision.
+ */
+public final class JournalIndex {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( JournalIndex.class ) ;
+
+  public static final String SIDECAR_SUFFIX = ".stamp-index" ;
+
+  public static final int DEFAULT_INTERVAL = 10_000 ;
+
+  private final ImmutableList< Entry > entries ;
+
+  private JournalIndex( final ImmutableList< Entry > entries ) {
+    this.entries = checkNotNull( entries ) ;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" + entries.size() + " entries}" ;
+  }
+
+  public static File sidecarFile( final File journalFile ) {
+    return new File( journalFile.getParentFile(), journalFile.getName() + SIDECAR_SUFFIX ) ;
+  }
+
+  /**
+   * Renames the sidecar file of a journal file, if any, when the journal file itself gets
+   * renamed.
+   *
+   * @return {@code true} if there was a sidecar file.
+   */
+  public static boolean renameSidecar( final File journalFile, final File newJournalFile )
+      throws IOException
+  {
+    final File indexFile = sidecarFile( journalFile ) ;
+    if( indexFile.isFile() ) {
+      final File newIndexFile = sidecarFile( newJournalFile ) ;
+      if( ! indexFile.renameTo( newIndexFile ) ) {
+        throw new IOException( "Could not rename '" + indexFile.getAbsolutePath() +
+            "' to '" + newIndexFile.getAbsolutePath() + "'" ) ;
+      }
+      LOGGER.debug( "Renamed '" + indexFile.getAbsolutePath() + "' to '" +
+          newIndexFile.getAbsolutePath() + "'." ) ;
+      return true ;
+    } else {
+      return false ;
+    }
+  }
+
+  public ImmutableList< Entry > entries() {
+    return entries ;
+  }
+
+  /**
+   * Returns the {@link Entry} closest to the end of the journal, that guarantees
+   * that no line with a {@link Stamp} greater than or equal to {@code stamp} appears before it.
+   *
+   * @return {@link Entry#START} if there is no such {@link Entry}.
+   */
+  public Entry floor( final Stamp stamp ) {
+    final Stamp rounded = round( stamp ) ;
+    int low = 0 ;
+    int high = entries.size() - 1 ;
+    Entry found = Entry.START ;
+    while( low <= high ) {
+      final int middle = ( low + high ) >>> 1 ;
+      final Entry entry = entries.get( middle ) ;
+      if( entry.greatestStampBefore.compareTo( rounded ) < 0 ) {
+        found = entry ;
+        low = middle + 1 ;
+      } else {
+        high = middle - 1 ;
+      }
+    }
+    return found ;
+  }
+
+  /**
+   * Applies the same loss of precision as a round-trip through the journal, so comparisons
+   * are consistent.
+   */
+  private static Stamp round( final Stamp stamp ) {
+    return new Stamp.Parser().parse( stamp.asStringRoundedToFlooredSecond() ) ;
+  }
+
+  public static JournalIndex load( final File indexFile ) throws IOException {
+    final ImmutableList.Builder< Entry > builder = ImmutableList.builder() ;
+    final Stamp.Parser stampParser = new Stamp.Parser() ;
+    try( final BufferedReader reader = new BufferedReader(
+        new InputStreamReader( new FileInputStream( indexFile ), Charsets.US_ASCII ) )
+    ) {
+      Stamp greatestSoFar = null ;
+      String line ;
+      while( ( line = reader.readLine() ) != null ) {
+        final Matcher matcher = ENTRY_PATTERN.matcher( line ) ;
+        if( matcher.matches() ) {
+          final Stamp stamp = stampParser.parse( matcher.group( 1 ) ) ;
+          checkState( greatestSoFar == null || greatestSoFar.compareTo( stamp ) <= 0,
+              "Unordered entry in '" + indexFile.getAbsolutePath() + "': " + line ) ;
+          greatestSoFar = stamp ;
+          builder.add( new Entry(
+              stamp,
+              Long.parseLong( matcher.group( OFFSET_GROUP ) ),
+              Long.parseLong( matcher.group( LINE_INDEX_GROUP ) )
+          ) ) ;
+        } else {
+          /** Last line may be incomplete after a crash. */
+          LOGGER.warn( "Ignoring malformed line in '" + indexFile.getAbsolutePath() + "': '" +
+              line + "'." ) ;
+          break ;
+        }
+      }
+    }
+    return new JournalIndex( builder.build() ) ;
+  }
+
+  private static final Pattern ENTRY_PATTERN =
+      Pattern.compile( "(" + Stamp.REGEX.pattern() + ") ([0-9]+) ([0-9]+)" ) ;
+
+  /**
+   * Skips the groups of {@link Stamp#REGEX}.
+   */
+  private static final int OFFSET_GROUP = Stamp.REGEX.matcher( "" ).groupCount() + 2 ;
+
+  private static final int LINE_INDEX_GROUP = OFFSET_GROUP + 1 ;
+
+
+  public static final class Entry {
+
+    /**
+     * Represents the start of the journal file, including the header line.
+     */
+    public static final Entry START = new Entry( null, 0, 0 ) ;
+
+    /**
+     * {@code null} only for {@link #START}.
+     */
+    public final Stamp greatestStampBefore ;
+
+    public final long offset ;
+
+    /**
+     * Same semantic as {@link com.otcdlink.chiron.flow.journal.slicer.Slice#lineIndexInFile()}.
+     */
+    public final long lineIndex ;
+
+    public Entry( final Stamp greatestStampBefore, final long offset, final long lineIndex ) {
+      checkArgument( offset >= 0 ) ;
+      checkArgument( lineIndex >= 0 ) ;
+      this.greatestStampBefore = greatestStampBefore ;
+      this.offset = offset ;
+      this.lineIndex = lineIndex ;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + '{' +
+          ( greatestStampBefore == null ?
+              "" : greatestStampBefore.asStringRoundedToFlooredSecond() + ';' ) +
+          "offset=" + offset + ';' +
+          "lineIndex=" + lineIndex +
+          '}'
+      ;
+    }
+  }
+
+  /**
+   * Called by {@link AbstractJournalPersister} after each line. Only {@link #flush()} may
+   * happen in another thread.
+   */
+  public static final class Indexer< DESIGNATOR > implements Closeable {
+
+    private final File indexFile ;
+    private final int interval ;
+    private final Function< DESIGNATOR, Stamp > stampExtractor ;
+    private final String lineBreak ;
+
+    /**
+     * Volatile because {@link #flush()} may happen in another thread.
+     */
+    private volatile Writer writer = null ;
+    private Stamp greatestStamp = null ;
+    private int linesSinceLastEntry = 0 ;
+
+    /**
+     * @param stampExtractor typically {@code designator -> designator.stamp}.
+     */
+    public Indexer(
+        final File indexFile,
+        final int interval,
+        final Function< DESIGNATOR, Stamp > stampExtractor
+    ) {
+      this.indexFile = checkNotNull( indexFile ) ;
+      checkArgument( interval > 0 ) ;
+      this.interval = interval ;
+      this.stampExtractor = checkNotNull( stampExtractor ) ;
+      this.lineBreak = LineBreak.CR_UNIX.asString ;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + '{' + indexFile.getAbsolutePath() + '}' ;
+    }
+
+    @SuppressWarnings( "IOResourceOpenedButNotSafelyClosed" )
+    public void open() throws IOException {
+      checkState( writer == null, "Already open" ) ;
+      AbstractJournalPersister.ensureFileExists( indexFile ) ;
+      writer = new BufferedWriter( new OutputStreamWriter(
+          new FileOutputStream( indexFile ), Charsets.US_ASCII ) ) ;
+      greatestStamp = null ;
+      linesSinceLastEntry = 0 ;
+    }
+
+    /**
+     * @param nextLineOffset where the line after the one just written will start.
+     * @param nextLineIndex the index of the line after the one just written.
+     */
+    public void lineWritten(
+        final DESIGNATOR designator,
+        final long nextLineOffset,
+        final long nextLineIndex
+    ) throws IOException {
+      final Stamp stamp = stampExtractor.apply( designator ) ;
+      if( greatestStamp == null || greatestStamp.compareTo( stamp ) < 0 ) {
+        greatestStamp = stamp ;
+      }
+      if( ++ linesSinceLastEntry >= interval ) {
+        linesSinceLastEntry = 0 ;
+        /** One single call, so a concurrent flush() never writes half an entry. */
+        writer.write( greatestStamp.asStringRoundedToFlooredSecond() + ' ' +
+            nextLineOffset + ' ' + nextLineIndex + lineBreak ) ;
+      }
+    }
+
+    /**
+     * Passes entries written so far to the operating system. The journal file should be
+     * flushed before, so an {@link Entry} doesn't point past what a reader can see.
+     * Does nothing if not open.
+     */
+    public void flush() throws IOException {
+      final Writer current = writer ;
+      if( current != null ) {
+        current.flush() ;
+      }
+    }
+
+    boolean isOpen() {
+      return writer != null ;
+    }
+
+    @Override
+    public void close() throws IOException {
+      checkState( writer != null, "Not open" ) ;
+      try {
+        writer.close() ;
+      } finally {
+        writer = null ;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,214 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.otcdlink.chiron.command.codec.Encoder;
+import com.otcdlink.chiron.flow.journal.slicer.FileChunk;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Appends lines directly into a {@code MappedByteBuffer}, so there is no copy and no
+ * system call for each line.
+ * <p>
+ * The file is mapped by windows of fixed size. When remaining space in current window
+ * is less than {@link #lineBufferSize()}, the persister maps a new window starting at
+ * current write position, after forcing and unmapping the previous one. So the file grows
+ * by a whole window at once, and {@link #close()} truncates it to the exact length of what
+ * was written.
+ * <p>
+ * If the JVM crashes, the file ends with zeroes up to the end of last window. Dirty pages
+ * are still written by the OS if only the JVM crashed, so lines written so far are not lost.
+ * {@link #autoFlush(boolean)} forces the whole window to the disk after each line, this is
+ * as slow as it sounds.
+ */
+public final class JournalMappedFilePersister< DESIGNATOR, DUTY >
+    extends AbstractJournalPersister< DESIGNATOR, DUTY, JournalMappedFilePersister.MappedSink >
+{
+
+  @SuppressWarnings( "unused" )
+  private static final Logger LOGGER = LoggerFactory.getLogger( JournalMappedFilePersister.class ) ;
+
+  /**
+   * Big enough to make remapping cost negligible, and small enough to be cheap on a 32-bit
+   * address space.
+   */
+  public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024 ;
+
+  private final File journalFile ;
+  private final int windowSize ;
+
+  public JournalMappedFilePersister(
+      final File journalFile,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion
+  ) {
+    super( designatorEncoder, schemaVersion, applicationVersion ) ;
+    this.journalFile = checkNotNull( journalFile ) ;
+    this.windowSize = DEFAULT_WINDOW_SIZE ;
+    checkArgument( windowSize > lineBufferSize() ) ;
+  }
+
+  public JournalMappedFilePersister(
+      final File journalFile,
+      final int windowSize,
+      final int lineBufferSize,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion,
+      final LineBreak lineBreak
+  ) {
+    super(
+        lineBufferSize,
+        designatorEncoder,
+        schemaVersion,
+        applicationVersion,
+        lineBreak
+    ) ;
+    this.journalFile = checkNotNull( journalFile ) ;
+    checkArgument( windowSize > lineBufferSize,
+        "Window size (" + windowSize + ") must be greater than " +
+        "line buffer size (" + lineBufferSize + ")" ) ;
+    this.windowSize = windowSize ;
+  }
+
+  @Override
+  protected String toStringBody() {
+    return journalFile.getAbsolutePath() ;
+  }
+
+  @SuppressWarnings( "IOResourceOpenedButNotSafelyClosed" )
+  @Override
+  protected MappedSink createSink() throws IOException {
+    ensureFileExists( this.journalFile ) ;
+    return new MappedSink(
+        new RandomAccessFile( this.journalFile, "rw" ).getChannel(),
+        windowSize,
+        lineBufferSize()
+    ) ;
+  }
+
+  @Override
+  protected ByteBuf prepareLine( final MappedSink sink, final long writtenBytes )
+      throws IOException
+  {
+    return sink.prepareLine( writtenBytes ) ;
+  }
+
+  @Override
+  protected int completeLine( final MappedSink sink, final long writtenBytes ) {
+    return sink.completeLine( writtenBytes ) ;
+  }
+
+  @Override
+  protected void flush( final MappedSink sink ) {
+    sink.force() ;
+  }
+
+  @Override
+  public PersisterWhenFrozen whenFrozen() {
+    return new InnerLockablePersister() ;
+  }
+
+  /**
+   * Owns the {@link FileChannel} and current window.
+   * Unmapping happens when the garbage collector reclaims the {@code MappedByteBuffer}.
+   */
+  static final class MappedSink implements Closeable {
+
+    private final FileChannel fileChannel ;
+    private final int windowSize ;
+    private final int lineMaximumLength ;
+
+    private MappedByteBuffer window = null ;
+    private ByteBuf windowByteBuf = null ;
+
+    /**
+     * Offset in the file of the first byte of {@link #window}.
+     */
+    private long windowStart = 0 ;
+
+    /**
+     * Offset in the file of the last byte written + 1.
+     */
+    private long position = 0 ;
+
+    MappedSink(
+        final FileChannel fileChannel,
+        final int windowSize,
+        final int lineMaximumLength
+    ) {
+      this.fileChannel = checkNotNull( fileChannel ) ;
+      this.windowSize = windowSize ;
+      this.lineMaximumLength = lineMaximumLength ;
+    }
+
+    ByteBuf prepareLine( final long writtenBytes ) throws IOException {
+      position = writtenBytes ;
+      if( window == null || windowStart + windowSize - position < lineMaximumLength ) {
+        remap() ;
+      }
+      /** Discards what a previous failure could have left. */
+      windowByteBuf.writerIndex( ( int ) ( position - windowStart ) ) ;
+      return windowByteBuf ;
+    }
+
+    int completeLine( final long writtenBytes ) {
+      final int lineLength = ( int ) ( windowStart + windowByteBuf.writerIndex() - writtenBytes ) ;
+      position = writtenBytes + lineLength ;
+      return lineLength ;
+    }
+
+    private void remap() throws IOException {
+      unmap() ;
+      windowStart = position ;
+      window = fileChannel.map( FileChannel.MapMode.READ_WRITE, windowStart, windowSize ) ;
+      windowByteBuf = Unpooled.wrappedBuffer( window ) ;
+      windowByteBuf.clear() ;
+    }
+
+    /**
+     * Writes the current window to the disk and unmaps it now, instead of leaving it to the
+     * garbage collector: a long journal would pile up mapped windows otherwise.
+     */
+    private void unmap() {
+      if( window != null ) {
+        window.force() ;
+        FileChunk.closeDirectBuffer( window ) ;
+        window = null ;
+        windowByteBuf = null ;
+      }
+    }
+
+    void force() {
+      if( window != null ) {
+        window.force() ;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        unmap() ;
+      } finally {
+        try {
+          fileChannel.truncate( position ) ;
+        } finally {
+          fileChannel.close() ;
+        }
+      }
+    }
+  }
+}
@@ -17,7 +17,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * Default implementation using {@link FileOutputStream}.
  */
 public final class JournalOutputStreamPersister< DESIGNATOR, DUTY >
-    extends AbstractJournalPersister< DESIGNATOR, DUTY, OutputStream >
+    extends AbstractByteBufferJournalPersister< DESIGNATOR, DUTY, OutputStream >
 {
 
   private static final Logger LOGGER = LoggerFactory.getLogger( JournalOutputStreamPersister.class ) ;
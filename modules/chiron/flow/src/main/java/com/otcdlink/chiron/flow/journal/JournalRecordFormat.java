@@ -0,0 +1,107 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.base.Splitter;
+import com.otcdlink.chiron.flow.journal.slicer.RecordSlicer;
+import io.netty.buffer.ByteBuf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * How {@link AbstractJournalPersister} writes {@link com.otcdlink.chiron.command.Command}s
+ * after the header line.
+ * <p>
+ * The header line always starts with {@link IntradayPersistenceConstants#MAGIC} and the
+ * schema version. For any other format than {@link #TEXT}, it continues with
+ * {@link #HEADER_KEYWORD} and the name of the format:
+ * <pre>
+ * SchemaVersion 3 RecordFormat BINARY ApplicationVersion 1.2.3
+ * </pre>
+ * So files written before the introduction of {@link JournalRecordFormat} are still
+ * read as {@link #TEXT}.
+ */
+public enum JournalRecordFormat {
+
+  /**
+   * One line per {@link com.otcdlink.chiron.command.Command}, separated by a
+   * {@link com.otcdlink.chiron.toolbox.text.LineBreak}.
+   */
+  TEXT,
+
+  /**
+   * One length-prefixed record per {@link com.otcdlink.chiron.command.Command}, with a
+   * CRC32C of the payload. Payload contains the same fields as in {@link #TEXT} format,
+   * without the {@link com.otcdlink.chiron.toolbox.text.LineBreak}.
+   * See {@link RecordSlicer} for the layout.
+   */
+  BINARY,
+  ;
+
+  public static final String HEADER_KEYWORD = "RecordFormat" ;
+
+  public static final int RECORD_HEADER_LENGTH = RecordSlicer.RECORD_HEADER_LENGTH ;
+
+  /**
+   * @see RecordSlicer#completeRecordHeader(ByteBuf, int)
+   */
+  static void completeRecordHeader( final ByteBuf byteBuf, final int recordStart ) {
+    RecordSlicer.completeRecordHeader( byteBuf, recordStart ) ;
+  }
+
+  /**
+   * Way bigger than any header line.
+   */
+  private static final int HEADER_MAXIMUM_LENGTH = 1024 ;
+
+  /**
+   * Reads the header line of the journal file.
+   *
+   * @return {@link #TEXT} if the file is empty or has no {@link #HEADER_KEYWORD} at the
+   *     expected place.
+   */
+  public static JournalRecordFormat detect( final File journalFile ) throws IOException {
+    return fromHeaderLine( readHeaderLine( journalFile, false ) ) ;
+  }
+
+  /**
+   * Reads up to the first {@code '\n'} or {@code '\r'}, one byte per {@code char}, so the
+   * length of the result is also the offset of the line break in the file.
+   *
+   * @param complete if {@code true}, returns {@code null} when there is no line break
+   *     in the first {@link #HEADER_MAXIMUM_LENGTH} bytes; otherwise returns what was read.
+   */
+  static String readHeaderLine(
+      final File journalFile,
+      final boolean complete
+  ) throws IOException {
+    final StringBuilder headerLine = new StringBuilder() ;
+    try( final InputStream inputStream = new FileInputStream( journalFile ) ) {
+      int read ;
+      while( headerLine.length() < HEADER_MAXIMUM_LENGTH ) {
+        read = inputStream.read() ;
+        if( read == '\n' || read == '\r' ) {
+          return headerLine.toString() ;
+        } else if( read < 0 ) {
+          break ;
+        }
+        headerLine.append( ( char ) read ) ;
+      }
+    }
+    return complete ? null : headerLine.toString() ;
+  }
+
+  static JournalRecordFormat fromHeaderLine( final String headerLine ) {
+    final List< String > tokens = Splitter.on( ' ' ).limit( 5 ).splitToList( headerLine ) ;
+    if( tokens.size() >= 4 &&
+        IntradayPersistenceConstants.MAGIC.equals( tokens.get( 0 ) ) &&
+        HEADER_KEYWORD.equals( tokens.get( 2 ) )
+    ) {
+      return valueOf( tokens.get( 3 ) ) ;
+    } else {
+      return TEXT ;
+    }
+  }
+}
@@ -0,0 +1,454 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.codec.Encoder;
+import com.otcdlink.chiron.toolbox.concurrent.ExecutorTools;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Encodes {@link Command}s in caller's thread, and writes them to the disk in a dedicated
+ * thread, so a slow disk doesn't stall the logic thread (unless the ring gets full).
+ * <p>
+ * Caller's thread encodes each line directly into a preallocated slot of a single-producer,
+ * single-consumer ring. There is no allocation and no lock. The writer thread drains every
+ * published slot with one gathering {@link FileChannel#write(ByteBuffer[], int, int)}, so
+ * a burst of {@link Command}s costs one system call.
+ * <p>
+ * When the ring is full, {@link #accept(Command)} waits for the writer thread (this is
+ * counted by {@link #ringFullCount()}), while {@link #tryAccept(Command)} returns
+ * {@code false} so the caller can decide what to do.
+ * <p>
+ * {@link #flush(RingSink)} (called by {@link #close()}, and after each line with
+ * {@link #autoFlush(boolean)}) waits for the writer thread to drain the ring, but doesn't
+ * force the file to the disk, like {@link JournalFileChannelPersister} without
+ * {@link JournalFileChannelPersister.GroupCommit}.
+ * <p>
+ * All methods but {@link #remainingCapacity()} and {@link #ringFullCount()} should be
+ * called from the same thread.
+ */
+public final class JournalRingBufferPersister< DESIGNATOR, DUTY >
+    extends AbstractJournalPersister< DESIGNATOR, DUTY, JournalRingBufferPersister.RingSink >
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( JournalRingBufferPersister.class ) ;
+
+  public static final int DEFAULT_SLOT_COUNT = 256 ;
+
+  /**
+   * A slot must contain a whole line, so this is also the line buffer size.
+   */
+  public static final int DEFAULT_SLOT_SIZE = 64 * 1024 ;
+
+  private final File journalFile ;
+  private final int slotCount ;
+  private final WaitStrategy waitStrategy ;
+
+  /**
+   * Non-null when open.
+   */
+  private RingSink ringSink = null ;
+
+  public JournalRingBufferPersister(
+      final File journalFile,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion
+  ) {
+    this(
+        journalFile,
+        DEFAULT_SLOT_SIZE,
+        designatorEncoder,
+        schemaVersion,
+        applicationVersion,
+        IntradayPersistenceConstants.LINE_BREAK,
+        DEFAULT_SLOT_COUNT,
+        WaitStrategy.SLEEPING
+    ) ;
+  }
+
+  /**
+   * @param lineBufferSize the size of each slot.
+   * @param slotCount must be a power of 2.
+   * @param waitStrategy what the writer thread does when there is nothing to write,
+   *     and what caller's thread does when the ring is full.
+   */
+  public JournalRingBufferPersister(
+      final File journalFile,
+      final int lineBufferSize,
+      final Encoder< DESIGNATOR > designatorEncoder,
+      final int schemaVersion,
+      final String applicationVersion,
+      final LineBreak lineBreak,
+      final int slotCount,
+      final WaitStrategy waitStrategy
+  ) {
+    super(
+        lineBufferSize,
+        designatorEncoder,
+        schemaVersion,
+        applicationVersion,
+        lineBreak
+    ) ;
+    this.journalFile = checkNotNull( journalFile ) ;
+    checkArgument( slotCount > 1 && Integer.bitCount( slotCount ) == 1,
+        "Slot count must be a power of 2 greater than 1, got " + slotCount ) ;
+    this.slotCount = slotCount ;
+    this.waitStrategy = checkNotNull( waitStrategy ) ;
+  }
+
+  @Override
+  protected String toStringBody() {
+    return journalFile.getAbsolutePath() + ";slotCount=" + slotCount + ";" + waitStrategy ;
+  }
+
+  /**
+   * Backpressure signal: doesn't write the {@link Command} if the ring is full.
+   * Otherwise does the same as {@link #accept(Command)}, including for a {@link Command}
+   * with no {@link Command#persist()}.
+   *
+   * @return {@code false} if the ring was full, then the {@link Command} is left untouched;
+   *     {@code true} if {@link #accept(Command)} happened.
+   */
+  public boolean tryAccept( final Command< DESIGNATOR, DUTY > command ) {
+    final RingSink sink = ringSink ;
+    checkNotNull( sink, "Not open" ) ;
+    /** Only caller's thread fills the ring, so if there is a free slot it remains free. */
+    if( command.persist() && sink.remainingCapacity() == 0 ) {
+      return false ;
+    }
+    accept( command ) ;
+    return true ;
+  }
+
+  /**
+   * @return the number of free slots, or 0 if not open.
+   */
+  public int remainingCapacity() {
+    final RingSink sink = ringSink ;
+    return sink == null ? 0 : sink.remainingCapacity() ;
+  }
+
+  /**
+   * @return how many times caller's thread had to wait for a free slot since last
+   *     {@link #open()}.
+   */
+  public long ringFullCount() {
+    final RingSink sink = ringSink ;
+    return sink == null ? 0 : sink.ringFullCount ;
+  }
+
+  @SuppressWarnings( "IOResourceOpenedButNotSafelyClosed" )
+  @Override
+  protected RingSink createSink() throws IOException {
+    ensureFileExists( this.journalFile ) ;
+    final FileChannel fileChannel = new RandomAccessFile( this.journalFile, "rw" ).getChannel() ;
+    fileChannel.truncate( 0 ) ;
+    ringSink = new RingSink(
+        fileChannel, slotCount, lineBufferSize(), waitStrategy, journalFile.getName() ) ;
+    return ringSink ;
+  }
+
+  @Override
+  protected ByteBuf prepareLine( final RingSink sink, final long writtenBytes )
+      throws IOException
+  {
+    return sink.claimSlot() ;
+  }
+
+  @Override
+  protected int completeLine( final RingSink sink, final long writtenBytes ) {
+    return sink.publishSlot() ;
+  }
+
+  @Override
+  protected void flush( final RingSink sink ) throws IOException {
+    sink.drain() ;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close() ;
+    } finally {
+      ringSink = null ;
+    }
+  }
+
+  @Override
+  public PersisterWhenFrozen whenFrozen() {
+    return new InnerLockablePersister() ;
+  }
+
+
+// =============
+// Wait strategy
+// =============
+
+  /**
+   * What a thread does while it can't progress. Cheaper strategies in CPU are slower to react.
+   */
+  public enum WaitStrategy {
+
+    /**
+     * Burns a whole core, lowest latency.
+     */
+    BUSY_SPIN {
+      @Override
+      public void idle( final int idleCount ) { }
+    },
+
+    /**
+     * Lets other threads run, still burns a core when nothing else runs.
+     */
+    YIELDING {
+      @Override
+      public void idle( final int idleCount ) {
+        Thread.yield() ;
+      }
+    },
+
+    /**
+     * Spins, then yields, then parks for {@link #PARK_NANOSECONDS}.
+     * Good default when the writer thread shouldn't own a core.
+     */
+    SLEEPING {
+      @Override
+      public void idle( final int idleCount ) {
+        if( idleCount < SPIN_TRIES ) {
+          return ;
+        } else if( idleCount < SPIN_TRIES + YIELD_TRIES ) {
+          Thread.yield() ;
+        } else {
+          LockSupport.parkNanos( PARK_NANOSECONDS ) ;
+        }
+      }
+    },
+    ;
+
+    private static final int SPIN_TRIES = 100 ;
+    private static final int YIELD_TRIES = 100 ;
+    private static final long PARK_NANOSECONDS = 50_000 ;
+
+    /**
+     * @param idleCount how many consecutive times the thread couldn't progress, starting
+     *     from 0.
+     */
+    public abstract void idle( int idleCount ) ;
+  }
+
+
+// ====
+// Ring
+// ====
+
+  /**
+   * Owns the {@link FileChannel}, the slots, and the writer thread.
+   * <p>
+   * Sequences count slots since {@link #open()}: the slot for sequence {@code s} is
+   * {@code s & mask}. Caller's thread is the only one to update {@link #published}, writer
+   * thread is the only one to update {@link #consumed}. A slot is free when its sequence
+   * minus {@link #consumed} is less than the slot count.
+   */
+  static final class RingSink implements Closeable {
+
+    private final FileChannel fileChannel ;
+    private final WaitStrategy waitStrategy ;
+    private final int mask ;
+
+    /**
+     * Used by the writer thread, position and limit set by caller's thread before
+     * publication.
+     */
+    private final ByteBuffer[] slotBuffers ;
+
+    /**
+     * Used by caller's thread, share content with {@link #slotBuffers}.
+     */
+    private final ByteBuf[] slotByteBufs ;
+
+    /**
+     * Reused by each gathering write.
+     */
+    private final ByteBuffer[] gathering ;
+
+    private final AtomicLong published = new AtomicLong( 0 ) ;
+    private final AtomicLong consumed = new AtomicLong( 0 ) ;
+
+    /**
+     * Caller's thread only, equals to {@link #published} out of {@link #publishSlot()}.
+     */
+    private long claimed = 0 ;
+
+    /**
+     * Caller's thread only, avoids reading {@link #consumed} for each slot.
+     */
+    private long cachedConsumed = 0 ;
+
+    /**
+     * Updated by caller's thread only.
+     */
+    private volatile long ringFullCount = 0 ;
+
+    private volatile boolean stopRequested = false ;
+
+    /**
+     * Set by the writer thread, which stops after that.
+     */
+    private volatile IOException failure = null ;
+
+    private final Thread writerThread ;
+
+    RingSink(
+        final FileChannel fileChannel,
+        final int slotCount,
+        final int slotSize,
+        final WaitStrategy waitStrategy,
+        final String name
+    ) {
+      this.fileChannel = checkNotNull( fileChannel ) ;
+      this.waitStrategy = checkNotNull( waitStrategy ) ;
+      this.mask = slotCount - 1 ;
+      this.slotBuffers = new ByteBuffer[ slotCount ] ;
+      this.slotByteBufs = new ByteBuf[ slotCount ] ;
+      for( int i = 0 ; i < slotCount ; i ++ ) {
+        slotBuffers[ i ] = ByteBuffer.allocateDirect( slotSize ) ;
+        slotByteBufs[ i ] = Unpooled.wrappedBuffer( slotBuffers[ i ] ) ;
+      }
+      this.gathering = new ByteBuffer[ slotCount ] ;
+      this.writerThread = ExecutorTools.newThreadFactory( "journal-writer-" + name )
+          .newThread( this::writeLoop ) ;
+      this.writerThread.start() ;
+    }
+
+    /**
+     * Safe from any thread because it doesn't read {@link #claimed}.
+     * The two reads are not atomic: if the writer thread moves {@link #consumed} and the
+     * caller's thread moves {@link #published} in between, their difference may fall out
+     * of the slot count, so the result is clamped to {@code [ 0, slot count ]}.
+     */
+    int remainingCapacity() {
+      final long consumedNow = consumed.get() ;
+      final long publishedNow = published.get() ;
+      final long remaining = mask + 1 - ( publishedNow - consumedNow ) ;
+      return ( int ) Math.max( 0, Math.min( mask + 1, remaining ) ) ;
+    }
+
+    ByteBuf claimSlot() throws IOException {
+      checkFailure() ;
+      if( claimed - cachedConsumed > mask ) {
+        cachedConsumed = consumed.get() ;
+        if( claimed - cachedConsumed > mask ) {
+          ringFullCount ++ ;
+          int idleCount = 0 ;
+          while( claimed - ( cachedConsumed = consumed.get() ) > mask ) {
+            checkFailure() ;
+            waitStrategy.idle( idleCount ++ ) ;
+          }
+        }
+      }
+      final ByteBuf slot = slotByteBufs[ ( int ) ( claimed & mask ) ] ;
+      slot.clear() ;
+      return slot ;
+    }
+
+    int publishSlot() {
+      final int index = ( int ) ( claimed & mask ) ;
+      final int length = slotByteBufs[ index ].writerIndex() ;
+      final ByteBuffer slotBuffer = slotBuffers[ index ] ;
+      slotBuffer.clear() ;
+      slotBuffer.limit( length ) ;
+      claimed ++ ;
+      published.lazySet( claimed ) ;
+      return length ;
+    }
+
+    /**
+     * Waits until the writer thread wrote every published slot.
+     */
+    void drain() throws IOException {
+      int idleCount = 0 ;
+      while( consumed.get() < published.get() ) {
+        checkFailure() ;
+        waitStrategy.idle( idleCount ++ ) ;
+      }
+      checkFailure() ;
+    }
+
+    private void checkFailure() throws IOException {
+      final IOException ioException = failure ;
+      if( ioException != null ) {
+        throw new IOException( "Writer thread failed", ioException ) ;
+      }
+    }
+
+    private void writeLoop() {
+      int idleCount = 0 ;
+      while( true ) {
+        final long from = consumed.get() ;
+        final long to = published.get() ;
+        if( to > from ) {
+          idleCount = 0 ;
+          try {
+            writeBatch( from, to ) ;
+          } catch( final IOException e ) {
+            LOGGER.error( "Failed to write, stopping " + Thread.currentThread().getName() +
+                ".", e ) ;
+            failure = e ;
+            return ;
+          }
+          consumed.lazySet( to ) ;
+        } else if( stopRequested ) {
+          return ;
+        } else {
+          waitStrategy.idle( idleCount ++ ) ;
+        }
+      }
+    }
+
+    private void writeBatch( final long from, final long to ) throws IOException {
+      final int count = ( int ) ( to - from ) ;
+      for( int i = 0 ; i < count ; i ++ ) {
+        gathering[ i ] = slotBuffers[ ( int ) ( ( from + i ) & mask ) ] ;
+      }
+      int offset = 0 ;
+      while( offset < count ) {
+        fileChannel.write( gathering, offset, count - offset ) ;
+        while( offset < count && ! gathering[ offset ].hasRemaining() ) {
+          offset ++ ;
+        }
+      }
+    }
+
+    /**
+     * Caller should {@link #drain()} first.
+     */
+    @Override
+    public void close() throws IOException {
+      stopRequested = true ;
+      try {
+        writerThread.join() ;
+      } catch( final InterruptedException e ) {
+        Thread.currentThread().interrupt() ;
+        throw new IOException( "Interrupted while stopping writer thread", e ) ;
+      } finally {
+        fileChannel.close() ;
+      }
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Naming and compression of the segments written by {@link RollingJournalPersister}.
+ * <p>
+ * For a base file named {@code my.journal}, segments are {@code my.journal.000001},
+ * {@code my.journal.000002} and so on. A compressed segment gets the {@link #COMPRESSED_SUFFIX}
+ * appended: {@code my.journal.000001.gz}.
+ * <p>
+ * Compression writes into a temporary file, then renames it, then deletes the uncompressed
+ * segment. So if both the compressed and the uncompressed segments exist (because of a
+ * crash during compression) they are both complete, and we prefer the uncompressed one.
+ */
+public final class JournalSegments {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( JournalSegments.class ) ;
+
+  public static final String COMPRESSED_SUFFIX = ".gz" ;
+
+  private static final String COMPRESSING_SUFFIX = COMPRESSED_SUFFIX + ".tmp" ;
+
+  public static final String INFLATED_SUFFIX = ".inflated" ;
+
+  private static final int SEGMENT_INDEX_DIGITS = 6 ;
+
+  private static final int BUFFER_SIZE = 64 * 1024 ;
+
+  private JournalSegments() { }
+
+  public static File segmentFile( final File baseFile, final int segmentIndex ) {
+    checkArgument( segmentIndex > 0 ) ;
+    return new File( baseFile.getParentFile(), baseFile.getName() + '.' +
+        String.format( "%0" + SEGMENT_INDEX_DIGITS + "d", segmentIndex ) ) ;
+  }
+
+  /**
+   * @return segments for given base file, both compressed and uncompressed, in index order.
+   */
+  public static ImmutableList< File > list( final File baseFile ) {
+    final Pattern pattern = Pattern.compile(
+        Pattern.quote( baseFile.getName() ) + "\\.(\\d{" + SEGMENT_INDEX_DIGITS + ",})" +
+        "(" + Pattern.quote( COMPRESSED_SUFFIX ) + ")?"
+    ) ;
+    final Map< Integer, File > segments = new TreeMap<>() ;
+    final File[] files = absoluteParent( baseFile ).listFiles() ;
+    if( files != null ) {
+      for( final File file : files ) {
+        final Matcher matcher = pattern.matcher( file.getName() ) ;
+        if( file.isFile() && matcher.matches() ) {
+          final int segmentIndex = Integer.parseInt( matcher.group( 1 ) ) ;
+          final boolean compressed = matcher.group( 2 ) != null ;
+          if( ! compressed || ! segments.containsKey( segmentIndex ) ) {
+            segments.put( segmentIndex, file ) ;
+          }
+        }
+      }
+    }
+    return ImmutableList.copyOf( segments.values() ) ;
+  }
+
+  /**
+   * @return 0 if there is no segment yet.
+   */
+  public static int lastSegmentIndex( final File baseFile ) {
+    final ImmutableList< File > segments = list( baseFile ) ;
+    if( segments.isEmpty() ) {
+      return 0 ;
+    } else {
+      final String name = uncompressed( segments.get( segments.size() - 1 ) ).getName() ;
+      return Integer.parseInt( name.substring( name.lastIndexOf( '.' ) + 1 ) ) ;
+    }
+  }
+
+  public static boolean isCompressed( final File file ) {
+    return file.getName().endsWith( COMPRESSED_SUFFIX ) ;
+  }
+
+  /**
+   * @return the file with no {@link #COMPRESSED_SUFFIX}, or given file if it has none.
+   */
+  public static File uncompressed( final File file ) {
+    if( isCompressed( file ) ) {
+      final String name = file.getName() ;
+      return new File( file.getParentFile(),
+          name.substring( 0, name.length() - COMPRESSED_SUFFIX.length() ) ) ;
+    } else {
+      return file ;
+    }
+  }
+
+  /**
+   * @return the file with {@link #COMPRESSED_SUFFIX}.
+   */
+  public static File compressed( final File file ) {
+    if( isCompressed( file ) ) {
+      return file ;
+    } else {
+      return new File( file.getParentFile(), file.getName() + COMPRESSED_SUFFIX ) ;
+    }
+  }
+
+  /**
+   * Replaces given file by its compressed version. Meant to run in a background thread,
+   * once nobody writes into the file any more.
+   *
+   * @return the compressed file.
+   */
+  public static File compress( final File file ) throws IOException {
+    checkArgument( ! isCompressed( file ), "Already compressed: '" + file + "'" ) ;
+    final File compressing =
+        new File( file.getParentFile(), file.getName() + COMPRESSING_SUFFIX ) ;
+    final File compressed = compressed( file ) ;
+    try(
+        final InputStream inputStream = new FileInputStream( file ) ;
+        final FileOutputStream fileOutputStream = new FileOutputStream( compressing ) ;
+        final GZIPOutputStream outputStream =
+            new GZIPOutputStream( fileOutputStream, BUFFER_SIZE )
+    ) {
+      ByteStreams.copy( inputStream, outputStream ) ;
+      outputStream.finish() ;
+      fileOutputStream.getChannel().force( true ) ;
+    }
+    if( ! compressing.renameTo( compressed ) ) {
+      throw new IOException( "Could not rename '" + compressing.getAbsolutePath() + "' to '" +
+          compressed.getAbsolutePath() + "'" ) ;
+    }
+    if( ! file.delete() ) {
+      LOGGER.warn( "Could not delete '" + file.getAbsolutePath() + "' after compression." ) ;
+    }
+    LOGGER.info( "Compressed '" + file.getAbsolutePath() + "' (" + compressed.length() +
+        " bytes)." ) ;
+    return compressed ;
+  }
+
+  /**
+   * Decompresses given file into a new file next to it, because slicers need a
+   * {@link java.nio.channels.FileChannel} to map. The caller deletes the inflated file
+   * once done with it; its name ends with {@link #INFLATED_SUFFIX} so {@link #list(File)}
+   * ignores it, and so one left by a crash is easy to spot.
+   */
+  public static File inflate( final File compressedFile ) throws IOException {
+    checkArgument( isCompressed( compressedFile ), "Not compressed: '" + compressedFile + "'" ) ;
+    final File inflated = File.createTempFile(
+        uncompressed( compressedFile ).getName() + '.',
+        INFLATED_SUFFIX,
+        absoluteParent( compressedFile )
+    ) ;
+    try(
+        final InputStream inputStream = new GZIPInputStream(
+            new FileInputStream( compressedFile ), BUFFER_SIZE ) ;
+        final OutputStream outputStream = new FileOutputStream( inflated )
+    ) {
+      ByteStreams.copy( inputStream, outputStream ) ;
+    } catch( final IOException | RuntimeException e ) {
+      delete( inflated ) ;
+      throw e ;
+    }
+    LOGGER.debug( "Inflated '" + compressedFile.getAbsolutePath() + "' into '" +
+        inflated.getAbsolutePath() + "'." ) ;
+    return inflated ;
+  }
+
+  /**
+   * Deletes a file created by {@link #inflate(File)}. Some platforms can't delete a file
+   * that is still mapped, then it gets deleted when the JVM exits.
+   */
+  public static void delete( final File inflatedFile ) {
+    checkArgument( inflatedFile.getName().endsWith( INFLATED_SUFFIX ),
+        "Not inflated: '" + inflatedFile + "'" ) ;
+    if( inflatedFile.delete() || ! inflatedFile.exists() ) {
+      LOGGER.debug( "Deleted '" + inflatedFile.getAbsolutePath() + "'." ) ;
+    } else {
+      LOGGER.warn( "Could not delete '" + inflatedFile.getAbsolutePath() + "', "
+          + "will try again when the JVM exits." ) ;
+      inflatedFile.deleteOnExit() ;
+    }
+  }
+
+  /**
+   * @return given file if it exists, or its compressed version if it exists, or given file.
+   */
+  public static File existing( final File file ) {
+    if( ! file.exists() && ! isCompressed( file ) ) {
+      final File compressed = compressed( file ) ;
+      if( compressed.isFile() ) {
+        return compressed ;
+      }
+    }
+    return file ;
+  }
+
+  private static File absoluteParent( final File file ) {
+    return file.getAbsoluteFile().getParentFile() ;
+  }
+}
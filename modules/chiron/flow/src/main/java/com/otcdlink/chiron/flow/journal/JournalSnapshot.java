@@ -0,0 +1,307 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.otcdlink.chiron.buffer.BytebufCoat;
+import com.otcdlink.chiron.buffer.BytebufTools;
+import com.otcdlink.chiron.codec.DecodeException;
+import com.otcdlink.chiron.command.Stamp;
+import com.otcdlink.chiron.command.codec.Decoder;
+import com.otcdlink.chiron.command.codec.Encoder;
+import com.otcdlink.chiron.flow.journal.slicer.RecordSlicer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The state of the application after applying every
+ * {@link com.otcdlink.chiron.command.Command} up to a given {@link Stamp}, so recovery only
+ * replays {@link com.otcdlink.chiron.command.Command}s after that {@link Stamp}.
+ * <p>
+ * A snapshot file sits next to the journal file, its name contains the {@link Stamp}:
+ * {@code my.journal.snapshot.<seconds>_<counter>}. Renaming the journal file requires
+ * {@link #rename(File, File)}. It contains a header line, then one
+ * record with the same layout as in {@link RecordSlicer}, so a CRC32C detects corruption:
+ * <pre>
+ * Snapshot 1a2b:3c SchemaVersion 3 ApplicationVersion 1.2.3
+ * </pre>
+ * The {@link Stamp} has the same loss of precision as in journal files, which doesn't
+ * matter because decoded {@link com.otcdlink.chiron.command.Command}s have it too.
+ * <p>
+ * Snapshot files are written into a temporary file which is then renamed, so a crash during
+ * the write leaves no partial snapshot. If the latest snapshot is corrupt anyways,
+ * {@link #loadLatest(File, Decoder)} falls back to the previous one.
+ * <p>
+ * Once a snapshot is written, journal segments containing only
+ * {@link com.otcdlink.chiron.command.Command}s before its {@link Stamp} are no longer needed
+ * for recovery, and can be archived.
+ *
+ * @see RecoveringJournalFileReader#restoreLatestSnapshot(Decoder)
+ */
+public final class JournalSnapshot< STATE > {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( JournalSnapshot.class ) ;
+
+  public static final String HEADER_KEYWORD = "Snapshot" ;
+
+  private static final String FILE_INFIX = ".snapshot." ;
+
+  public final File file ;
+
+  public final Stamp stamp ;
+
+  public final STATE state ;
+
+  private JournalSnapshot( final File file, final Stamp stamp, final STATE state ) {
+    this.file = checkNotNull( file ) ;
+    this.stamp = checkNotNull( stamp ) ;
+    this.state = state ;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + '{' +
+        file.getName() + ';' + stamp.asStringRoundedToFlooredSecond() + '}' ;
+  }
+
+
+// =====
+// Files
+// =====
+
+  public static File snapshotFile( final File journalFile, final Stamp stamp ) {
+    final String stampAsString = stamp.asStringRoundedToFlooredSecond() ;
+    return new File( journalFile.getParentFile(),
+        journalFile.getName() + FILE_INFIX + stampAsString.replace( ':', '_' ) ) ;
+  }
+
+  /**
+   * @return snapshot files for given journal file, oldest first.
+   */
+  public static ImmutableList< File > list( final File journalFile ) {
+    final Pattern pattern = Pattern.compile( Pattern.quote(
+        journalFile.getName() + FILE_INFIX ) + "(-?[0-9a-z]+)_([0-9a-z]+)" ) ;
+    final Stamp.Parser stampParser = new Stamp.Parser() ;
+    final Map< Stamp, File > snapshotFiles = new TreeMap<>() ;
+    final File[] files = journalFile.getAbsoluteFile().getParentFile().listFiles() ;
+    if( files != null ) {
+      for( final File file : files ) {
+        final Matcher matcher = pattern.matcher( file.getName() ) ;
+        if( file.isFile() && matcher.matches() ) {
+          snapshotFiles.put(
+              stampParser.parse( matcher.group( 1 ) + ':' + matcher.group( 2 ) ), file ) ;
+        }
+      }
+    }
+    return ImmutableList.copyOf( snapshotFiles.values() ) ;
+  }
+
+  /**
+   * Deletes every snapshot but the {@code keep} most recent ones.
+   *
+   * @return the number of deleted snapshots.
+   */
+  public static int compact( final File journalFile, final int keep ) {
+    checkArgument( keep > 0 ) ;
+    final ImmutableList< File > snapshotFiles = list( journalFile ) ;
+    int deleted = 0 ;
+    for( int i = 0 ; i < snapshotFiles.size() - keep ; i ++ ) {
+      final File snapshotFile = snapshotFiles.get( i ) ;
+      if( snapshotFile.delete() ) {
+        deleted ++ ;
+        LOGGER.debug( "Deleted '" + snapshotFile.getAbsolutePath() + "'." ) ;
+      } else {
+        LOGGER.warn( "Could not delete '" + snapshotFile.getAbsolutePath() + "'." ) ;
+      }
+    }
+    return deleted ;
+  }
+
+  /**
+   * Renames every snapshot of a journal file so it becomes a snapshot of another journal file,
+   * when the journal file itself gets renamed. Otherwise a new journal file reusing the
+   * old name would get the snapshots of the old one.
+   *
+   * @return the number of renamed snapshots.
+   */
+  public static int rename( final File journalFile, final File newJournalFile )
+      throws IOException
+  {
+    final String prefix = journalFile.getName() + FILE_INFIX ;
+    int renamed = 0 ;
+    for( final File snapshotFile : list( journalFile ) ) {
+      final File newSnapshotFile = new File( newJournalFile.getAbsoluteFile().getParentFile(),
+          newJournalFile.getName() + FILE_INFIX +
+              snapshotFile.getName().substring( prefix.length() )
+      ) ;
+      if( ! snapshotFile.renameTo( newSnapshotFile ) ) {
+        throw new IOException( "Could not rename '" + snapshotFile.getAbsolutePath() +
+            "' to '" + newSnapshotFile.getAbsolutePath() + "'" ) ;
+      }
+      renamed ++ ;
+      LOGGER.debug( "Renamed '" + snapshotFile.getAbsolutePath() + "' to '" +
+          newSnapshotFile.getAbsolutePath() + "'." ) ;
+    }
+    return renamed ;
+  }
+
+
+// =======
+// Reading
+// =======
+
+  /**
+   * @return {@code null} if there is no readable snapshot.
+   */
+  public static < STATE > JournalSnapshot< STATE > loadLatest(
+      final File journalFile,
+      final Decoder< STATE > stateDecoder
+  ) throws IOException {
+    final ImmutableList< File > snapshotFiles = list( journalFile ).reverse() ;
+    for( final File snapshotFile : snapshotFiles ) {
+      try {
+        final JournalSnapshot< STATE > snapshot = load( snapshotFile, stateDecoder ) ;
+        LOGGER.info( "Loaded " + snapshot + "." ) ;
+        return snapshot ;
+      } catch( final DecodeException e ) {
+        LOGGER.warn( "Could not load '" + snapshotFile.getAbsolutePath() + "', " +
+            "trying previous snapshot if any.", e ) ;
+      }
+    }
+    return null ;
+  }
+
+  public static < STATE > JournalSnapshot< STATE > load(
+      final File snapshotFile,
+      final Decoder< STATE > stateDecoder
+  ) throws IOException {
+    final ByteBuf byteBuf = Unpooled.wrappedBuffer( Files.toByteArray( snapshotFile ) ) ;
+    final int endOfHeader = byteBuf.indexOf( 0, byteBuf.writerIndex(), ( byte ) '\n' ) ;
+    if( endOfHeader < 0 ) {
+      throw new DecodeException( "No header line in '" + snapshotFile.getAbsolutePath() + "'" ) ;
+    }
+    final String[] header = byteBuf.toString( 0, endOfHeader, Charsets.US_ASCII )
+        .trim().split( " " ) ;
+    final Stamp stamp = header.length >= 2 && HEADER_KEYWORD.equals( header[ 0 ] ) ?
+        new Stamp.Parser().parse( header[ 1 ] ) : null ;
+    if( stamp == null ) {
+      throw new DecodeException( "Bad header line in '" + snapshotFile.getAbsolutePath() + "'" ) ;
+    }
+    final int recordStart = endOfHeader + 1 ;
+    final int payloadStart = recordStart + RecordSlicer.RECORD_HEADER_LENGTH ;
+    if( byteBuf.writerIndex() < payloadStart ||
+        byteBuf.getInt( recordStart ) != byteBuf.writerIndex() - payloadStart
+    ) {
+      throw new DecodeException( "Truncated '" + snapshotFile.getAbsolutePath() + "'" ) ;
+    }
+    final int payloadLength = byteBuf.writerIndex() - payloadStart ;
+    if( RecordSlicer.crc32c( byteBuf, payloadStart, payloadLength ) !=
+        byteBuf.getInt( recordStart + 4 )
+    ) {
+      throw new DecodeException( "CRC mismatch in '" + snapshotFile.getAbsolutePath() + "'" ) ;
+    }
+    byteBuf.readerIndex( payloadStart ) ;
+    final BytebufCoat coat = BytebufTools.coat( byteBuf ) ;
+    final STATE state = stateDecoder.decodeFrom( coat ) ;
+    return new JournalSnapshot<>( snapshotFile, stamp, state ) ;
+  }
+
+
+// =======
+// Writing
+// =======
+
+  /**
+   * Writes snapshots for one journal file, deleting older ones.
+   * <p>
+   * The application must call {@link #write(Stamp, Object)} from the thread that applies
+   * {@link com.otcdlink.chiron.command.Command}s, between two of them, so the state reflects
+   * exactly every {@link com.otcdlink.chiron.command.Command} up to the {@link Stamp}.
+   * The whole snapshot is encoded in memory before being written.
+   */
+  public static final class Writer< STATE > {
+
+    private final File journalFile ;
+    private final Encoder< STATE > stateEncoder ;
+    private final int schemaVersion ;
+    private final String applicationVersion ;
+    private final int retainedSnapshotCount ;
+
+    private Stamp lastStamp = null ;
+
+    /**
+     * @param retainedSnapshotCount how many snapshots to keep, keeping more than one
+     *     allows to fall back to the previous one if the latest is corrupt.
+     */
+    public Writer(
+        final File journalFile,
+        final Encoder< STATE > stateEncoder,
+        final int schemaVersion,
+        final String applicationVersion,
+        final int retainedSnapshotCount
+    ) {
+      this.journalFile = checkNotNull( journalFile ) ;
+      this.stateEncoder = checkNotNull( stateEncoder ) ;
+      this.schemaVersion = schemaVersion ;
+      this.applicationVersion = checkNotNull( applicationVersion ) ;
+      checkArgument( retainedSnapshotCount > 0 ) ;
+      this.retainedSnapshotCount = retainedSnapshotCount ;
+    }
+
+    /**
+     * @param stamp the {@link Stamp} of the last {@link com.otcdlink.chiron.command.Command}
+     *     applied to {@code state}.
+     * @return the snapshot file.
+     */
+    public File write( final Stamp stamp, final STATE state ) throws IOException {
+      checkArgument( lastStamp == null || stamp.compareTo( lastStamp ) > 0,
+          "Stamp " + stamp + " not after last one " + lastStamp ) ;
+      final ByteBuf byteBuf = Unpooled.buffer() ;
+      final BytebufCoat coat = BytebufTools.coat( byteBuf ) ;
+      coat.writeAsciiUnsafe( HEADER_KEYWORD + " " + stamp.asStringRoundedToFlooredSecond() +
+          " SchemaVersion " + schemaVersion + " ApplicationVersion " + applicationVersion +
+          "\n" ) ;
+      final int recordStart = byteBuf.writerIndex() ;
+      byteBuf.writeZero( RecordSlicer.RECORD_HEADER_LENGTH ) ;
+      stateEncoder.encodeTo( state, coat ) ;
+      RecordSlicer.completeRecordHeader( byteBuf, recordStart ) ;
+
+      final File snapshotFile = snapshotFile( journalFile, stamp ) ;
+      final File temporaryFile = new File(
+          snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp" ) ;
+      try(
+          final RandomAccessFile randomAccessFile = new RandomAccessFile( temporaryFile, "rw" ) ;
+          final FileChannel fileChannel = randomAccessFile.getChannel()
+      ) {
+        fileChannel.truncate( 0 ) ;
+        while( byteBuf.isReadable() ) {
+          byteBuf.readBytes( fileChannel, byteBuf.readableBytes() ) ;
+        }
+        fileChannel.force( true ) ;
+      }
+      if( ! temporaryFile.renameTo( snapshotFile ) ) {
+        throw new IOException( "Could not rename '" + temporaryFile.getAbsolutePath() +
+            "' to '" + snapshotFile.getAbsolutePath() + "'" ) ;
+      }
+      lastStamp = stamp ;
+      LOGGER.info( "Wrote '" + snapshotFile.getAbsolutePath() + "' (" +
+          snapshotFile.length() + " bytes)." ) ;
+      compact( journalFile, retainedSnapshotCount ) ;
+      return snapshotFile ;
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.collect.ImmutableList;
+import com.otcdlink.chiron.codec.CommandBodyDecoder;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.codec.Decoder;
+import com.otcdlink.chiron.flow.journal.slicer.FileRegion;
+import com.otcdlink.chiron.flow.journal.slicer.FileSlicer;
+import com.otcdlink.chiron.flow.journal.slicer.Slice;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads a journal file with one {@link JournalFileReader} per {@link FileRegion}, each
+ * one slicing and decoding in its own thread, and emits {@link Command}s in the order of
+ * the file.
+ * <p>
+ * A single {@link FileSlicer} runs at about 300 MB/s on one core, and decoding adds to it,
+ * so replaying a journal of several GB after a crash takes a while. Splitting the file
+ * into {@link FileRegion}s makes the replay time decrease with the number of cores,
+ * until the disk becomes the bottleneck.
+ * <p>
+ * Ordering relies on {@link Flux#mergeSequential(Iterable, int, int)}: every region is read
+ * eagerly, {@link Command}s of a region wait in a bounded queue until {@link Command}s of
+ * previous regions are all emitted. {@link FileRegion}s are ordered and contiguous so this
+ * yields the same order as {@link Slice#lineIndexInFile()}. Once its queue is full,
+ * a region stops reading until downstream catches up, so memory consumption is bounded
+ * by {@link #reorderingBufferSize} times the number of regions.
+ */
+public final class ParallelJournalFileReader< DESIGNATOR, DUTY > {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( ParallelJournalFileReader.class ) ;
+
+  private final File journalFile ;
+  private final Supplier< Decoder< DESIGNATOR > > designatorDecoderSupplier ;
+  private final Supplier< CommandBodyDecoder< DESIGNATOR, DUTY > > commandBodyDecoderSupplier ;
+  private final int expectedSchemaVersion ;
+  private final boolean recycleSlice ;
+  private final LineBreak lineBreak ;
+  private final int regionCount ;
+  private final int reorderingBufferSize ;
+
+  /**
+   * @param designatorDecoderSupplier called once per {@link FileRegion} because
+   *     a {@link Decoder} is generally not thread-safe.
+   * @param commandBodyDecoderSupplier called once per {@link FileRegion}, same reason.
+   * @param regionCount should be the number of cores available for decoding.
+   * @param reorderingBufferSize maximum number of decoded {@link Command}s waiting in each
+   *     {@link FileRegion} before being emitted.
+   */
+  public ParallelJournalFileReader(
+      final File journalFile,
+      final Supplier< Decoder< DESIGNATOR > > designatorDecoderSupplier,
+      final Supplier< CommandBodyDecoder< DESIGNATOR, DUTY > > commandBodyDecoderSupplier,
+      final int expectedSchemaVersion,
+      final boolean recycleSlice,
+      final LineBreak lineBreak,
+      final int regionCount,
+      final int reorderingBufferSize
+  ) {
+    this.journalFile = checkNotNull( journalFile ) ;
+    this.designatorDecoderSupplier = checkNotNull( designatorDecoderSupplier ) ;
+    this.commandBodyDecoderSupplier = checkNotNull( commandBodyDecoderSupplier ) ;
+    this.expectedSchemaVersion = expectedSchemaVersion ;
+    this.recycleSlice = recycleSlice ;
+    this.lineBreak = checkNotNull( lineBreak ) ;
+    checkArgument( regionCount > 0 ) ;
+    this.regionCount = regionCount ;
+    checkArgument( reorderingBufferSize > 0 ) ;
+    this.reorderingBufferSize = reorderingBufferSize ;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + '{' + journalFile.getAbsolutePath() + '}' ;
+  }
+
+  /**
+   * Splitting happens at subscription time, in subscriber's thread, and counts line breaks
+   * using {@code scheduler}'s threads.
+   *
+   * @param scheduler runs slicing and decoding, should have at least {@link #regionCount}
+   *     threads to get full parallelism (like {@code Schedulers#parallel()}).
+   */
+  public Flux< Command< DESIGNATOR, DUTY > > flux( final Scheduler scheduler ) {
+    return Flux.defer( () -> {
+      final ImmutableList< FileRegion > fileRegions ;
+      try {
+        final File existingFile = JournalSegments.existing( journalFile ) ;
+        if( ! JournalSegments.isCompressed( existingFile ) &&
+            JournalRecordFormat.detect( existingFile ) == JournalRecordFormat.TEXT
+        ) {
+          fileRegions = FileRegion.split(
+              journalFile, lineBreak.asByteArray(), regionCount, scheduler::schedule ) ;
+        } else {
+          return sequentialFlux( scheduler ) ;
+        }
+      } catch( final IOException e ) {
+        return Flux.error( e ) ;
+      }
+      LOGGER.info( "Reading '" + journalFile.getAbsolutePath() + "' with " +
+          fileRegions.size() + " regions." ) ;
+      final List< Flux< Command< DESIGNATOR, DUTY > > > regionFluxes =
+          new ArrayList<>( fileRegions.size() ) ;
+      for( final FileRegion fileRegion : fileRegions ) {
+        final JournalFileReader< DESIGNATOR, DUTY > regionReader ;
+        try {
+          regionReader = new JournalFileReader<>(
+              journalFile,
+              designatorDecoderSupplier.get(),
+              commandBodyDecoderSupplier.get(),
+              expectedSchemaVersion,
+              recycleSlice,
+              lineBreak
+          ) ;
+        } catch( final FileNotFoundException e ) {
+          return Flux.error( e ) ;
+        }
+        regionFluxes.add( Flux
+            .fromIterable( regionReader.sliceIterable( fileRegion ) )
+            .< Command< DESIGNATOR, DUTY > >handle( regionReader::decodeSlice )
+            .subscribeOn( scheduler )
+        ) ;
+      }
+      return Flux.mergeSequential( regionFluxes, regionFluxes.size(), reorderingBufferSize ) ;
+    } ) ;
+  }
+
+  /**
+   * {@link FileRegion}s rely on line breaks so they don't apply to
+   * {@link JournalRecordFormat#BINARY}, which is faster to slice anyways.
+   * Same for a compressed file, which {@link JournalFileReader} inflates first.
+   */
+  private Flux< Command< DESIGNATOR, DUTY > > sequentialFlux( final Scheduler scheduler )
+      throws FileNotFoundException
+  {
+    LOGGER.info( "Reading '" + journalFile.getAbsolutePath() + "' sequentially." ) ;
+    final JournalFileReader< DESIGNATOR, DUTY > reader = new JournalFileReader<>(
+        journalFile,
+        designatorDecoderSupplier.get(),
+        commandBodyDecoderSupplier.get(),
+        expectedSchemaVersion,
+        recycleSlice,
+        lineBreak
+    ) ;
+    return Flux
+        .fromIterable( reader.sliceIterable() )
+        .< Command< DESIGNATOR, DUTY > >handle( reader::decodeSlice )
+        .subscribeOn( scheduler )
+    ;
+  }
+
+}
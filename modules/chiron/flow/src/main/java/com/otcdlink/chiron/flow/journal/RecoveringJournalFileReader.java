@@ -2,14 +2,18 @@ package com.otcdlink.chiron.flow.journal;
 
 import com.otcdlink.chiron.codec.CommandBodyDecoder;
 import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.Stamp;
 import com.otcdlink.chiron.command.codec.Decoder;
+import com.otcdlink.chiron.flow.journal.slicer.Slice;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.SynchronousSink;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.function.Function;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
@@ -24,6 +28,17 @@ public class RecoveringJournalFileReader< DESIGNATOR, DUTY >
   private final File recoveryFile ;
   private final File recoveredFile ;
   private Boolean recoveringFileFound = null ;
+  private long tornTailLength = 0 ;
+
+  /**
+   * Nullable.
+   */
+  private final Function< DESIGNATOR, Stamp > stampExtractor ;
+
+  /**
+   * Set by {@link #restoreLatestSnapshot(Decoder)}, {@code null} means replaying everything.
+   */
+  private Stamp snapshotStamp = null ;
 
   public RecoveringJournalFileReader(
       final File journalFile,
@@ -33,6 +48,32 @@ public class RecoveringJournalFileReader< DESIGNATOR, DUTY >
       final CommandBodyDecoder< DESIGNATOR, DUTY > commandBodyDecoder,
       final int expectedSchemaVersion,
       final boolean recycleSlice
+  ) throws FileNotFoundException {
+    this(
+        journalFile,
+        recoveryFile,
+        recoveredFile,
+        designatorDecoder,
+        commandBodyDecoder,
+        expectedSchemaVersion,
+        recycleSlice,
+        null
+    ) ;
+  }
+
+  /**
+   * @param stampExtractor {@code null} means no support for
+   *     {@link #restoreLatestSnapshot(Decoder)}.
+   */
+  public RecoveringJournalFileReader(
+      final File journalFile,
+      final File recoveryFile,
+      final File recoveredFile,
+      final Decoder< DESIGNATOR > designatorDecoder,
+      final CommandBodyDecoder< DESIGNATOR, DUTY > commandBodyDecoder,
+      final int expectedSchemaVersion,
+      final boolean recycleSlice,
+      final Function< DESIGNATOR, Stamp > stampExtractor
   ) throws FileNotFoundException {
     super(
         journalFile,
@@ -43,18 +84,34 @@ public class RecoveringJournalFileReader< DESIGNATOR, DUTY >
     ) ;
     this.recoveryFile = checkNotNull( recoveryFile ) ;
     this.recoveredFile = checkNotNull( recoveredFile ) ;
+    this.stampExtractor = stampExtractor ;
   }
 
+  /**
+   * Also truncates the torn tail of the recovery file, if any, and renames the snapshots
+   * and the {@link JournalIndex} of the journal file so they follow it.
+   *
+   * @see TornTailTruncator
+   * @see #tornTailLength()
+   */
   @Override
   public boolean resolveRecoveryFile() throws IOException {
+    tornTailLength = 0 ;
     if( recoveryFile.exists() ) {
       LOGGER.info( "Recovery file found: '" + recoveryFile.getAbsolutePath() + "' -- "
           + "was previous recovery interrupted?" ) ;
+      /** Previous recovery may have been interrupted before renaming them. */
+      JournalSnapshot.rename( journalFile, recoveryFile ) ;
+      JournalIndex.renameSidecar( journalFile, recoveryFile ) ;
+      tornTailLength = TornTailTruncator.truncate( recoveryFile, lineBreak ) ;
       return recoveringFileFound = true ;
     } else if( journalFile.exists() ) {
       LOGGER.info( "Journal file found: '" + journalFile.getAbsolutePath() + "'." ) ;
       if( journalFile.renameTo( recoveryFile ) ) {
         LOGGER.info( "Renamed journal file into: '" + recoveryFile.getAbsolutePath() + "'." ) ;
+        JournalSnapshot.rename( journalFile, recoveryFile ) ;
+        JournalIndex.renameSidecar( journalFile, recoveryFile ) ;
+        tornTailLength = TornTailTruncator.truncate( recoveryFile, lineBreak ) ;
         return recoveringFileFound = true ;
       } else {
         throw new IOException( "Could not rename '" + journalFile.getAbsolutePath() + "' "
@@ -67,10 +124,76 @@ public class RecoveringJournalFileReader< DESIGNATOR, DUTY >
     }
   }
 
+  /**
+   * The number of bytes that last call to {@link #resolveRecoveryFile()} dropped from
+   * the end of the recovery file.
+   */
+  public long tornTailLength() {
+    return tornTailLength ;
+  }
+
+  /**
+   * Looks for a {@link JournalSnapshot} of the file to replay (the recovery file if there is
+   * one), then {@link #sliceIterable()} uses the {@link JournalIndex} if any to skip
+   * {@link Command}s up to {@link JournalSnapshot#stamp}, and {@link #decodeSlice(Slice,
+   * SynchronousSink)} drops those that the {@link JournalIndex} couldn't skip.
+   */
+  @Override
+  public < STATE > JournalSnapshot< STATE > restoreLatestSnapshot(
+      final Decoder< STATE > stateDecoder
+  ) throws IOException {
+    checkState( stampExtractor != null, "No stamp extractor, can't use snapshots" ) ;
+    checkState( recoveringFileFound != null, "Must call " +
+        SEARCH_FOR_RECOVERY_FILE.getName() + " first" ) ;
+    final File replayedFile = resolveFile() ;
+    final JournalSnapshot< STATE > snapshot =
+        JournalSnapshot.loadLatest( replayedFile, stateDecoder ) ;
+    if( snapshot == null ) {
+      LOGGER.info( "No snapshot for '" + replayedFile.getAbsolutePath() + "', " +
+          "will replay everything." ) ;
+      snapshotStamp = null ;
+    } else {
+      LOGGER.info( "Restored " + snapshot + ", will replay " +
+          Command.class.getSimpleName() + "s after it." ) ;
+      snapshotStamp = snapshot.stamp ;
+    }
+    return snapshot ;
+  }
+
+  @Override
+  public Iterable< Slice > sliceIterable() {
+    if( snapshotStamp == null ) {
+      return super.sliceIterable() ;
+    } else {
+      try {
+        return sliceIterableFrom( snapshotStamp ) ;
+      } catch( final IOException e ) {
+        throw new RuntimeException( e ) ;
+      }
+    }
+  }
+
+  @Override
+  protected boolean shouldEmit( final Command< DESIGNATOR, DUTY > command ) {
+    return snapshotStamp == null ||
+        stampExtractor.apply( command.endpointSpecific ).compareTo( snapshotStamp ) > 0 ;
+  }
+
+  /**
+   * Also renames the snapshots and the {@link JournalIndex} of the recovery file, so a later
+   * recovery file with the same name doesn't get them.
+   */
   @Override
   public void renameRecoveryFileToRecovered() {
     recoveryFile.renameTo( recoveredFile ) ;
+    try {
+      JournalSnapshot.rename( recoveryFile, recoveredFile ) ;
+      JournalIndex.renameSidecar( recoveryFile, recoveredFile ) ;
+    } catch( final IOException e ) {
+      throw new RuntimeException( e ) ;
+    }
     recoveringFileFound = null ;
+    snapshotStamp = null ;
   }
 
   private static final Method SEARCH_FOR_RECOVERY_FILE ;
@@ -1,6 +1,8 @@
 package com.otcdlink.chiron.flow.journal;
 
 
+import com.otcdlink.chiron.command.codec.Decoder;
+
 import java.io.IOException;
 
 public interface RecoveringJournalReader< COMMAND  > extends JournalReader< COMMAND > {
@@ -13,4 +15,14 @@ public interface RecoveringJournalReader< COMMAND  > extends JournalReader< COMM
 
   void renameRecoveryFileToRecovered() ;
 
+  /**
+   * Must be called after {@link #resolveRecoveryFile()} and before {@link #sliceIterable()},
+   * so {@link #sliceIterable()} only yields {@code COMMAND}s after the {@link JournalSnapshot}.
+   *
+   * @return {@code null} if there is no {@link JournalSnapshot}, so every {@code COMMAND}
+   *     gets replayed.
+   */
+  < STATE > JournalSnapshot< STATE > restoreLatestSnapshot( Decoder< STATE > stateDecoder )
+      throws IOException ;
+
 }
@@ -0,0 +1,122 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.otcdlink.chiron.codec.CommandBodyDecoder;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.codec.Decoder;
+import com.otcdlink.chiron.flow.journal.slicer.Slice;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.SynchronousSink;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Iterator;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads every segment written by {@link RollingJournalPersister}, compressed or not,
+ * in the order of their index.
+ * <p>
+ * Each segment has its own header line, which {@link JournalFileReader#decodeSlice(Slice,
+ * SynchronousSink)} recognizes from its {@link Slice#lineIndexInFile()}, so a single
+ * {@link JournalFileReader} decodes {@link Slice}s from every segment.
+ */
+public class RollingJournalFileReader< DESIGNATOR, DUTY >
+    implements JournalReader< Command< DESIGNATOR, DUTY > >
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger( RollingJournalFileReader.class ) ;
+
+  private final File baseFile ;
+  private final Decoder< DESIGNATOR > designatorDecoder ;
+  private final CommandBodyDecoder< DESIGNATOR, DUTY > commandBodyDecoder ;
+  private final int expectedSchemaVersion ;
+  private final boolean recycleSlice ;
+  private final LineBreak lineBreak ;
+  private final JournalFileReader< DESIGNATOR, DUTY > decodingReader ;
+
+  public RollingJournalFileReader(
+      final File baseFile,
+      final Decoder< DESIGNATOR > designatorDecoder,
+      final CommandBodyDecoder< DESIGNATOR, DUTY > commandBodyDecoder,
+      final int expectedSchemaVersion,
+      final boolean recycleSlice,
+      final LineBreak lineBreak
+  ) throws FileNotFoundException {
+    this.baseFile = checkNotNull( baseFile ) ;
+    this.designatorDecoder = checkNotNull( designatorDecoder ) ;
+    this.commandBodyDecoder = checkNotNull( commandBodyDecoder ) ;
+    this.expectedSchemaVersion = expectedSchemaVersion ;
+    this.recycleSlice = recycleSlice ;
+    this.lineBreak = checkNotNull( lineBreak ) ;
+    this.decodingReader = newSegmentReader( baseFile ) ;
+  }
+
+  /**
+   * Lists segments once, and then opens each of them (inflating compressed ones)
+   * only when previous one has been read entirely.
+   * The file inflated from a compressed segment gets deleted once its last {@link Slice}
+   * has been read. Mapped {@link Slice}s remain readable after that, on platforms
+   * that support deleting a mapped file.
+   */
+  @Override
+  public Iterable< Slice > sliceIterable() {
+    final ImmutableList< File > segments = JournalSegments.list( baseFile ) ;
+    LOGGER.info( "Found " + segments.size() + " segment(s) for '" +
+        baseFile.getAbsolutePath() + "'." ) ;
+    return Iterables.concat( Iterables.transform(
+        segments,
+        segment -> {
+          try {
+            return deletingInflatedFileAtEnd( newSegmentReader( segment ) ) ;
+          } catch( final FileNotFoundException e ) {
+            throw new RuntimeException( e ) ;
+          }
+        }
+    ) ) ;
+  }
+
+  private static Iterable< Slice > deletingInflatedFileAtEnd(
+      final JournalFileReader< ?, ? > segmentReader
+  ) {
+    return () -> {
+      final Iterator< Slice > slices = segmentReader.sliceIterable().iterator() ;
+      return new AbstractIterator< Slice >() {
+        @Override
+        protected Slice computeNext() {
+          if( slices.hasNext() ) {
+            return slices.next() ;
+          } else {
+            segmentReader.deleteInflatedFile() ;
+            return endOfData() ;
+          }
+        }
+      } ;
+    } ;
+  }
+
+  @Override
+  public void decodeSlice(
+      final Slice slice,
+      final SynchronousSink< Command< DESIGNATOR, DUTY > > synchronousSink
+  ) {
+    decodingReader.decodeSlice( slice, synchronousSink ) ;
+  }
+
+  private JournalFileReader< DESIGNATOR, DUTY > newSegmentReader( final File segment )
+      throws FileNotFoundException
+  {
+    return new JournalFileReader<>(
+        segment,
+        designatorDecoder,
+        commandBodyDecoder,
+        expectedSchemaVersion,
+        recycleSlice,
+        lineBreak
+    ) ;
+  }
+}
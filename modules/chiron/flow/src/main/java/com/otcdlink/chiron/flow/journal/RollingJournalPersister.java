@@ -0,0 +1,314 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import com.otcdlink.chiron.toolbox.clock.Clock;
+import com.otcdlink.chiron.toolbox.clock.Pulse;
+import com.otcdlink.chiron.toolbox.concurrent.ExecutorTools;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Writes into a sequence of segments (as named by {@link JournalSegments}), switching to
+ * a new segment when current one reaches a {@link Rolling#maximumSegmentLength},
+ * or a {@link Rolling#maximumSegmentAge}, or after a {@link Pulse} tick.
+ * Closed segments get compressed in a background thread if {@link Rolling#compress} is set.
+ * <p>
+ * Each segment is a complete journal file with its own header line, so
+ * {@link JournalFileReader} can read it alone, and {@link RollingJournalFileReader}
+ * reads them all in sequence.
+ * <p>
+ * Switching to a new segment happens in the thread calling {@link #accept(Command)},
+ * before writing the {@link Command}. So there is no empty segment, and a
+ * {@link Pulse.Tickee#tick(DateTime)} only sets a flag.
+ * <p>
+ * Current segment gets closed only once next one is open. If opening fails, writing
+ * continues into current segment, and next {@link #accept(Command)} tries again.
+ */
+public final class RollingJournalPersister< DESIGNATOR, DUTY >
+    implements
+    JournalPersister< Command< DESIGNATOR, DUTY > >,
+    Pulse.Tickee
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( RollingJournalPersister.class ) ;
+
+  private final File baseFile ;
+
+  private final Function< File, AbstractJournalPersister< DESIGNATOR, DUTY, ? > >
+      segmentPersisterFactory ;
+
+  private final Rolling rolling ;
+
+  private final Clock clock ;
+
+  public RollingJournalPersister(
+      final File baseFile,
+      final Function< File, AbstractJournalPersister< DESIGNATOR, DUTY, ? > >
+          segmentPersisterFactory,
+      final Rolling rolling
+  ) {
+    this( baseFile, segmentPersisterFactory, rolling, Clock.SYSTEM_CLOCK ) ;
+  }
+
+  /**
+   * @param segmentPersisterFactory creates a persister writing into given segment file.
+   */
+  public RollingJournalPersister(
+      final File baseFile,
+      final Function< File, AbstractJournalPersister< DESIGNATOR, DUTY, ? > >
+          segmentPersisterFactory,
+      final Rolling rolling,
+      final Clock clock
+  ) {
+    this.baseFile = checkNotNull( baseFile ) ;
+    this.segmentPersisterFactory = checkNotNull( segmentPersisterFactory ) ;
+    this.rolling = checkNotNull( rolling ) ;
+    this.clock = checkNotNull( clock ) ;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringTools.nameAndCompactHash( this ) + '{' +
+        baseFile.getAbsolutePath() + ';' + rolling + '}' ;
+  }
+
+  public static final class Rolling {
+
+    /**
+     * Length of a segment, in bytes, that causes the switch to a new segment.
+     * The segment may be slightly bigger, because the switch happens before
+     * writing the next {@link Command}.
+     */
+    public final long maximumSegmentLength ;
+
+    /**
+     * Nullable. Time elapsed since the opening of a segment that causes the switch to
+     * a new segment.
+     */
+    public final Duration maximumSegmentAge ;
+
+    /**
+     * Compress closed segments in a background thread.
+     */
+    public final boolean compress ;
+
+    public Rolling(
+        final long maximumSegmentLength,
+        final Duration maximumSegmentAge,
+        final boolean compress
+    ) {
+      checkArgument( maximumSegmentLength > 0 ) ;
+      this.maximumSegmentLength = maximumSegmentLength ;
+      checkArgument( maximumSegmentAge == null || maximumSegmentAge.getMillis() > 0 ) ;
+      this.maximumSegmentAge = maximumSegmentAge ;
+      this.compress = compress ;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + '{' +
+          "maximumSegmentLength=" + maximumSegmentLength + ';' +
+          "maximumSegmentAge=" +
+              ( maximumSegmentAge == null ? "none" : maximumSegmentAge.getMillis() + "ms" ) + ';' +
+          "compress=" + compress +
+          '}'
+      ;
+    }
+  }
+
+
+// =========
+// Lifecycle
+// =========
+
+  private AbstractJournalPersister< DESIGNATOR, DUTY, ? > segmentPersister = null ;
+
+  private File segmentFile = null ;
+
+  private int segmentIndex ;
+
+  private long segmentStart ;
+
+  private boolean autoFlush = false ;
+
+  /**
+   * Set by {@link #tick(DateTime)} from {@link Pulse}'s thread.
+   */
+  private volatile boolean rollRequested = false ;
+
+  /**
+   * Non-null when open and {@link Rolling#compress} is set.
+   */
+  private ExecutorService compressionExecutor = null ;
+
+  /**
+   * Starts with a new segment, after the last existing one.
+   */
+  @Override
+  public void open() throws IOException {
+    checkState( segmentPersister == null, "Already open" ) ;
+    if( rolling.compress ) {
+      compressionExecutor = Executors.newSingleThreadExecutor(
+          ExecutorTools.newThreadFactory( "journal-compression" ) ) ;
+    }
+    segmentIndex = JournalSegments.lastSegmentIndex( baseFile ) ;
+    openNextSegment() ;
+    LOGGER.info( "Opened " + this + "." ) ;
+  }
+
+  @Override
+  public void accept( final Command< DESIGNATOR, DUTY > command ) {
+    checkState( segmentPersister != null, "Not open" ) ;
+    if( command.persist() && shouldRoll() ) {
+      try {
+        roll() ;
+      } catch( final IOException | RuntimeException e ) {
+        LOGGER.error( "Failed to roll segments in " + this + ".", e ) ;
+      }
+    }
+    segmentPersister.accept( command ) ;
+  }
+
+  /**
+   * Requests a switch to a new segment, which happens with next {@link #accept(Command)}.
+   */
+  @Override
+  public void tick( final DateTime now ) {
+    rollRequested = true ;
+  }
+
+  @Override
+  public void autoFlush( final boolean autoflush ) {
+    this.autoFlush = autoflush ;
+    if( segmentPersister != null ) {
+      segmentPersister.autoFlush( autoflush ) ;
+    }
+  }
+
+  @Override
+  public PersisterWhenFrozen whenFrozen() {
+    return new InnerLockablePersister() ;
+  }
+
+  /**
+   * Closes current segment, and waits for the compression of every closed segment
+   * (including current one).
+   */
+  @Override
+  public void close() throws IOException {
+    checkState( segmentPersister != null, "Not open" ) ;
+    final AbstractJournalPersister< DESIGNATOR, DUTY, ? > closingPersister = segmentPersister ;
+    final File closingFile = segmentFile ;
+    segmentPersister = null ;
+    segmentFile = null ;
+    try {
+      closeSegment( closingPersister, closingFile ) ;
+    } finally {
+      if( compressionExecutor != null ) {
+        compressionExecutor.shutdown() ;
+        try {
+          compressionExecutor.awaitTermination( Long.MAX_VALUE, TimeUnit.MILLISECONDS ) ;
+        } catch( final InterruptedException e ) {
+          Thread.currentThread().interrupt() ;
+          LOGGER.warn( "Interrupted while waiting for compression in " + this + "." ) ;
+        }
+        compressionExecutor = null ;
+      }
+    }
+    LOGGER.info( "Closed " + this + "." ) ;
+  }
+
+
+// =========
+// Internals
+// =========
+
+  private boolean shouldRoll() {
+    if( rollRequested ) {
+      return true ;
+    }
+    if( segmentPersister.writtenBytes() >= rolling.maximumSegmentLength ) {
+      return true ;
+    }
+    return rolling.maximumSegmentAge != null &&
+        clock.currentTimeMillis() - segmentStart >= rolling.maximumSegmentAge.getMillis() ;
+  }
+
+  /**
+   * Keeps current segment if next one fails to open. Then {@link #rollRequested}
+   * remains set, so next {@link #accept(Command)} tries again.
+   */
+  private void roll() throws IOException {
+    final AbstractJournalPersister< DESIGNATOR, DUTY, ? > previousPersister = segmentPersister ;
+    final File previousFile = segmentFile ;
+    openNextSegment() ;
+    rollRequested = false ;
+    closeSegment( previousPersister, previousFile ) ;
+  }
+
+  /**
+   * Changes nothing in case of failure, except closing the persister of the incomplete
+   * segment file (it could be half-open) and deleting the file.
+   */
+  private void openNextSegment() throws IOException {
+    final int nextIndex = segmentIndex + 1 ;
+    final File nextFile = JournalSegments.segmentFile( baseFile, nextIndex ) ;
+    AbstractJournalPersister< DESIGNATOR, DUTY, ? > nextPersister = null ;
+    try {
+      nextPersister = segmentPersisterFactory.apply( nextFile ) ;
+      nextPersister.autoFlush( autoFlush ) ;
+      nextPersister.open() ;
+    } catch( final IOException | RuntimeException e ) {
+      if( nextPersister != null && nextPersister.isOpen() ) {
+        try {
+          nextPersister.close() ;
+        } catch( final IOException | RuntimeException closeException ) {
+          e.addSuppressed( closeException ) ;
+        }
+      }
+      if( nextFile.exists() && ! nextFile.delete() ) {
+        LOGGER.warn( "Could not delete incomplete '" + nextFile.getAbsolutePath() + "'." ) ;
+      }
+      throw e ;
+    }
+    segmentIndex = nextIndex ;
+    segmentFile = nextFile ;
+    segmentPersister = nextPersister ;
+    segmentStart = clock.currentTimeMillis() ;
+    LOGGER.debug( "Now writing into '" + segmentFile.getAbsolutePath() + "'." ) ;
+  }
+
+  /**
+   * Compresses given segment only if it closed successfully.
+   */
+  private void closeSegment(
+      final AbstractJournalPersister< DESIGNATOR, DUTY, ? > persister,
+      final File file
+  ) throws IOException {
+    persister.close() ;
+    if( compressionExecutor != null ) {
+      compressionExecutor.execute( () -> {
+        try {
+          JournalSegments.compress( file ) ;
+        } catch( final IOException e ) {
+          LOGGER.error( "Failed to compress '" + file.getAbsolutePath() + "'.", e ) ;
+        }
+      } ) ;
+    }
+  }
+
+}
@@ -0,0 +1,409 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.collect.AbstractIterator;
+import com.otcdlink.chiron.codec.CommandBodyDecoder;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.codec.Decoder;
+import com.otcdlink.chiron.flow.journal.slicer.FileRegion;
+import com.otcdlink.chiron.flow.journal.slicer.FileSlicer;
+import com.otcdlink.chiron.flow.journal.slicer.RecordSlicer;
+import com.otcdlink.chiron.flow.journal.slicer.Slice;
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.SynchronousSink;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.otcdlink.chiron.flow.journal.slicer.FileSlicer.DEFAULT_CHUNK_MAXIMUM_LENGTH;
+import static com.otcdlink.chiron.flow.journal.slicer.FileSlicer.DEFAULT_SLICE_MAXIMUM_LENGTH;
+import static com.otcdlink.chiron.flow.journal.slicer.FileSlicer.defaultProbableSliceCountPerChunk;
+
+/**
+ * Follows a journal file that some {@link JournalPersister} keeps appending to, possibly from
+ * another process, yielding {@link Slice}s as complete lines (or records) land.
+ * <p>
+ * The {@link Iterator} of {@link #sliceIterable()} blocks until there is a new complete
+ * line (or record), or until {@link #close()}. So it should run in a dedicated thread, like:
+ * <pre>
+ * Flux.fromIterable( reader.sliceIterable() )
+ *     .handle( reader::decodeSlice )
+ *     .subscribeOn( Schedulers.newSingle( "journal-tail" ) )
+ * </pre>
+ * Pulling from the {@link Iterator} gives natural backpressure: a slow consumer
+ * just increases the lag, and the writer never waits.
+ * <p>
+ * A partial last line (or an incomplete record, or trailing zeroes left
+ * by {@link JournalMappedFilePersister}) is not yielded, next poll reads it again
+ * from its start. A bad record followed by a good one can't be an incomplete tail, so
+ * the {@link Iterator} fails with an {@code IOException} (wrapped) that tells its offset.
+ * When there is nothing new, polling delay doubles from {@link #minimumDelay} up to
+ * {@link #maximumDelay}. A persister in the same JVM can call {@link #wakeUp()}
+ * to cut the delay short.
+ */
+public class TailingJournalFileReader< DESIGNATOR, DUTY >
+    implements
+    JournalReader< Command< DESIGNATOR, DUTY > >,
+    Closeable
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger( TailingJournalFileReader.class ) ;
+
+  private final File journalFile ;
+  private final LineBreak lineBreak ;
+  private final Duration minimumDelay ;
+  private final Duration maximumDelay ;
+
+  /**
+   * Does the decoding, never reads a file.
+   */
+  private final JournalFileReader< DESIGNATOR, DUTY > decodingReader ;
+
+  private final Object lock = ToStringTools.createLockWithNiceToString( getClass() ) ;
+
+  /**
+   * Synchronized on {@link #lock}.
+   */
+  private boolean wakeUpRequested = false ;
+
+  private volatile boolean closed = false ;
+
+  /**
+   * Offset of the byte after the last complete line (or record) passed to a slicer.
+   */
+  private volatile long position = 0 ;
+
+  private boolean iterating = false ;
+
+  public TailingJournalFileReader(
+      final File journalFile,
+      final Decoder< DESIGNATOR > designatorDecoder,
+      final CommandBodyDecoder< DESIGNATOR, DUTY > commandBodyDecoder,
+      final int expectedSchemaVersion,
+      final boolean recycleSlice,
+      final LineBreak lineBreak,
+      final Duration minimumDelay,
+      final Duration maximumDelay
+  ) throws FileNotFoundException {
+    this.journalFile = checkNotNull( journalFile ) ;
+    this.lineBreak = checkNotNull( lineBreak ) ;
+    checkArgument( minimumDelay.getMillis() > 0 ) ;
+    this.minimumDelay = minimumDelay ;
+    checkArgument( maximumDelay.getMillis() >= minimumDelay.getMillis() ) ;
+    this.maximumDelay = maximumDelay ;
+    this.decodingReader = new JournalFileReader<>(
+        journalFile,
+        designatorDecoder,
+        commandBodyDecoder,
+        expectedSchemaVersion,
+        recycleSlice,
+        lineBreak
+    ) ;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringTools.nameAndCompactHash( this ) + '{' +
+        journalFile.getAbsolutePath() + ';' + "position=" + position + '}' ;
+  }
+
+  /**
+   * Can be iterated only once.
+   */
+  @Override
+  public Iterable< Slice > sliceIterable() {
+    return () -> {
+      checkState( ! iterating, "Already iterating" ) ;
+      iterating = true ;
+      return new TailIterator() ;
+    } ;
+  }
+
+  @Override
+  public void decodeSlice(
+      final Slice slice,
+      final SynchronousSink< Command< DESIGNATOR, DUTY > > synchronousSink
+  ) {
+    decodingReader.decodeSlice( slice, synchronousSink ) ;
+  }
+
+  /**
+   * Causes next poll to happen now, if the {@link Iterator} is waiting.
+   */
+  public void wakeUp() {
+    synchronized( lock ) {
+      wakeUpRequested = true ;
+      lock.notifyAll() ;
+    }
+  }
+
+  /**
+   * The offset in the file of the byte after the last complete line (or record) read so far,
+   * which tells the lag when compared to the file length.
+   */
+  public long position() {
+    return position ;
+  }
+
+  /**
+   * Causes the {@link Iterator} to end, once current {@link Slice}s are consumed.
+   */
+  @Override
+  public void close() {
+    closed = true ;
+    wakeUp() ;
+  }
+
+
+// =========
+// Internals
+// =========
+
+  private final class TailIterator extends AbstractIterator< Slice > {
+
+    private FileChannel fileChannel = null ;
+
+    private JournalRecordFormat recordFormat = null ;
+
+    private long headerEnd = 0 ;
+
+    /**
+     * Iterates over the {@link Slice}s between {@link #position} and {@link #regionEnd}.
+     */
+    private Iterator< Slice > regionIterator = null ;
+
+    private long regionEnd ;
+
+    private int nextLineIndex = 0 ;
+
+    private int idleCount = 0 ;
+
+    /**
+     * Where {@link #checkNoGoodRecordAfter(long, long)} stopped searching for the last
+     * value of {@link #position}, so it doesn't scan the same bytes at each poll.
+     */
+    private long searchedPosition = -1 ;
+
+    private long searchedLength = -1 ;
+
+    @Override
+    protected Slice computeNext() {
+      try {
+        while( true ) {
+          if( regionIterator != null ) {
+            if( regionIterator.hasNext() ) {
+              nextLineIndex ++ ;
+              final Slice slice = regionIterator.next() ;
+              if( ! regionIterator.hasNext() ) {
+                regionIterator = null ;
+                position = regionEnd ;
+              }
+              return slice ;
+            } else {
+              regionIterator = null ;
+              position = regionEnd ;
+            }
+          }
+          if( closed ) {
+            closeChannel() ;
+            return endOfData() ;
+          }
+          if( ! startRegion() ) {
+            waitForMore() ;
+          }
+        }
+      } catch( final IOException e ) {
+        closeChannel() ;
+        throw new RuntimeException( e ) ;
+      }
+    }
+
+    /**
+     * @return {@code true} if there are new complete lines (or records).
+     */
+    private boolean startRegion() throws IOException {
+      if( fileChannel == null ) {
+        if( ! journalFile.isFile() ) {
+          return false ;
+        }
+        fileChannel = new RandomAccessFile( journalFile, "r" ).getChannel() ;
+      }
+      final long fileLength = fileChannel.size() ;
+      if( fileLength < position ) {
+        throw new IOException( "File '" + journalFile.getAbsolutePath() + "' shrunk from " +
+            position + " to " + fileLength + " bytes, was it replaced?" ) ;
+      }
+      if( recordFormat == null ) {
+        headerEnd = endOfCompleteLines( fileChannel, 0, fileLength ) ;
+        if( headerEnd == 0 ) {
+          return false ;  // No complete header line yet.
+        }
+        recordFormat = JournalRecordFormat.detect( journalFile ) ;
+        LOGGER.info( "Following '" + journalFile.getAbsolutePath() + "' with " +
+            recordFormat + " format." ) ;
+      }
+      final long end ;
+      if( recordFormat == JournalRecordFormat.BINARY ) {
+        if( position == 0 ) {
+          end = headerEnd ;
+        } else {
+          end = TornTailTruncator.endOfLastGoodRecord( fileChannel, position, fileLength ) ;
+          /** Yields good records first, searches only when stuck. */
+          if( end == position && end < fileLength ) {
+            checkNoGoodRecordAfter( end, fileLength ) ;
+          }
+        }
+      } else {
+        end = endOfCompleteLines( fileChannel, position, fileLength ) ;
+      }
+      if( end > position ) {
+        regionEnd = end ;
+        regionIterator = newSlicer( end ).iterator() ;
+        idleCount = 0 ;
+        return true ;
+      } else {
+        return false ;
+      }
+    }
+
+    /**
+     * A record that stops {@link TornTailTruncator#endOfLastGoodRecord(FileChannel, long, long)}
+     * may be incomplete because the writer didn't finish it yet, then there is nothing after.
+     * If there is a good record after, the stopping record is corrupted and waiting won't help.
+     * A record that was incomplete in a previous poll starts less than a maximum record
+     * length before the file length of that poll, so there is no need to search before.
+     *
+     * @throws IOException if there is a good record after {@code badRecordStart}.
+     */
+    private void checkNoGoodRecordAfter(
+        final long badRecordStart,
+        final long fileLength
+    ) throws IOException {
+      final long searchStart ;
+      if( searchedPosition == badRecordStart ) {
+        searchStart = Math.max( badRecordStart + 1,
+            searchedLength - DEFAULT_CHUNK_MAXIMUM_LENGTH ) ;
+      } else {
+        searchStart = badRecordStart + 1 ;
+      }
+      final long nextGoodRecord =
+          TornTailTruncator.nextGoodRecord( fileChannel, searchStart, fileLength ) ;
+      if( nextGoodRecord >= 0 ) {
+        throw new IOException( "Bad record at offset " + badRecordStart + " of '" +
+            journalFile.getAbsolutePath() + "', followed by a good record at offset " +
+            nextGoodRecord ) ;
+      }
+      searchedPosition = badRecordStart ;
+      searchedLength = fileLength ;
+    }
+
+    private Iterable< Slice > newSlicer( final long end ) {
+      if( recordFormat == JournalRecordFormat.BINARY ) {
+        return new RecordSlicer(
+            journalFile,
+            fileChannel,
+            lineBreak.asByteArray(),
+            DEFAULT_CHUNK_MAXIMUM_LENGTH,
+            defaultProbableSliceCountPerChunk( DEFAULT_CHUNK_MAXIMUM_LENGTH, 100 ),
+            position,
+            nextLineIndex,
+            end
+        ) ;
+      } else {
+        return new FileSlicer(
+            journalFile,
+            fileChannel,
+            lineBreak.asByteArray(),
+            DEFAULT_CHUNK_MAXIMUM_LENGTH + 1000,  // Adjusting to Windows line break.
+            DEFAULT_SLICE_MAXIMUM_LENGTH,
+            defaultProbableSliceCountPerChunk( DEFAULT_CHUNK_MAXIMUM_LENGTH, 100 ),
+            new FileRegion( position, end, nextLineIndex )
+        ) ;
+      }
+    }
+
+    /**
+     * Scans forward at most {@link FileSlicer#DEFAULT_CHUNK_MAXIMUM_LENGTH} bytes, so
+     * one poll doesn't map a whole file, and stops at the first zero (which can't appear
+     * in a line). Before {@link #recordFormat} is known, stops at the end of the header line.
+     *
+     * @return the offset after the last line break found, or {@code start} if none.
+     */
+    private long endOfCompleteLines(
+        final FileChannel channel,
+        final long start,
+        final long fileLength
+    ) throws IOException {
+      final byte[] delimiter = lineBreak.asByteArray() ;
+      final long end = Math.min( fileLength, start + DEFAULT_CHUNK_MAXIMUM_LENGTH ) ;
+      if( end - start < delimiter.length ) {
+        return start ;
+      }
+      final MappedByteBuffer window =
+          channel.map( FileChannel.MapMode.READ_ONLY, start, end - start ) ;
+      long lastEnd = start ;
+      final int limit = ( int ) ( end - start ) ;
+      for( int i = 0 ; i <= limit - delimiter.length ; i ++ ) {
+        if( window.get( i ) == 0 ) {
+          break ;
+        }
+        boolean match = true ;
+        for( int j = 0 ; j < delimiter.length ; j ++ ) {
+          if( window.get( i + j ) != delimiter[ j ] ) {
+            match = false ;
+            break ;
+          }
+        }
+        if( match ) {
+          lastEnd = start + i + delimiter.length ;
+          if( recordFormat == null ) {
+            break ;  // Header line only.
+          }
+        }
+      }
+      return lastEnd ;
+    }
+
+    private void waitForMore() {
+      final long delay = Math.min(
+          maximumDelay.getMillis(),
+          minimumDelay.getMillis() << Math.min( idleCount, 20 )
+      ) ;
+      idleCount ++ ;
+      synchronized( lock ) {
+        if( ! wakeUpRequested && ! closed ) {
+          try {
+            lock.wait( delay ) ;
+          } catch( final InterruptedException e ) {
+            Thread.currentThread().interrupt() ;
+            closed = true ;
+          }
+        }
+        wakeUpRequested = false ;
+      }
+    }
+
+    private void closeChannel() {
+      if( fileChannel != null ) {
+        try {
+          fileChannel.close() ;
+        } catch( final IOException e ) {
+          LOGGER.warn( "Could not close channel for '" + journalFile.getAbsolutePath() +
+              "'.", e ) ;
+        }
+        fileChannel = null ;
+      }
+    }
+  }
+}
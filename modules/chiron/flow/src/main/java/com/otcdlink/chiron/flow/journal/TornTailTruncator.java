@@ -0,0 +1,266 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.otcdlink.chiron.flow.journal.slicer.FileSlicer;
+import com.otcdlink.chiron.flow.journal.slicer.RecordSlicer;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Removes the end of a journal file that a crash left incomplete, so replay doesn't fail
+ * on it.
+ * <ul>
+ *   <li>
+ *     For {@link JournalRecordFormat#TEXT}, the torn tail is what comes after the last
+ *     {@link LineBreak}, ignoring trailing zeroes (that {@link JournalMappedFilePersister}
+ *     may leave).
+ *   </li><li>
+ *     For {@link JournalRecordFormat#BINARY}, the torn tail starts at the first record
+ *     with an inconsistent length, or a CRC mismatch. A payload length of 0 is inconsistent
+ *     because it is what zeroes look like.
+ *   </li>
+ * </ul>
+ * A bad record is a torn tail only if no good record follows it: then the tail is what
+ * a crash left. Otherwise the file is corrupt in the middle, and truncating would destroy
+ * good records, so {@link #truncate(File, LineBreak)} fails instead.
+ */
+public final class TornTailTruncator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( TornTailTruncator.class ) ;
+
+  private static final HashFunction CRC32C = Hashing.crc32c() ;
+
+  private TornTailTruncator() { }
+
+  /**
+   * Reads the header line the same way as {@link JournalRecordFormat#detect(File)}, and
+   * refuses to truncate if it is not complete or doesn't start with
+   * {@link IntradayPersistenceConstants#MAGIC}: then we can't tell where records start,
+   * and the file may not even be a journal.
+   *
+   * @return the number of bytes dropped.
+   * @throws IOException if there is no valid header line in a non-empty file, or if a good
+   *     record follows a bad one; the file is then left untouched.
+   */
+  public static long truncate( final File file, final LineBreak lineBreak ) throws IOException {
+    if( file.length() == 0 ) {
+      return 0 ;
+    }
+    final String headerLine = JournalRecordFormat.readHeaderLine( file, true ) ;
+    if( headerLine == null ) {
+      throw new IOException( "Found no header line in '" + file.getAbsolutePath() + "', "
+          + "refusing to truncate it" ) ;
+    }
+    if( ! headerLine.startsWith( IntradayPersistenceConstants.MAGIC ) ) {
+      throw new IOException( "Header line of '" + file.getAbsolutePath() + "' doesn't start "
+          + "with '" + IntradayPersistenceConstants.MAGIC + "', refusing to truncate it" ) ;
+    }
+    final JournalRecordFormat recordFormat = JournalRecordFormat.fromHeaderLine( headerLine ) ;
+    try( final RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" ) ) {
+      final FileChannel fileChannel = randomAccessFile.getChannel() ;
+      final long fileLength = fileChannel.size() ;
+      final byte[] lineBreakBytes = lineBreak.asByteArray() ;
+      final long endOfHeader = headerLine.length() + lineBreakBytes.length ;
+      if( endOfHeader > fileLength || ! matches(
+          fileChannel.map( FileChannel.MapMode.READ_ONLY, headerLine.length(),
+              lineBreakBytes.length ),
+          0,
+          lineBreakBytes
+      ) ) {
+        throw new IOException( "Header line of '" + file.getAbsolutePath() + "' doesn't end "
+            + "with " + lineBreak + ", refusing to truncate it" ) ;
+      }
+      final long goodLength ;
+      if( recordFormat == JournalRecordFormat.BINARY ) {
+        goodLength = endOfLastGoodRecord( fileChannel, endOfHeader, fileLength ) ;
+        final long nextGoodRecord = nextGoodRecord( fileChannel, goodLength + 1, fileLength ) ;
+        if( nextGoodRecord >= 0 ) {
+          throw new IOException( "Bad record at offset " + goodLength + " of '" +
+              file.getAbsolutePath() + "', followed by a good record at offset " +
+              nextGoodRecord + ", refusing to truncate it" ) ;
+        }
+      } else {
+        goodLength = Math.max(
+            endOfHeader,
+            endOfLastLineBreak( fileChannel, lineBreakBytes, endOfHeader, fileLength )
+        ) ;
+      }
+      final long dropped = fileLength - goodLength ;
+      if( dropped > 0 ) {
+        fileChannel.truncate( goodLength ) ;
+        fileChannel.force( true ) ;
+        LOGGER.warn( "Truncated '" + file.getAbsolutePath() + "' from " + fileLength +
+            " to " + goodLength + " bytes, dropping a torn tail of " + dropped + " bytes." ) ;
+      } else {
+        LOGGER.debug( "No torn tail in '" + file.getAbsolutePath() + "'." ) ;
+      }
+      return dropped ;
+    }
+  }
+
+  /**
+   * Searches backward, from the end.
+   *
+   * @return the offset after the last complete line break in {@code [ start, end [},
+   *     or -1 if there is none.
+   */
+  private static long endOfLastLineBreak(
+      final FileChannel fileChannel,
+      final byte[] lineBreak,
+      final long start,
+      final long end
+  ) throws IOException {
+    long windowEnd = end ;
+    while( windowEnd > start ) {
+      /** Overlap windows so a line break can't span over two of them. */
+      final long windowStart = Math.max(
+          start, windowEnd - FileSlicer.DEFAULT_CHUNK_MAXIMUM_LENGTH ) ;
+      final MappedByteBuffer window = fileChannel.map(
+          FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart ) ;
+      for( int i = ( int ) ( windowEnd - windowStart ) - lineBreak.length ; i >= 0 ; i -- ) {
+        if( matches( window, i, lineBreak ) ) {
+          return windowStart + i + lineBreak.length ;
+        }
+      }
+      if( windowStart == start ) {
+        break ;
+      }
+      windowEnd = windowStart + lineBreak.length - 1 ;
+    }
+    return -1 ;
+  }
+
+  private static boolean matches(
+      final ByteBuffer byteBuffer,
+      final int index,
+      final byte[] expected
+  ) {
+    for( int i = 0 ; i < expected.length ; i ++ ) {
+      if( byteBuffer.get( index + i ) != expected[ i ] ) {
+        return false ;
+      }
+    }
+    return true ;
+  }
+
+  /**
+   * Walks through records, mapping windows of the file as needed.
+   * {@link TailingJournalFileReader} also uses it to find where complete records end.
+   *
+   * @return the offset after the last record that is complete and consistent.
+   */
+  static long endOfLastGoodRecord(
+      final FileChannel fileChannel,
+      final long firstRecordStart,
+      final long fileLength
+  ) throws IOException {
+    final int windowMaximumLength = FileSlicer.DEFAULT_CHUNK_MAXIMUM_LENGTH ;
+    checkArgument( windowMaximumLength > RecordSlicer.RECORD_HEADER_LENGTH ) ;
+    long position = firstRecordStart ;
+    MappedByteBuffer window = null ;
+    long windowStart = -1 ;
+    while( true ) {
+      if( fileLength - position < RecordSlicer.RECORD_HEADER_LENGTH ) {
+        return position ;
+      }
+      if( window == null ||
+          position + RecordSlicer.RECORD_HEADER_LENGTH > windowStart + window.capacity()
+      ) {
+        windowStart = position ;
+        window = fileChannel.map( FileChannel.MapMode.READ_ONLY, windowStart,
+            Math.min( windowMaximumLength, fileLength - windowStart ) ) ;
+      }
+      final int payloadLength = window.getInt( ( int ) ( position - windowStart ) ) ;
+      final int expectedCrc = window.getInt( ( int ) ( position - windowStart ) + 4 ) ;
+      final long recordLength = RecordSlicer.RECORD_HEADER_LENGTH + ( long ) payloadLength ;
+      if( payloadLength <= 0 ||
+          recordLength > windowMaximumLength ||
+          position + recordLength > fileLength
+      ) {
+        return position ;
+      }
+      if( position + recordLength > windowStart + window.capacity() ) {
+        windowStart = position ;
+        window = fileChannel.map( FileChannel.MapMode.READ_ONLY, windowStart,
+            Math.min( windowMaximumLength, fileLength - windowStart ) ) ;
+      }
+      final ByteBuffer payload = window.duplicate() ;
+      final int payloadStart =
+          ( int ) ( position - windowStart ) + RecordSlicer.RECORD_HEADER_LENGTH ;
+      payload.limit( payloadStart + payloadLength ) ;
+      payload.position( payloadStart ) ;
+      if( CRC32C.hashBytes( payload ).asInt() != expectedCrc ) {
+        return position ;
+      }
+      position += recordLength ;
+    }
+  }
+
+  /**
+   * Searches for a record that is complete and consistent, trying every offset because
+   * nothing tells where a record starts after a bad one. A false positive requires some
+   * garbage to match its own CRC, which is unlikely enough.
+   * {@link TailingJournalFileReader} also uses it to tell a bad record from an incomplete one.
+   *
+   * @return the offset of the first good record in {@code [ start, fileLength [}, or -1 if
+   *     there is none.
+   */
+  static long nextGoodRecord(
+      final FileChannel fileChannel,
+      final long start,
+      final long fileLength
+  ) throws IOException {
+    final int windowMaximumLength = FileSlicer.DEFAULT_CHUNK_MAXIMUM_LENGTH ;
+    MappedByteBuffer window = null ;
+    long windowStart = -1 ;
+    for( long position = start ;
+         fileLength - position >= RecordSlicer.RECORD_HEADER_LENGTH ;
+         position ++
+    ) {
+      /** Twice the maximum record length, so we remap only once every maximum length. */
+      if( window == null || (
+          position + windowMaximumLength > windowStart + window.capacity() &&
+          windowStart + window.capacity() < fileLength
+      ) ) {
+        windowStart = position ;
+        window = fileChannel.map( FileChannel.MapMode.READ_ONLY, windowStart,
+            Math.min( 2L * windowMaximumLength, fileLength - windowStart ) ) ;
+      }
+      if( isGoodRecord( window, ( int ) ( position - windowStart ), windowMaximumLength ) ) {
+        return position ;
+      }
+    }
+    return -1 ;
+  }
+
+  private static boolean isGoodRecord(
+      final ByteBuffer window,
+      final int recordStart,
+      final int recordMaximumLength
+  ) {
+    final int payloadLength = window.getInt( recordStart ) ;
+    final long recordLength = RecordSlicer.RECORD_HEADER_LENGTH + ( long ) payloadLength ;
+    if( payloadLength <= 0 ||
+        recordLength > recordMaximumLength ||
+        recordStart + recordLength > window.capacity()
+    ) {
+      return false ;
+    }
+    final ByteBuffer payload = window.duplicate() ;
+    final int payloadStart = recordStart + RecordSlicer.RECORD_HEADER_LENGTH ;
+    payload.limit( payloadStart + payloadLength ) ;
+    payload.position( payloadStart ) ;
+    return CRC32C.hashBytes( payload ).asInt() == window.getInt( recordStart + 4 ) ;
+  }
+}
@@ -27,7 +27,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * Wraps the {@code MappedByteBuffer} and create {@link Slice} instances that represent
  * small read-only views on it.
  */
-class FileChunk {
+public class FileChunk {
 
   private static final Logger LOGGER = LoggerFactory.getLogger( FileChunk.class ) ;
 
@@ -210,6 +210,18 @@ class FileChunk {
     return chunkBuffer.readableBytes() ;
   }
 
+  public byte getByte( final int indexInChunk ) {
+    return chunkBuffer.getByte( indexInChunk ) ;
+  }
+
+  public int getInt( final int indexInChunk ) {
+    return chunkBuffer.getInt( indexInChunk ) ;
+  }
+
+  public ByteBuffer nioBuffer( final int indexInChunk, final int length ) {
+    return chunkBuffer.nioBuffer( indexInChunk, length ) ;
+  }
+
   private static class Status {
 
     private final boolean chunkInUse ;
@@ -0,0 +1,220 @@
+package com.otcdlink.chiron.flow.journal.slicer;
+
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A range of bytes in a file, starting at the beginning of a line and ending after a
+ * delimiter (or at the end of the file), so a {@link FileSlicer} can read it independently
+ * from other {@link FileRegion}s.
+ * <p>
+ * {@link #split(File, byte[], int, Executor)} finds region boundaries by searching for the
+ * first delimiter after evenly-spaced offsets, then counts delimiters in each
+ * {@link FileRegion} in parallel so each {@link FileRegion} knows the
+ * {@link Slice#lineIndexInFile()} of its first line. Counting is a plain scan of mapped memory,
+ * much cheaper than decoding lines, so the overall cost is dominated by what happens
+ * with the {@link Slice}s.
+ */
+public final class FileRegion {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( FileRegion.class ) ;
+
+  /**
+   * Offset of the first byte of the first line.
+   */
+  public final long startOffset ;
+
+  /**
+   * Offset of the byte after the last one of the region.
+   */
+  public final long endOffset ;
+
+  /**
+   * The {@link Slice#lineIndexInFile()} of the first line.
+   */
+  public final int startLineIndex ;
+
+  public FileRegion( final long startOffset, final long endOffset, final int startLineIndex ) {
+    checkArgument( startOffset >= 0 ) ;
+    checkArgument( endOffset >= startOffset ) ;
+    checkArgument( startLineIndex >= 0 ) ;
+    this.startOffset = startOffset ;
+    this.endOffset = endOffset ;
+    this.startLineIndex = startLineIndex ;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + '{' +
+        "[" + startOffset + ", " + endOffset + "[;" +
+        "startLineIndex=" + startLineIndex +
+        '}'
+    ;
+  }
+
+  /**
+   * @param regionCount maximum number of {@link FileRegion}s, there can be less of them
+   *     with a small file or very long lines.
+   * @param executor runs delimiter counting, one task per {@link FileRegion}. This method
+   *     blocks until every task completes.
+   * @return a list containing at least one {@link FileRegion}, ordered by offset.
+   */
+  public static ImmutableList< FileRegion > split(
+      final File file,
+      final byte[] delimiter,
+      final int regionCount,
+      final Executor executor
+  ) throws IOException {
+    checkArgument( regionCount > 0 ) ;
+    checkArgument( delimiter.length > 0 ) ;
+    try( final RandomAccessFile randomAccessFile = new RandomAccessFile( file, "r" ) ) {
+      final FileChannel fileChannel = randomAccessFile.getChannel() ;
+      final long fileLength = fileChannel.size() ;
+
+      final List< Long > boundaries = new ArrayList<>( regionCount + 1 ) ;
+      boundaries.add( 0L ) ;
+      for( int i = 1 ; i < regionCount ; i ++ ) {
+        final long previous = boundaries.get( boundaries.size() - 1 ) ;
+        final long target = Math.max( previous, fileLength * i / regionCount ) ;
+        final long boundary = endOfNextDelimiter( fileChannel, delimiter, target, fileLength ) ;
+        if( boundary > previous && boundary < fileLength ) {
+          boundaries.add( boundary ) ;
+        }
+      }
+      boundaries.add( fileLength ) ;
+
+      final List< CompletableFuture< Long > > counts = new ArrayList<>( boundaries.size() ) ;
+      for( int i = 0 ; i < boundaries.size() - 2 ; i ++ ) {
+        final long start = boundaries.get( i ) ;
+        final long end = boundaries.get( i + 1 ) ;
+        counts.add( CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return countDelimiters( fileChannel, delimiter, start, end ) ;
+              } catch( final IOException e ) {
+                throw new UncheckedIOException( e ) ;
+              }
+            },
+            executor
+        ) ) ;
+      }
+
+      final ImmutableList.Builder< FileRegion > builder = ImmutableList.builder() ;
+      long lineIndex = 0 ;
+      for( int i = 0 ; i < boundaries.size() - 1 ; i ++ ) {
+        checkArgument( lineIndex <= Integer.MAX_VALUE, "Too many lines in " + file ) ;
+        builder.add( new FileRegion(
+            boundaries.get( i ), boundaries.get( i + 1 ), ( int ) lineIndex ) ) ;
+        if( i < counts.size() ) {
+          try {
+            lineIndex += counts.get( i ).join() ;
+          } catch( final RuntimeException e ) {
+            if( e.getCause() instanceof UncheckedIOException ) {
+              throw ( ( UncheckedIOException ) e.getCause() ).getCause() ;
+            }
+            throw e ;
+          }
+        }
+      }
+      final ImmutableList< FileRegion > regions = builder.build() ;
+      LOGGER.debug( "Split '" + file.getAbsolutePath() + "' into " + regions + "." ) ;
+      return regions ;
+    }
+  }
+
+  /**
+   * @return the offset of the byte after the first complete delimiter found from
+   *     {@code start}, or {@code fileLength} if there is none.
+   */
+  private static long endOfNextDelimiter(
+      final FileChannel fileChannel,
+      final byte[] delimiter,
+      final long start,
+      final long fileLength
+  ) throws IOException {
+    final DelimiterMatcher matcher = new DelimiterMatcher( delimiter ) ;
+    long position = start ;
+    while( position < fileLength ) {
+      final int length = ( int ) Math.min(
+          FileSlicer.DEFAULT_CHUNK_MAXIMUM_LENGTH, fileLength - position ) ;
+      final MappedByteBuffer buffer =
+          fileChannel.map( FileChannel.MapMode.READ_ONLY, position, length ) ;
+      for( int i = 0 ; i < length ; i ++ ) {
+        if( matcher.matchComplete( buffer.get( i ) ) ) {
+          return position + i + 1 ;
+        }
+      }
+      position += length ;
+    }
+    return fileLength ;
+  }
+
+  private static long countDelimiters(
+      final FileChannel fileChannel,
+      final byte[] delimiter,
+      final long start,
+      final long end
+  ) throws IOException {
+    final DelimiterMatcher matcher = new DelimiterMatcher( delimiter ) ;
+    long count = 0 ;
+    long position = start ;
+    while( position < end ) {
+      final int length = ( int ) Math.min(
+          FileSlicer.DEFAULT_CHUNK_MAXIMUM_LENGTH, end - position ) ;
+      final MappedByteBuffer buffer =
+          fileChannel.map( FileChannel.MapMode.READ_ONLY, position, length ) ;
+      for( int i = 0 ; i < length ; i ++ ) {
+        if( matcher.matchComplete( buffer.get( i ) ) ) {
+          count ++ ;
+        }
+      }
+      position += length ;
+    }
+    return count ;
+  }
+
+  /**
+   * Keeps state across calls so a delimiter can span over two mapped buffers.
+   * Assumes that no proper prefix of the delimiter is also a suffix of it, which is true
+   * for line breaks.
+   */
+  private static final class DelimiterMatcher {
+    private final byte[] delimiter ;
+    private int matched = 0 ;
+
+    DelimiterMatcher( final byte[] delimiter ) {
+      this.delimiter = delimiter ;
+    }
+
+    boolean matchComplete( final byte b ) {
+      if( b == delimiter[ matched ] ) {
+        matched ++ ;
+        if( matched == delimiter.length ) {
+          matched = 0 ;
+          return true ;
+        }
+      } else {
+        matched = b == delimiter[ 0 ] ? 1 : 0 ;
+        if( matched == delimiter.length ) {
+          matched = 0 ;
+          return true ;
+        }
+      }
+      return false ;
+    }
+  }
+}
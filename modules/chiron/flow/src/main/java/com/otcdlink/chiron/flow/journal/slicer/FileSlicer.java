@@ -184,7 +184,6 @@ public class FileSlicer implements Iterable< Slice > {
 
   private final File file ;
   private final FileChannel fileChannel ;
-  private final long fileLength ;
   private final byte[] delimiter ;
   private final int delimiterLastIndex ;
   private final int chunkMaximumLength ;
@@ -192,6 +191,22 @@ public class FileSlicer implements Iterable< Slice > {
 
   private final int sliceMaximumLength ;
 
+  /**
+   * Where the first {@link Slice} starts, must be the start of a line.
+   */
+  private final long startOffset ;
+
+  /**
+   * The {@link Slice#lineIndexInFile()} of the first {@link Slice}.
+   */
+  private final int startSliceIndex ;
+
+  /**
+   * Offset of the byte after the last one to read, equals to file length unless reading
+   * a {@link FileRegion}.
+   */
+  private final long endOffset ;
+
   public FileSlicer(
       final File file,
       final byte[] delimiter,
@@ -199,9 +214,103 @@ public class FileSlicer implements Iterable< Slice > {
       final int sliceMaximumLength,
       final int probableSliceCount
   ) throws FileNotFoundException {
+    this( file, delimiter, chunkMaximumLength, sliceMaximumLength, probableSliceCount, 0, 0 ) ;
+  }
+
+  /**
+   * Starts reading in the middle of the file, so there is no need to read lines before.
+   * Caller is responsible for passing the offset of the first byte of a line, typically
+   * obtained from a {@code JournalIndex}.
+   *
+   * @param startOffset the offset in the file of the first byte of first {@link Slice}.
+   * @param startSliceIndex the {@link Slice#lineIndexInFile()} of the first {@link Slice}.
+   */
+  public FileSlicer(
+      final File file,
+      final byte[] delimiter,
+      final int chunkMaximumLength,
+      final int sliceMaximumLength,
+      final int probableSliceCount,
+      final long startOffset,
+      final int startSliceIndex
+  ) throws FileNotFoundException {
+    this(
+        file,
+        openChannel( file ),
+        delimiter,
+        chunkMaximumLength,
+        sliceMaximumLength,
+        probableSliceCount,
+        startOffset,
+        startSliceIndex,
+        file.length()
+    ) ;
+  }
+
+  /**
+   * Reads only the lines of given {@link FileRegion}, so multiple {@link FileSlicer}s can read
+   * the same file in parallel.
+   */
+  public FileSlicer(
+      final File file,
+      final byte[] delimiter,
+      final int chunkMaximumLength,
+      final int sliceMaximumLength,
+      final int probableSliceCount,
+      final FileRegion fileRegion
+  ) throws FileNotFoundException {
+    this(
+        file,
+        openChannel( file ),
+        delimiter,
+        chunkMaximumLength,
+        sliceMaximumLength,
+        probableSliceCount,
+        fileRegion
+    ) ;
+  }
+
+  /**
+   * Like {@link #FileSlicer(File, byte[], int, int, int, FileRegion)} but reuses given
+   * {@link FileChannel}, so a caller creating lots of {@link FileSlicer}s for the same file
+   * doesn't open it each time. Caller is responsible for closing the {@link FileChannel}.
+   */
+  public FileSlicer(
+      final File file,
+      final FileChannel fileChannel,
+      final byte[] delimiter,
+      final int chunkMaximumLength,
+      final int sliceMaximumLength,
+      final int probableSliceCount,
+      final FileRegion fileRegion
+  ) {
+    this(
+        file,
+        fileChannel,
+        delimiter,
+        chunkMaximumLength,
+        sliceMaximumLength,
+        probableSliceCount,
+        fileRegion.startOffset,
+        fileRegion.startLineIndex,
+        fileRegion.endOffset
+    ) ;
+  }
+
+  private FileSlicer(
+      final File file,
+      final FileChannel fileChannel,
+      final byte[] delimiter,
+      final int chunkMaximumLength,
+      final int sliceMaximumLength,
+      final int probableSliceCount,
+      final long startOffset,
+      final int startSliceIndex,
+      final long endOffset
+  ) {
     this.file = checkNotNull( file ) ;
-    this.fileChannel = new RandomAccessFile( file, "r" ).getChannel() ;
-    this.fileLength = file.length() ;
+    this.fileChannel = checkNotNull( fileChannel ) ;
+    final long fileLength = file.length() ;
     checkArgument( delimiter.length > 0 ) ;
     this.delimiterLastIndex = delimiter.length - 1 ;
     this.delimiter = Arrays.copyOf( delimiter, delimiter.length ) ;
@@ -221,6 +330,18 @@ public class FileSlicer implements Iterable< Slice > {
     checkArgument( probableSliceCount >= 0 ) ;
     this.probableSliceCount = probableSliceCount ;
 
+    checkArgument( startOffset >= 0 && startOffset <= fileLength,
+        "Start offset " + startOffset + " out of [ 0, " + fileLength + " ]" ) ;
+    this.startOffset = startOffset ;
+    checkArgument( startSliceIndex >= 0 ) ;
+    this.startSliceIndex = startSliceIndex ;
+    checkArgument( endOffset >= startOffset && endOffset <= fileLength,
+        "End offset " + endOffset + " out of [ " + startOffset + ", " + fileLength + " ]" ) ;
+    this.endOffset = endOffset ;
+  }
+
+  private static FileChannel openChannel( final File file ) throws FileNotFoundException {
+    return new RandomAccessFile( file, "r" ).getChannel() ;
   }
 
   @Override
@@ -264,7 +385,7 @@ public class FileSlicer implements Iterable< Slice > {
   @Override
   public Iterator<Slice> iterator() {
 
-    if( fileLength == 0 ) {
+    if( endOffset == startOffset ) {
       return ImmutableList.<Slice>of().iterator() ;
     } else {
       return new SliceIterator() ;
@@ -277,9 +398,10 @@ public class FileSlicer implements Iterable< Slice > {
   private class SliceIterator extends AbstractIterator<Slice> {
 
     /**
-     * The last byte processed by {@link #byteProcessor} or -1 before first processing.
+     * The last byte processed by {@link #byteProcessor} or {@link #startOffset} - 1 before
+     * first processing.
      */
-    private long positionOfLastByteReadInFile = -1 ;
+    private long positionOfLastByteReadInFile = startOffset - 1 ;
 
     /**
      * Offset of the first byte in {@link FileChunk}'s {@link ByteBuf} to become a
@@ -299,12 +421,12 @@ public class FileSlicer implements Iterable< Slice > {
     /**
      * For debug.
      */
-    private int sliceIndexInFile = 0 ;
+    private int sliceIndexInFile = startSliceIndex ;
 
     /**
      * Like {@link #sliceStartInChunk} but offset is file-based.
      */
-    private long lastSliceStartInFile = 0 ;
+    private long lastSliceStartInFile = startOffset ;
 
     /**
      * Offset of the last byte to consumed by {@link #byteProcessor}, relative to
@@ -331,14 +453,14 @@ public class FileSlicer implements Iterable< Slice > {
         try {
           final long positionOfFirstByteToReadInFile = positionOfLastByteReadInFile + 1 ;
           if( fileChunk == null ) {
-            if( positionOfFirstByteToReadInFile == fileLength ) {
+            if( positionOfFirstByteToReadInFile == endOffset ) {
               /** This can happen after hitting last {@link Slice} (with no {@link #delimiter
                * after it), or with a zero-length file. */
               endOfData() ;
               return null ;
             } else {
               final long chunkLength = Math.min(
-                  chunkMaximumLength, fileLength - positionOfFirstByteToReadInFile ) ;
+                  chunkMaximumLength, endOffset - positionOfFirstByteToReadInFile ) ;
               fileChunk = newFileChunk( positionOfFirstByteToReadInFile, chunkLength ) ;
               lastByteReadInChunk = -1 ;
               sliceStartInChunk = 0 ;
@@ -367,7 +489,7 @@ public class FileSlicer implements Iterable< Slice > {
             sliceStartInChunk = sliceEndInChunk + delimiter.length + 1 ;
             return iteratorNextResult ;
           } else {
-            if( positionOfLastByteReadInFile == fileLength - 1 ) {
+            if( positionOfLastByteReadInFile == endOffset - 1 ) {
               /** No {@link #delimiter} but end of file. */
               if( sliceEndInChunk >= 0 ) {
                 iteratorNextResult = fileChunk.newSlice(
@@ -0,0 +1,283 @@
+package com.otcdlink.chiron.flow.journal.slicer;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.otcdlink.chiron.codec.DecodeException;
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads a file made of a header line followed by length-prefixed records, yielding one
+ * {@link Slice} for the header line, and one {@link Slice} for the payload of each record.
+ * <p>
+ * Record layout (big-endian):
+ * <pre>
+ * +----------------+--------------------+------------------------+
+ * | payload length | CRC32C of payload  | payload                |
+ * | (4 bytes)      | (4 bytes)          | (payload length bytes) |
+ * +----------------+--------------------+------------------------+
+ * </pre>
+ * Unlike {@link FileSlicer} there is no need to look at every byte to find a delimiter:
+ * the length prefix tells where next record starts. Reading the payload once for the CRC
+ * is still needed, but it is a tight loop without any branching about delimiters.
+ * <p>
+ * A CRC mismatch or a truncated record cause a {@link DecodeException} (wrapped into a
+ * {@code RuntimeException}, as {@link Iterator} doesn't support checked exceptions).
+ */
+public class RecordSlicer implements Iterable< Slice > {
+
+  @SuppressWarnings( "unused" )
+  private static final Logger LOGGER = LoggerFactory.getLogger( RecordSlicer.class ) ;
+
+  public static final int RECORD_HEADER_LENGTH = 8 ;
+
+  private static final HashFunction CRC32C = Hashing.crc32c() ;
+
+  /**
+   * Computes the CRC32C to write in record header.
+   */
+  public static int crc32c( final ByteBuf byteBuf, final int index, final int length ) {
+    return CRC32C.hashBytes( byteBuf.nioBuffer( index, length ) ).asInt() ;
+  }
+
+  /**
+   * Writes record header in the {@link #RECORD_HEADER_LENGTH} bytes starting at
+   * {@code recordStart}, payload being what lies between the end of record header and
+   * {@link ByteBuf#writerIndex()}.
+   */
+  public static void completeRecordHeader( final ByteBuf byteBuf, final int recordStart ) {
+    final int payloadStart = recordStart + RECORD_HEADER_LENGTH ;
+    final int payloadLength = byteBuf.writerIndex() - payloadStart ;
+    checkArgument( payloadLength >= 0 ) ;
+    byteBuf.setInt( recordStart, payloadLength ) ;
+    byteBuf.setInt( recordStart + 4, crc32c( byteBuf, payloadStart, payloadLength ) ) ;
+  }
+
+  private final File file ;
+  private final FileChannel fileChannel ;
+
+  /**
+   * Offset of the byte after the last record to read, file length unless told otherwise.
+   */
+  private final long endOffset ;
+  private final byte[] headerDelimiter ;
+  private final int chunkMaximumLength ;
+  private final int probableSliceCount ;
+  private final long startOffset ;
+  private final int startSliceIndex ;
+
+  /**
+   * @param headerDelimiter the line break after the header line.
+   * @param chunkMaximumLength the maximum length of a record, including its header.
+   */
+  public RecordSlicer(
+      final File file,
+      final byte[] headerDelimiter,
+      final int chunkMaximumLength,
+      final int probableSliceCount
+  ) throws FileNotFoundException {
+    this( file, headerDelimiter, chunkMaximumLength, probableSliceCount, 0, 0 ) ;
+  }
+
+  /**
+   * @param startOffset the offset of the first byte of a record, or 0 for reading
+   *     the header line.
+   * @param startSliceIndex the {@link Slice#lineIndexInFile()} of the first {@link Slice}.
+   */
+  public RecordSlicer(
+      final File file,
+      final byte[] headerDelimiter,
+      final int chunkMaximumLength,
+      final int probableSliceCount,
+      final long startOffset,
+      final int startSliceIndex
+  ) throws FileNotFoundException {
+    this(
+        file,
+        new RandomAccessFile( file, "r" ).getChannel(),
+        headerDelimiter,
+        chunkMaximumLength,
+        probableSliceCount,
+        startOffset,
+        startSliceIndex,
+        file.length()
+    ) ;
+  }
+
+  /**
+   * Reuses given {@link FileChannel}, so a caller creating lots of {@link RecordSlicer}s
+   * for the same file doesn't open it each time. Caller is responsible for closing the
+   * {@link FileChannel}.
+   *
+   * @param endOffset the offset of the byte after the last record to read, which must
+   *     be complete.
+   */
+  public RecordSlicer(
+      final File file,
+      final FileChannel fileChannel,
+      final byte[] headerDelimiter,
+      final int chunkMaximumLength,
+      final int probableSliceCount,
+      final long startOffset,
+      final int startSliceIndex,
+      final long endOffset
+  ) {
+    this.file = checkNotNull( file ) ;
+    this.fileChannel = checkNotNull( fileChannel ) ;
+    checkArgument( endOffset >= 0 && endOffset <= file.length(),
+        "End offset " + endOffset + " out of [ 0, " + file.length() + " ]" ) ;
+    this.endOffset = endOffset ;
+    checkArgument( headerDelimiter.length > 0 ) ;
+    this.headerDelimiter = Arrays.copyOf( headerDelimiter, headerDelimiter.length ) ;
+    checkArgument( chunkMaximumLength > RECORD_HEADER_LENGTH ) ;
+    this.chunkMaximumLength = chunkMaximumLength ;
+    checkArgument( probableSliceCount >= 0 ) ;
+    this.probableSliceCount = probableSliceCount ;
+    checkArgument( startOffset >= 0 && startOffset <= endOffset,
+        "Start offset " + startOffset + " out of [ 0, " + endOffset + " ]" ) ;
+    this.startOffset = startOffset ;
+    checkArgument( startSliceIndex >= 0 ) ;
+    checkArgument( ( startOffset == 0 ) == ( startSliceIndex == 0 ),
+        "Start offset and start slice index should be both 0, or both greater than 0" ) ;
+    this.startSliceIndex = startSliceIndex ;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + '{' + file.getAbsolutePath() + '}' ;
+  }
+
+  @Nonnull
+  @Override
+  public Iterator< Slice > iterator() {
+    if( endOffset == startOffset ) {
+      return ImmutableList.< Slice >of().iterator() ;
+    } else {
+      return new RecordIterator() ;
+    }
+  }
+
+  private class RecordIterator extends AbstractIterator< Slice > {
+
+    /**
+     * Offset in the file of the next record, or of the header line.
+     */
+    private long position = startOffset ;
+
+    private int sliceIndexInFile = startSliceIndex ;
+
+    private FileChunk fileChunk = null ;
+
+    private long chunkStartInFile = -1 ;
+
+    @Override
+    protected Slice computeNext() {
+      try {
+        if( position == endOffset ) {
+          releaseChunk() ;
+          return endOfData() ;
+        }
+        if( sliceIndexInFile == 0 ) {
+          return headerSlice() ;
+        }
+        if( endOffset - position < RECORD_HEADER_LENGTH ) {
+          throw new DecodeException( "Truncated record header at offset " + position +
+              " in '" + file.getAbsolutePath() + "'" ) ;
+        }
+        ensureMapped( RECORD_HEADER_LENGTH ) ;
+        final int recordStartInChunk = ( int ) ( position - chunkStartInFile ) ;
+        final int payloadLength = fileChunk.getInt( recordStartInChunk ) ;
+        final int expectedCrc = fileChunk.getInt( recordStartInChunk + 4 ) ;
+        /** Zero length is what zeroes look like, and a payload can't be empty. */
+        if( payloadLength <= 0 || payloadLength > chunkMaximumLength - RECORD_HEADER_LENGTH ) {
+          throw new DecodeException( "Bad record length " + payloadLength + " at offset " +
+              position + " in '" + file.getAbsolutePath() + "'" ) ;
+        }
+        final int recordLength = RECORD_HEADER_LENGTH + payloadLength ;
+        if( position + recordLength > endOffset ) {
+          throw new DecodeException( "Truncated record at offset " + position + " in '" +
+              file.getAbsolutePath() + "'" ) ;
+        }
+        ensureMapped( recordLength ) ;
+        final int payloadStartInChunk =
+            ( int ) ( position - chunkStartInFile ) + RECORD_HEADER_LENGTH ;
+        final int actualCrc = CRC32C.hashBytes(
+            fileChunk.nioBuffer( payloadStartInChunk, payloadLength ) ).asInt() ;
+        if( actualCrc != expectedCrc ) {
+          throw new DecodeException( "CRC mismatch for record at offset " + position +
+              " in '" + file.getAbsolutePath() + "'" ) ;
+        }
+        final Slice slice = fileChunk.newSlice(
+            sliceIndexInFile ++, payloadStartInChunk, payloadStartInChunk + payloadLength ) ;
+        position += recordLength ;
+        return slice ;
+      } catch( final IOException e ) {
+        throw new RuntimeException( e ) ;
+      }
+    }
+
+    private Slice headerSlice() throws IOException {
+      ensureMapped( ( int ) Math.min( chunkMaximumLength, endOffset - position ) ) ;
+      final int chunkLength = fileChunk.readableBytes() ;
+      for( int i = 0 ; i <= chunkLength - headerDelimiter.length ; i ++ ) {
+        boolean match = true ;
+        for( int j = 0 ; j < headerDelimiter.length ; j ++ ) {
+          if( fileChunk.getByte( i + j ) != headerDelimiter[ j ] ) {
+            match = false ;
+            break ;
+          }
+        }
+        if( match ) {
+          final Slice slice = fileChunk.newSlice( sliceIndexInFile ++, 0, i ) ;
+          position = i + headerDelimiter.length ;
+          return slice ;
+        }
+      }
+      throw new DecodeException( "No header line in '" + file.getAbsolutePath() + "'" ) ;
+    }
+
+    /**
+     * Makes {@link #fileChunk} contain {@code length} bytes starting from {@link #position}.
+     */
+    private void ensureMapped( final int length ) throws IOException {
+      if( fileChunk == null ||
+          position + length > chunkStartInFile + fileChunk.readableBytes()
+      ) {
+        releaseChunk() ;
+        final long chunkLength = Math.min( chunkMaximumLength, endOffset - position ) ;
+        fileChunk = new FileChunk(
+            fileChannel,
+            probableSliceCount,
+            chunkMaximumLength,
+            chunk -> { },
+            position,
+            chunkLength
+        ) ;
+        chunkStartInFile = position ;
+      }
+    }
+
+    private void releaseChunk() {
+      if( fileChunk != null ) {
+        fileChunk.prepareToRecycle() ;
+        fileChunk = null ;
+      }
+    }
+  }
+
+}
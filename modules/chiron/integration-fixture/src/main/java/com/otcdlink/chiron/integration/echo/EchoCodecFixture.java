@@ -1,9 +1,9 @@
 package com.otcdlink.chiron.integration.echo;
 
+import com.google.common.collect.ImmutableMap;
 import com.otcdlink.chiron.buffer.PositionalFieldReader;
 import com.otcdlink.chiron.buffer.PositionalFieldWriter;
-import com.otcdlink.chiron.codec.CommandBodyDecoder;
-import com.otcdlink.chiron.codec.DecodeException;
+import com.otcdlink.chiron.codec.AbstractCommandResolver;
 import com.otcdlink.chiron.command.Command;
 import com.otcdlink.chiron.command.codec.Codec;
 import com.otcdlink.chiron.designator.Designator;
@@ -12,47 +12,33 @@ import java.io.IOException;
 
 public interface EchoCodecFixture {
   
+  /**
+   * Supports numeric {@link com.otcdlink.chiron.middle.tier.CommandDictionary} codes.
+   */
   final class PartialUpendDecoder
-      implements
-      CommandBodyDecoder< Designator, EchoUpwardDuty< Designator > >
+      extends AbstractCommandResolver< Designator, EchoUpwardDuty< Designator > >
   {
-    @Override
-    public
-    Command< Designator, EchoUpwardDuty< Designator > >
-    decodeBody(
-        final Designator endpointSpecific,
-        final String commandName,
-        final PositionalFieldReader positionalFieldReader
-    ) throws DecodeException {
-      if( UpwardEchoCommand.NAME.equals( commandName ) ) {
-        return new UpwardEchoCommand<>(
-            endpointSpecific, positionalFieldReader.readDelimitedString() ) ;
-      } else {
-        return null ;
-      }
+    public PartialUpendDecoder() {
+      super( ImmutableMap.of(
+          UpwardEchoCommand.NAME,
+          ( endpointSpecific, reader ) -> new UpwardEchoCommand<>(
+              ( Designator ) endpointSpecific, reader.readDelimitedString() )
+      ) ) ;
     }
   }
+
+  /**
+   * Supports numeric {@link com.otcdlink.chiron.middle.tier.CommandDictionary} codes.
+   */
   final class PartialDownendDecoder< ENDPOINT_SPECIFIC >
-      implements
-      CommandBodyDecoder<
-                ENDPOINT_SPECIFIC,
-                EchoDownwardDuty< ENDPOINT_SPECIFIC >
-            >
+      extends AbstractCommandResolver< ENDPOINT_SPECIFIC, EchoDownwardDuty< ENDPOINT_SPECIFIC > >
   {
-    @Override
-    public
-    Command< ENDPOINT_SPECIFIC, EchoDownwardDuty< ENDPOINT_SPECIFIC > >
-    decodeBody(
-        final ENDPOINT_SPECIFIC endpointSpecific,
-        final String commandName,
-        final PositionalFieldReader positionalFieldReader
-    ) throws DecodeException {
-      if( DownwardEchoCommand.NAME.equals( commandName ) ) {
-        return new DownwardEchoCommand<>(
-            endpointSpecific, positionalFieldReader.readDelimitedString() ) ;
-      } else {
-        return null ;
-      }
+    public PartialDownendDecoder() {
+      super( ImmutableMap.of(
+          DownwardEchoCommand.NAME,
+          ( endpointSpecific, reader ) -> new DownwardEchoCommand<>(
+              endpointSpecific, reader.readDelimitedString() )
+      ) ) ;
     }
   }
 
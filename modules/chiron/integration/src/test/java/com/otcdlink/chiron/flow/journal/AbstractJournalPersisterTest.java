@@ -2,15 +2,19 @@ package com.otcdlink.chiron.flow.journal;
 
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.otcdlink.chiron.buffer.PositionalFieldWriter;
 import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.RecyclableCommand;
 import com.otcdlink.chiron.designator.Designator;
 import com.otcdlink.chiron.designator.DesignatorForger;
 import com.otcdlink.chiron.fixture.CatcherFixture;
+import com.otcdlink.chiron.fixture.RecyclableCommandLeakDetectorRule;
 import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
 import com.otcdlink.chiron.integration.echo.UpwardEchoCommand;
 import com.otcdlink.chiron.middle.session.SessionIdentifier;
 import com.otcdlink.chiron.testing.MethodSupport;
 import com.otcdlink.chiron.toolbox.text.LineBreak;
+import io.netty.util.Recycler;
 import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
@@ -53,6 +57,21 @@ public abstract class AbstractJournalPersisterTest {
     assertThat( wholeFileAsString ).contains( " " + ( commandCount - 1 ) + "__" ) ;
   }
 
+  /**
+   * The persister only borrows a {@link RecyclableCommand}, the next consumer releases it.
+   */
+  @Test
+  public void leaveRecyclableCommandToNextConsumer() throws Exception {
+    final PersisterKit persisterKit = newPersisterKit() ;
+    final RecyclableEchoCommand command = RecyclableEchoCommand.newInstance(
+        DESIGNATOR_FORGER.counter( 1 ).upward(), "1__Hello" ) ;
+    persisterKit.writeSequence( command ) ;
+    assertThat( command.refCnt() ).isEqualTo( 1 ) ;
+    assertThat( command.release() ).isTrue() ;
+
+    assertThat( persisterKit.loadActualFile() ).contains( " echo 1__Hello " ) ;
+  }
+
   @Test
   @Ignore( "Takes too long and asserts nothing" )
   public void evenMoreWrites() throws Exception {
@@ -91,6 +110,10 @@ public abstract class AbstractJournalPersisterTest {
   @Rule
   public final MethodSupport methodSupport = new MethodSupport() ;
 
+  @Rule
+  public final RecyclableCommandLeakDetectorRule recyclableCommandLeakDetectorRule =
+      new RecyclableCommandLeakDetectorRule() ;
+
   protected abstract PersisterKit newPersisterKit() ;
 
   protected abstract class PersisterKit {
@@ -191,5 +214,54 @@ public abstract class AbstractJournalPersisterTest {
 
   private static final String COMMAND = Command.class.getSimpleName() ;
 
+  @Command.Description( name = UpwardEchoCommand.NAME )
+  private static final class RecyclableEchoCommand
+      extends RecyclableCommand< Designator, EchoUpwardDuty< Designator > >
+  {
+    private static final Recycler< RecyclableEchoCommand > RECYCLER =
+        new Recycler< RecyclableEchoCommand >() {
+          @Override
+          protected RecyclableEchoCommand newObject(
+              final Handle< RecyclableEchoCommand > handle
+          ) {
+            return new RecyclableEchoCommand( handle ) ;
+          }
+        }
+    ;
+
+    public static RecyclableEchoCommand newInstance(
+        final Designator designator,
+        final String message
+    ) {
+      final RecyclableEchoCommand command = RECYCLER.get() ;
+      command.reuse( designator ) ;
+      command.message = message ;
+      return command ;
+    }
+
+    private String message ;
+
+    private RecyclableEchoCommand( final Recycler.Handle< RecyclableEchoCommand > handle ) {
+      super( handle, true ) ;
+    }
+
+    @Override
+    protected void clear() {
+      message = null ;
+    }
+
+    @Override
+    public void callReceiver( final EchoUpwardDuty< Designator > callableReceiver ) {
+      callableReceiver.requestEcho( endpointSpecific, message ) ;
+    }
+
+    @Override
+    public void encodeBody( final PositionalFieldWriter positionalFieldWriter )
+        throws IOException
+    {
+      positionalFieldWriter.writeDelimitedString( message ) ;
+    }
+  }
+
 
 }
\ No newline at end of file
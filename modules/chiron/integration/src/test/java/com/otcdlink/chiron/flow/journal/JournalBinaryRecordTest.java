@@ -0,0 +1,214 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.otcdlink.chiron.codec.DecodeException;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.designator.DesignatorForger;
+import com.otcdlink.chiron.flow.journal.slicer.Slice;
+import com.otcdlink.chiron.integration.echo.EchoCodecFixture;
+import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
+import com.otcdlink.chiron.integration.echo.UpwardEchoCommand;
+import com.otcdlink.chiron.middle.session.SessionIdentifier;
+import com.otcdlink.chiron.testing.MethodSupport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
+
+public class JournalBinaryRecordTest {
+
+  @Test
+  public void writeAndRead() throws Exception {
+    writeJournal( 3, null ) ;
+    assertThat( JournalRecordFormat.detect( journalFile() ) )
+        .isEqualTo( JournalRecordFormat.BINARY ) ;
+    assertThat( messages( newJournalReader().sliceIterable() ) )
+        .containsExactly( "0__Hello", "1__Hello", "2__Hello" ) ;
+  }
+
+  @Test
+  public void readFromStamp() throws Exception {
+    writeJournal( 10, 3 ) ;
+    final JournalFileReader< Designator, EchoUpwardDuty< Designator > > journalReader =
+        newJournalReader() ;
+    assertThat( messages(
+        journalReader.sliceIterableFrom( command( 7 ).endpointSpecific.stamp ) ) )
+        .containsExactly( "6__Hello", "7__Hello", "8__Hello", "9__Hello" ) ;
+  }
+
+  @Test
+  public void detectCorruption() throws Exception {
+    writeJournal( 3, null ) ;
+    try( final RandomAccessFile randomAccessFile =
+             new RandomAccessFile( journalFile(), "rw" ) ) {
+      final long offset = randomAccessFile.length() - 3 ;
+      randomAccessFile.seek( offset ) ;
+      final int original = randomAccessFile.read() ;
+      randomAccessFile.seek( offset ) ;
+      randomAccessFile.write( original ^ 0xFF ) ;
+    }
+    try {
+      messages( newJournalReader().sliceIterable() ) ;
+      fail( "Should have thrown an exception" ) ;
+    } catch( final RuntimeException e ) {
+      LOGGER.info( "Caught " + e + " as expected." ) ;
+      assertThat( e.getCause() ).isInstanceOf( DecodeException.class ) ;
+      assertThat( e.getCause().getMessage() ).contains( "CRC mismatch" ) ;
+    }
+  }
+
+  @Test
+  public void truncateTornTailOnRecovery() throws Exception {
+    writeJournal( 3, null ) ;
+    final long fullLength = journalFile().length() ;
+    try( final RandomAccessFile randomAccessFile =
+             new RandomAccessFile( journalFile(), "rw" ) ) {
+      randomAccessFile.setLength( fullLength - 5 ) ;
+    }
+    final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        new RecoveringJournalFileReader<>(
+            journalFile(),
+            new File( methodSupport.getDirectory(), "my.recovery" ),
+            new File( methodSupport.getDirectory(), "my.recovered" ),
+            new FileDesignatorCodecTools.InwardDesignatorDecoder(),
+            new EchoCodecFixture.PartialUpendDecoder(),
+            0,
+            true
+        )
+    ;
+    reader.resolveRecoveryFile() ;
+    assertThat( reader.tornTailLength() ).isGreaterThan( 5 ) ;
+    assertThat( messages( reader.sliceIterable() ) ).containsExactly( "0__Hello", "1__Hello" ) ;
+  }
+
+  @Test
+  public void refuseToTruncateBadRecordInTheMiddle() throws Exception {
+    writeJournal( 3, null ) ;
+    final long fullLength = journalFile().length() ;
+    final long headerLength = JournalRecordFormat.readHeaderLine( journalFile(), true ).length() +
+        IntradayPersistenceConstants.LINE_BREAK.asByteArray().length ;
+    /** Every record has the same length. */
+    final long recordLength = ( fullLength - headerLength ) / 3 ;
+    try( final RandomAccessFile randomAccessFile =
+             new RandomAccessFile( journalFile(), "rw" ) ) {
+      final long offset = headerLength + recordLength + recordLength / 2 ;
+      randomAccessFile.seek( offset ) ;
+      final int original = randomAccessFile.read() ;
+      randomAccessFile.seek( offset ) ;
+      randomAccessFile.write( original ^ 0xFF ) ;
+    }
+    final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        new RecoveringJournalFileReader<>(
+            journalFile(),
+            new File( methodSupport.getDirectory(), "my.recovery" ),
+            new File( methodSupport.getDirectory(), "my.recovered" ),
+            new FileDesignatorCodecTools.InwardDesignatorDecoder(),
+            new EchoCodecFixture.PartialUpendDecoder(),
+            0,
+            true
+        )
+    ;
+    assertThatThrownBy( reader::resolveRecoveryFile )
+        .isInstanceOf( IOException.class )
+        .hasMessageContaining( "Bad record at offset " + ( headerLength + recordLength ) )
+    ;
+    assertThat( new File( methodSupport.getDirectory(), "my.recovery" ).length() )
+        .isEqualTo( fullLength ) ;
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( JournalBinaryRecordTest.class ) ;
+
+  @Rule
+  public final MethodSupport methodSupport = new MethodSupport() ;
+
+  private static final DesignatorForger.CounterStep DESIGNATOR_FORGER = DesignatorForger
+      .newForger().session( new SessionIdentifier( "7he5e5510N" ) ).flooredInstant( 1 ) ;
+
+  private static Command< Designator, EchoUpwardDuty< Designator > > command( final int index ) {
+    return new UpwardEchoCommand<>(
+        DESIGNATOR_FORGER.counter( index ).upward(), index + "__Hello" ) ;
+  }
+
+  private File journalFile() {
+    return new File( methodSupport.getDirectory(), "my.journal" ) ;
+  }
+
+  /**
+   * @param indexInterval {@code null} means no {@link JournalIndex}.
+   */
+  private void writeJournal( final int commandCount, final Integer indexInterval )
+      throws Exception
+  {
+    final JournalFileChannelPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        new JournalFileChannelPersister<>(
+            journalFile(),
+            AbstractJournalPersisterTest.PersisterKit.BUFFER_SIZE,
+            new FileDesignatorCodecTools.InwardDesignatorEncoder(),
+            0,
+            "JustTesting",
+            IntradayPersistenceConstants.LINE_BREAK,
+            null,
+            indexInterval == null ? null : new JournalIndex.Indexer<>(
+                JournalIndex.sidecarFile( journalFile() ),
+                indexInterval,
+                designator -> designator.stamp
+            ),
+            JournalRecordFormat.BINARY
+        )
+    ;
+    persister.open() ;
+    for( int i = 0 ; i < commandCount ; i ++ ) {
+      persister.accept( command( i ) ) ;
+    }
+    persister.close() ;
+  }
+
+  private JournalFileReader< Designator, EchoUpwardDuty< Designator > > newJournalReader()
+      throws Exception
+  {
+    return new JournalFileReader<>(
+        journalFile(),
+        new FileDesignatorCodecTools.InwardDesignatorDecoder(),
+        new EchoCodecFixture.PartialUpendDecoder(),
+        0,
+        true,
+        IntradayPersistenceConstants.LINE_BREAK
+    ) ;
+  }
+
+  private List< String > messages( final Iterable< Slice > slices ) {
+    final JournalFileReader< Designator, EchoUpwardDuty< Designator > > journalReader ;
+    try {
+      journalReader = newJournalReader() ;
+    } catch( final Exception e ) {
+      throw new RuntimeException( e ) ;
+    }
+    final List< Command< Designator, EchoUpwardDuty< Designator > > > commands = Flux
+        .fromIterable( slices )
+        .handle( journalReader::decodeSlice )
+        .collectList()
+        .block()
+    ;
+    return commands.stream()
+        .map( command -> ( ( UpwardEchoCommand ) command ).message )
+        .collect( Collectors.toList() )
+    ;
+  }
+
+}
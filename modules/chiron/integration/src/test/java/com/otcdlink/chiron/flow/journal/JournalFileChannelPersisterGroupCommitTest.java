@@ -0,0 +1,111 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.designator.DesignatorForger;
+import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
+import com.otcdlink.chiron.integration.echo.UpwardEchoCommand;
+import com.otcdlink.chiron.middle.session.SessionIdentifier;
+import com.otcdlink.chiron.testing.MethodSupport;
+import org.joda.time.Duration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalFileChannelPersisterGroupCommitTest {
+
+  @Test
+  public void completeOnBatchSize() throws Exception {
+    final JournalFileChannelPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        newPersister( new JournalFileChannelPersister.GroupCommit(
+            3, Duration.standardHours( 1 ) ) ) ;
+    persister.open() ;
+    final List< CompletableFuture< ? > > futures = new ArrayList<>() ;
+    futures.add( persister.acceptDurably( command( 0 ) ) ) ;
+    futures.add( persister.acceptDurably( command( 1 ) ) ) ;
+    assertThat( futures.stream().anyMatch( CompletableFuture::isDone ) ).isFalse() ;
+    futures.add( persister.acceptDurably( command( 2 ) ) ) ;
+    /** The force happens in the force thread, long before the delay. */
+    CompletableFuture.allOf( futures.toArray( new CompletableFuture[ 0 ] ) )
+        .get( 1, TimeUnit.SECONDS ) ;
+    assertThat( futures.stream().anyMatch( CompletableFuture::isCompletedExceptionally ) )
+        .isFalse() ;
+
+    final CompletableFuture< ? > pending = persister.acceptDurably( command( 3 ) ) ;
+    assertThat( pending.isDone() ).isFalse() ;
+    persister.close() ;
+    assertThat( pending.isDone() ).isTrue() ;
+  }
+
+  @Test
+  public void completeOnDelay() throws Exception {
+    final JournalFileChannelPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        newPersister( new JournalFileChannelPersister.GroupCommit(
+            1000, Duration.millis( 10 ) ) ) ;
+    persister.open() ;
+    final Command< Designator, EchoUpwardDuty< Designator > > command = command( 0 ) ;
+    final CompletableFuture< Command< Designator, EchoUpwardDuty< Designator > > > future =
+        persister.acceptDurably( command ) ;
+    assertThat( future.get( 1, TimeUnit.SECONDS ) ).isSameAs( command ) ;
+    persister.close() ;
+    assertThat( Files.asCharSource( journalFile(), Charsets.US_ASCII ).read() )
+        .contains( "0__Hello" ) ;
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void noAutoFlush() throws Exception {
+    newPersister( new JournalFileChannelPersister.GroupCommit( 3, Duration.millis( 10 ) ) )
+        .autoFlush( true ) ;
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  @SuppressWarnings( "unused" )
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger( JournalFileChannelPersisterGroupCommitTest.class ) ;
+
+  @Rule
+  public final MethodSupport methodSupport = new MethodSupport() ;
+
+  private static final int BUFFER_SIZE = 1000 ;
+
+  private static final DesignatorForger.CounterStep DESIGNATOR_FORGER = DesignatorForger
+      .newForger().session( new SessionIdentifier( "7he5e5510N" ) ).flooredInstant( 1 ) ;
+
+  private static Command< Designator, EchoUpwardDuty< Designator > > command( final int index ) {
+    return new UpwardEchoCommand<>(
+        DESIGNATOR_FORGER.counter( index ).upward(), index + "__Hello" ) ;
+  }
+
+  private File journalFile() {
+    return new File( methodSupport.getDirectory(), "my.journal" ) ;
+  }
+
+  private JournalFileChannelPersister< Designator, EchoUpwardDuty< Designator > > newPersister(
+      final JournalFileChannelPersister.GroupCommit groupCommit
+  ) {
+    return new JournalFileChannelPersister<>(
+        journalFile(),
+        BUFFER_SIZE,
+        new FileDesignatorCodecTools.InwardDesignatorEncoder(),
+        1,
+        "JustTesting",
+        IntradayPersistenceConstants.LINE_BREAK,
+        groupCommit
+    ) ;
+  }
+}
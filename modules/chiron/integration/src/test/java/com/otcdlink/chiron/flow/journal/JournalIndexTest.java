@@ -0,0 +1,193 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.designator.DesignatorForger;
+import com.otcdlink.chiron.integration.echo.EchoCodecFixture;
+import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
+import com.otcdlink.chiron.integration.echo.UpwardEchoCommand;
+import com.otcdlink.chiron.middle.session.SessionIdentifier;
+import com.otcdlink.chiron.testing.MethodSupport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalIndexTest {
+
+  @Test
+  public void writeAndLoad() throws Exception {
+    writeJournal( 10, 3 ) ;
+    final JournalIndex journalIndex =
+        JournalIndex.load( JournalIndex.sidecarFile( journalFile() ) ) ;
+    LOGGER.info( "Loaded " + journalIndex + ": " + journalIndex.entries() + "." ) ;
+    assertThat( journalIndex.entries() ).hasSize( 3 ) ;
+    assertThat( journalIndex.entries().get( 0 ).lineIndex ).isEqualTo( 4 ) ;
+    assertThat( journalIndex.entries().get( 2 ).lineIndex ).isEqualTo( 10 ) ;
+
+    assertThat( journalIndex.floor( command( 0 ).endpointSpecific.stamp ) )
+        .isSameAs( JournalIndex.Entry.START ) ;
+    assertThat( journalIndex.floor( command( 3 ).endpointSpecific.stamp ) )
+        .isSameAs( journalIndex.entries().get( 0 ) ) ;
+    assertThat( journalIndex.floor( command( 7 ).endpointSpecific.stamp ) )
+        .isSameAs( journalIndex.entries().get( 1 ) ) ;
+  }
+
+  @Test
+  public void readFromStamp() throws Exception {
+    writeJournal( 10, 3 ) ;
+    final JournalFileReader< Designator, EchoUpwardDuty< Designator > > journalReader =
+        newJournalReader() ;
+    final List< Command< Designator, EchoUpwardDuty< Designator > > > commands = Flux
+        .fromIterable( journalReader.sliceIterableFrom( command( 7 ).endpointSpecific.stamp ) )
+        .handle( journalReader::decodeSlice )
+        .collectList()
+        .block()
+    ;
+    assertThat( commands.stream()
+        .map( command -> ( ( UpwardEchoCommand ) command ).message )
+        .collect( Collectors.toList() )
+    ).containsExactly( "6__Hello", "7__Hello", "8__Hello", "9__Hello" ) ;
+  }
+
+  @Test
+  public void noIndex() throws Exception {
+    writeJournal( 3, null ) ;
+    final JournalFileReader< Designator, EchoUpwardDuty< Designator > > journalReader =
+        newJournalReader() ;
+    final List< Command< Designator, EchoUpwardDuty< Designator > > > commands = Flux
+        .fromIterable( journalReader.sliceIterableFrom( command( 2 ).endpointSpecific.stamp ) )
+        .handle( journalReader::decodeSlice )
+        .collectList()
+        .block()
+    ;
+    assertThat( commands ).hasSize( 3 ) ;
+  }
+
+  @Test
+  public void flushWithJournal() throws Exception {
+    final JournalFileChannelPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        newPersister( 3 ) ;
+    persister.autoFlush( true ) ;
+    persister.open() ;
+    for( int i = 0 ; i < 10 ; i ++ ) {
+      persister.accept( command( i ) ) ;
+    }
+    assertThat( JournalIndex.load( JournalIndex.sidecarFile( journalFile() ) ).entries() )
+        .describedAs( "Before closing the persister" )
+        .hasSize( 3 ) ;
+    persister.close() ;
+  }
+
+  @Test
+  public void followRecoveryFile() throws Exception {
+    writeJournal( 10, 3 ) ;
+    final File recoveryFile = new File( methodSupport.getDirectory(), "my.recovery" ) ;
+    final File recoveredFile = new File( methodSupport.getDirectory(), "my.recovered" ) ;
+    final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        new RecoveringJournalFileReader<>(
+            journalFile(),
+            recoveryFile,
+            recoveredFile,
+            new FileDesignatorCodecTools.InwardDesignatorDecoder(),
+            new EchoCodecFixture.PartialUpendDecoder(),
+            0,
+            true
+        )
+    ;
+    reader.resolveRecoveryFile() ;
+    assertThat( JournalIndex.sidecarFile( journalFile() ) ).doesNotExist() ;
+    assertThat( JournalIndex.sidecarFile( recoveryFile ) ).isFile() ;
+    final List< Command< Designator, EchoUpwardDuty< Designator > > > commands = Flux
+        .fromIterable( reader.sliceIterableFrom( command( 7 ).endpointSpecific.stamp ) )
+        .handle( reader::decodeSlice )
+        .collectList()
+        .block()
+    ;
+    assertThat( commands ).hasSize( 4 ) ;
+
+    reader.renameRecoveryFileToRecovered() ;
+    assertThat( JournalIndex.sidecarFile( recoveryFile ) ).doesNotExist() ;
+    assertThat( JournalIndex.sidecarFile( recoveredFile ) ).isFile() ;
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( JournalIndexTest.class ) ;
+
+  @Rule
+  public final MethodSupport methodSupport = new MethodSupport() ;
+
+  private static final DesignatorForger.CounterStep DESIGNATOR_FORGER = DesignatorForger
+      .newForger().session( new SessionIdentifier( "7he5e5510N" ) ).flooredInstant( 1 ) ;
+
+  private static Command< Designator, EchoUpwardDuty< Designator > > command( final int index ) {
+    return new UpwardEchoCommand<>(
+        DESIGNATOR_FORGER.counter( index ).upward(), index + "__Hello" ) ;
+  }
+
+  private File journalFile() {
+    return new File( methodSupport.getDirectory(), "my.journal" ) ;
+  }
+
+  /**
+   * @param indexInterval {@code null} means no {@link JournalIndex}.
+   */
+  private void writeJournal( final int commandCount, final Integer indexInterval )
+      throws Exception
+  {
+    final JournalFileChannelPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        newPersister( indexInterval ) ;
+    persister.open() ;
+    for( int i = 0 ; i < commandCount ; i ++ ) {
+      persister.accept( command( i ) ) ;
+    }
+    persister.close() ;
+  }
+
+  /**
+   * @param indexInterval {@code null} means no {@link JournalIndex}.
+   */
+  private JournalFileChannelPersister< Designator, EchoUpwardDuty< Designator > > newPersister(
+      final Integer indexInterval
+  ) {
+    return new JournalFileChannelPersister<>(
+        journalFile(),
+        AbstractJournalPersisterTest.PersisterKit.BUFFER_SIZE,
+        new FileDesignatorCodecTools.InwardDesignatorEncoder(),
+        0,
+        "JustTesting",
+        IntradayPersistenceConstants.LINE_BREAK,
+        null,
+        indexInterval == null ? null : new JournalIndex.Indexer<>(
+            JournalIndex.sidecarFile( journalFile() ),
+            indexInterval,
+            designator -> designator.stamp
+        )
+    ) ;
+  }
+
+  private JournalFileReader< Designator, EchoUpwardDuty< Designator > > newJournalReader()
+      throws Exception
+  {
+    return new JournalFileReader<>(
+        journalFile(),
+        new FileDesignatorCodecTools.InwardDesignatorDecoder(),
+        new EchoCodecFixture.PartialUpendDecoder(),
+        0,
+        true,
+        IntradayPersistenceConstants.LINE_BREAK
+    ) ;
+  }
+
+}
@@ -0,0 +1,102 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalMappedFilePersisterTest extends AbstractJournalPersisterTest {
+
+  @Test
+  public void truncateAfterRemapping() throws Exception {
+    final PrivatePersisterKit persisterKit = new PrivatePersisterKit() ;
+    final int commandCount = 3 * WINDOW_SIZE / PersisterKit.BYTES_PER_LINE ;
+    persisterKit.writeSequence( commandCount ) ;
+    final String wholeFileAsString = persisterKit.loadActualFile() ;
+    assertThat( persisterKit.intradayFile.length() ).isGreaterThan( 2 * WINDOW_SIZE ) ;
+    assertThat( wholeFileAsString ).endsWith(
+        " " + ( commandCount - 1 ) + "__Hello " + persisterKit.lineEnd ) ;
+    assertThat( wholeFileAsString ).doesNotContain( "\u0000" ) ;
+  }
+
+// =======
+// Fixture
+// =======
+
+  @SuppressWarnings( "unused" )
+  private static final Logger LOGGER = LoggerFactory.getLogger( JournalMappedFilePersisterTest.class ) ;
+
+  /**
+   * Small enough to cause remapping.
+   */
+  private static final int WINDOW_SIZE = 3 * PersisterKit.BUFFER_SIZE ;
+
+  @Override
+  protected PersisterKit newPersisterKit() {
+    return new PrivatePersisterKit() ;
+  }
+
+  private static final ThreadLocal< File > CAPTURE_FILE = new ThreadLocal<>() ;
+
+  private static int captureFile( final File file, final int any ) {
+    CAPTURE_FILE.set( file ) ;
+    return any ;
+  }
+
+  private final class PrivatePersisterKit extends PersisterKit {
+
+    public final File intradayFile ;
+
+    public PrivatePersisterKit() {
+      this(
+          methodSupport.getDirectory(),
+          BUFFER_SIZE,
+          IntradayPersistenceConstants.LINE_BREAK
+      ) ;
+    }
+
+    public PrivatePersisterKit(
+        final File directory,
+        final int bufferSize,
+        final LineBreak lineBreak
+    ) {
+      super(
+          captureFile( new File( directory, INTRADAY_RELATIVE_FILENAME ), bufferSize ),
+          lineBreak
+      ) ;
+      this.intradayFile = CAPTURE_FILE.get() ;
+      CAPTURE_FILE.set( null ) ;
+    }
+
+    @Override
+    public String loadActualFile() throws IOException {
+      return Files.asCharSource( intradayFile, Charsets.US_ASCII ).read() ;
+    }
+
+    @Override
+    protected JournalPersister< Command< Designator, EchoUpwardDuty< Designator > > >
+    createPersister() {
+      final File file = CAPTURE_FILE.get() ;
+      return new JournalMappedFilePersister< Designator, EchoUpwardDuty< Designator > >(
+          file,
+          WINDOW_SIZE,
+          bufferSize,
+          new FileDesignatorCodecTools.InwardDesignatorEncoder(),
+          1,
+          "JustTesting",
+          lineBreak
+      ) ;
+    }
+  }
+
+}
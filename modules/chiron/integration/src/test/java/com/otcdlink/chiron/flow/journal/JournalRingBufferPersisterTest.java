@@ -0,0 +1,105 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
+import com.otcdlink.chiron.toolbox.text.LineBreak;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalRingBufferPersisterTest extends AbstractJournalPersisterTest {
+
+  @Test
+  public void orderPreservedAcrossWrapArounds() throws Exception {
+    final PrivatePersisterKit persisterKit = new PrivatePersisterKit() ;
+    final int commandCount = 10_000 ;
+    persisterKit.writeSequence( commandCount ) ;
+    final List< String > lines = Files.readLines( persisterKit.intradayFile, Charsets.US_ASCII ) ;
+    assertThat( lines ).hasSize( commandCount + 1 ) ;
+    for( int i = 0 ; i < commandCount ; i ++ ) {
+      assertThat( lines.get( i + 1 ) ).endsWith( " " + i + "__Hello " ) ;
+    }
+  }
+
+// =======
+// Fixture
+// =======
+
+  @SuppressWarnings( "unused" )
+  private static final Logger LOGGER = LoggerFactory.getLogger( JournalRingBufferPersisterTest.class ) ;
+
+  /**
+   * Small enough to wrap around many times.
+   */
+  private static final int SLOT_COUNT = 4 ;
+
+  @Override
+  protected PersisterKit newPersisterKit() {
+    return new PrivatePersisterKit() ;
+  }
+
+  private static final ThreadLocal< File > CAPTURE_FILE = new ThreadLocal<>() ;
+
+  private static int captureFile( final File file, final int any ) {
+    CAPTURE_FILE.set( file ) ;
+    return any ;
+  }
+
+  private final class PrivatePersisterKit extends PersisterKit {
+
+    public final File intradayFile ;
+
+
+    public PrivatePersisterKit() {
+      this(
+          methodSupport.getDirectory(),
+          BUFFER_SIZE,
+          IntradayPersistenceConstants.LINE_BREAK
+      ) ;
+    }
+
+    public PrivatePersisterKit(
+        final File directory,
+        final int bufferSize,
+        final LineBreak lineBreak
+    ) {
+      super(
+          captureFile( new File( directory, INTRADAY_RELATIVE_FILENAME ), bufferSize ),
+          lineBreak
+      ) ;
+      this.intradayFile = CAPTURE_FILE.get() ;
+      CAPTURE_FILE.set( null ) ;
+    }
+
+    @Override
+    public String loadActualFile() throws IOException {
+      return Files.asCharSource( intradayFile, Charsets.US_ASCII ).read() ;
+    }
+
+    @Override
+    protected JournalPersister< Command< Designator, EchoUpwardDuty< Designator > > > createPersister() {
+      final File file = CAPTURE_FILE.get() ;
+      return new JournalRingBufferPersister< Designator, EchoUpwardDuty< Designator > >(
+          file,
+          bufferSize,
+          new FileDesignatorCodecTools.InwardDesignatorEncoder(),
+          1,
+          "JustTesting",
+          lineBreak,
+          SLOT_COUNT,
+          JournalRingBufferPersister.WaitStrategy.YIELDING
+      ) ;
+
+    }
+  }
+
+}
\ No newline at end of file
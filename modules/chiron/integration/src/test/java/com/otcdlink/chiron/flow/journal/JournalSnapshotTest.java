@@ -0,0 +1,199 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.Stamp;
+import com.otcdlink.chiron.command.codec.Decoder;
+import com.otcdlink.chiron.command.codec.Encoder;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.designator.DesignatorForger;
+import com.otcdlink.chiron.flow.journal.slicer.Slice;
+import com.otcdlink.chiron.integration.echo.EchoCodecFixture;
+import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
+import com.otcdlink.chiron.integration.echo.UpwardEchoCommand;
+import com.otcdlink.chiron.middle.session.SessionIdentifier;
+import com.otcdlink.chiron.testing.MethodSupport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalSnapshotTest {
+
+  @Test
+  public void replayAfterSnapshot() throws Exception {
+    writeJournal( 10 ) ;
+    final JournalSnapshot.Writer< String > snapshotWriter = newSnapshotWriter( 2 ) ;
+    snapshotWriter.write( stampOf( 3 ), "UpTo3" ) ;
+    snapshotWriter.write( stampOf( 5 ), "UpTo5" ) ;
+
+    final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        newRecoveringReader() ;
+    reader.resolveRecoveryFile() ;
+    final JournalSnapshot< String > snapshot = reader.restoreLatestSnapshot( STATE_DECODER ) ;
+    assertThat( snapshot.state ).isEqualTo( "UpTo5" ) ;
+    assertThat( messages( reader ) )
+        .containsExactly( "6__Hello", "7__Hello", "8__Hello", "9__Hello" ) ;
+  }
+
+  @Test
+  public void snapshotsFollowRecoveredFile() throws Exception {
+    writeJournal( 10 ) ;
+    newSnapshotWriter( 2 ).write( stampOf( 5 ), "UpTo5" ) ;
+
+    final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        newRecoveringReader() ;
+    reader.resolveRecoveryFile() ;
+    assertThat( JournalSnapshot.list( journalFile() ) ).isEmpty() ;
+    assertThat( reader.restoreLatestSnapshot( STATE_DECODER ).state ).isEqualTo( "UpTo5" ) ;
+    reader.renameRecoveryFileToRecovered() ;
+    assertThat( JournalSnapshot.list( recoveredFile() ) ).hasSize( 1 ) ;
+
+    writeJournal( 3 ) ;
+    final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > nextReader =
+        newRecoveringReader() ;
+    nextReader.resolveRecoveryFile() ;
+    assertThat( nextReader.restoreLatestSnapshot( STATE_DECODER ) )
+        .describedAs( "Snapshot of previous journal file" )
+        .isNull() ;
+    assertThat( messages( nextReader ) ).containsExactly( "0__Hello", "1__Hello", "2__Hello" ) ;
+  }
+
+  @Test
+  public void noSnapshot() throws Exception {
+    writeJournal( 3 ) ;
+    final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        newRecoveringReader() ;
+    reader.resolveRecoveryFile() ;
+    assertThat( reader.restoreLatestSnapshot( STATE_DECODER ) ).isNull() ;
+    assertThat( messages( reader ) ).containsExactly( "0__Hello", "1__Hello", "2__Hello" ) ;
+  }
+
+  @Test
+  public void fallBackOnCorruptSnapshot() throws Exception {
+    final JournalSnapshot.Writer< String > snapshotWriter = newSnapshotWriter( 2 ) ;
+    snapshotWriter.write( stampOf( 3 ), "UpTo3" ) ;
+    final File latest = snapshotWriter.write( stampOf( 5 ), "UpTo5" ) ;
+    try( final RandomAccessFile randomAccessFile = new RandomAccessFile( latest, "rw" ) ) {
+      randomAccessFile.setLength( randomAccessFile.length() - 1 ) ;
+    }
+    final JournalSnapshot< String > snapshot =
+        JournalSnapshot.loadLatest( journalFile(), STATE_DECODER ) ;
+    assertThat( snapshot.state ).isEqualTo( "UpTo3" ) ;
+    assertThat( snapshot.stamp.asStringRoundedToFlooredSecond() )
+        .isEqualTo( stampOf( 3 ).asStringRoundedToFlooredSecond() ) ;
+  }
+
+  @Test
+  public void compact() throws Exception {
+    final JournalSnapshot.Writer< String > snapshotWriter = newSnapshotWriter( 2 ) ;
+    snapshotWriter.write( stampOf( 1 ), "UpTo1" ) ;
+    snapshotWriter.write( stampOf( 2 ), "UpTo2" ) ;
+    snapshotWriter.write( stampOf( 3 ), "UpTo3" ) ;
+    assertThat( JournalSnapshot.list( journalFile() ) ).containsExactly(
+        JournalSnapshot.snapshotFile( journalFile(), stampOf( 2 ) ),
+        JournalSnapshot.snapshotFile( journalFile(), stampOf( 3 ) )
+    ) ;
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  @SuppressWarnings( "unused" )
+  private static final Logger LOGGER = LoggerFactory.getLogger( JournalSnapshotTest.class ) ;
+
+  @Rule
+  public final MethodSupport methodSupport = new MethodSupport() ;
+
+  private static final DesignatorForger.CounterStep DESIGNATOR_FORGER = DesignatorForger
+      .newForger().session( new SessionIdentifier( "7he5e5510N" ) ).flooredInstant( 1 ) ;
+
+  private static final Encoder< String > STATE_ENCODER =
+      ( state, writer ) -> writer.writeDelimitedString( state ) ;
+
+  private static final Decoder< String > STATE_DECODER =
+      reader -> reader.readDelimitedString() ;
+
+  private static Command< Designator, EchoUpwardDuty< Designator > > command( final int index ) {
+    return new UpwardEchoCommand<>(
+        DESIGNATOR_FORGER.counter( index ).upward(), index + "__Hello" ) ;
+  }
+
+  private static Stamp stampOf( final int index ) {
+    return command( index ).endpointSpecific.stamp ;
+  }
+
+  private File journalFile() {
+    return new File( methodSupport.getDirectory(), "my.journal" ) ;
+  }
+
+  private File recoveredFile() {
+    return new File( methodSupport.getDirectory(), "my.recovered" ) ;
+  }
+
+  private JournalSnapshot.Writer< String > newSnapshotWriter( final int retained ) {
+    return new JournalSnapshot.Writer<>(
+        journalFile(), STATE_ENCODER, 0, "JustTesting", retained ) ;
+  }
+
+  private void writeJournal( final int commandCount ) throws Exception {
+    final JournalFileChannelPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        new JournalFileChannelPersister<>(
+            journalFile(),
+            AbstractJournalPersisterTest.PersisterKit.BUFFER_SIZE,
+            new FileDesignatorCodecTools.InwardDesignatorEncoder(),
+            0,
+            "JustTesting",
+            IntradayPersistenceConstants.LINE_BREAK,
+            null,
+            new JournalIndex.Indexer<>(
+                JournalIndex.sidecarFile( journalFile() ), 3, designator -> designator.stamp )
+        )
+    ;
+    persister.open() ;
+    for( int i = 0 ; i < commandCount ; i ++ ) {
+      persister.accept( command( i ) ) ;
+    }
+    persister.close() ;
+  }
+
+  private RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > >
+  newRecoveringReader() throws Exception {
+    return new RecoveringJournalFileReader<>(
+        journalFile(),
+        new File( methodSupport.getDirectory(), "my.recovery" ),
+        recoveredFile(),
+        new FileDesignatorCodecTools.InwardDesignatorDecoder(),
+        new EchoCodecFixture.PartialUpendDecoder(),
+        0,
+        true,
+        designator -> designator.stamp
+    ) ;
+  }
+
+  private static List< String > messages(
+      final RecoveringJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader
+  ) {
+    final Iterable< Slice > slices = reader.sliceIterable() ;
+    final List< Command< Designator, EchoUpwardDuty< Designator > > > commands = Flux
+        .fromIterable( slices )
+        .handle( reader::decodeSlice )
+        .collectList()
+        .block()
+    ;
+    return commands.stream()
+        .map( command -> ( ( UpwardEchoCommand ) command ).message )
+        .collect( Collectors.toList() )
+    ;
+  }
+
+}
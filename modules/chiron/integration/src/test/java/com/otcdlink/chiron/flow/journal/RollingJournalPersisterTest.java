@@ -0,0 +1,295 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.collect.ImmutableList;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.designator.DesignatorForger;
+import com.otcdlink.chiron.flow.journal.slicer.Slice;
+import com.otcdlink.chiron.integration.echo.EchoCodecFixture;
+import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
+import com.otcdlink.chiron.integration.echo.UpwardEchoCommand;
+import com.otcdlink.chiron.middle.session.SessionIdentifier;
+import com.otcdlink.chiron.testing.MethodSupport;
+import com.otcdlink.chiron.toolbox.clock.Clock;
+import org.joda.time.Duration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RollingJournalPersisterTest {
+
+  @Test
+  public void rollOnLengthAndCompress() throws Exception {
+    final RollingJournalPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        newPersister( new RollingJournalPersister.Rolling( 300, null, true ), Clock.SYSTEM_CLOCK ) ;
+    persister.open() ;
+    for( int i = 0 ; i < 10 ; i ++ ) {
+      persister.accept( command( i ) ) ;
+    }
+    persister.close() ;
+
+    final ImmutableList< File > segments = JournalSegments.list( baseFile() ) ;
+    LOGGER.info( "Segments: " + segments + "." ) ;
+    assertThat( segments.size() ).isGreaterThan( 1 ) ;
+    for( final File segment : segments ) {
+      assertThat( JournalSegments.isCompressed( segment ) ).isTrue() ;
+    }
+    assertThat( messages( newRollingReader().sliceIterable() ) ).containsExactly(
+        "0__Hello", "1__Hello", "2__Hello", "3__Hello", "4__Hello",
+        "5__Hello", "6__Hello", "7__Hello", "8__Hello", "9__Hello"
+    ) ;
+    assertThat( methodSupport.getDirectory().list(
+        ( directory, name ) -> name.endsWith( JournalSegments.INFLATED_SUFFIX ) ) ).isEmpty() ;
+  }
+
+  @Test
+  public void rollOnTick() throws Exception {
+    final RollingJournalPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        newPersister( new RollingJournalPersister.Rolling(
+            Long.MAX_VALUE, null, false ), Clock.SYSTEM_CLOCK ) ;
+    persister.open() ;
+    persister.accept( command( 0 ) ) ;
+    persister.accept( command( 1 ) ) ;
+    persister.tick( null ) ;
+    persister.accept( command( 2 ) ) ;
+    persister.close() ;
+
+    assertThat( JournalSegments.list( baseFile() ) ).containsExactly(
+        JournalSegments.segmentFile( baseFile(), 1 ),
+        JournalSegments.segmentFile( baseFile(), 2 )
+    ) ;
+    assertThat( messages( newRollingReader().sliceIterable() ) )
+        .containsExactly( "0__Hello", "1__Hello", "2__Hello" ) ;
+  }
+
+  @Test
+  public void rollOnAge() throws Exception {
+    final AtomicLong now = new AtomicLong( 0 ) ;
+    final RollingJournalPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        newPersister( new RollingJournalPersister.Rolling(
+            Long.MAX_VALUE, Duration.standardMinutes( 1 ), false ), now::get ) ;
+    persister.open() ;
+    persister.accept( command( 0 ) ) ;
+    now.set( Duration.standardSeconds( 59 ).getMillis() ) ;
+    persister.accept( command( 1 ) ) ;
+    now.set( Duration.standardSeconds( 60 ).getMillis() ) ;
+    persister.accept( command( 2 ) ) ;
+    persister.close() ;
+
+    final ImmutableList< File > segments = JournalSegments.list( baseFile() ) ;
+    assertThat( segments ).hasSize( 2 ) ;
+    assertThat( messages( newReader( segments.get( 1 ) ).sliceIterable() ) )
+        .containsExactly( "2__Hello" ) ;
+  }
+
+  @Test
+  public void keepCurrentSegmentWhenRollFails() throws Exception {
+    final AtomicBoolean failing = new AtomicBoolean() ;
+    final RollingJournalPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        new RollingJournalPersister<>(
+            baseFile(),
+            segmentFile -> {
+              if( failing.get() ) {
+                throw new RuntimeException( "Boom" ) ;
+              }
+              return newSegmentPersister( segmentFile ) ;
+            },
+            new RollingJournalPersister.Rolling( Long.MAX_VALUE, null, false ),
+            Clock.SYSTEM_CLOCK
+        )
+    ;
+    persister.open() ;
+    persister.accept( command( 0 ) ) ;
+    failing.set( true ) ;
+    persister.tick( null ) ;
+    persister.accept( command( 1 ) ) ;
+    failing.set( false ) ;
+    persister.accept( command( 2 ) ) ;
+    persister.close() ;
+
+    assertThat( JournalSegments.list( baseFile() ) ).containsExactly(
+        JournalSegments.segmentFile( baseFile(), 1 ),
+        JournalSegments.segmentFile( baseFile(), 2 )
+    ) ;
+    assertThat( messages( newReader( JournalSegments.segmentFile( baseFile(), 1 ) )
+        .sliceIterable() ) ).containsExactly( "0__Hello", "1__Hello" ) ;
+    assertThat( messages( newReader( JournalSegments.segmentFile( baseFile(), 2 ) )
+        .sliceIterable() ) ).containsExactly( "2__Hello" ) ;
+  }
+
+  @Test
+  public void closeNextSegmentWhenOpenFails() throws Exception {
+    final AtomicBoolean failing = new AtomicBoolean() ;
+    final List< AbstractJournalPersister< Designator, EchoUpwardDuty< Designator >, ? > >
+        segmentPersisters = new ArrayList<>() ;
+    final RollingJournalPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        new RollingJournalPersister<>(
+            baseFile(),
+            segmentFile -> {
+              final AbstractJournalPersister< Designator, EchoUpwardDuty< Designator >, ? >
+                  segmentPersister = failing.get() ?
+                  newSegmentPersisterWithBrokenIndex( segmentFile ) :
+                  newSegmentPersister( segmentFile )
+              ;
+              segmentPersisters.add( segmentPersister ) ;
+              return segmentPersister ;
+            },
+            new RollingJournalPersister.Rolling( Long.MAX_VALUE, null, false ),
+            Clock.SYSTEM_CLOCK
+        )
+    ;
+    persister.open() ;
+    persister.accept( command( 0 ) ) ;
+    failing.set( true ) ;
+    persister.tick( null ) ;
+    persister.accept( command( 1 ) ) ;
+    persister.close() ;
+
+    assertThat( segmentPersisters ).hasSize( 2 ) ;
+    assertThat( segmentPersisters.get( 1 ).isOpen() ).isFalse() ;
+    assertThat( JournalSegments.list( baseFile() ) )
+        .containsExactly( JournalSegments.segmentFile( baseFile(), 1 ) ) ;
+  }
+
+  @Test
+  public void continueAfterExistingSegments() throws Exception {
+    final RollingJournalPersister.Rolling rolling =
+        new RollingJournalPersister.Rolling( Long.MAX_VALUE, null, true ) ;
+    final RollingJournalPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        newPersister( rolling, Clock.SYSTEM_CLOCK ) ;
+    persister.open() ;
+    persister.accept( command( 0 ) ) ;
+    persister.close() ;
+    persister.open() ;
+    persister.accept( command( 1 ) ) ;
+    persister.close() ;
+
+    assertThat( JournalSegments.list( baseFile() ) ).containsExactly(
+        JournalSegments.compressed( JournalSegments.segmentFile( baseFile(), 1 ) ),
+        JournalSegments.compressed( JournalSegments.segmentFile( baseFile(), 2 ) )
+    ) ;
+
+    /** Reading an uncompressed name finds the compressed file. */
+    assertThat( messages( newReader(
+        JournalSegments.segmentFile( baseFile(), 2 ) ).sliceIterable() ) )
+        .containsExactly( "1__Hello" ) ;
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( RollingJournalPersisterTest.class ) ;
+
+  @Rule
+  public final MethodSupport methodSupport = new MethodSupport() ;
+
+  private static final DesignatorForger.CounterStep DESIGNATOR_FORGER = DesignatorForger
+      .newForger().session( new SessionIdentifier( "7he5e5510N" ) ).flooredInstant( 1 ) ;
+
+  private static Command< Designator, EchoUpwardDuty< Designator > > command( final int index ) {
+    return new UpwardEchoCommand<>(
+        DESIGNATOR_FORGER.counter( index ).upward(), index + "__Hello" ) ;
+  }
+
+  private File baseFile() {
+    return new File( methodSupport.getDirectory(), "my.journal" ) ;
+  }
+
+  private RollingJournalPersister< Designator, EchoUpwardDuty< Designator > > newPersister(
+      final RollingJournalPersister.Rolling rolling,
+      final Clock clock
+  ) {
+    return new RollingJournalPersister<>(
+        baseFile(),
+        RollingJournalPersisterTest::newSegmentPersister,
+        rolling,
+        clock
+    ) ;
+  }
+
+  private static AbstractJournalPersister< Designator, EchoUpwardDuty< Designator >, ? >
+  newSegmentPersister( final File segmentFile ) {
+    return new JournalFileChannelPersister<>(
+        segmentFile,
+        AbstractJournalPersisterTest.PersisterKit.BUFFER_SIZE,
+        new FileDesignatorCodecTools.InwardDesignatorEncoder(),
+        0,
+        "JustTesting",
+        IntradayPersistenceConstants.LINE_BREAK
+    ) ;
+  }
+
+  /**
+   * Opening fails after creating the sink, because the index file can't be a directory.
+   */
+  private static JournalFileChannelPersister< Designator, EchoUpwardDuty< Designator > >
+  newSegmentPersisterWithBrokenIndex( final File segmentFile ) {
+    final File indexFile = JournalIndex.sidecarFile( segmentFile ) ;
+    assertThat( indexFile.mkdirs() ).isTrue() ;
+    return new JournalFileChannelPersister<>(
+        segmentFile,
+        AbstractJournalPersisterTest.PersisterKit.BUFFER_SIZE,
+        new FileDesignatorCodecTools.InwardDesignatorEncoder(),
+        0,
+        "JustTesting",
+        IntradayPersistenceConstants.LINE_BREAK,
+        null,
+        new JournalIndex.Indexer<>( indexFile, 1, designator -> designator.stamp )
+    ) ;
+  }
+
+  private RollingJournalFileReader< Designator, EchoUpwardDuty< Designator > > newRollingReader()
+      throws Exception
+  {
+    return new RollingJournalFileReader<>(
+        baseFile(),
+        new FileDesignatorCodecTools.InwardDesignatorDecoder(),
+        new EchoCodecFixture.PartialUpendDecoder(),
+        0,
+        true,
+        IntradayPersistenceConstants.LINE_BREAK
+    ) ;
+  }
+
+  private static JournalFileReader< Designator, EchoUpwardDuty< Designator > > newReader(
+      final File file
+  ) throws Exception {
+    return new JournalFileReader<>(
+        file,
+        new FileDesignatorCodecTools.InwardDesignatorDecoder(),
+        new EchoCodecFixture.PartialUpendDecoder(),
+        0,
+        true,
+        IntradayPersistenceConstants.LINE_BREAK
+    ) ;
+  }
+
+  private static List< String > messages( final Iterable< Slice > slices ) throws Exception {
+    final JournalFileReader< Designator, EchoUpwardDuty< Designator > > decodingReader =
+        newReader( new File( "decoding-only" ) ) ;
+    final List< Command< Designator, EchoUpwardDuty< Designator > > > commands = Flux
+        .fromIterable( slices )
+        .handle( decodingReader::decodeSlice )
+        .collectList()
+        .block()
+    ;
+    return commands.stream()
+        .map( command -> ( ( UpwardEchoCommand ) command ).message )
+        .collect( Collectors.toList() )
+    ;
+  }
+
+}
@@ -0,0 +1,192 @@
+package com.otcdlink.chiron.flow.journal;
+
+import com.google.common.io.Files;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.designator.DesignatorForger;
+import com.otcdlink.chiron.integration.echo.EchoCodecFixture;
+import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
+import com.otcdlink.chiron.integration.echo.UpwardEchoCommand;
+import com.otcdlink.chiron.middle.session.SessionIdentifier;
+import com.otcdlink.chiron.testing.MethodSupport;
+import org.joda.time.Duration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TailingJournalFileReaderTest {
+
+  @Test
+  public void followText() throws Exception {
+    follow( JournalRecordFormat.TEXT ) ;
+  }
+
+  @Test
+  public void followBinary() throws Exception {
+    follow( JournalRecordFormat.BINARY ) ;
+  }
+
+  @Test
+  public void failOnBadRecordInTheMiddle() throws Exception {
+    final byte[] reference = referenceJournal( JournalRecordFormat.BINARY ) ;
+    final File tailedFile = tailedFile() ;
+    final int headerLength = JournalRecordFormat.readHeaderLine(
+        new File( methodSupport.getDirectory(), "reference.journal" ), true ).length() +
+        IntradayPersistenceConstants.LINE_BREAK.asByteArray().length ;
+    /** Every record has the same length. */
+    final int recordLength = ( reference.length - headerLength ) / 3 ;
+    reference[ headerLength + recordLength + recordLength / 2 ] ^= 0xFF ;
+    append( tailedFile, reference ) ;
+
+    final TailingJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        newReader( tailedFile ) ;
+    final BlockingQueue< String > messages = new LinkedBlockingQueue<>() ;
+    final BlockingQueue< Throwable > errors = new LinkedBlockingQueue<>() ;
+    final Scheduler scheduler = Schedulers.newSingle( "journal-tail" ) ;
+    final Disposable disposable = Flux.fromIterable( reader.sliceIterable() )
+        .< Command< Designator, EchoUpwardDuty< Designator > > >handle( reader::decodeSlice )
+        .subscribeOn( scheduler )
+        .subscribe(
+            command -> messages.add( ( ( UpwardEchoCommand ) command ).message ),
+            errors::add
+        )
+    ;
+    try {
+      assertThat( messages.poll( 5, TimeUnit.SECONDS ) ).isEqualTo( "0__Hello" ) ;
+      assertThat( errors.poll( 5, TimeUnit.SECONDS ) )
+          .hasMessageContaining( "Bad record at offset " + ( headerLength + recordLength ) ) ;
+      assertThat( messages ).isEmpty() ;
+    } finally {
+      reader.close() ;
+      disposable.dispose() ;
+      scheduler.dispose() ;
+    }
+  }
+
+  private void follow( final JournalRecordFormat recordFormat ) throws Exception {
+    final byte[] reference = referenceJournal( recordFormat ) ;
+    final File tailedFile = tailedFile() ;
+    final int cut = reference.length - 10 ;
+
+    final TailingJournalFileReader< Designator, EchoUpwardDuty< Designator > > reader =
+        newReader( tailedFile ) ;
+    final BlockingQueue< String > messages = new LinkedBlockingQueue<>() ;
+    final Scheduler scheduler = Schedulers.newSingle( "journal-tail" ) ;
+    final boolean[] completed = { false } ;
+    final Disposable disposable = Flux.fromIterable( reader.sliceIterable() )
+        .< Command< Designator, EchoUpwardDuty< Designator > > >handle( reader::decodeSlice )
+        .subscribeOn( scheduler )
+        .subscribe(
+            command -> messages.add( ( ( UpwardEchoCommand ) command ).message ),
+            error -> LOGGER.error( "Tailing failed.", error ),
+            () -> completed[ 0 ] = true
+        )
+    ;
+    try {
+      /** The reader waits for the file to exist. */
+      Thread.sleep( 20 ) ;
+      append( tailedFile, Arrays.copyOfRange( reference, 0, cut ) ) ;
+      assertThat( messages.poll( 5, TimeUnit.SECONDS ) ).isEqualTo( "0__Hello" ) ;
+      assertThat( messages.poll( 5, TimeUnit.SECONDS ) ).isEqualTo( "1__Hello" ) ;
+      assertThat( messages.poll( 200, TimeUnit.MILLISECONDS ) ).isNull() ;
+      final long positionBeforeCompletion = reader.position() ;
+      assertThat( positionBeforeCompletion ).isLessThan( cut ) ;
+
+      append( tailedFile, Arrays.copyOfRange( reference, cut, reference.length ) ) ;
+      reader.wakeUp() ;
+      assertThat( messages.poll( 5, TimeUnit.SECONDS ) ).isEqualTo( "2__Hello" ) ;
+      assertThat( reader.position() ).isEqualTo( ( long ) reference.length ) ;
+    } finally {
+      reader.close() ;
+      Thread.sleep( 100 ) ;
+      disposable.dispose() ;
+      scheduler.dispose() ;
+    }
+    assertThat( completed[ 0 ] ).isTrue() ;
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger( TailingJournalFileReaderTest.class ) ;
+
+  @Rule
+  public final MethodSupport methodSupport = new MethodSupport() ;
+
+  private static final DesignatorForger.CounterStep DESIGNATOR_FORGER = DesignatorForger
+      .newForger().session( new SessionIdentifier( "7he5e5510N" ) ).flooredInstant( 1 ) ;
+
+  private static Command< Designator, EchoUpwardDuty< Designator > > command( final int index ) {
+    return new UpwardEchoCommand<>(
+        DESIGNATOR_FORGER.counter( index ).upward(), index + "__Hello" ) ;
+  }
+
+  private File tailedFile() {
+    return new File( methodSupport.getDirectory(), "tailed.journal" ) ;
+  }
+
+  private static TailingJournalFileReader< Designator, EchoUpwardDuty< Designator > > newReader(
+      final File tailedFile
+  ) throws Exception {
+    return new TailingJournalFileReader<>(
+        tailedFile,
+        new FileDesignatorCodecTools.InwardDesignatorDecoder(),
+        new EchoCodecFixture.PartialUpendDecoder(),
+        0,
+        true,
+        IntradayPersistenceConstants.LINE_BREAK,
+        Duration.millis( 1 ),
+        Duration.millis( 50 )
+    ) ;
+  }
+
+  /**
+   * Writes 3 {@link Command}s, the last one being longer than 10 bytes.
+   */
+  private byte[] referenceJournal( final JournalRecordFormat recordFormat ) throws Exception {
+    final File referenceFile = new File( methodSupport.getDirectory(), "reference.journal" ) ;
+    final JournalFileChannelPersister< Designator, EchoUpwardDuty< Designator > > persister =
+        new JournalFileChannelPersister<>(
+            referenceFile,
+            AbstractJournalPersisterTest.PersisterKit.BUFFER_SIZE,
+            new FileDesignatorCodecTools.InwardDesignatorEncoder(),
+            0,
+            "JustTesting",
+            IntradayPersistenceConstants.LINE_BREAK,
+            null,
+            null,
+            recordFormat
+        )
+    ;
+    persister.open() ;
+    for( int i = 0 ; i < 3 ; i ++ ) {
+      persister.accept( command( i ) ) ;
+    }
+    persister.close() ;
+    return Files.toByteArray( referenceFile ) ;
+  }
+
+  private static void append( final File file, final byte[] bytes ) throws Exception {
+    try( final FileOutputStream fileOutputStream = new FileOutputStream( file, true ) ) {
+      fileOutputStream.write( bytes ) ;
+    }
+  }
+
+}
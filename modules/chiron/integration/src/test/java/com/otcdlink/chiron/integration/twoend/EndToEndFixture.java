@@ -2,6 +2,7 @@ package com.otcdlink.chiron.integration.twoend;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.otcdlink.chiron.AbstractConnectorFixture;
+import com.otcdlink.chiron.buffer.FieldEncoding;
 import com.otcdlink.chiron.command.Command;
 import com.otcdlink.chiron.command.Command.Tag;
 import com.otcdlink.chiron.command.CommandConsumer;
@@ -119,10 +120,20 @@ public class EndToEndFixture
         new EchoCodecFixture.PartialDownendDecoder(),
         commandReceiver,
         CommandInterceptor.Factory.always( commandInterceptor ),
-        websocketFrameSizer
+        websocketFrameSizer,
+        fieldEncoding
     ) ;
   }
 
+  private FieldEncoding fieldEncoding = FieldEncoding.TEXT ;
+
+  /**
+   * Call before {@link #initialize(Supplier, Function)}.
+   */
+  public void fieldEncoding( final FieldEncoding fieldEncoding ) {
+    this.fieldEncoding = fieldEncoding ;
+  }
+
 // =====
 // Setup
 // =====
@@ -1,6 +1,7 @@
 package com.otcdlink.chiron.integration.twoend;
 
 import com.otcdlink.chiron.AbstractConnectorFixture;
+import com.otcdlink.chiron.buffer.FieldEncoding;
 import com.otcdlink.chiron.command.Command;
 import com.otcdlink.chiron.command.CommandConsumer;
 import com.otcdlink.chiron.designator.Designator;
@@ -12,6 +13,7 @@ import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
 import com.otcdlink.chiron.integration.echo.UpwardEchoCommand;
 import com.otcdlink.chiron.middle.CommandAssert;
 import com.otcdlink.chiron.middle.tier.CommandInterceptor;
+import com.otcdlink.chiron.middle.tier.ConnectionDescriptor;
 import com.otcdlink.chiron.middle.tier.TimeBoundary;
 import com.otcdlink.chiron.middle.tier.WebsocketFrameSizer;
 import com.otcdlink.chiron.toolbox.ObjectTools;
@@ -52,6 +54,22 @@ public class EndToEndTest {
     fixture.commandRoundtrip( fixture.dummySessionIdentifier() ) ;
   }
 
+  @Test( timeout = TIMEOUT_MS )
+  public void binaryFieldEncoding() throws Exception {
+    setTestThreadName() ;
+    fixture.fieldEncoding( FieldEncoding.BINARY ) ;
+    fixture.initialize(
+        fixture.downendSetup( AbstractConnectorFixture.PingTimingPresets.NO_PING ),
+        fixture::websocketUnauthenticatedUpendSetup,
+        false,
+        true
+    ) ;
+    fixture.downend().start() ;
+    assertThat( waitForSuccessfulConnection().fieldEncoding ).isEqualTo( FieldEncoding.BINARY ) ;
+
+    fixture.commandRoundtrip( fixture.dummySessionIdentifier() ) ;
+  }
+
   @Test( timeout = TIMEOUT_MS )
   public void unauthenticatedEchoWithFrameAggregation() throws Exception {
     setTestThreadName() ;
@@ -215,7 +233,10 @@ public class EndToEndTest {
   {
     LOGGER.info( "Waiting for " + DownendConnector.class.getSimpleName() +
         " to receive expected " + TimeBoundary.class.getSimpleName() + " ..." ) ;
+    assertThat( waitForSuccessfulConnection().timeBoundary ).isEqualTo( timeBoundary ) ;
+  }
 
+  private ConnectionDescriptor waitForSuccessfulConnection() throws InterruptedException {
     final ObjectTools.Holder< DownendConnector.Change > connectionDescriptorHolder =
         ObjectTools.newHolder() ;
 
@@ -231,7 +252,7 @@ public class EndToEndTest {
     final DownendConnector.Change.SuccessfulConnection successfulConnection =
         ( DownendConnector.Change.SuccessfulConnection ) connectionDescriptorHolder.get() ;
     LOGGER.info( "Obtained: " + successfulConnection ) ;
-    assertThat( successfulConnection.connectionDescriptor.timeBoundary ).isEqualTo( timeBoundary ) ;
+    return successfulConnection.connectionDescriptor ;
   }
 
 
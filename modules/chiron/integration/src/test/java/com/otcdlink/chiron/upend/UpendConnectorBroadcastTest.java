@@ -0,0 +1,206 @@
+package com.otcdlink.chiron.upend;
+
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.integration.echo.DownwardEchoCommand;
+import com.otcdlink.chiron.integration.echo.EchoDownwardDuty;
+import com.otcdlink.chiron.integration.echo.EchoUpwardDuty;
+import com.otcdlink.chiron.middle.ChannelTools;
+import com.otcdlink.chiron.middle.session.SessionIdentifier;
+import com.otcdlink.chiron.middle.tier.TimeBoundary;
+import com.otcdlink.chiron.toolbox.concurrent.ExecutorTools;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.util.CharsetUtil;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests {@link UpendConnector#broadcastDownward} with real WebSocket clients, each of them
+ * with a {@link SessionIdentifier} of its own.
+ */
+@SuppressWarnings( "TestMethodWithIncorrectSignature" )
+public class UpendConnectorBroadcastTest {
+
+  @Test( timeout = TIMEOUT_MS )
+  public void sameBytesForEverySession() throws Exception {
+    final UpendConnector< EchoUpwardDuty< Designator >, EchoDownwardDuty< Designator > >
+        upendConnector = startUpendConnector() ;
+    final WebsocketClient client0 = connect() ;
+    final WebsocketClient client1 = connect() ;
+    assertThat( registrations.await( TIMEOUT_MS, TimeUnit.MILLISECONDS ) ).isTrue() ;
+
+    final Designator.Factory designatorFactory = fixture.timeKit().designatorFactory ;
+    upendConnector.broadcastDownward(
+        new DownwardEchoCommand<>( designatorFactory.internal(), "Hello" ),
+        sessionIdentifier -> designatorFactory.downward( sessionIdentifier, null ),
+        recordingAllocator
+    ) ;
+
+    final String received0 = client0.nextFrame() ;
+    final String received1 = client1.nextFrame() ;
+    assertThat( received0 ).contains( DownwardEchoCommand.NAME ).contains( "Hello" ) ;
+    assertThat( received1 ).isEqualTo( received0 ) ;
+
+    assertThat( recordingAllocator.allocated )
+        .describedAs( "Encoded the body once" )
+        .hasSize( 1 ) ;
+    assertThat( recordingAllocator.allocated.get( 0 ).refCnt() )
+        .describedAs( "Released the body" )
+        .isEqualTo( 0 ) ;
+  }
+
+// =======
+// Fixture
+// =======
+
+  private static final long TIMEOUT_MS = 5_000 ;
+
+  private static final TimeBoundary.ForAll TIME_BOUNDARY = TimeBoundary.Builder.createNew()
+      .pingIntervalNever()
+      .pongTimeoutNever()
+      .reconnectNever()
+      .pingTimeoutNever()
+      .sessionInactivityForever()
+      .build()
+  ;
+
+  private static final int SESSION_COUNT = 2 ;
+
+  private final UpendConnectorFixture fixture = new UpendConnectorFixture() ;
+
+  private final NioEventLoopGroup clientEventLoopGroup = new NioEventLoopGroup(
+      2, ExecutorTools.newCountingDaemonThreadFactory( "BroadcastWebsocketClient" ) ) ;
+
+  private final RecordingAllocator recordingAllocator = new RecordingAllocator() ;
+
+  private final CountDownLatch registrations = new CountDownLatch( SESSION_COUNT ) ;
+
+  private UpendConnector.Setup< EchoUpwardDuty< Designator > > setup = null ;
+
+  private UpendConnector< EchoUpwardDuty< Designator >, EchoDownwardDuty< Designator > >
+      upendConnector = null ;
+
+  private UpendConnector< EchoUpwardDuty< Designator >, EchoDownwardDuty< Designator > >
+  startUpendConnector() {
+    final AtomicInteger sessionCounter = new AtomicInteger() ;
+    setup = fixture.pingResponderSetup( command -> { }, TIME_BOUNDARY ) ;
+    upendConnector = new UpendConnector<>(
+        setup,
+        ( channel, registrar ) -> {
+          final SessionIdentifier sessionIdentifier =
+              new SessionIdentifier( "5e5510n-" + sessionCounter.getAndIncrement() ) ;
+          channel.attr( ChannelTools.SESSION_KEY ).set( sessionIdentifier ) ;
+          registrar.registerChannel( sessionIdentifier, channel ) ;
+          registrations.countDown() ;
+        }
+    ) ;
+    upendConnector.start().join() ;
+    return upendConnector ;
+  }
+
+  private WebsocketClient connect() throws Exception {
+    final URI uri = setup.websocketUrl.toURI() ;
+    final WebsocketClient websocketClient = new WebsocketClient() ;
+    new Bootstrap()
+        .group( clientEventLoopGroup )
+        .channel( NioSocketChannel.class )
+        .handler( new ChannelInitializer< SocketChannel >() {
+          @Override
+          protected void initChannel( final SocketChannel socketChannel ) {
+            socketChannel.pipeline().addLast(
+                new HttpClientCodec(),
+                new HttpObjectAggregator( 8192 ),
+                new WebSocketClientProtocolHandler( WebSocketClientHandshakerFactory.newHandshaker(
+                    uri, WebSocketVersion.V13, null, false, new DefaultHttpHeaders() ) ),
+                websocketClient
+            ) ;
+          }
+        } )
+        .connect( uri.getHost(), uri.getPort() )
+        .sync()
+    ;
+    return websocketClient ;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if( upendConnector != null ) {
+      upendConnector.stop().get( TIMEOUT_MS, TimeUnit.MILLISECONDS ) ;
+    }
+    clientEventLoopGroup.shutdownGracefully() ;
+    fixture.stopAll() ;
+  }
+
+  private static final class WebsocketClient
+      extends SimpleChannelInboundHandler< WebSocketFrame >
+  {
+
+    private final BlockingQueue< String > frames = new LinkedBlockingQueue<>() ;
+
+    @Override
+    protected void channelRead0(
+        final ChannelHandlerContext channelHandlerContext,
+        final WebSocketFrame webSocketFrame
+    ) {
+      frames.add( webSocketFrame.content().toString( CharsetUtil.UTF_8 ) ) ;
+    }
+
+    public String nextFrame() throws InterruptedException {
+      return frames.poll( TIMEOUT_MS, TimeUnit.MILLISECONDS ) ;
+    }
+  }
+
+  /**
+   * Unpooled, so {@link ByteBuf#refCnt()} remains meaningful after deallocation.
+   */
+  private static final class RecordingAllocator extends AbstractByteBufAllocator {
+
+    private final List< ByteBuf > allocated = new CopyOnWriteArrayList<>() ;
+
+    @Override
+    protected ByteBuf newHeapBuffer( final int initialCapacity, final int maxCapacity ) {
+      return record( Unpooled.buffer( initialCapacity, maxCapacity ) ) ;
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer( final int initialCapacity, final int maxCapacity ) {
+      return record( Unpooled.directBuffer( initialCapacity, maxCapacity ) ) ;
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+      return false ;
+    }
+
+    private ByteBuf record( final ByteBuf byteBuf ) {
+      allocated.add( byteBuf ) ;
+      return byteBuf ;
+    }
+  }
+}
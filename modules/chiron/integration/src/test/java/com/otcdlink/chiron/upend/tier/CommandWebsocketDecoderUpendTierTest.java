@@ -1,6 +1,7 @@
 package com.otcdlink.chiron.upend.tier;
 
 import com.google.common.collect.ImmutableMap;
+import com.otcdlink.chiron.buffer.FieldEncoding;
 import com.otcdlink.chiron.buffer.PositionalFieldReader;
 import com.otcdlink.chiron.buffer.PositionalFieldWriter;
 import com.otcdlink.chiron.codec.CommandBodyDecoder;
@@ -12,6 +13,10 @@ import com.otcdlink.chiron.designator.DesignatorForger;
 import com.otcdlink.chiron.middle.ChannelTools;
 import com.otcdlink.chiron.middle.CommandAssert;
 import com.otcdlink.chiron.middle.session.SessionIdentifier;
+import com.otcdlink.chiron.middle.tier.FrameBatching;
+import com.otcdlink.chiron.middle.tier.PreencodedCommand;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import mockit.Injectable;
@@ -90,6 +95,114 @@ public class CommandWebsocketDecoderUpendTierTest {
     ;
   }
 
+  @Test
+  public void decodeBatch(
+      @Injectable final Designator.Factory designatorFactory
+  ) throws Exception {
+
+    final CommandWebsocketCodecUpendTier<
+                InboundCallableReceiver,
+                OutboundCallableReceiver
+            > channelHandler = new CommandWebsocketCodecUpendTier<>(
+        newBodyDecoder(),
+        designatorFactory
+    ) ;
+
+    final EmbeddedChannel embeddedChannel = new EmbeddedChannel( channelHandler ) ;
+    embeddedChannel.attr( ChannelTools.SESSION_KEY ).set( SESSION_IDENTIFIER ) ;
+    embeddedChannel.attr( ChannelTools.FRAME_BATCHING_KEY ).set( new FrameBatching( 1000 ) ) ;
+
+    new StrictExpectations() {{
+      designatorFactory.upward( TAG, SESSION_IDENTIFIER ) ;
+      result = DUMMY_UPWARD_COMMAND.endpointSpecific ;
+      designatorFactory.upward( TAG, SESSION_IDENTIFIER ) ;
+      result = DUMMY_UPWARD_COMMAND_2.endpointSpecific ;
+    }} ;
+
+    final TextWebSocketFrame inboundTextWebSocketFrame = new TextWebSocketFrame(
+        textOf( DUMMY_UPWARD_COMMAND ) + ( char ) FrameBatching.RECORD_SEPARATOR +
+        textOf( DUMMY_UPWARD_COMMAND_2 )
+    ) ;
+
+    embeddedChannel.writeInbound( inboundTextWebSocketFrame ) ;
+
+    assertThat( embeddedChannel.inboundMessages() ).hasSize( 2 ) ;
+    CommandAssert.assertThat( ( Command ) embeddedChannel.inboundMessages().remove() )
+        .isEquivalentTo( DUMMY_UPWARD_COMMAND ) ;
+    CommandAssert.assertThat( ( Command ) embeddedChannel.inboundMessages().remove() )
+        .isEquivalentTo( DUMMY_UPWARD_COMMAND_2 ) ;
+    assertThat( inboundTextWebSocketFrame.refCnt() ).isEqualTo( 0 ) ;
+  }
+
+  @Test
+  public void encodeBatch(
+      @Injectable final Designator.Factory designatorFactory
+  ) throws Exception {
+
+    final CommandWebsocketCodecUpendTier<
+                InboundCallableReceiver,
+                OutboundCallableReceiver
+            > channelHandler = new CommandWebsocketCodecUpendTier<>(
+        newBodyDecoder(),
+        designatorFactory
+    ) ;
+
+    final EmbeddedChannel embeddedChannel = new EmbeddedChannel( channelHandler ) ;
+    embeddedChannel.attr( ChannelTools.SESSION_KEY ).set( SESSION_IDENTIFIER ) ;
+    final int oneCommandLength = textOf( DUMMY_DOWNWARD_COMMAND ).length() ;
+    embeddedChannel.attr( ChannelTools.FRAME_BATCHING_KEY )
+        .set( new FrameBatching( oneCommandLength * 2 + 1 ) ) ;
+
+    embeddedChannel.write( DUMMY_DOWNWARD_COMMAND ) ;
+    embeddedChannel.write( DUMMY_DOWNWARD_COMMAND ) ;
+    embeddedChannel.write( DUMMY_DOWNWARD_COMMAND ) ;
+    embeddedChannel.flush() ;
+    assertThat( embeddedChannel.outboundMessages() )
+        .describedAs( "Exceeding maximum length causes an early write, but no flush" )
+        .isEmpty() ;
+
+    embeddedChannel.runPendingTasks() ;
+
+    final String separator = Character.toString( ( char ) FrameBatching.RECORD_SEPARATOR ) ;
+    assertThat( embeddedChannel.outboundMessages() ).hasSize( 2 ) ;
+    assertThat( ( ( TextWebSocketFrame ) embeddedChannel.outboundMessages().remove() ).text() )
+        .isEqualTo( textOf( DUMMY_DOWNWARD_COMMAND ) + separator +
+            textOf( DUMMY_DOWNWARD_COMMAND ) ) ;
+    assertThat( ( ( TextWebSocketFrame ) embeddedChannel.outboundMessages().remove() ).text() )
+        .isEqualTo( textOf( DUMMY_DOWNWARD_COMMAND ) ) ;
+  }
+
+  @Test
+  public void encodePreencoded(
+      @Injectable final Designator.Factory designatorFactory
+  ) throws Exception {
+
+    final CommandWebsocketCodecUpendTier<
+                InboundCallableReceiver,
+                OutboundCallableReceiver
+            > channelHandler = new CommandWebsocketCodecUpendTier<>(
+        newBodyDecoder(),
+        designatorFactory
+    ) ;
+
+    final EmbeddedChannel embeddedChannel = new EmbeddedChannel( channelHandler ) ;
+    embeddedChannel.attr( ChannelTools.SESSION_KEY ).set( SESSION_IDENTIFIER ) ;
+
+    final PreencodedCommand.Bodies bodies =
+        new PreencodedCommand.Bodies( DUMMY_DOWNWARD_COMMAND, UnpooledByteBufAllocator.DEFAULT ) ;
+    final ByteBuf body = bodies.retainedBody( FieldEncoding.TEXT ) ;
+    embeddedChannel.writeOutbound( new PreencodedCommand<>(
+        DUMMY_DOWNWARD_COMMAND.description(), DESIGNATOR_DOWNWARD, body ) ) ;
+    bodies.release() ;
+
+    assertThat( embeddedChannel.outboundMessages() ).hasSize( 1 ) ;
+    final TextWebSocketFrame frame =
+        ( TextWebSocketFrame ) embeddedChannel.outboundMessages().remove() ;
+    assertThat( frame.text() ).isEqualTo( textOf( DUMMY_DOWNWARD_COMMAND ) ) ;
+    frame.release() ;
+    assertThat( body.refCnt() ).isEqualTo( 0 ) ;
+  }
+
   @Test( expected = AssertionError.class )
   public void nonEquivalence() throws Exception {
     CommandAssert.assertThat( DUMMY_UPWARD_COMMAND ).isEquivalentTo( DUMMY_UPWARD_COMMAND_2 ) ;
@@ -99,6 +212,13 @@ public class CommandWebsocketDecoderUpendTierTest {
 // Fixture
 // =======
 
+  private static String textOf( final DummyCommand< Designator > command ) {
+    return command.description().name() + ' ' +
+        command.endpointSpecific.tag.asString() + ' ' +
+        Integer.toString( command.integerPrimitive ) + ' ' +
+        command.nullableString + ' '
+    ;
+  }
 
   private interface InboundCallableReceiver {
     void intAndString( int i, String s ) ;
@@ -0,0 +1,511 @@
+package com.otcdlink.chiron.buffer;
+
+import com.google.common.base.Charsets;
+import com.otcdlink.chiron.codec.DecodeException;
+import com.otcdlink.chiron.command.Stamp;
+import com.otcdlink.chiron.toolbox.clock.Clock;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Binary counterpart of {@link BytebufCoat}, for {@link FieldEncoding#BINARY}.
+ * <p>
+ * Positional fields don't need delimiters, but {@link #readNullityMarker()} must tell a
+ * {@link #NULLITY_MARKER} from the first byte of a value. So no value starts with a zero byte:
+ * <ul>
+ *   <li>Integral numbers are zigzag-encoded (so small negative numbers stay small), plus one,
+ *   as a varint (7 bits per byte, least significant group first, high bit set on every
+ *   byte but the last).
+ *   <li>Strings are a varint of their UTF-8 length plus one, then UTF-8 bytes.
+ *   <li>Floats are their raw IEEE 754 bits, reversed so a short mantissa gives a short varint
+ *   (like {@code 1.5f} taking 2 bytes), plus one.
+ *   <li>Booleans are {@code 'T'} or {@code 'F'}.
+ * </ul>
+ * There is a plus-one varint for {@code 2^64}, it is 10 bytes long.
+ *
+ * @see BytebufTools#threadLocalRecyclableBinaryCoating()
+ */
+public class BinaryBytebufCoat implements PositionalFieldReader, PositionalFieldWriter {
+
+  static final byte NULLITY_MARKER = 0 ;
+
+  private static final byte BOOLEAN_TRUE = 'T' ;
+
+  private static final byte BOOLEAN_FALSE = 'F' ;
+
+  private static final int VARINT_MAXIMUM_LENGTH = 10 ;
+
+// =======
+// Coating
+// =======
+
+  private ByteBuf coated ;
+
+  BinaryBytebufCoat() {
+    this( null ) ;
+  }
+
+  BinaryBytebufCoat( final ByteBuf coated ) {
+    this.coated = coated ;
+  }
+
+  void recycle() {
+    checkState( coated != null, "Uninitialized or already recycled" ) ;
+    coated = null ;
+  }
+
+  void coat( final ByteBuf byteBuf ) {
+    checkState( coated == null, "Currently in use, or forgot to recycle" ) ;
+    coated = checkNotNull( byteBuf ) ;
+  }
+
+  public String prettyHexDump() {
+    return
+        ByteBufUtil.prettyHexDump( coated ) + "\n" +
+        "The dump above shows readable bytes (readerIndex <= shown < writerIndex).\n" +
+        "readerIndex: " + coated.readerIndex() + "    " +
+        "writerIndex: " + coated.writerIndex() + "\n"
+    ;
+  }
+
+
+// =======
+// Varints
+// =======
+
+  private void writeVarint( long unsigned ) {
+    while( ( unsigned & ~0x7FL ) != 0 ) {
+      coated.writeByte( ( int ) ( ( unsigned & 0x7F ) | 0x80 ) ) ;
+      unsigned >>>= 7 ;
+    }
+    coated.writeByte( ( int ) unsigned ) ;
+  }
+
+  /**
+   * Writes {@code unsigned + 1}, which is never zero.
+   */
+  private void writeVarintPlusOne( final long unsigned ) {
+    if( unsigned == -1L ) {
+      /** Would overflow to 0, so we write 2^64 which {@link #readVarint()} overflows to 0. */
+      for( int i = 0 ; i < VARINT_MAXIMUM_LENGTH - 1 ; i ++ ) {
+        coated.writeByte( 0x80 ) ;
+      }
+      coated.writeByte( 0x02 ) ;
+    } else {
+      writeVarint( unsigned + 1 ) ;
+    }
+  }
+
+  /**
+   * Writes a varint with exactly {@code width} bytes, padding with empty groups,
+   * so we can reserve room for it before knowing the value.
+   */
+  private void setPaddedVarint( final int index, long unsigned, final int width ) {
+    for( int i = 0 ; i < width - 1 ; i ++ ) {
+      coated.setByte( index + i, ( int ) ( ( unsigned & 0x7F ) | 0x80 ) ) ;
+      unsigned >>>= 7 ;
+    }
+    coated.setByte( index + width - 1, ( int ) unsigned ) ;
+  }
+
+  private static int varintLength( long unsigned ) {
+    int length = 1 ;
+    while( ( unsigned & ~0x7FL ) != 0 ) {
+      unsigned >>>= 7 ;
+      length ++ ;
+    }
+    return length ;
+  }
+
+  private long readVarint() throws DecodeException {
+    long result = 0 ;
+    for( int shift = 0 ; shift < VARINT_MAXIMUM_LENGTH * 7 ; shift += 7 ) {
+      if( ! coated.isReadable() ) {
+        throw new DecodeException( "Truncated varint", coated ) ;
+      }
+      final byte b = coated.readByte() ;
+      result |= ( long ) ( b & 0x7F ) << shift ;
+      if( ( b & 0x80 ) == 0 ) {
+        return result ;
+      }
+    }
+    throw new DecodeException( "Varint longer than " + VARINT_MAXIMUM_LENGTH + " bytes", coated ) ;
+  }
+
+  private long readVarintMinusOne() throws DecodeException {
+    return readVarint() - 1 ;
+  }
+
+  private void writeZigzagInt( final int value ) {
+    writeVarintPlusOne( ( ( value << 1 ) ^ ( value >> 31 ) ) & 0xFFFFFFFFL ) ;
+  }
+
+  private int readZigzagInt() throws DecodeException {
+    final long unsigned = readVarintMinusOne() ;
+    if( unsigned < 0 || unsigned > 0xFFFFFFFFL ) {
+      throw new DecodeException( "Out of integer range: " + unsigned, coated ) ;
+    }
+    final int zigzag = ( int ) unsigned ;
+    return ( zigzag >>> 1 ) ^ -( zigzag & 1 ) ;
+  }
+
+  private void writeZigzagLong( final long value ) {
+    writeVarintPlusOne( ( value << 1 ) ^ ( value >> 63 ) ) ;
+  }
+
+  private long readZigzagLong() throws DecodeException {
+    final long zigzag = readVarintMinusOne() ;
+    return ( zigzag >>> 1 ) ^ -( zigzag & 1 ) ;
+  }
+
+
+// =====================
+// PositionalFieldReader
+// =====================
+
+  @Override
+  public boolean readNullityMarker() throws DecodeException {
+    if( coated.isReadable() && coated.getByte( coated.readerIndex() ) == NULLITY_MARKER ) {
+      coated.skipBytes( 1 ) ;
+      return true ;
+    }
+    return false ;
+  }
+
+  @Override
+  public void readExistenceMarker() throws DecodeException {
+    if( ! coated.isReadable() || coated.readByte() != BytebufTools.EXISTENCE_MARKER ) {
+      throw new DecodeException( "Missing existence marker '" +
+          BytebufTools.EXISTENCE_MARKER + "'", coated ) ;
+    }
+  }
+
+  @Override
+  public String readDelimitedString() throws DecodeException {
+    final long length = readVarintMinusOne() ;
+    if( length < 0 || length > coated.readableBytes() ) {
+      throw new DecodeException( "Bad string length: " + length, coated ) ;
+    }
+    final String string = coated.toString( coated.readerIndex(), ( int ) length, Charsets.UTF_8 ) ;
+    coated.skipBytes( ( int ) length ) ;
+    return string ;
+  }
+
+  @Override
+  public int readDelimitedString( final ByteTrie byteTrie ) throws DecodeException {
+    final int start = coated.readerIndex() ;
+    final long length = readVarintMinusOne() ;
+    if( length < 0 || length > coated.readableBytes() ) {
+      throw new DecodeException( "Bad string length: " + length, coated ) ;
+    }
+    final int match = byteTrie.match( coated, coated.readerIndex(), ( int ) length ) ;
+    if( match == ByteTrie.NO_MATCH ) {
+      coated.readerIndex( start ) ;
+    } else {
+      coated.skipBytes( ( int ) length ) ;
+    }
+    return match ;
+  }
+
+  @Override
+  public String readNullableString() throws DecodeException {
+    return readNullityMarker() ? null : readDelimitedString() ;
+  }
+
+  @Override
+  public int readIntegerPrimitive() throws DecodeException {
+    return readZigzagInt() ;
+  }
+
+  @Override
+  public Integer readIntegerObject() throws DecodeException {
+    return readNullityMarker() ? null : readZigzagInt() ;
+  }
+
+  @Override
+  public long readLongPrimitive() throws DecodeException {
+    return readZigzagLong() ;
+  }
+
+  @Override
+  public Long readLongObject() throws DecodeException {
+    return readNullityMarker() ? null : readZigzagLong() ;
+  }
+
+  @Override
+  public float readFloatPrimitive() throws DecodeException {
+    final long unsigned = readVarintMinusOne() ;
+    if( unsigned < 0 || unsigned > 0xFFFFFFFFL ) {
+      throw new DecodeException( "Out of float range: " + unsigned, coated ) ;
+    }
+    return Float.intBitsToFloat( Integer.reverse( ( int ) unsigned ) ) ;
+  }
+
+  @Override
+  public Float readFloatObject() throws DecodeException {
+    return readNullityMarker() ? null : readFloatPrimitive() ;
+  }
+
+  @Override
+  public boolean readBooleanPrimitive() throws DecodeException {
+    if( ! coated.isReadable() ) {
+      throw new DecodeException( "Missing boolean", coated ) ;
+    }
+    final byte b = coated.readByte() ;
+    if( b == BOOLEAN_TRUE ) {
+      return true ;
+    } else if( b == BOOLEAN_FALSE ) {
+      return false ;
+    } else {
+      throw new DecodeException( "Unsupported value when expecting a boolean: " + b, coated ) ;
+    }
+  }
+
+  @Override
+  public Boolean readBooleanObject() throws DecodeException {
+    return readNullityMarker() ? null : readBooleanPrimitive() ;
+  }
+
+  @Override
+  public BigDecimal readBigDecimal() throws DecodeException {
+    if( readNullityMarker() ) {
+      return null ;
+    }
+    final int scale = readZigzagInt() ;
+    final long length = readVarintMinusOne() ;
+    if( length <= 0 || length > coated.readableBytes() ) {
+      throw new DecodeException( "Bad unscaled value length: " + length, coated ) ;
+    }
+    final byte[] unscaled = new byte[ ( int ) length ] ;
+    coated.readBytes( unscaled ) ;
+    return new BigDecimal( new BigInteger( unscaled ), scale ) ;
+  }
+
+  @Override
+  public DateTime readDateTime() throws DecodeException {
+    if( readNullityMarker() ) {
+      return null ;
+    }
+    final long milliseconds = readZigzagLong() ;
+    return milliseconds <= 0 ? Clock.ZERO : new DateTime( milliseconds, DateTimeZone.UTC ) ;
+  }
+
+  /**
+   * @see #writeLocalDate(LocalDate)
+   */
+  @Override
+  public LocalDate readLocalDate() throws DecodeException {
+    if( readNullityMarker() ) {
+      return null ;
+    }
+    final int packed = readZigzagInt() ;
+    try {
+      return new LocalDate( packed / 10_000, ( packed / 100 ) % 100, packed % 100 ) ;
+    } catch( final Exception e ) {
+      throw new DecodeException( "Can't unpack " + LocalDate.class.getSimpleName() +
+          " from " + packed, e, coated ) ;
+    }
+  }
+
+  @Override
+  public Duration readDuration() throws DecodeException {
+    return readNullityMarker() ? null : new Duration( readZigzagLong() ) ;
+  }
+
+  @Override
+  public int readableBytes() {
+    return coated.readableBytes() ;
+  }
+
+  @Override
+  public byte getByte( final int index ) throws DecodeException {
+    try {
+      return coated.getByte( index ) ;
+    } catch( final Exception e ) {
+      throw new DecodeException( "Incorrect index: " + index, e, coated ) ;
+    }
+  }
+
+  @Override
+  public void skipBytes( final int length ) throws DecodeException {
+    try {
+      coated.skipBytes( length ) ;
+    } catch( final Exception e ) {
+      throw new DecodeException( "Incorrect length: " + length, e, coated ) ;
+    }
+  }
+
+
+// =====================
+// PositionalFieldWriter
+// =====================
+
+  @Override
+  public boolean writeNullityMarkerMaybe( final boolean writeIt ) {
+    if( writeIt ) {
+      coated.writeByte( NULLITY_MARKER ) ;
+    }
+    return writeIt ;
+  }
+
+  @Override
+  public void writeExistenceMark() {
+    coated.writeByte( BytebufTools.EXISTENCE_MARKER ) ;
+  }
+
+  /**
+   * Reserves room for the length from {@link ByteBufUtil#utf8MaxBytes(CharSequence)},
+   * so it needs only one pass on the {@code String}. A short {@code String} has a
+   * one-byte length anyways.
+   */
+  @Override
+  public void writeDelimitedString( final String nonNullString ) {
+    final int lengthWidth = varintLength( ByteBufUtil.utf8MaxBytes( nonNullString ) + 1 ) ;
+    final int lengthIndex = coated.writerIndex() ;
+    coated.writeZero( lengthWidth ) ;
+    final int utf8Length = ByteBufUtil.writeUtf8( coated, nonNullString ) ;
+    setPaddedVarint( lengthIndex, utf8Length + 1, lengthWidth ) ;
+  }
+
+  @Override
+  public void writeNullableString( final String string ) {
+    if( ! writeNullityMarkerMaybe( string == null ) ) {
+      writeDelimitedString( string ) ;
+    }
+  }
+
+  @Override
+  public void writeIntegerPrimitive( final int integerPrimitive ) {
+    writeZigzagInt( integerPrimitive ) ;
+  }
+
+  @Override
+  public void writeIntegerObject( final Integer integerObject ) {
+    if( ! writeNullityMarkerMaybe( integerObject == null ) ) {
+      writeZigzagInt( integerObject ) ;
+    }
+  }
+
+  @Override
+  public void writeLongPrimitive( final long longPrimitive ) {
+    writeZigzagLong( longPrimitive ) ;
+  }
+
+  @Override
+  public void writeLongObject( final Long longObject ) {
+    if( ! writeNullityMarkerMaybe( longObject == null ) ) {
+      writeZigzagLong( longObject ) ;
+    }
+  }
+
+  @Override
+  public void writeFloatPrimitive( final float floatPrimitive ) {
+    writeVarintPlusOne(
+        Integer.reverse( Float.floatToRawIntBits( floatPrimitive ) ) & 0xFFFFFFFFL ) ;
+  }
+
+  @Override
+  public void writeFloatObject( final Float floatObject ) {
+    if( ! writeNullityMarkerMaybe( floatObject == null ) ) {
+      writeFloatPrimitive( floatObject ) ;
+    }
+  }
+
+  @Override
+  public void writeBooleanPrimitive( final boolean booleanPrimitive ) {
+    coated.writeByte( booleanPrimitive ? BOOLEAN_TRUE : BOOLEAN_FALSE ) ;
+  }
+
+  @Override
+  public void writeBooleanObject( final Boolean booleanObject ) {
+    if( ! writeNullityMarkerMaybe( booleanObject == null ) ) {
+      writeBooleanPrimitive( booleanObject ) ;
+    }
+  }
+
+  /**
+   * Scale, then two's-complement unscaled value with its length.
+   */
+  @Override
+  public void writeBigDecimal( final BigDecimal bigDecimal ) {
+    if( ! writeNullityMarkerMaybe( bigDecimal == null ) ) {
+      writeZigzagInt( bigDecimal.scale() ) ;
+      final byte[] unscaled = bigDecimal.unscaledValue().toByteArray() ;
+      writeVarintPlusOne( unscaled.length ) ;
+      coated.writeBytes( unscaled ) ;
+    }
+  }
+
+  @Override
+  public void writeDateTime( final DateTime dateTime ) {
+    checkArgument( dateTime == null ||
+        dateTime.getZone().equals( DateTimeZone.UTC ), "" + dateTime ) ;
+    if( ! writeNullityMarkerMaybe( dateTime == null ) ) {
+      writeZigzagLong( dateTime.getMillis() ) ;
+    }
+  }
+
+  /**
+   * Packs into {@code yyyyMMdd} as an integer, like the {@link FieldEncoding#TEXT} format.
+   */
+  @Override
+  public void writeLocalDate( final LocalDate localDate ) {
+    if( ! writeNullityMarkerMaybe( localDate == null ) ) {
+      writeZigzagInt( localDate.getYear() * 10_000 +
+          localDate.getMonthOfYear() * 100 + localDate.getDayOfMonth() ) ;
+    }
+  }
+
+  @Override
+  public void writeDuration( final Duration duration ) {
+    if( ! writeNullityMarkerMaybe( duration == null ) ) {
+      writeZigzagLong( duration.getMillis() ) ;
+    }
+  }
+
+  /**
+   * Same bytes as {@link #writeDelimitedString(String)} would write. The longest
+   * {@link Stamp} has less than 30 characters so its length takes one byte.
+   */
+  @Override
+  public void writeStamp( final Stamp stamp ) {
+    final int lengthIndex = coated.writerIndex() ;
+    coated.writeZero( 1 ) ;
+    final int length = stamp.writeRoundedToFlooredSecond( coated ) ;
+    setPaddedVarint( lengthIndex, length + 1, 1 ) ;
+  }
+
+  @Override
+  public Stamp readStamp() throws DecodeException {
+    final long length = readVarintMinusOne() ;
+    if( length < 0 || length > coated.readableBytes() ) {
+      throw new DecodeException( "Bad " + Stamp.class.getSimpleName() + " length: " + length,
+          coated ) ;
+    }
+    final int start = coated.readerIndex() ;
+    final Stamp stamp = Stamp.parse( coated, start, start + ( int ) length ) ;
+    if( stamp == null ) {
+      throw new DecodeException( "Not parseable as " + Stamp.class.getSimpleName() + ": '" +
+          coated.toString( start, ( int ) length, Charsets.UTF_8 ) + "'", coated ) ;
+    }
+    coated.skipBytes( ( int ) length ) ;
+    return stamp ;
+  }
+
+  @Override
+  public void writeAsciiUnsafe( final CharSequence charSequence ) {
+    ByteBufUtil.writeAscii( coated, charSequence ) ;
+  }
+
+}
@@ -0,0 +1,121 @@
+package com.otcdlink.chiron.buffer;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Finds the index of a {@code String} in an immutable list, given its UTF-8 bytes in a
+ * {@link ByteBuf}, without creating any object.
+ * Nodes usually have few children, so a linear scan of their labels is enough.
+ *
+ * @see PositionalFieldReader#readDelimitedString(ByteTrie)
+ */
+public final class ByteTrie {
+
+  public static final int NO_MATCH = -1 ;
+
+  private final ImmutableList< String > strings ;
+
+  /**
+   * Indexed by node, the bytes leading to each child.
+   */
+  private final byte[][] labels ;
+
+  /**
+   * Indexed by node, the children in the same order as {@link #labels}.
+   */
+  private final int[][] children ;
+
+  /**
+   * Indexed by node, the index of the {@code String} ending on it, or {@link #NO_MATCH}.
+   */
+  private final int[] values ;
+
+  public ByteTrie( final ImmutableList< String > strings ) {
+    this.strings = checkNotNull( strings ) ;
+    final List< TreeMap< Byte, Integer > > transitions = new ArrayList<>() ;
+    final List< Integer > nodeValues = new ArrayList<>() ;
+    transitions.add( new TreeMap<>() ) ;
+    nodeValues.add( NO_MATCH ) ;
+    for( int stringIndex = 0 ; stringIndex < strings.size() ; stringIndex ++ ) {
+      int node = 0 ;
+      for( final byte b : strings.get( stringIndex ).getBytes( Charsets.UTF_8 ) ) {
+        final Integer child = transitions.get( node ).get( b ) ;
+        if( child == null ) {
+          transitions.add( new TreeMap<>() ) ;
+          nodeValues.add( NO_MATCH ) ;
+          transitions.get( node ).put( b, transitions.size() - 1 ) ;
+          node = transitions.size() - 1 ;
+        } else {
+          node = child ;
+        }
+      }
+      checkArgument( nodeValues.get( node ) == NO_MATCH,
+          "Duplicate: '" + strings.get( stringIndex ) + "'" ) ;
+      nodeValues.set( node, stringIndex ) ;
+    }
+
+    final int nodeCount = transitions.size() ;
+    this.labels = new byte[ nodeCount ][] ;
+    this.children = new int[ nodeCount ][] ;
+    this.values = new int[ nodeCount ] ;
+    for( int node = 0 ; node < nodeCount ; node ++ ) {
+      final TreeMap< Byte, Integer > nodeTransitions = transitions.get( node ) ;
+      labels[ node ] = new byte[ nodeTransitions.size() ] ;
+      children[ node ] = new int[ nodeTransitions.size() ] ;
+      int transitionIndex = 0 ;
+      for( final Map.Entry< Byte, Integer > entry : nodeTransitions.entrySet() ) {
+        labels[ node ][ transitionIndex ] = entry.getKey() ;
+        children[ node ][ transitionIndex ] = entry.getValue() ;
+        transitionIndex ++ ;
+      }
+      values[ node ] = nodeValues.get( node ) ;
+    }
+  }
+
+  public ImmutableList< String > strings() {
+    return strings ;
+  }
+
+  /**
+   * Does not change indices of the {@link ByteBuf}.
+   *
+   * @return the index of the {@code String} in {@link #strings()} with exactly those bytes,
+   *     or {@link #NO_MATCH}.
+   */
+  public int match( final ByteBuf byteBuf, final int start, final int length ) {
+    int node = 0 ;
+    for( int i = start ; i < start + length ; i ++ ) {
+      final byte b = byteBuf.getByte( i ) ;
+      final byte[] nodeLabels = labels[ node ] ;
+      int next = NO_MATCH ;
+      for( int labelIndex = 0 ; labelIndex < nodeLabels.length ; labelIndex ++ ) {
+        if( nodeLabels[ labelIndex ] == b ) {
+          next = children[ node ][ labelIndex ] ;
+          break ;
+        }
+      }
+      if( next == NO_MATCH ) {
+        return NO_MATCH ;
+      }
+      node = next ;
+    }
+    return values[ node ] ;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringTools.getNiceClassName( this ) + '{' + strings.size() + " strings;" +
+        labels.length + " nodes}" ;
+  }
+}
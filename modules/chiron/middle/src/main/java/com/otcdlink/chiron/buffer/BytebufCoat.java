@@ -1,8 +1,8 @@
 package com.otcdlink.chiron.buffer;
 
 import com.google.common.base.Charsets;
-import com.google.common.net.PercentEscaper;
 import com.otcdlink.chiron.codec.DecodeException;
+import com.otcdlink.chiron.command.Stamp;
 import com.otcdlink.chiron.toolbox.clock.Clock;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
@@ -11,9 +11,7 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
 import org.joda.time.LocalDate;
 
-import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
-import java.net.URLDecoder;
 import java.nio.charset.Charset;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -62,34 +60,151 @@ public class BytebufCoat implements PositionalFieldReader, PositionalFieldWriter
 // =========
 
   /**
-   * Don't encode some characters for aesthetic reasons.
+   * Same escaping as Guava's {@code new PercentEscaper( "._$-", true )} used to do:
+   * letters, digits and some characters (not encoded for aesthetic reasons) stay as they are,
+   * space becomes {@code '+'}, everything else becomes percent-escaped UTF-8 bytes.
+   * So a {@link java.net.URLDecoder} can still decode what we write.
    */
-  private static final PercentEscaper ESCAPER = new PercentEscaper( "._$-", true ) ;
+  private static final boolean[] SAFE_ASCII = new boolean[ 128 ] ;
+  static {
+    for( char c = 'a' ; c <= 'z' ; c ++ ) {
+      SAFE_ASCII[ c ] = true ;
+    }
+    for( char c = 'A' ; c <= 'Z' ; c ++ ) {
+      SAFE_ASCII[ c ] = true ;
+    }
+    for( char c = '0' ; c <= '9' ; c ++ ) {
+      SAFE_ASCII[ c ] = true ;
+    }
+    for( final char c : "._$-".toCharArray() ) {
+      SAFE_ASCII[ c ] = true ;
+    }
+  }
+
+  private static final byte[] UPPER_HEX_DIGITS = "0123456789ABCDEF".getBytes( Charsets.US_ASCII ) ;
+
+  private static boolean isSafe( final char c ) {
+    return c < 128 && SAFE_ASCII[ c ] ;
+  }
 
   /**
-   * TODO: skip {@code String} instantiation and spit directly to the {@link ByteBuf}.
+   * Writes directly into the {@link ByteBuf}, with a fast path for the (most common)
+   * case where nothing needs escaping.
+   *
+   * @throws IllegalArgumentException if there is an unpaired surrogate.
    */
-  private static String urlEncodeUtf8( final String string ) {
-    return ESCAPER.escape( string ) ;
+  private static void urlEncodeUtf8( final ByteBuf byteBuf, final CharSequence string ) {
+    final int length = string.length() ;
+    int firstUnsafe = 0 ;
+    while( firstUnsafe < length && isSafe( string.charAt( firstUnsafe ) ) ) {
+      firstUnsafe ++ ;
+    }
+    if( firstUnsafe == length ) {
+      ByteBufUtil.writeAscii( byteBuf, string ) ;
+      return ;
+    }
+    byteBuf.ensureWritable( length ) ;
+    for( int i = 0 ; i < length ; i ++ ) {
+      final char c = string.charAt( i ) ;
+      if( isSafe( c ) ) {
+        byteBuf.writeByte( c ) ;
+      } else if( c == ' ' ) {
+        byteBuf.writeByte( '+' ) ;
+      } else if( c < 0x80 ) {
+        writeEscapedByte( byteBuf, c ) ;
+      } else if( c < 0x800 ) {
+        writeEscapedByte( byteBuf, 0xC0 | ( c >> 6 ) ) ;
+        writeEscapedByte( byteBuf, 0x80 | ( c & 0x3F ) ) ;
+      } else if( Character.isSurrogate( c ) ) {
+        if( Character.isHighSurrogate( c ) && i + 1 < length &&
+            Character.isLowSurrogate( string.charAt( i + 1 ) )
+        ) {
+          final int codePoint = Character.toCodePoint( c, string.charAt( ++ i ) ) ;
+          writeEscapedByte( byteBuf, 0xF0 | ( codePoint >> 18 ) ) ;
+          writeEscapedByte( byteBuf, 0x80 | ( ( codePoint >> 12 ) & 0x3F ) ) ;
+          writeEscapedByte( byteBuf, 0x80 | ( ( codePoint >> 6 ) & 0x3F ) ) ;
+          writeEscapedByte( byteBuf, 0x80 | ( codePoint & 0x3F ) ) ;
+        } else {
+          throw new IllegalArgumentException( "Unpaired surrogate at index " + i ) ;
+        }
+      } else {
+        writeEscapedByte( byteBuf, 0xE0 | ( c >> 12 ) ) ;
+        writeEscapedByte( byteBuf, 0x80 | ( ( c >> 6 ) & 0x3F ) ) ;
+        writeEscapedByte( byteBuf, 0x80 | ( c & 0x3F ) ) ;
+      }
+    }
   }
 
-  private static String urlDecodeUtf8( final ByteBuf byteBuf, final int lastIndex )
+  private static void writeEscapedByte( final ByteBuf byteBuf, final int b ) {
+    byteBuf.writeByte( '%' ) ;
+    byteBuf.writeByte( UPPER_HEX_DIGITS[ ( b >> 4 ) & 0xF ] ) ;
+    byteBuf.writeByte( UPPER_HEX_DIGITS[ b & 0xF ] ) ;
+  }
+
+  /**
+   * Unescaped bytes, reused across calls so decoding allocates nothing but the
+   * final {@code String}.
+   */
+  private byte[] unescaped = new byte[ 64 ] ;
+
+  /**
+   * Decodes what {@link #urlEncodeUtf8(ByteBuf, CharSequence)} wrote, like
+   * {@link java.net.URLDecoder} would do, and skips the field end marker.
+   * If there is nothing to unescape and only ASCII characters, there is no intermediary
+   * copy.
+   */
+  private String urlDecodeUtf8( final ByteBuf byteBuf, final int lastIndex )
       throws DecodeException
   {
-    final byte[] bytes = new byte[ lastIndex - byteBuf.readerIndex() ] ;
-    byteBuf.readBytes( bytes ) ;
-    byteBuf.skipBytes( 1 ) ;
-    final String decodable ;
-    try {
-      decodable = new String( bytes, CHARSET ) ;
-    } catch( final Exception e ) {
-      throw new DecodeException( "Could not create " + CHARSET + " string", e, byteBuf ) ;
+    final int start = byteBuf.readerIndex() ;
+    final int length = lastIndex - start ;
+    boolean plain = true ;
+    for( int i = start ; i < lastIndex ; i ++ ) {
+      final byte b = byteBuf.getByte( i ) ;
+      if( b < 0 || b == '%' || b == '+' ) {
+        plain = false ;
+        break ;
+      }
     }
+    final String decoded ;
+    if( plain ) {
+      decoded = byteBuf.toString( start, length, Charsets.US_ASCII ) ;
+    } else {
+      if( unescaped.length < length ) {
+        unescaped = new byte[ Math.max( length, unescaped.length * 2 ) ] ;
+      }
+      int unescapedLength = 0 ;
+      for( int i = start ; i < lastIndex ; i ++ ) {
+        final byte b = byteBuf.getByte( i ) ;
+        if( b == '+' ) {
+          unescaped[ unescapedLength ++ ] = ' ' ;
+        } else if( b == '%' ) {
+          final int high = i + 2 < lastIndex ? hexValue( byteBuf.getByte( i + 1 ) ) : -1 ;
+          final int low = high < 0 ? -1 : hexValue( byteBuf.getByte( i + 2 ) ) ;
+          if( low < 0 ) {
+            throw new DecodeException( "Bad escape sequence at index " + i, byteBuf ) ;
+          }
+          unescaped[ unescapedLength ++ ] = ( byte ) ( ( high << 4 ) | low ) ;
+          i += 2 ;
+        } else {
+          unescaped[ unescapedLength ++ ] = b ;
+        }
+      }
+      decoded = new String( unescaped, 0, unescapedLength, CHARSET ) ;
+    }
+    byteBuf.readerIndex( lastIndex + 1 ) ;
+    return decoded ;
+  }
 
-    try {
-      return URLDecoder.decode( decodable, CHARSET.name() ) ;
-    } catch( final UnsupportedEncodingException e ) {
-      throw new DecodeException( "Could not decode '" + decodable + "'", e ) ;
+  private static int hexValue( final byte b ) {
+    if( b >= '0' && b <= '9' ) {
+      return b - '0' ;
+    } else if( b >= 'A' && b <= 'F' ) {
+      return b - 'A' + 10 ;
+    } else if( b >= 'a' && b <= 'f' ) {
+      return b - 'a' + 10 ;
+    } else {
+      return -1 ;
     }
   }
 
@@ -153,13 +268,28 @@ public class BytebufCoat implements PositionalFieldReader, PositionalFieldWriter
 
   @Override
   public String readDelimitedString() throws DecodeException {
+    return urlDecodeUtf8( coated, findFieldEndMarker() ) ;
+  }
 
-    final int markerIndex = coated.forEachByte( BytebufTools.FIND_FIELD_END_MARKER ) ;
-    if( markerIndex < 0 ) {
-      throw new DecodeException( "Missing field end marker at the end", coated ) ;
-    } else {
-      return urlDecodeUtf8( coated, markerIndex ) ;
+  /**
+   * Bytes of an escaped field differ from those of the decoded {@code String} so
+   * {@link ByteTrie} could match another {@code String}, or none.
+   */
+  @Override
+  public int readDelimitedString( final ByteTrie byteTrie ) throws DecodeException {
+    final int start = coated.readerIndex() ;
+    final int markerIndex = findFieldEndMarker() ;
+    final int match = byteTrie.match( coated, start, markerIndex - start ) ;
+    if( match != ByteTrie.NO_MATCH ) {
+      for( int i = start ; i < markerIndex ; i ++ ) {
+        final byte b = coated.getByte( i ) ;
+        if( b == '%' || b == '+' ) {
+          return ByteTrie.NO_MATCH ;
+        }
+      }
+      coated.readerIndex( markerIndex + 1 ) ;
     }
+    return match ;
   }
 
   @Override
@@ -202,7 +332,7 @@ public class BytebufCoat implements PositionalFieldReader, PositionalFieldWriter
 
   @Override
   public void writeDelimitedString( final String nonNullString ) {
-    writeAsciiUnsafe( urlEncodeUtf8( nonNullString ) ) ;
+    urlEncodeUtf8( coated, nonNullString ) ;
     coated.writeByte( BytebufTools.FIELD_END_MARKER ) ;
   }
 
@@ -215,32 +345,42 @@ public class BytebufCoat implements PositionalFieldReader, PositionalFieldWriter
 
   @Override
   public void writeIntegerPrimitive( final int integerPrimitive ) {
-    writeDelimitedString( Integer.toString( integerPrimitive ) ) ;
+    writeDelimitedLong( integerPrimitive ) ;
   }
 
   @Override
   public void writeIntegerObject( final Integer integerObject ) {
-    writeNullableString( integerObject == null ? null : integerObject.toString() ) ;
+    if( ! writeNullityMarkerMaybe( integerObject == null ) ) {
+      writeDelimitedLong( integerObject ) ;
+    }
   }
 
   @Override
   public void writeLongPrimitive( final long longPrimitive ) {
-    writeDelimitedString( Long.toString( longPrimitive ) ) ;
+    writeDelimitedLong( longPrimitive ) ;
   }
 
   @Override
   public void writeLongObject( final Long longObject ) {
-    writeNullableString( longObject == null ? null : longObject.toString() ) ;
+    if( ! writeNullityMarkerMaybe( longObject == null ) ) {
+      writeDelimitedLong( longObject ) ;
+    }
   }
 
+  /**
+   * {@link Float#toString(float)} has no escapable character, so no need to escape.
+   */
   @Override
   public void writeFloatPrimitive( final float floatPrimitive ) {
-    writeDelimitedString( Float.toString( floatPrimitive ) ) ;
+    writeAsciiUnsafe( Float.toString( floatPrimitive ) ) ;
+    coated.writeByte( BytebufTools.FIELD_END_MARKER ) ;
   }
 
   @Override
   public void writeFloatObject( final Float floatObject ) {
-    writeNullableString( floatObject == null ? null : floatObject.toString() ) ;
+    if( ! writeNullityMarkerMaybe( floatObject == null ) ) {
+      writeFloatPrimitive( floatObject ) ;
+    }
   }
 
   @Override
@@ -265,7 +405,27 @@ public class BytebufCoat implements PositionalFieldReader, PositionalFieldWriter
   public void writeDateTime( final DateTime dateTime ) {
     checkArgument( dateTime == null ||
         dateTime.getZone().equals( DateTimeZone.UTC ), "" + dateTime ) ;
-    writeLongObject( dateTime == null ? null : dateTime.getMillis() ) ;
+    if( ! writeNullityMarkerMaybe( dateTime == null ) ) {
+      writeDelimitedLong( dateTime.getMillis() ) ;
+    }
+  }
+
+  @Override
+  public void writeStamp( final Stamp stamp ) {
+    stamp.writeRoundedToFlooredSecond( coated ) ;
+    coated.writeByte( BytebufTools.FIELD_END_MARKER ) ;
+  }
+
+  @Override
+  public Stamp readStamp() throws DecodeException {
+    final int start = coated.readerIndex() ;
+    final int markerIndex = findFieldEndMarker() ;
+    final Stamp stamp = Stamp.parse( coated, start, markerIndex ) ;
+    if( stamp == null ) {
+      throw notParseable( start, markerIndex, Stamp.class.getSimpleName() ) ;
+    }
+    coated.readerIndex( markerIndex + 1 ) ;
+    return stamp ;
   }
 
   @Override
@@ -289,62 +449,44 @@ public class BytebufCoat implements PositionalFieldReader, PositionalFieldWriter
 
   @Override
   public int readIntegerPrimitive() throws DecodeException {
-    final String integerAsString = readDelimitedString() ;
-    try {
-      return Integer.parseInt( integerAsString ) ;
-    } catch( final NumberFormatException e ) {
-      throw new DecodeException( "Not parseable as an integer: '" + integerAsString + "'", e ) ;
-    }
+    return ( int ) readDelimitedLong( Integer.MIN_VALUE, Integer.MAX_VALUE, "an integer" ) ;
   }
 
   @Override
   public Integer readIntegerObject() throws DecodeException {
-    final String integerAsString = readNullableString() ;
-    try {
-      return integerAsString == null ? null : Integer.parseInt( integerAsString ) ;
-    } catch( final NumberFormatException e ) {
-      throw new DecodeException( "Not parseable as an integer: '" + integerAsString + "'", e ) ;
-    }
+    return readNullityMarker() ? null : readIntegerPrimitive() ;
   }
 
   @Override
   public long readLongPrimitive() throws DecodeException {
-    final String longAsString = readDelimitedString() ;
-    try {
-      return Long.parseLong( longAsString ) ;
-    } catch( final NumberFormatException e ) {
-      throw new DecodeException( "Not parseable as an long: '" + longAsString + "'", e ) ;
-    }
+    return readDelimitedLong( Long.MIN_VALUE, Long.MAX_VALUE, "a long" ) ;
   }
 
   @Override
   public Long readLongObject() throws DecodeException {
-    final String longAsString = readNullableString() ;
-    try {
-      return longAsString == null ? null : Long.parseLong( longAsString ) ;
-    } catch( final NumberFormatException e ) {
-      throw new DecodeException( "Not parseable as an long: '" + longAsString + "'", e ) ;
-    }
+    return readNullityMarker() ? null : readLongPrimitive() ;
   }
 
+  /**
+   * {@link Float#parseFloat(String)} needs a {@code String}, but there is no escaping
+   * to undo.
+   */
   @Override
   public float readFloatPrimitive() throws DecodeException {
-    final String floatAsString = readDelimitedString() ;
+    final int markerIndex = findFieldEndMarker() ;
+    final String floatAsString = coated.toString(
+        coated.readerIndex(), markerIndex - coated.readerIndex(), Charsets.US_ASCII ) ;
+    coated.readerIndex( markerIndex + 1 ) ;
     try {
       return Float.parseFloat( floatAsString ) ;
     } catch( final NumberFormatException e ) {
-      throw new DecodeException( "Not parseable as an float: '" + floatAsString + "'", e ) ;
+      throw new DecodeException( "Not parseable as a float: '" + floatAsString + "'", e ) ;
     }
   }
 
   @Override
   public Float readFloatObject() throws DecodeException {
-    final String floatAsString = readNullableString() ;
-    try {
-      return floatAsString == null ? null : Float.parseFloat( floatAsString ) ;
-    } catch( final NumberFormatException e ) {
-      throw new DecodeException( "Not parseable as an float: '" + floatAsString + "'", e ) ;
-    }
+    return readNullityMarker() ? null : readFloatPrimitive() ;
   }
 
   @Override
@@ -382,17 +524,12 @@ public class BytebufCoat implements PositionalFieldReader, PositionalFieldWriter
 
   @Override
   public DateTime readDateTime() throws DecodeException {
-    final String millisecondsAsString = readNullableString() ;
-    if( millisecondsAsString == null ) {
+    if( readNullityMarker() ) {
       return null ;
     } else {
-      try {
-        final long milliseconds = Long.parseLong( millisecondsAsString ) ;
-        return milliseconds <= 0 ? Clock.ZERO : new DateTime( milliseconds, DateTimeZone.UTC ) ;
-      } catch( NumberFormatException e ) {
-        throw new DecodeException( "Could not read " + DateTime.class.getSimpleName() +
-            " from '" + millisecondsAsString + "'", e ) ;
-      }
+      final long milliseconds = readDelimitedLong(
+          Long.MIN_VALUE, Long.MAX_VALUE, "a " + DateTime.class.getSimpleName() ) ;
+      return milliseconds <= 0 ? Clock.ZERO : new DateTime( milliseconds, DateTimeZone.UTC ) ;
     }
   }
 
@@ -412,11 +549,10 @@ public class BytebufCoat implements PositionalFieldReader, PositionalFieldWriter
 
   @Override
   public Duration readDuration() throws DecodeException {
-    final Long longObject = readLongObject() ;
-    if( longObject == null ) {
+    if( readNullityMarker() ) {
       return null ;
     } else {
-      return new Duration( longObject ) ;
+      return new Duration( readLongPrimitive() ) ;
     }
   }
 
@@ -431,10 +567,112 @@ public class BytebufCoat implements PositionalFieldReader, PositionalFieldWriter
 
   @Override
   public void writeDuration( final Duration duration ) {
-    writeLongObject(
-        duration == null
-            ? null
-            : duration.getMillis()
-    ) ;
+    if( ! writeNullityMarkerMaybe( duration == null ) ) {
+      writeDelimitedLong( duration.getMillis() ) ;
+    }
+  }
+
+
+// =======
+// Numbers
+// =======
+
+  /**
+   * Decimal digits of a {@code long} never need escaping, so they go straight into the
+   * {@link ByteBuf}, without the {@code String} that {@link Long#toString(long)} would create.
+   * Same format as {@link Long#toString(long)}.
+   */
+  private void writeDelimitedLong( final long value ) {
+    if( value == Long.MIN_VALUE ) {
+      writeAsciiUnsafe( LONG_MIN_VALUE_AS_STRING ) ;  // Can't negate it.
+    } else {
+      long remaining ;
+      if( value < 0 ) {
+        coated.writeByte( '-' ) ;
+        remaining = -value ;
+      } else {
+        remaining = value ;
+      }
+      final int digitCount = digitCount( remaining ) ;
+      coated.ensureWritable( digitCount + 1 ) ;
+      final int start = coated.writerIndex() ;
+      for( int index = start + digitCount - 1 ; index >= start ; index -- ) {
+        coated.setByte( index, '0' + ( int ) ( remaining % 10 ) ) ;
+        remaining /= 10 ;
+      }
+      coated.writerIndex( start + digitCount ) ;
+    }
+    coated.writeByte( BytebufTools.FIELD_END_MARKER ) ;
+  }
+
+  private static final String LONG_MIN_VALUE_AS_STRING = Long.toString( Long.MIN_VALUE ) ;
+
+  private static int digitCount( final long positive ) {
+    long limit = 10 ;
+    for( int count = 1 ; count < 19 ; count ++ ) {
+      if( positive < limit ) {
+        return count ;
+      }
+      limit *= 10 ;
+    }
+    return 19 ;
+  }
+
+  /**
+   * Parses decimal digits in place, up to {@link BytebufTools#FIELD_END_MARKER}, with the
+   * same rules as {@link Long#parseLong(String)} except that a leading {@code '+'} is not
+   * supported (we never write one).
+   * Accumulates negatively like {@link Long#parseLong(String)} does,
+   * so {@code minimum} doesn't overflow.
+   * Only allocates when throwing a {@link DecodeException}.
+   */
+  private long readDelimitedLong(
+      final long minimum,
+      final long maximum,
+      final String description
+  ) throws DecodeException {
+    final int markerIndex = findFieldEndMarker() ;
+    final int start = coated.readerIndex() ;
+    int index = start ;
+    final boolean negative = index < markerIndex && coated.getByte( index ) == '-' ;
+    if( negative ) {
+      index ++ ;
+    }
+    if( index == markerIndex ) {
+      throw notParseable( start, markerIndex, description ) ;
+    }
+    final long limit = negative ? minimum : -maximum ;
+    final long multiplicationLimit = limit / 10 ;
+    long result = 0 ;
+    for( ; index < markerIndex ; index ++ ) {
+      final int digit = coated.getByte( index ) - '0' ;
+      if( digit < 0 || digit > 9 || result < multiplicationLimit ) {
+        throw notParseable( start, markerIndex, description ) ;
+      }
+      result *= 10 ;
+      if( result < limit + digit ) {
+        throw notParseable( start, markerIndex, description ) ;
+      }
+      result -= digit ;
+    }
+    coated.readerIndex( markerIndex + 1 ) ;
+    return negative ? result : -result ;
+  }
+
+  private int findFieldEndMarker() throws DecodeException {
+    final int markerIndex = coated.forEachByte( BytebufTools.FIND_FIELD_END_MARKER ) ;
+    if( markerIndex < 0 ) {
+      throw new DecodeException( "Missing field end marker at the end", coated ) ;
+    }
+    return markerIndex ;
+  }
+
+  private DecodeException notParseable(
+      final int start,
+      final int markerIndex,
+      final String description
+  ) {
+    return new DecodeException( "Not parseable as " + description + ": '" +
+        coated.toString( start, markerIndex - start, CHARSET ) + "'", coated ) ;
   }
 }
@@ -107,6 +107,37 @@ public final class BytebufTools {
     void recycle() ;
   }
 
+  public static BinaryBytebufCoat coatBinary( final ByteBuf byteBuf ) {
+    return new BinaryBytebufCoat( checkNotNull( byteBuf ) ) ;
+  }
+
+  /**
+   * Same as {@link #threadLocalRecyclableCoating()}, for {@link FieldEncoding#BINARY}.
+   */
+  public static BinaryCoating threadLocalRecyclableBinaryCoating() {
+    final ThreadLocal< BinaryBytebufCoat > recyclerThreadLocal =
+        ThreadLocal.withInitial( BinaryBytebufCoat::new ) ;
+
+    return new BinaryCoating() {
+      @Override
+      public BinaryBytebufCoat coat( final ByteBuf byteBuf ) {
+        final BinaryBytebufCoat instance = recyclerThreadLocal.get() ;
+        instance.coat( byteBuf ) ;
+        return instance ;
+      }
+
+      @Override
+      public void recycle() {
+        recyclerThreadLocal.get().recycle() ;
+      }
+    } ;
+  }
+
+  public interface BinaryCoating {
+    BinaryBytebufCoat coat( ByteBuf byteBuf ) ;
+    void recycle() ;
+  }
+
   public static final DateTimeFormatter LOCALDATE_FORMATTER =
       DateTimeFormat.forPattern( "YYYYMMdd" ) ;
 
@@ -0,0 +1,38 @@
+package com.otcdlink.chiron.buffer;
+
+/**
+ * How a {@link PositionalFieldWriter} represents fields in a {@link io.netty.buffer.ByteBuf}.
+ */
+public enum FieldEncoding {
+
+  /**
+   * Percent-escaped text, with a {@link BytebufTools#FIELD_END_MARKER} after each field.
+   * Human-readable, good for debugging.
+   *
+   * @see BytebufCoat
+   */
+  TEXT,
+
+  /**
+   * Varints, length-prefixed UTF-8. Smaller and cheaper to encode and decode.
+   *
+   * @see BinaryBytebufCoat
+   */
+  BINARY,
+  ;
+
+  /**
+   * @return {@link #TEXT} if {@code name} is {@code null} or unknown, so a peer that
+   *     doesn't know about an encoding just falls back to {@link #TEXT}.
+   */
+  public static FieldEncoding safeValueOf( final String name ) {
+    if( name != null ) {
+      for( final FieldEncoding fieldEncoding : values() ) {
+        if( fieldEncoding.name().equals( name ) ) {
+          return fieldEncoding ;
+        }
+      }
+    }
+    return TEXT ;
+  }
+}
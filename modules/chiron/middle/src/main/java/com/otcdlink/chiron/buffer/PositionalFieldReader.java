@@ -1,6 +1,7 @@
 package com.otcdlink.chiron.buffer;
 
 import com.otcdlink.chiron.codec.DecodeException;
+import com.otcdlink.chiron.command.Stamp;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.joda.time.LocalDate;
@@ -22,6 +23,25 @@ public interface PositionalFieldReader {
 
   String readDelimitedString() throws DecodeException ;
 
+  /**
+   * Same as {@link #readDelimitedString()} followed by a lookup in {@link ByteTrie#strings()},
+   * without creating a {@code String}.
+   * The default implementation does create a {@code String}, and can't put it back if there
+   * is no match, so it throws a {@link DecodeException} instead of returning
+   * {@link ByteTrie#NO_MATCH}.
+   *
+   * @return the index of the {@code String} read, or {@link ByteTrie#NO_MATCH} in which case
+   *     nothing was read.
+   */
+  default int readDelimitedString( final ByteTrie byteTrie ) throws DecodeException {
+    final String string = readDelimitedString() ;
+    final int index = byteTrie.strings().indexOf( string ) ;
+    if( index < 0 ) {
+      throw new DecodeException( "Unknown '" + string + "' in " + byteTrie ) ;
+    }
+    return index ;
+  }
+
   String readNullableString() throws DecodeException ;
 
   int readIntegerPrimitive() throws DecodeException ;
@@ -48,6 +68,20 @@ public interface PositionalFieldReader {
 
   Duration readDuration() throws DecodeException ;
 
+  /**
+   * Reads what {@link PositionalFieldWriter#writeStamp(Stamp)} wrote, parsing bytes in place.
+   * The default implementation parses the result of {@link #readDelimitedString()}.
+   */
+  default Stamp readStamp() throws DecodeException {
+    final String string = readDelimitedString() ;
+    final Stamp stamp = new Stamp.Parser().parse( string ) ;
+    if( stamp == null ) {
+      throw new DecodeException(
+          "Not parseable as " + Stamp.class.getSimpleName() + ": '" + string + "'" ) ;
+    }
+    return stamp ;
+  }
+
 
   int readableBytes() ;
 
@@ -1,5 +1,6 @@
 package com.otcdlink.chiron.buffer;
 
+import com.otcdlink.chiron.command.Stamp;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.joda.time.LocalDate;
@@ -51,6 +52,15 @@ public interface PositionalFieldWriter {
 
   void writeDuration( final Duration duration ) ;
 
+  /**
+   * Writes the characters of {@link Stamp#asStringRoundedToFlooredSecond()} without creating
+   * a {@code String}, so {@link PositionalFieldReader#readDelimitedString()} can read them.
+   * The default implementation does create a {@code String}.
+   */
+  default void writeStamp( final Stamp stamp ) {
+    writeDelimitedString( stamp.asStringRoundedToFlooredSecond() ) ;
+  }
+
 
     /**
      * Wrecks any delimiter, and requires every character to be ASCII.
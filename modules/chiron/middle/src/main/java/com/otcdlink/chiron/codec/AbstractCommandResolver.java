@@ -1,6 +1,8 @@
 package com.otcdlink.chiron.codec;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.otcdlink.chiron.buffer.ByteTrie;
 import com.otcdlink.chiron.buffer.PositionalFieldReader;
 import com.otcdlink.chiron.command.Command;
 
@@ -9,13 +11,28 @@ import java.io.IOException;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class AbstractCommandResolver< ENDPOINT_SPECIFIC, DUTY >
-    implements CommandBodyDecoder< ENDPOINT_SPECIFIC, DUTY >
+    implements IndexedCommandBodyDecoder< ENDPOINT_SPECIFIC, DUTY >
 {
 
   private final ImmutableMap< String, SingleDecoder > decoders ;
 
+  private final ImmutableList< String > commandNames ;
+
+  /**
+   * Same order as {@link #commandNames}.
+   */
+  private final SingleDecoder[] decoderArray ;
+
+  /**
+   * Same order as {@link #commandNames}.
+   */
+  private final ByteTrie commandNameTrie ;
+
   public AbstractCommandResolver( final ImmutableMap< String, SingleDecoder > decoders ) {
     this.decoders = checkNotNull( decoders ) ;
+    this.commandNames = decoders.keySet().asList() ;
+    this.decoderArray = decoders.values().toArray( new SingleDecoder[ decoders.size() ] ) ;
+    this.commandNameTrie = new ByteTrie( commandNames ) ;
   }
 
   public interface SingleDecoder {
@@ -37,4 +54,29 @@ public class AbstractCommandResolver< ENDPOINT_SPECIFIC, DUTY >
     }
 
   }
+
+  @Override
+  public final ImmutableList< String > commandNames() {
+    return commandNames ;
+  }
+
+  @Override
+  public final int readCommandIndex( final PositionalFieldReader reader )
+      throws DecodeException
+  {
+    return reader.readDelimitedString( commandNameTrie ) ;
+  }
+
+  @Override
+  public final Command< ENDPOINT_SPECIFIC, DUTY > decodeBody(
+      final ENDPOINT_SPECIFIC endpointSpecific,
+      final int commandIndex,
+      final PositionalFieldReader reader
+  ) throws IOException {
+    if( commandIndex < 0 || commandIndex >= decoderArray.length ) {
+      return null ;
+    } else {
+      return decoderArray[ commandIndex ].from( endpointSpecific, reader ) ;
+    }
+  }
 }
@@ -0,0 +1,48 @@
+package com.otcdlink.chiron.codec;
+
+import com.google.common.collect.ImmutableList;
+import com.otcdlink.chiron.buffer.ByteTrie;
+import com.otcdlink.chiron.buffer.PositionalFieldReader;
+import com.otcdlink.chiron.command.Command;
+
+import java.io.IOException;
+
+/**
+ * A {@link CommandBodyDecoder} which knows all the {@link Command.Description#name()}s it can
+ * decode, so a peer can send a small integer instead of the name.
+ *
+ * @see com.otcdlink.chiron.middle.tier.CommandDictionary
+ */
+public interface IndexedCommandBodyDecoder< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER >
+    extends CommandBodyDecoder< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER >
+{
+
+  /**
+   * @return the names this decoder knows about, the index of a name in the list is
+   *     what {@link #decodeBody(Object, int, PositionalFieldReader)} expects.
+   *     Must not change during the life of the object.
+   */
+  ImmutableList< String > commandNames() ;
+
+  /**
+   * Reads a {@link Command.Description#name()} as written by
+   * {@link com.otcdlink.chiron.buffer.PositionalFieldWriter#writeDelimitedString(String)},
+   * without creating a {@code String}.
+   *
+   * @return the index in {@link #commandNames()}, or {@link ByteTrie#NO_MATCH} in which
+   *     case nothing was read.
+   */
+  int readCommandIndex( PositionalFieldReader positionalFieldReader ) throws DecodeException ;
+
+  /**
+   * @param commandIndex the index of the {@link Command.Description#name()}
+   *     in {@link #commandNames()}.
+   * @return {@code null} if no match found.
+   * @throws DecodeException if something went wrong.
+   */
+  Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > decodeBody(
+      ENDPOINT_SPECIFIC endpointSpecific,
+      int commandIndex,
+      PositionalFieldReader positionalFieldReader
+  ) throws IOException ;
+}
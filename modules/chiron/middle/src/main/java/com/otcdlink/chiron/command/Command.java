@@ -29,7 +29,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public abstract class Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > {
 
-  public final ENDPOINT_SPECIFIC endpointSpecific ;
+  /**
+   * Not {@code final} only because {@link RecyclableCommand} sets it again when reused.
+   */
+  public ENDPOINT_SPECIFIC endpointSpecific ;
   private final boolean persist ;
 
   /**
@@ -57,6 +60,14 @@ public abstract class Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > {
     this.persist = persist ;
   }
 
+  /**
+   * For {@link RecyclableCommand}, which sets {@link #endpointSpecific} later.
+   */
+  Command( final boolean persist ) {
+    this.endpointSpecific = null ;
+    this.persist = persist ;
+  }
+
   public final boolean persist() {
     return persist ;
   }
@@ -0,0 +1,15 @@
+package com.otcdlink.chiron.command;
+
+/**
+ * Implemented by a {@link Command} that can be replaced by a newer {@link Command} of the same
+ * class with an equal {@link #conflationKey()}, while both wait in an outbound queue.
+ * This makes sense for a {@link Command} carrying a value (like a price) which is only
+ * interesting in its latest state.
+ */
+public interface Conflatable {
+
+  /**
+   * Must implement {@link Object#equals(Object)} and {@link Object#hashCode()}.
+   */
+  Object conflationKey() ;
+}
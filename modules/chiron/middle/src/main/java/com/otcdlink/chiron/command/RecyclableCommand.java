@@ -0,0 +1,204 @@
+package com.otcdlink.chiron.command;
+
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.Recycler;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakDetectorFactory;
+import io.netty.util.ResourceLeakTracker;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A {@link Command} that goes back into a {@link Recycler} when released, for
+ * high-rate {@link Command}s that would otherwise drive young-GC frequency.
+ * <p>
+ * A subclass declares its own {@link Recycler} and a static factory method which calls
+ * {@link Recycler#get()}, then {@link #reuse(Object)}, then sets its own fields.
+ * Its decoder should call the factory method instead of a constructor.
+ *
+ * <h1>Ownership</h1>
+ * <p>
+ * This works like Netty's {@link io.netty.buffer.ByteBuf}: the last code to need the
+ * {@link RecyclableCommand} calls {@link #release()}, which is typically the code calling
+ * {@link #callReceiver(Object)}. Code that only reads the {@link RecyclableCommand} before
+ * returning (like the journal persister, which encodes in caller's thread) never releases it.
+ * Writing it into a {@code Channel} transfers ownership to the tier that encodes or discards it.
+ * Code keeping the same instance for later, or passing it to more than one consumer calling
+ * {@link #release()}, calls {@link #retain()} once for each additional owner.
+ * {@link ReferenceCountUtil#release(Object)} does nothing for a plain {@link Command},
+ * so code paths handling both don't need to test anything.
+ * <p>
+ * {@link #equals(Object)} and {@link #hashCode()} must not be used after {@link #release()}.
+ *
+ * <h1>Leak detection</h1>
+ * <p>
+ * Each instance taken from the {@link Recycler} is tracked by a {@link ResourceLeakDetector}
+ * (which samples according to {@link ResourceLeakDetector#getLevel()}) until deallocation.
+ * A test rule can set {@link ResourceLeakDetector.Level#PARANOID}, call {@link #reportLeaks()},
+ * and look for what {@link ResourceLeakDetector} logged.
+ */
+public abstract class RecyclableCommand< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER >
+    extends Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER >
+    implements ReferenceCounted
+{
+
+  private static final AtomicIntegerFieldUpdater< RecyclableCommand > REFERENCE_COUNT_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater( RecyclableCommand.class, "referenceCount" ) ;
+
+  /**
+   * Typed for {@code Object} so {@link #reportLeaks()} can track a sentinel.
+   */
+  private static final ResourceLeakDetector< Object > LEAK_DETECTOR = newLeakDetector() ;
+
+  /**
+   * Raw type because a subclass has a {@link Recycler} of its own type.
+   */
+  private final Recycler.Handle handle ;
+
+  /**
+   * Zero while in the {@link Recycler}.
+   */
+  @SuppressWarnings( "unused" )
+  private volatile int referenceCount = 0 ;
+
+  private ResourceLeakTracker< Object > leakTracker = null ;
+
+  protected RecyclableCommand(
+      final Recycler.Handle< ? extends RecyclableCommand > handle,
+      final boolean persist
+  ) {
+    super( persist ) ;
+    this.handle = checkNotNull( handle ) ;
+  }
+
+  /**
+   * Call this just after {@link Recycler#get()}.
+   */
+  protected final void reuse( final ENDPOINT_SPECIFIC endpointSpecific ) {
+    checkState( referenceCount == 0, "Already in use: %s", this ) ;
+    this.endpointSpecific = checkNotNull( endpointSpecific ) ;
+    REFERENCE_COUNT_UPDATER.set( this, 1 ) ;
+    leakTracker = LEAK_DETECTOR.track( this ) ;
+  }
+
+  /**
+   * Sets every reference-holding field to {@code null} (or its neutral value) so a
+   * {@link RecyclableCommand} in the {@link Recycler} doesn't retain anything.
+   */
+  protected abstract void clear() ;
+
+
+// ================
+// ReferenceCounted
+// ================
+
+  @Override
+  public final int refCnt() {
+    return referenceCount ;
+  }
+
+  @Override
+  public final RecyclableCommand< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > retain() {
+    return retain( 1 ) ;
+  }
+
+  @Override
+  public final RecyclableCommand< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > retain(
+      final int increment
+  ) {
+    checkArgument( increment > 0, "Increment must be positive" ) ;
+    while( true ) {
+      final int count = referenceCount ;
+      if( count == 0 || count + increment <= count ) {
+        throw new IllegalReferenceCountException( count, increment ) ;
+      }
+      if( REFERENCE_COUNT_UPDATER.compareAndSet( this, count, count + increment ) ) {
+        return this ;
+      }
+    }
+  }
+
+  @Override
+  public final RecyclableCommand< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > touch() {
+    return touch( null ) ;
+  }
+
+  @Override
+  public final RecyclableCommand< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > touch(
+      final Object hint
+  ) {
+    if( leakTracker != null ) {
+      leakTracker.record( hint ) ;
+    }
+    return this ;
+  }
+
+  @Override
+  public final boolean release() {
+    return release( 1 ) ;
+  }
+
+  @Override
+  public final boolean release( final int decrement ) {
+    checkArgument( decrement > 0, "Decrement must be positive" ) ;
+    while( true ) {
+      final int count = referenceCount ;
+      if( count < decrement ) {
+        throw new IllegalReferenceCountException( count, -decrement ) ;
+      }
+      if( REFERENCE_COUNT_UPDATER.compareAndSet( this, count, count - decrement ) ) {
+        if( count == decrement ) {
+          deallocate() ;
+          return true ;
+        }
+        return false ;
+      }
+    }
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private void deallocate() {
+    if( leakTracker != null ) {
+      leakTracker.close( this ) ;
+      leakTracker = null ;
+    }
+    clear() ;
+    endpointSpecific = null ;
+    handle.recycle( this ) ;
+  }
+
+
+// ==============
+// Leak detection
+// ==============
+
+  /**
+   * Makes the {@link ResourceLeakDetector} log instances already collected by the garbage
+   * collector without a {@link #release()}, which only happens when tracking a new instance.
+   * Leaks appear as errors of {@link ResourceLeakDetector}'s logger, starting with
+   * {@code "LEAK: RecyclableCommand"}.
+   */
+  public static void reportLeaks() {
+    final Object sentinel = new Object() ;
+    final ResourceLeakTracker< Object > tracker = LEAK_DETECTOR.track( sentinel ) ;
+    if( tracker != null ) {
+      tracker.close( sentinel ) ;
+    }
+  }
+
+  /**
+   * The {@link ResourceLeakDetector} names the resource after the {@code Class} object,
+   * whose type doesn't matter.
+   */
+  @SuppressWarnings( "unchecked" )
+  private static ResourceLeakDetector< Object > newLeakDetector() {
+    return ResourceLeakDetectorFactory.instance().newResourceLeakDetector(
+        ( Class< Object > ) ( Class< ? > ) RecyclableCommand.class ) ;
+  }
+}
@@ -4,6 +4,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.otcdlink.chiron.toolbox.ComparatorTools;
 import com.otcdlink.chiron.toolbox.clock.Clock;
+import io.netty.buffer.ByteBuf;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
@@ -12,7 +13,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Comparator;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -171,6 +172,110 @@ public class Stamp implements Comparable< Stamp > {
   }
 
 
+// ======
+// Buffer
+// ======
+
+  /**
+   * Writes the same characters as {@link #asStringRoundedToFlooredSecond()}, directly
+   * into the {@link ByteBuf}.
+   *
+   * @return the number of bytes written.
+   */
+  public int writeRoundedToFlooredSecond( final ByteBuf byteBuf ) {
+    final int start = byteBuf.writerIndex() ;
+    writeBase36( byteBuf, flooredSeconds() ) ;
+    byteBuf.writeByte( ':' ) ;
+    writeBase36( byteBuf, counter ) ;
+    return byteBuf.writerIndex() - start ;
+  }
+
+  /**
+   * Same as {@link Long#toString(long, int)} with a radix of 36. Never called with
+   * {@code Long.MIN_VALUE} since {@link #flooredSeconds()} divides by 1000.
+   */
+  private static void writeBase36( final ByteBuf byteBuf, final long value ) {
+    long remaining ;
+    if( value < 0 ) {
+      byteBuf.writeByte( '-' ) ;
+      remaining = -value ;
+    } else {
+      remaining = value ;
+    }
+    int digitCount = 1 ;
+    for( long rest = remaining / 36 ; rest > 0 ; rest /= 36 ) {
+      digitCount ++ ;
+    }
+    byteBuf.ensureWritable( digitCount ) ;
+    final int start = byteBuf.writerIndex() ;
+    for( int index = start + digitCount - 1 ; index >= start ; index -- ) {
+      byteBuf.setByte( index, Character.forDigit( ( int ) ( remaining % 36 ), 36 ) ) ;
+      remaining /= 36 ;
+    }
+    byteBuf.writerIndex( start + digitCount ) ;
+  }
+
+  /**
+   * Parses in place what {@link #writeRoundedToFlooredSecond(ByteBuf)} wrote, without
+   * changing indices of the {@link ByteBuf}.
+   * Unlike {@link Parser} there is no {@code String} to cache, so this is thread-safe.
+   *
+   * @param end index of the first byte after the {@link Stamp}.
+   * @return {@code null} if bytes don't match {@link #REGEX}, or overflow, or represent
+   *     a {@link #timestamp} before {@link #FLOOR_MILLISECONDS}.
+   */
+  public static Stamp parse( final ByteBuf byteBuf, final int start, final int end ) {
+    int index = start ;
+    final boolean negative = index < end && byteBuf.getByte( index ) == '-' ;
+    if( negative ) {
+      index ++ ;
+    }
+    final int colonIndex = byteBuf.indexOf( index, end, ( byte ) ':' ) ;
+    if( colonIndex < 0 ) {
+      return null ;
+    }
+    final long seconds = parseBase36( byteBuf, index, colonIndex ) ;
+    final long counter = parseBase36( byteBuf, colonIndex + 1, end ) ;
+    if( seconds < 0 || counter < 0 || ( negative && seconds > 0 ) ||
+        seconds > ( Long.MAX_VALUE - FLOOR_MILLISECONDS ) / 1000
+    ) {
+      return null ;  // Includes what raw() would reject.
+    }
+    return raw( seconds * 1000 + FLOOR_MILLISECONDS, counter ) ;
+  }
+
+  /**
+   * @return a negative number if there is no digit, or a non-digit, or an overflow.
+   */
+  private static long parseBase36( final ByteBuf byteBuf, final int start, final int end ) {
+    if( start >= end ) {
+      return -1 ;
+    }
+    long result = 0 ;
+    for( int index = start ; index < end ; index ++ ) {
+      final int digit = base36Digit( byteBuf.getByte( index ) ) ;
+      if( digit < 0 || result > ( Long.MAX_VALUE - digit ) / 36 ) {
+        return -1 ;
+      }
+      result = result * 36 + digit ;
+    }
+    return result ;
+  }
+
+  /**
+   * Lowercase only, like {@link Long#toString(long, int)} writes.
+   */
+  private static int base36Digit( final byte b ) {
+    if( b >= '0' && b <= '9' ) {
+      return b - '0' ;
+    } else if( b >= 'a' && b <= 'z' ) {
+      return b - 'a' + 10 ;
+    } else {
+      return -1 ;
+    }
+  }
+
+
 // ==========
 // Comparison
 // ==========
@@ -260,8 +365,29 @@ public class Stamp implements Comparable< Stamp > {
 // =========
 
   public static class Generator {
+
+    /**
+     * Bits of {@link #lastGenerated} for the {@link Stamp#counter}; the upper bits (except the
+     * sign bit) are for {@link Stamp#timestamp} minus {@link #FLOOR_MILLISECONDS}, which
+     * lasts until year 2084.
+     */
+    private static final int COUNTER_BITS = 22 ;
+
+    /**
+     * Some 4 million {@link Stamp}s per second. When a second has no more counter left,
+     * the {@link Generator} jumps to the beginning of next second.
+     */
+    static final long MAX_COUNTER = ( 1L << COUNTER_BITS ) - 1 ;
+
+    private static final long NONE = -1 ;
+
     private final Clock clock ;
-    private final AtomicReference< Stamp > lastGenerated = new AtomicReference<>() ;
+
+    /**
+     * The last {@link Stamp} generated (or the last one of a {@link Range}), packed so a
+     * compare-and-set doesn't need any allocation.
+     */
+    private final AtomicLong lastGenerated = new AtomicLong( NONE ) ;
 
     public Generator( final Clock clock ) {
       this.clock = checkNotNull( clock ) ;
@@ -274,19 +400,91 @@ public class Stamp implements Comparable< Stamp > {
      * the same second. It assumes that {@link Clock#currentTimeMillis()} is always increasing.
      */
     public Stamp generate() {
-      final long now = clock.currentTimeMillis() ;
-      final Stamp stamp = lastGenerated.updateAndGet(
-          last -> {
-            final long newTimestamp = last == null ?
-                now : Math.max( last.timestamp, now ) ;
-            final long newTimestampInSeconds = newTimestamp / 1000 ;
-            return last != null && last.timestamp / 1000 == newTimestampInSeconds ?
-                raw( newTimestamp, last.counter + 1 ) :
-                raw( newTimestamp, 0 )
+      final long first = reserve( 1 ) ;
+      return raw( timestamp( first ), counter( first ) ) ;
+    }
+
+    /**
+     * Reserves {@code count} {@link Stamp}s with the same {@link Stamp#timestamp} and
+     * consecutive {@link Stamp#counter}s, in one atomic operation, for producers of many
+     * {@link Command}s at once (like replay or broadcast).
+     * There is no other allocation than the {@link Range} itself.
+     */
+    public Range generate( final int count ) {
+      checkArgument( count > 0 && count <= MAX_COUNTER + 1,
+          "Count should be in [1, " + ( MAX_COUNTER + 1 ) + "], got " + count ) ;
+      final long first = reserve( count ) ;
+      return new Range( timestamp( first ), counter( first ), count ) ;
+    }
+
+    /**
+     * @return the packed value of the first {@link Stamp} reserved.
+     */
+    private long reserve( final int count ) {
+      final long now = clock.currentTimeMillis() - FLOOR_MILLISECONDS ;
+      if( now < 0 ) {
+        throw new IllegalArgumentException(
+            "Clock at " + ( now + FLOOR_MILLISECONDS ) + " but floor is " + FLOOR_MILLISECONDS ) ;
+      }
+      while( true ) {
+        final long last = lastGenerated.get() ;
+        final long first ;
+        if( last == NONE ) {
+          first = pack( now, 0 ) ;
+        } else {
+          final long lastTimestamp = last >>> COUNTER_BITS ;
+          final long newTimestamp = Math.max( lastTimestamp, now ) ;
+          if( lastTimestamp / 1000 == newTimestamp / 1000 ) {
+            final long counter = ( last & MAX_COUNTER ) + 1 ;
+            first = counter + count - 1 <= MAX_COUNTER ?
+                pack( newTimestamp, counter ) :
+                pack( ( lastTimestamp / 1000 + 1 ) * 1000, 0 )
             ;
+          } else {
+            first = pack( newTimestamp, 0 ) ;
           }
-      ) ;
-      return stamp ;
+        }
+        if( lastGenerated.compareAndSet( last, first + count - 1 ) ) {
+          return first ;
+        }
+      }
+    }
+
+    private static long pack( final long flooredTimestamp, final long counter ) {
+      return ( flooredTimestamp << COUNTER_BITS ) | counter ;
+    }
+
+    private static long timestamp( final long packed ) {
+      return ( packed >>> COUNTER_BITS ) + FLOOR_MILLISECONDS ;
+    }
+
+    private static long counter( final long packed ) {
+      return packed & MAX_COUNTER ;
+    }
+  }
+
+  /**
+   * Contiguous {@link Stamp}s reserved by {@link Generator#generate(int)}.
+   */
+  public static final class Range {
+    public final long timestamp ;
+    public final long firstCounter ;
+    public final int size ;
+
+    private Range( final long timestamp, final long firstCounter, final int size ) {
+      this.timestamp = timestamp ;
+      this.firstCounter = firstCounter ;
+      this.size = size ;
+    }
+
+    public Stamp get( final int index ) {
+      Preconditions.checkElementIndex( index, size ) ;
+      return raw( timestamp, firstCounter + index ) ;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + '{' + timestamp + ':' + firstCounter + "+" + size + '}' ;
     }
   }
 
@@ -0,0 +1,437 @@
+package com.otcdlink.chiron.command.automatic;
+
+import com.google.common.base.CaseFormat;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Primitives;
+import com.otcdlink.chiron.buffer.PositionalFieldReader;
+import com.otcdlink.chiron.buffer.PositionalFieldWriter;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.CommandConsumer;
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.ProtectionDomain;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Generates, with Javassist, the classes {@link CommandCooker} needs so encoding, decoding
+ * and {@link Command#callReceiver(Object)} are just field access
+ * and virtual calls, without reflection, boxing nor {@code Map}s:
+ * <ul>
+ *   <li>
+ *     A {@link DynamicCommand} subclass for each {@link FeatureRegistry.FeatureMethod},
+ *     with one typed field per argument.
+ *   </li><li>
+ *     A {@link DynamicCommand.Decoder} for each of them.
+ *   </li><li>
+ *     A receiver implementing every Feature interface, which creates a {@link DynamicCommand}
+ *     and passes it to a {@link CommandConsumer}.
+ *   </li>
+ * </ul>
+ * Arguments of type {@code int}, {@code long}, {@code float} and {@code boolean} go directly
+ * into {@link PositionalFieldWriter}'s primitive methods, so there is no boxing. Others go
+ * through the {@link com.otcdlink.chiron.command.codec.Codec} at the same index
+ * in {@link DynamicCommand.Recipe#codecs}; generated code boxes and unboxes other primitive
+ * types explicitly, since Javassist doesn't.
+ */
+final class CommandClassGenerator {
+
+  /**
+   * Makes generated class names unique even with several {@link CommandCooker}s using the same
+   * prefix and the same {@code ClassLoader}.
+   */
+  private static final AtomicInteger GENERATION_COUNTER = new AtomicInteger() ;
+
+  private final ClassPool ctPool ;
+  private final ClassLoader classLoader ;
+  private final ProtectionDomain protectionDomain ;
+  private final String commandNamePrefix ;
+  private final String classNameSuffix ;
+  private final CommandCooker.CommandClassEnhancer commandClassEnhancer ;
+
+  /**
+   * @param featureClasses generated classes go into the {@code ClassLoader} of the first
+   *     one that is not public, or of the first one, so they can see it.
+   * @param commandClassEnhancer may be {@code null}.
+   */
+  CommandClassGenerator(
+      final ImmutableList< Class< ? > > featureClasses,
+      final String commandNamePrefix,
+      final CommandCooker.CommandClassEnhancer commandClassEnhancer
+  ) {
+    checkArgument( ! featureClasses.isEmpty() ) ;
+    final Class< ? > anchorClass = featureClasses.stream()
+        .filter( featureClass -> ! publiclyAccessible( featureClass ) )
+        .findFirst()
+        .orElse( featureClasses.get( 0 ) )
+    ;
+    this.classLoader = checkNotNull( anchorClass.getClassLoader() ) ;
+    this.protectionDomain = anchorClass.getProtectionDomain() ;
+    this.ctPool = new ClassPool( true ) ;
+    ctPool.appendClassPath( new LoaderClassPath( classLoader ) ) ;
+    this.commandNamePrefix = classNamePrefix( featureClasses, commandNamePrefix ) ;
+    this.classNameSuffix = "_" + GENERATION_COUNTER.incrementAndGet() ;
+    this.commandClassEnhancer = commandClassEnhancer ;
+  }
+
+  /**
+   * Generated classes can only access a Feature interface that is not public from its
+   * package (in the same {@code ClassLoader}), so in this case they go there, keeping
+   * only the last segment of {@code commandNamePrefix}.
+   *
+   * @return a prefix for the fully qualified name of generated classes.
+   * @throws IllegalArgumentException if Feature interfaces that are not public belong to
+   *     different packages or {@code ClassLoader}s, because one generated receiver class
+   *     implements all Feature interfaces.
+   */
+  static String classNamePrefix(
+      final ImmutableList< Class< ? > > featureClasses,
+      final String commandNamePrefix
+  ) {
+    checkNotNull( commandNamePrefix ) ;
+    Class< ? > packageAnchor = null ;
+    for( final Class< ? > featureClass : featureClasses ) {
+      if( ! publiclyAccessible( featureClass ) ) {
+        if( packageAnchor == null ) {
+          packageAnchor = featureClass ;
+        } else {
+          checkArgument(
+              packageAnchor.getPackage().equals( featureClass.getPackage() ) &&
+                  packageAnchor.getClassLoader() == featureClass.getClassLoader(),
+              "Generated classes can't access both " + packageAnchor.getName() + " and " +
+                  featureClass.getName() + ", which are not public and belong to different " +
+                  "packages or ClassLoaders; make them public or move them together"
+          ) ;
+        }
+      }
+    }
+    if( packageAnchor == null ) {
+      return commandNamePrefix ;
+    } else {
+      return packageAnchor.getPackage().getName() + '.' +
+          commandNamePrefix.substring( commandNamePrefix.lastIndexOf( '.' ) + 1 ) ;
+    }
+  }
+
+  /**
+   * @return {@code true} if the class and all its enclosing classes are public.
+   */
+  private static boolean publiclyAccessible( final Class< ? > type ) {
+    for( Class< ? > current = type ; current != null ; current = current.getEnclosingClass() ) {
+      if( ! Modifier.isPublic( current.getModifiers() ) ) {
+        return false ;
+      }
+    }
+    return true ;
+  }
+
+  /**
+   * @return {@code null} if the type needs a {@link com.otcdlink.chiron.command.codec.Codec}.
+   */
+  static String primitiveMethodInfix( final Class< ? > type ) {
+    return PRIMITIVE_METHOD_INFIXES.get( type ) ;
+  }
+
+  /**
+   * @return source code for an {@code Object}.
+   */
+  private static String boxed( final Class< ? > type, final String expression ) {
+    if( type.isPrimitive() ) {
+      return Primitives.wrap( type ).getName() + ".valueOf( " + expression + " )" ;
+    } else {
+      return expression ;
+    }
+  }
+
+  /**
+   * @param expression source code for an {@code Object}.
+   * @return source code for a value of given type.
+   */
+  private static String unboxed( final Class< ? > type, final String expression ) {
+    if( type.isPrimitive() ) {
+      return "( ( " + Primitives.wrap( type ).getName() + " ) " + expression + " )." +
+          type.getName() + "Value()" ;
+    } else {
+      return "( " + type.getTypeName() + " ) " + expression ;
+    }
+  }
+
+  private static final ImmutableMap< Class< ? >, String > PRIMITIVE_METHOD_INFIXES =
+      ImmutableMap.of(
+          Integer.TYPE, "Integer",
+          Long.TYPE, "Long",
+          Float.TYPE, "Float",
+          Boolean.TYPE, "Boolean"
+      )
+  ;
+
+
+// =======
+// Command
+// =======
+
+  Class< ? extends DynamicCommand< ?, ? > > generateCommandClass(
+      final FeatureRegistry.FeatureMethod featureMethod
+  ) throws NotFoundException, CannotCompileException {
+    final Method method = featureMethod.method ;
+    checkArgument( method.getReturnType() == Void.TYPE, "Must return void: " + method ) ;
+    final Class< ? >[] parameterTypes = method.getParameterTypes() ;
+
+    final CtClass ctCommand = ctPool.makeClass(
+        commandNamePrefix +
+            CaseFormat.LOWER_CAMEL.to( CaseFormat.UPPER_CAMEL, featureMethod.commandName ) +
+            classNameSuffix,
+        ctPool.get( DynamicCommand.class.getName() )
+    ) ;
+
+    final StringBuilder constructorParameters = new StringBuilder() ;
+    final StringBuilder constructorBody = new StringBuilder( "{ super( $1, $2 ) ; " ) ;
+    final StringBuilder callArguments = new StringBuilder(
+        "( " + parameterTypes[ 0 ].getTypeName() + " ) endpointSpecific" ) ;
+    final StringBuilder encodeBody = new StringBuilder( "{ " ) ;
+    final StringBuilder toStringBody = new StringBuilder( "{ return \"\"" ) ;
+    final StringBuilder equalsBody = new StringBuilder( "{ " + ctCommand.getName() +
+        " that = ( " + ctCommand.getName() + " ) $1 ; return true" ) ;
+
+    for( int i = 1 ; i < parameterTypes.length ; i ++ ) {
+      final Class< ? > type = parameterTypes[ i ] ;
+      final String field = CommandCooker.argumentName( type, i ) ;
+      ctCommand.addField( CtField.make(
+          "public final " + type.getTypeName() + " " + field + " ;", ctCommand ) ) ;
+      constructorParameters.append( ", " ).append( type.getTypeName() ).append( " " )
+          .append( field ) ;
+      constructorBody.append( "this." ).append( field ).append( " = $" ).append( i + 2 )
+          .append( " ; " ) ;
+      callArguments.append( ", " ).append( field ) ;
+      final String primitiveInfix = primitiveMethodInfix( type ) ;
+      if( primitiveInfix == null ) {
+        encodeBody.append( "codecs[ " ).append( i ).append( " ].encodeTo( " )
+            .append( boxed( type, field ) ).append( ", $1 ) ; " ) ;
+        if( type.isPrimitive() ) {
+          /** Same semantic as the equals() method of the wrapper, without boxing. */
+          equalsBody.append( " && " ).append( Primitives.wrap( type ).getName() )
+              .append( ".compare( " ).append( field ).append( ", that." ).append( field )
+              .append( " ) == 0" ) ;
+        } else {
+          equalsBody.append( " && java.util.Objects.equals( " ).append( field )
+              .append( ", that." ).append( field ).append( " )" ) ;
+        }
+      } else {
+        encodeBody.append( "$1.write" ).append( primitiveInfix ).append( "Primitive( " )
+            .append( field ).append( " ) ; " ) ;
+        if( type == Float.TYPE ) {
+          equalsBody.append( " && Float.compare( " ).append( field ).append( ", that." )
+              .append( field ).append( " ) == 0" ) ;
+        } else {
+          equalsBody.append( " && " ).append( field ).append( " == that." ).append( field ) ;
+        }
+      }
+      toStringBody.append( " + \"" ).append( field ).append( "=\" + " ).append( field ) ;
+      if( i < parameterTypes.length - 1 ) {
+        toStringBody.append( " + \";\"" ) ;
+      }
+    }
+
+    ctCommand.addConstructor( CtNewConstructor.make(
+        "public " + ctCommand.getSimpleName() + "( " +
+            "Object endpointSpecific, " +
+            DynamicCommand.Recipe.class.getName() + " recipe" +
+            constructorParameters + " ) " +
+            constructorBody + "}",
+        ctCommand
+    ) ) ;
+    ctCommand.addMethod( CtNewMethod.make(
+        "public void callReceiver( Object receiver ) { " +
+            "( ( " + method.getDeclaringClass().getTypeName() + " ) $1 )." + method.getName() +
+            "( " + callArguments + " ) ; }",
+        ctCommand
+    ) ) ;
+    ctCommand.addMethod( CtNewMethod.make(
+        "public void encodeBody( " + PositionalFieldWriter.class.getName() + " writer ) " +
+            "throws java.io.IOException " + encodeBody + "}",
+        ctCommand
+    ) ) ;
+    ctCommand.addMethod( CtNewMethod.make(
+        "protected String argumentsToString() " + toStringBody + " ; }",
+        ctCommand
+    ) ) ;
+    ctCommand.addMethod( CtNewMethod.make(
+        "protected boolean argumentsEqual( " + DynamicCommand.class.getName() + " other ) " +
+            equalsBody + " ; }",
+        ctCommand
+    ) ) ;
+
+    enhance( ctCommand, featureMethod ) ;
+
+    return asDynamicCommandClass( ctCommand.toClass( classLoader, protectionDomain ) ) ;
+  }
+
+  /**
+   * Javassist returns a raw {@code Class}, but the generated class extends
+   * {@link DynamicCommand} so there is no risk in this cast.
+   */
+  @SuppressWarnings( "unchecked" )
+  private static Class< ? extends DynamicCommand< ?, ? > > asDynamicCommandClass(
+      final Class< ? > generatedClass
+  ) {
+    checkArgument( DynamicCommand.class.isAssignableFrom( generatedClass ) ) ;
+    return ( Class< ? extends DynamicCommand< ?, ? > > ) generatedClass ;
+  }
+
+  private void enhance(
+      final CtClass ctCommand,
+      final FeatureRegistry.FeatureMethod featureMethod
+  ) throws NotFoundException, CannotCompileException {
+    if( commandClassEnhancer != null ) {
+      final ImmutableMap< Class< ? >, Function< Method, String > > interfaceDefinition =
+          commandClassEnhancer.moreImplementedInterfaces( featureMethod ) ;
+      if( interfaceDefinition != null ) {
+        for( final Map.Entry< Class< ? >, Function< Method, String > > interfaceEntry :
+            interfaceDefinition.entrySet()
+        ) {
+          final CtClass ctAdditionalInterface = ctPool.get( interfaceEntry.getKey().getName() ) ;
+          ctCommand.addInterface( ctAdditionalInterface ) ;
+          for( final Method method : interfaceEntry.getKey().getDeclaredMethods() ) {
+            final CtClass[] argumentTypes = CommandCookerTools.javaClassesToJavassist(
+                ctPool, method.getParameterTypes() ) ;
+            final CtMethod ctAdditionalMethod = CtNewMethod.make(
+                CommandCookerTools.javaClassToJavassist( ctPool, method.getReturnType() ),
+                method.getName(),
+                argumentTypes,
+                null,
+                interfaceEntry.getValue().apply( method ),
+                ctCommand
+            ) ;
+            ctCommand.addMethod( ctAdditionalMethod ) ;
+          }
+        }
+      }
+    }
+  }
+
+
+// =======
+// Decoder
+// =======
+
+  DynamicCommand.Decoder generateDecoder(
+      final Class< ? extends DynamicCommand< ?, ? > > commandClass,
+      final FeatureRegistry.FeatureMethod featureMethod,
+      final DynamicCommand.Recipe recipe
+  ) throws NotFoundException, CannotCompileException, ReflectiveOperationException {
+    final CtClass ctDecoder = ctPool.makeClass( commandClass.getName() + "$Decoder" ) ;
+    ctDecoder.addInterface( ctPool.get( DynamicCommand.Decoder.class.getName() ) ) ;
+    ctDecoder.addField( CtField.make(
+        "private final " + DynamicCommand.Recipe.class.getName() + " recipe ;", ctDecoder ) ) ;
+    ctDecoder.addConstructor( CtNewConstructor.make(
+        "public " + ctDecoder.getSimpleName() + "( " +
+            DynamicCommand.Recipe.class.getName() + " recipe ) { this.recipe = $1 ; }",
+        ctDecoder
+    ) ) ;
+
+    final Class< ? >[] parameterTypes = featureMethod.method.getParameterTypes() ;
+    final StringBuilder constructorArguments = new StringBuilder( "$1, recipe" ) ;
+    for( int i = 1 ; i < parameterTypes.length ; i ++ ) {
+      final Class< ? > type = parameterTypes[ i ] ;
+      final String primitiveInfix = primitiveMethodInfix( type ) ;
+      constructorArguments.append( ", " ) ;
+      if( primitiveInfix == null ) {
+        constructorArguments.append( unboxed( type,
+            "recipe.codecs[ " + i + " ].decodeFrom( $2 )" ) ) ;
+      } else {
+        constructorArguments.append( "$2.read" ).append( primitiveInfix )
+            .append( "Primitive()" ) ;
+      }
+    }
+    ctDecoder.addMethod( CtNewMethod.make(
+        "public " + DynamicCommand.class.getName() + " decode( " +
+            "Object endpointSpecific, " + PositionalFieldReader.class.getName() + " reader ) " +
+            "throws java.io.IOException { " +
+            "return new " + commandClass.getName() + "( " + constructorArguments + " ) ; }",
+        ctDecoder
+    ) ) ;
+    final Class< ? > decoderClass = ctDecoder.toClass( classLoader, protectionDomain ) ;
+    return ( DynamicCommand.Decoder ) decoderClass
+        .getConstructor( DynamicCommand.Recipe.class )
+        .newInstance( recipe )
+    ;
+  }
+
+
+// ========
+// Receiver
+// ========
+
+  /**
+   * @return a class with a public constructor taking a {@link CommandConsumer} and
+   *     an array of {@link DynamicCommand.Recipe}s in the same order as {@code commandClasses}.
+   */
+  Class< ? > generateReceiverClass(
+      final ImmutableList< Class< ? > > featureClasses,
+      final ImmutableList< FeatureRegistry.FeatureMethod > featureMethods,
+      final ImmutableList< Class< ? extends DynamicCommand< ?, ? > > > commandClasses
+  ) throws NotFoundException, CannotCompileException {
+    final CtClass ctReceiver = ctPool.makeClass(
+        commandNamePrefix + "Receiver" + classNameSuffix ) ;
+    for( final Class< ? > featureClass : featureClasses ) {
+      ctReceiver.addInterface( ctPool.get( featureClass.getName() ) ) ;
+    }
+    final String recipeArray = DynamicCommand.Recipe.class.getName() + "[]" ;
+    ctReceiver.addField( CtField.make(
+        "private final " + CommandConsumer.class.getName() + " consumer ;", ctReceiver ) ) ;
+    ctReceiver.addField( CtField.make(
+        "private final " + recipeArray + " recipes ;", ctReceiver ) ) ;
+    ctReceiver.addConstructor( CtNewConstructor.make(
+        "public " + ctReceiver.getSimpleName() + "( " +
+            CommandConsumer.class.getName() + " consumer, " + recipeArray + " recipes ) " +
+            "{ this.consumer = $1 ; this.recipes = $2 ; }",
+        ctReceiver
+    ) ) ;
+
+    for( int commandIndex = 0 ; commandIndex < featureMethods.size() ; commandIndex ++ ) {
+      final Method method = featureMethods.get( commandIndex ).method ;
+      final Class< ? >[] parameterTypes = method.getParameterTypes() ;
+      final StringBuilder constructorArguments =
+          new StringBuilder( "$1, recipes[ " + commandIndex + " ]" ) ;
+      for( int i = 1 ; i < parameterTypes.length ; i ++ ) {
+        constructorArguments.append( ", $" ).append( i + 1 ) ;
+      }
+      ctReceiver.addMethod( CtNewMethod.make(
+          CtClass.voidType,
+          method.getName(),
+          CommandCookerTools.javaClassesToJavassist( ctPool, parameterTypes ),
+          null,
+          "{ consumer.accept( ( " + Command.class.getName() + " ) " +
+              "new " + commandClasses.get( commandIndex ).getName() +
+              "( " + constructorArguments + " ) ) ; }",
+          ctReceiver
+      ) ) ;
+    }
+
+    ctReceiver.addMethod( CtNewMethod.make(
+        "public String toString() { return \"" +
+            CommandCooker.class.getSimpleName() + ".DynamicReceiver\" + " +
+            ToStringTools.class.getName() + ".compactHashForNonNull( this ) + \"{" +
+            CommandCookerTools.classNames( featureClasses ) + "}\" ; }",
+        ctReceiver
+    ) ) ;
+
+    return ctReceiver.toClass( classLoader, protectionDomain ) ;
+  }
+}
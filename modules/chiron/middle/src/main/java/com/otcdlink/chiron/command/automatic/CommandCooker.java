@@ -5,24 +5,18 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.otcdlink.chiron.buffer.PositionalFieldReader;
 import com.otcdlink.chiron.buffer.PositionalFieldWriter;
+import com.otcdlink.chiron.codec.DecodeException;
 import com.otcdlink.chiron.command.Command;
 import com.otcdlink.chiron.command.CommandConsumer;
-import com.otcdlink.chiron.command.Stamp;
 import com.otcdlink.chiron.command.codec.Codec;
 import com.otcdlink.chiron.toolbox.ToStringTools;
 import javassist.CannotCompileException;
-import javassist.ClassPool;
-import javassist.CtClass;
-import javassist.CtMethod;
-import javassist.CtNewMethod;
 import javassist.NotFoundException;
 
 import java.io.DataInput;
 import java.io.IOException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
-import java.util.Map;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
@@ -35,6 +29,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * annotated with {@link AsCommand}.
  * This is only for the latest version as defined by interfaces in use, the backward compatibility
  * comes from other stuff.
+ * <p>
+ * Construction generates a {@link DynamicCommand} subclass with typed fields for each
+ * Feature method, and a receiver class implementing Feature interfaces, so there is no
+ * reflection, boxing nor argument {@code Map} when creating, encoding, decoding or calling
+ * a {@link Command}. See {@link CommandClassGenerator}.
  */
 public class CommandCooker<
     ENDPOINT_SPECIFIC,
@@ -44,37 +43,104 @@ public class CommandCooker<
 {
   private final Supplier< PreambleCodec< ENDPOINT_SPECIFIC > > preambleCodecFactory;
   private final FeatureRegistry featureRegistry ;
-  private final ImmutableMap< Type, Codec > methodParametersCodecs ;
-  private final CommandClassEnhancer commandClassEnhancer ;
 
   /**
-   * Something like {@code foo.bar.MyCommand}.
+   * Keys are {@link FeatureRegistry.FeatureMethod#commandName}.
    */
-  private final String commandNamePrefix ;
+  private final ImmutableMap< String, DynamicCommand.Decoder > decoders ;
 
-  private final Stamp.Generator identifierGenerator ;
+  /**
+   * Same order as {@link #receiverClass} expects.
+   */
+  private final DynamicCommand.Recipe[] recipes ;
+
+  /**
+   * Implements every Feature interface.
+   */
+  private final Class< ? > receiverClass ;
 
   /**
    * @param featureRegistry describes how to create {@link Command} objects.
-   * @param methodParametersCodecs {@link Codec}s for parameters of interface's methods.
-   * @param identifierGenerator
+   * @param methodParametersCodecs {@link Codec}s for parameters of interface's methods,
+   *     not used for {@code int}, {@code long}, {@code float} and {@code boolean} which
+   *     have their own methods in {@link PositionalFieldWriter}.
+   * @param commandNamePrefix something like {@code foo.bar.MyCommand}, to name generated
+   *     classes. Generated classes go into the package of Feature interfaces that are not
+   *     public, see {@link CommandClassGenerator#classNamePrefix(ImmutableList, String)}.
+   * @param commandClassEnhancer may be {@code null}.
    */
   public CommandCooker(
       final Supplier< PreambleCodec< ENDPOINT_SPECIFIC > > preambleCodecFactory,
       final FeatureRegistry featureRegistry,
-      final ImmutableMap< Type, Codec > methodParametersCodecs,
+      final ImmutableMap< Type, Codec< ? > > methodParametersCodecs,
       final String commandNamePrefix,
-      final CommandClassEnhancer commandClassEnhancer,
-      final Stamp.Generator identifierGenerator
+      final CommandClassEnhancer commandClassEnhancer
   ) {
     this.preambleCodecFactory = checkNotNull( preambleCodecFactory ) ;
     this.featureRegistry = checkNotNull( featureRegistry ) ;
-    this.methodParametersCodecs = checkNotNull( methodParametersCodecs ) ;
+    checkNotNull( methodParametersCodecs ) ;
     checkArgument( Pattern.matches(
         "[a-zA-Z][a-zA-Z0-9_]*(?:\\.[a-zA-Z][a-zA-Z0-9_]*)*", commandNamePrefix ) ) ;
-    this.commandNamePrefix = commandNamePrefix ;
-    this.commandClassEnhancer = commandClassEnhancer ;
-    this.identifierGenerator = checkNotNull( identifierGenerator ) ;
+    checkArgument( ! featureRegistry.featureClasses.isEmpty() ) ;
+
+    final CommandClassGenerator generator = new CommandClassGenerator(
+        featureRegistry.featureClasses, commandNamePrefix, commandClassEnhancer ) ;
+    final ImmutableList< FeatureRegistry.FeatureMethod > featureMethods =
+        featureRegistry.featureMethods.values().asList() ;
+    final ImmutableMap.Builder< String, DynamicCommand.Decoder > decodersBuilder =
+        ImmutableMap.builder() ;
+    final ImmutableList.Builder< Class< ? extends DynamicCommand< ?, ? > > > commandClassesBuilder =
+        ImmutableList.builder() ;
+    this.recipes = new DynamicCommand.Recipe[ featureMethods.size() ] ;
+    try {
+      for( int i = 0 ; i < featureMethods.size() ; i ++ ) {
+        final FeatureRegistry.FeatureMethod featureMethod = featureMethods.get( i ) ;
+        recipes[ i ] = new DynamicCommand.Recipe(
+            new CommandDescription( featureMethod ),
+            featureMethod.commandAnnotation.persist(),
+            codecs( featureMethod, methodParametersCodecs )
+        ) ;
+        final Class< ? extends DynamicCommand< ?, ? > > commandClass =
+            generator.generateCommandClass( featureMethod ) ;
+        commandClassesBuilder.add( commandClass ) ;
+        decodersBuilder.put(
+            featureMethod.commandName,
+            generator.generateDecoder( commandClass, featureMethod, recipes[ i ] )
+        ) ;
+      }
+      this.receiverClass = generator.generateReceiverClass(
+          featureRegistry.featureClasses, featureMethods, commandClassesBuilder.build() ) ;
+    } catch( final NotFoundException | CannotCompileException |
+        ReflectiveOperationException e
+    ) {
+      throw new RuntimeException( "Could not generate classes for " +
+          CommandCookerTools.classNames( featureRegistry.featureClasses ), e ) ;
+    }
+    this.decoders = decodersBuilder.build() ;
+  }
+
+  /**
+   * @return an array with the same size as the method's parameters, so the index of a
+   *     {@link Codec} is the index of the parameter.
+   */
+  private static Codec< ? >[] codecs(
+      final FeatureRegistry.FeatureMethod featureMethod,
+      final ImmutableMap< Type, Codec< ? > > methodParametersCodecs
+  ) {
+    final Codec< ? >[] codecs = new Codec< ? >[ featureMethod.specificArgumentTypes.size() + 1 ] ;
+    final FeatureRegistry.FeatureMethod.ArgumentIterator iterator =
+        featureMethod.argumentIterator() ;
+    while( iterator.hasNext() ) {
+      final Type argumentType = iterator.next() ;
+      if( CommandClassGenerator.primitiveMethodInfix( ( Class< ? > ) argumentType ) == null ) {
+        final Codec< ? > codec = methodParametersCodecs.get( argumentType ) ;
+        checkArgument( codec != null,
+            "No " + Codec.class.getSimpleName() + " for " + argumentType.getTypeName() +
+            " in " + featureMethod.method ) ;
+        codecs[ iterator.index() ] = codec ;
+      }
+    }
+    return codecs ;
   }
 
   @Override
@@ -117,139 +183,44 @@ public class CommandCooker<
     command.encodeBody( positionalFieldWriter ) ;
   }
 
+  /**
+   * The cast is safe because generated {@link DynamicCommand} subclasses take
+   * {@code ENDPOINT_SPECIFIC} from the {@link PreambleDecoder}, and implement
+   * {@link Command#callReceiver(Object)} with Feature interfaces {@code CALLABLE_RECEIVER}
+   * implements.
+   */
+  @SuppressWarnings( "unchecked" )
   protected Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > decode(
       final PreambleDecoder< ENDPOINT_SPECIFIC > preambleDecoder,
       final PositionalFieldReader positionalFieldReader
   ) throws IOException {
     preambleDecoder.decode( positionalFieldReader ) ;
     final String commandName = preambleDecoder.commandName() ;
-    final ENDPOINT_SPECIFIC endpointSpecific = preambleDecoder.endpointSpecific() ;
-
-
-    final FeatureRegistry.FeatureMethod featureMethod =
-        featureRegistry.featureMethods.get( commandName ) ;
-    final ImmutableMap.Builder< String, Object > argumentMapBuilder = ImmutableMap.builder() ;
-    final FeatureRegistry.FeatureMethod.ArgumentIterator iterator =
-        featureMethod.argumentIterator() ;
-    while( iterator.hasNext() ) {
-      final Type argumentType = iterator.next() ;
-      final int argumentIndex = iterator.index() ;
-      final Codec codec = methodParametersCodecs.get( argumentType ) ;
-      final String fieldName = argumentName( argumentType, argumentIndex ) ;
-      final Object value = codec.decodeFrom( positionalFieldReader ) ;
-      argumentMapBuilder.put( fieldName, value ) ;
+    final DynamicCommand.Decoder decoder = decoders.get( commandName ) ;
+    if( decoder == null ) {
+      throw new DecodeException( "Unknown command name '" + commandName + "'" ) ;
     }
-    return new DynamicCommand<>(
-        identifierGenerator.generate(),
-        endpointSpecific,
-        new CommandDescription( featureMethod ),
-        methodParametersCodecs,
-        featureMethod,
-        argumentMapBuilder.build()
-    ) ;
+    return ( Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > )
+        decoder.decode( preambleDecoder.endpointSpecific(), positionalFieldReader ) ;
   }
 
-  private final ClassPool ctPool = new ClassPool( true ) ;
-
+  /**
+   * @return an object implementing every Feature interface, which creates a {@link Command}
+   *     for each call, and passes it to the {@link CommandConsumer}.
+   */
   @SuppressWarnings( "unchecked" )
   public final CALLABLE_RECEIVER createReceiver(
       final CommandConsumer< Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > > commandConsumer
   ) {
-    final Class[] interfaces = featureRegistry.featureClasses.toArray(
-        new Class[ featureRegistry.featureClasses.size() ] ) ;
-
-    return ( CALLABLE_RECEIVER ) Proxy.newProxyInstance(
-        getClass().getClassLoader(),
-        interfaces,
-        ( proxy, method, arguments ) -> {
-          if( CommandCookerTools.callingObject$equals( method, arguments ) ) {
-            return proxy == arguments[ 0 ] ;
-          } else if( CommandCookerTools.callingObject$hashCode( method, arguments ) ) {
-            return System.identityHashCode( proxy ) ;
-          } else if( CommandCookerTools.callingObject$toString( method, arguments ) ) {
-            final ImmutableList< Class< ? > > list = featureRegistry.featureClasses ;
-            return CommandCooker.class.getSimpleName() + ".$$DynamicReceiver" +
-                ToStringTools.compactHashForNonNull( proxy ) +
-                '{' + CommandCookerTools.classNames( list ) + '}'
-            ;
-          } else {
-            final FeatureRegistry.FeatureMethod featureMethod =
-                featureRegistry.featureMethod( method ) ;
-            checkArgument( arguments.length == featureMethod.specificArgumentTypes.size() + 1 ) ;
-
-            ImmutableMap.Builder< String, Object > builder = ImmutableMap.builder() ;
-            final FeatureRegistry.FeatureMethod.ArgumentIterator argumentIterator =
-                featureMethod.argumentIterator() ;
-            while( argumentIterator.hasNext() ) {
-              final Type argumentType = argumentIterator.next() ;
-              final int argumentIndex = argumentIterator.index() ;
-              final Object argument = arguments[ argumentIndex ];
-              builder.put( argumentName( argumentType, argumentIndex ), argument ) ;
-            }
-
-            final Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > dynamicCommand =
-                createCommand( featureMethod, ( ENDPOINT_SPECIFIC ) arguments[ 0 ], builder.build() ) ;
-            ;
-            commandConsumer.accept( dynamicCommand ) ;
-          }
-          return null ;
-        }
-    ) ;
-  }
-
-  private Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > createCommand(
-      final FeatureRegistry.FeatureMethod featureMethod,
-      final ENDPOINT_SPECIFIC endpointSpecific,
-      final ImmutableMap< String, Object > argumentMap
-  ) throws NotFoundException, CannotCompileException {
-    final Class< Command > commandClass = createCommandClass( featureMethod ) ;
-//    return commandClass.getConstructor(  )
-    throw new UnsupportedOperationException( "TODO" ) ;
-  }
-
-  private Class< Command > createCommandClass(
-      final FeatureRegistry.FeatureMethod featureMethod
-  ) throws NotFoundException, CannotCompileException {
-    final CtClass ctBase = ctPool.get( DynamicCommand.class.getName() ) ;
-    final CtClass ctAugmented = ctPool.makeClass(
-        commandNamePrefix +
-            CaseFormat.LOWER_CAMEL.to( CaseFormat.UPPER_CAMEL, featureMethod.commandName ),
-        ctBase
-    ) ;
-    if( commandClassEnhancer != null ) {
-      final ImmutableMap< Class< ? >, Function< Method, String > > interfaceDefinition =
-          commandClassEnhancer.moreImplementedInterfaces( featureMethod ) ;
-      if( ! interfaceDefinition.isEmpty() ) {
-        for( final Map.Entry< Class< ? >, Function< Method, String > > interfaceEntry :
-            interfaceDefinition.entrySet()
-        ) {
-          final CtClass ctAdditionalInterface = ctPool.get( interfaceEntry.getKey().getName() ) ;
-          ctAugmented.addInterface( ctAdditionalInterface ) ;
-          for( final Method method : interfaceEntry.getKey().getDeclaredMethods() ) {
-            final CtClass[] argumentTypes = CommandCookerTools.javaClassesToJavassist(
-                ctPool, method.getParameterTypes() ) ;
-            final CtMethod ctAdditionalMethod = CtNewMethod.abstractMethod(
-                ctPool.get( method.getReturnType().getName() ),
-                method.getName(),
-                argumentTypes,
-                null,
-                ctAugmented
-            ) ;
-            ctAdditionalMethod.setBody( interfaceEntry.getValue().apply( method ) ) ;
-            ctAugmented.addMethod( ctAdditionalMethod ) ;
-          }
-        }
-
-      }
+    checkNotNull( commandConsumer ) ;
+    try {
+      return ( CALLABLE_RECEIVER ) receiverClass
+          .getConstructor( CommandConsumer.class, DynamicCommand.Recipe[].class )
+          .newInstance( commandConsumer, recipes )
+      ;
+    } catch( final ReflectiveOperationException e ) {
+      throw new RuntimeException( "Could not instantiate " + receiverClass, e ) ;
     }
-    return ( Class< Command > ) ( Object ) ctAugmented.getClass() ;
-  }
-
-  protected Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER > create(
-    final FeatureRegistry.FeatureMethod featureMethod,
-    final Object[] arguments
-  ) {
-    throw new UnsupportedOperationException( "TODO" ) ;
   }
 
   @Override
@@ -258,7 +229,7 @@ public class CommandCooker<
         CommandCookerTools.classNames( featureRegistry.featureClasses ) + '}' ;
   }
 
-  interface CommandClassEnhancer {
+  public interface CommandClassEnhancer {
     /**
      *
      * @param featureMethod a non-{@code null} object representing the method call
@@ -276,7 +247,7 @@ public class CommandCooker<
   }
 
 
-  interface PreambleEncoder< ENDPOINT_SPECIFIC > {
+  public interface PreambleEncoder< ENDPOINT_SPECIFIC > {
     void set( ENDPOINT_SPECIFIC endpointSpecific, String commandName ) ;
     void encode( PositionalFieldWriter positionalFieldWriter ) throws IOException ;
   }
@@ -286,7 +257,7 @@ public class CommandCooker<
    * Session identifier may be a part of the {@link DataInput} (like when reading some file),
    * or received from elsewhere (WebSocket session).
    */
-  interface PreambleDecoder< ENDPOINT_SPECIFIC > {
+  public interface PreambleDecoder< ENDPOINT_SPECIFIC > {
     /**
      * Updates private state so next calls to {@link #endpointSpecific()} and {@link #commandName()}
      * will return decoded values, until next call to {@link #decode(PositionalFieldReader)}.
@@ -299,13 +270,21 @@ public class CommandCooker<
     ENDPOINT_SPECIFIC endpointSpecific() ;
   }
 
-  interface PreambleCodec< ENDPOINT_SPECIFIC >
+  public interface PreambleCodec< ENDPOINT_SPECIFIC >
       extends PreambleEncoder< ENDPOINT_SPECIFIC >, PreambleDecoder< ENDPOINT_SPECIFIC >
   { }
 
+  /**
+   * @return something like {@code string1} or {@code int2}, so a
+   *     {@link CommandClassEnhancer} can refer to fields of generated {@link Command}s.
+   */
   public static String argumentName( final Type type, final int index ) {
     checkArgument( index >= 0 ) ;
-    return CaseFormat.UPPER_CAMEL.to( CaseFormat.LOWER_CAMEL, type.getTypeName() ) ;
+    final String typeName = type instanceof Class ?
+        ( ( Class< ? > ) type ).getSimpleName().replace( "[]", "Array" ) :
+        type.getTypeName()
+    ;
+    return CaseFormat.UPPER_CAMEL.to( CaseFormat.LOWER_CAMEL, typeName ) + index ;
   }
 
   @SuppressWarnings( "ClassExplicitlyAnnotation" )
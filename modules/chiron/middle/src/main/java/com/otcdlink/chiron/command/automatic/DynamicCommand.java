@@ -1,81 +1,57 @@
 package com.otcdlink.chiron.command.automatic;
 
-import com.google.common.base.Throwables;
-import com.google.common.collect.ImmutableMap;
+import com.otcdlink.chiron.buffer.PositionalFieldReader;
 import com.otcdlink.chiron.buffer.PositionalFieldWriter;
 import com.otcdlink.chiron.command.Command;
-import com.otcdlink.chiron.command.Stamp;
 import com.otcdlink.chiron.command.codec.Codec;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Type;
-import java.util.Iterator;
-import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-class DynamicCommand< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER >
+/**
+ * Base class for {@link Command}s generated by {@link CommandCooker}.
+ * A subclass has one typed field per argument of the Feature method, and implements
+ * {@link #callReceiver(Object)} and {@link #encodeBody(PositionalFieldWriter)} with
+ * plain field access and method calls.
+ * <p>
+ * Public, like nested types, so generated classes can live in another package.
+ */
+public abstract class DynamicCommand< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER >
     extends Command< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER >
 {
-  private final FeatureRegistry.FeatureMethod featureMethod ;
-  private final ImmutableMap< String, Object > specificArguments ;
-  private final Description description ;
-  private final ImmutableMap< Type, Codec > methodParametersCodecs ;
-
-
-  public DynamicCommand(
-      final Stamp identifier,
-      final ENDPOINT_SPECIFIC endpointSpecific,
-      final Description description,
-      final ImmutableMap<Type, Codec> methodParametersCodecs,
-      final FeatureRegistry.FeatureMethod featureMethod,
-      final ImmutableMap<String, Object> specificArguments
-  ) {
-    super( endpointSpecific ) ;
-    this.description = checkNotNull( description ) ;
-    this.methodParametersCodecs = checkNotNull( methodParametersCodecs ) ;
-    this.featureMethod = checkNotNull( featureMethod ) ;
-    this.specificArguments = checkNotNull( specificArguments ) ;
-  }
+  private final Recipe recipe ;
 
-  @Override
-  public Description description() {
-    return description ;
-  }
+  /**
+   * Same as {@link Recipe#codecs}, for shorter generated code.
+   */
+  protected final Codec< ? >[] codecs ;
 
-  @Override
-  public void callReceiver( final CALLABLE_RECEIVER callableReceiver ) {
-    final Object[] argumentArray = new Object[ specificArguments.size() + 1 ] ;
-    argumentArray[ 0 ] = endpointSpecific ;
-    final Iterator< Object > argumentIterator = specificArguments.values().iterator() ;
-    for( int i = 1 ; i < argumentArray.length ; i ++ ) {
-      argumentArray[ i ] = argumentIterator.next() ;
-    }
-    try {
-      featureMethod.method.invoke( callableReceiver, argumentArray ) ;
-    } catch( final IllegalAccessException | InvocationTargetException e ) {
-      Throwables.propagate( e ) ;
-    }
+  protected DynamicCommand( final ENDPOINT_SPECIFIC endpointSpecific, final Recipe recipe ) {
+    super( endpointSpecific, recipe.persist ) ;
+    this.recipe = recipe ;
+    this.codecs = recipe.codecs ;
   }
 
   @Override
-  public void encodeBody( final PositionalFieldWriter positionalFieldWriter ) throws IOException {
-    for( final Map.Entry< String, Object > specificArgument : specificArguments.entrySet() ) {
-      final Codec codec = methodParametersCodecs.get( specificArgument.getValue().getClass() ) ;
-//      codec.encodeTo( specificArgument.getValue(), positionalFieldWriter ) ;
-    }
+  public final Description description() {
+    return recipe.description ;
   }
 
   @Override
-  protected String toStringBody() {
-    return
-        "featureMethod=" + featureMethod.commandName + ';' +
-        "specificArguments=" + specificArguments.toString() ;
+  protected final String toStringBody() {
+    return endpointSpecific.toString() + ';' + argumentsToString() ;
   }
 
+  protected abstract String argumentsToString() ;
+
+  /**
+   * @param other an instance of the same class.
+   */
+  protected abstract boolean argumentsEqual( DynamicCommand< ?, ? > other ) ;
+
   @Override
-  public boolean equals( final Object other ) {
+  public final boolean equals( final Object other ) {
     if( this == other ) {
       return true ;
     }
@@ -88,10 +64,46 @@ class DynamicCommand< ENDPOINT_SPECIFIC, CALLABLE_RECEIVER >
     if( ! endpointSpecific.equals( that.endpointSpecific ) ) {
       return false ;
     }
-    if( ! featureMethod.equals( that.featureMethod ) ) {
-      return false ;
+    return argumentsEqual( that ) ;
+  }
+
+  @Override
+  public int hashCode() {
+    return super.hashCode() ;
+  }
+
+
+  /**
+   * What all instances of a generated {@link DynamicCommand} subclass share.
+   */
+  public static final class Recipe {
+    public final Description description ;
+    public final boolean persist ;
+
+    /**
+     * {@link Codec}s for arguments of the Feature method, {@code null} at the index
+     * of a primitive argument which goes directly into the {@link PositionalFieldWriter}.
+     */
+    public final Codec< ? >[] codecs ;
+
+    public Recipe(
+        final Description description,
+        final boolean persist,
+        final Codec< ? >[] codecs
+    ) {
+      this.description = checkNotNull( description ) ;
+      this.persist = persist ;
+      this.codecs = checkNotNull( codecs ) ;
     }
-    return specificArguments.equals( that.specificArguments ) ;
   }
 
+  /**
+   * Generated for each {@link DynamicCommand} subclass, calls its constructor directly.
+   */
+  public interface Decoder {
+    DynamicCommand< ?, ? > decode(
+        Object endpointSpecific,
+        PositionalFieldReader positionalFieldReader
+    ) throws IOException ;
+  }
 }
@@ -2,10 +2,14 @@ package com.otcdlink.chiron.middle;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.otcdlink.chiron.buffer.FieldEncoding;
 import com.otcdlink.chiron.buffer.PositionalFieldReader;
 import com.otcdlink.chiron.codec.DecodeException;
 import com.otcdlink.chiron.middle.session.SessionIdentifier;
+import com.otcdlink.chiron.middle.tier.CommandDictionary;
+import com.otcdlink.chiron.middle.tier.FrameBatching;
 import com.otcdlink.chiron.toolbox.ToStringTools;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
@@ -51,6 +55,61 @@ public final class ChannelTools {
     return channelHandlerContext.attr( SESSION_KEY ).get() ;
   }
 
+  /**
+   * Set after WebSocket handshake.
+   *
+   * @see com.otcdlink.chiron.middle.tier.ConnectionDescriptor#fieldEncoding
+   */
+  public static final AttributeKey< FieldEncoding > FIELD_ENCODING_KEY =
+      AttributeKey.newInstance( "FIELD_ENCODING" ) ;
+
+  /**
+   * @return {@link FieldEncoding#TEXT} if there was no negotiation.
+   */
+  public static FieldEncoding fieldEncoding( final ChannelHandlerContext channelHandlerContext ) {
+    return fieldEncoding( channelHandlerContext.channel() ) ;
+  }
+
+  /**
+   * @return {@link FieldEncoding#TEXT} if there was no negotiation.
+   */
+  public static FieldEncoding fieldEncoding( final Channel channel ) {
+    final FieldEncoding fieldEncoding = channel.attr( FIELD_ENCODING_KEY ).get() ;
+    return fieldEncoding == null ? FieldEncoding.TEXT : fieldEncoding ;
+  }
+
+  /**
+   * Set after WebSocket handshake, if both sides announced the names they can decode.
+   *
+   * @see CommandDictionary
+   */
+  public static final AttributeKey< CommandDictionary > COMMAND_DICTIONARY_KEY =
+      AttributeKey.newInstance( "COMMAND_DICTIONARY" ) ;
+
+  /**
+   * @return {@code null} if there was no negotiation.
+   */
+  public static CommandDictionary commandDictionary(
+      final ChannelHandlerContext channelHandlerContext
+  ) {
+    return channelHandlerContext.channel().attr( COMMAND_DICTIONARY_KEY ).get() ;
+  }
+
+  /**
+   * Set after WebSocket handshake, if both sides announced they support it.
+   *
+   * @see FrameBatching
+   */
+  public static final AttributeKey< FrameBatching > FRAME_BATCHING_KEY =
+      AttributeKey.newInstance( "FRAME_BATCHING" ) ;
+
+  /**
+   * @return {@code null} if there was no negotiation.
+   */
+  public static FrameBatching frameBatching( final ChannelHandlerContext channelHandlerContext ) {
+    return channelHandlerContext.channel().attr( FRAME_BATCHING_KEY ).get() ;
+  }
+
   public static void dumpPipeline( final ChannelPipeline pipeline ) {
     dumpPipeline( pipeline, "" ) ;
   }
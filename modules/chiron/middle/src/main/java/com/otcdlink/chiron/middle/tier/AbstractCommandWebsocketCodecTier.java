@@ -1,22 +1,53 @@
 package com.otcdlink.chiron.middle.tier;
 
+import com.otcdlink.chiron.buffer.ByteTrie;
 import com.otcdlink.chiron.buffer.BytebufTools;
+import com.otcdlink.chiron.buffer.FieldEncoding;
 import com.otcdlink.chiron.buffer.PositionalFieldReader;
 import com.otcdlink.chiron.buffer.PositionalFieldWriter;
 import com.otcdlink.chiron.codec.CommandBodyDecoder;
+import com.otcdlink.chiron.codec.DecodeException;
+import com.otcdlink.chiron.codec.IndexedCommandBodyDecoder;
 import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.middle.ChannelTools;
 import com.otcdlink.chiron.toolbox.netty.NettyTools;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.PromiseNotifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Decodes {@link TextWebSocketFrame}s with {@link FieldEncoding#TEXT} and
+ * {@link BinaryWebSocketFrame}s with {@link FieldEncoding#BINARY}, so the frame type tells
+ * the {@link FieldEncoding}.
+ * Encodes with the {@link FieldEncoding} negotiated at handshake, as found in
+ * {@link ChannelTools#fieldEncoding(ChannelHandlerContext)}.
+ * Frames start with the {@link Command.Description#name()}, or with a numeric code
+ * if a {@link CommandDictionary} was negotiated at handshake.
+ * If {@link FrameBatching} was negotiated at handshake, {@link Command}s written during
+ * the same event-loop task go into the same frame, which is written at the end of the task
+ * (with a deferred {@link #flush(ChannelHandlerContext)} if there was one).
+ * A {@link PreencodedCommand} only gets its preamble encoded.
+ * <p>
+ * Releases what it encoded, which does nothing for a plain {@link Command} but recycles a
+ * {@link com.otcdlink.chiron.command.RecyclableCommand}.
+ */
 public abstract class AbstractCommandWebsocketCodecTier<
     INBOUND_ENDPOINT_SPECIFIC,
     INBOUND_DUTY,
@@ -24,15 +55,22 @@ public abstract class AbstractCommandWebsocketCodecTier<
     OUTBOUND_DUTY
 >
     extends SelectiveDuplexTier<
-                TextWebSocketFrame,
-    Command< ? extends OUTBOUND_ENDPOINT_SPECIFIC, OUTBOUND_DUTY >
-            >
+        WebSocketFrame,
+        Command< ? extends OUTBOUND_ENDPOINT_SPECIFIC, OUTBOUND_DUTY >
+    >
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(
       AbstractCommandWebsocketCodecTier.class ) ;
 
   private final CommandBodyDecoder< INBOUND_ENDPOINT_SPECIFIC, INBOUND_DUTY > commandDecoder ;
 
+  /**
+   * Same object as {@link #commandDecoder} if it supports numeric identifiers, which is
+   * a condition for having a {@link CommandDictionary} negotiated.
+   */
+  private final IndexedCommandBodyDecoder< INBOUND_ENDPOINT_SPECIFIC, INBOUND_DUTY >
+      indexedCommandDecoder ;
+
   /**
    * Need one {@link BytebufTools.Coating} for reading and one for writing because a
    * {@link io.netty.channel.Channel} may do both in response to an inbound message.
@@ -45,51 +83,125 @@ public abstract class AbstractCommandWebsocketCodecTier<
    */
   private final BytebufTools.Coating writerCoating = BytebufTools.threadLocalRecyclableCoating() ;
 
+  private final BytebufTools.BinaryCoating binaryReaderCoating =
+      BytebufTools.threadLocalRecyclableBinaryCoating() ;
+
+  private final BytebufTools.BinaryCoating binaryWriterCoating =
+      BytebufTools.threadLocalRecyclableBinaryCoating() ;
+
   protected AbstractCommandWebsocketCodecTier(
       final CommandBodyDecoder< INBOUND_ENDPOINT_SPECIFIC, INBOUND_DUTY > commandDecoder
   ) {
     this.commandDecoder = checkNotNull( commandDecoder ) ;
+    this.indexedCommandDecoder = commandDecoder instanceof IndexedCommandBodyDecoder ?
+        ( IndexedCommandBodyDecoder< INBOUND_ENDPOINT_SPECIFIC, INBOUND_DUTY > ) commandDecoder :
+        null
+    ;
+  }
+
+  /**
+   * Only content frames, other {@link WebSocketFrame}s go to next tier.
+   */
+  @Override
+  public boolean acceptInboundMessage( final Object inbound ) throws Exception {
+    return inbound instanceof TextWebSocketFrame || inbound instanceof BinaryWebSocketFrame ;
   }
 
   @Override
   protected final void inboundMessage(
       final ChannelHandlerContext channelHandlerContext,
-      final TextWebSocketFrame textWebSocketFrame
+      final WebSocketFrame webSocketFrame
   ) throws Exception {
+    final boolean binary = webSocketFrame instanceof BinaryWebSocketFrame ;
+    final boolean batched = ChannelTools.frameBatching( channelHandlerContext ) != null ;
     try {
-      NettyTools.touchMaybe( textWebSocketFrame, "About to decode inbound message" ) ;
-      final PositionalFieldReader fieldReader = readerCoating.coat( textWebSocketFrame.content() );
-      final String commandName = fieldReader.readDelimitedString();
-      final INBOUND_ENDPOINT_SPECIFIC endpointSpecific =
-          readEndpointSpecific( channelHandlerContext, fieldReader );
-      if( endpointSpecific == null ) {
-        LOGGER.error(
-            "Obtained null endpointSpecific for '" + commandName + "' " +
-                "while reading " + textWebSocketFrame + ":\n" +
-                BytebufTools.fullDump( textWebSocketFrame.content() )
-        );
-        return;
+      NettyTools.touchMaybe( webSocketFrame, "About to decode inbound message" ) ;
+      final ByteBuf content = webSocketFrame.content() ;
+      final PositionalFieldReader fieldReader = binary ?
+          binaryReaderCoating.coat( content ) :
+          readerCoating.coat( content )
+      ;
+      boolean readable = decodeAndForward( channelHandlerContext, webSocketFrame, fieldReader ) ;
+      while( readable && batched && content.isReadable() ) {
+        final byte separator = content.readByte() ;
+        if( separator != FrameBatching.RECORD_SEPARATOR ) {
+          throw new DecodeException( "Expected " + FrameBatching.class.getSimpleName() +
+              "'s record separator at index " + ( content.readerIndex() - 1 ) + ", " +
+              "got " + separator ) ;
+        }
+        readable = decodeAndForward( channelHandlerContext, webSocketFrame, fieldReader ) ;
       }
-      final Command< INBOUND_ENDPOINT_SPECIFIC, INBOUND_DUTY > command =
-          commandDecoder.decodeBody( endpointSpecific, commandName, fieldReader ) ;
-      textWebSocketFrame.release() ;
-      if( command == null ) {
-        LOGGER.error( "Obtained null " + Command.class.getSimpleName() +
-            " for '" + commandName + "'." );
-        return;
-      }
-      forwardInbound( channelHandlerContext, command );
     } catch( final Exception e ) {
       LOGGER.error( "Could not decode: \n" +
-          BytebufTools.fullDump( textWebSocketFrame.content() ) ) ;
+          BytebufTools.fullDump( webSocketFrame.content() ) ) ;
       throw e ;
     } finally {
-      readerCoating.recycle() ;
-//      textWebSocketFrame.release() ;
+      if( binary ) {
+        binaryReaderCoating.recycle() ;
+      } else {
+        readerCoating.recycle() ;
+      }
+      webSocketFrame.release() ;
     }
 
   }
 
+  /**
+   * Decodes one {@link Command}, which may be one of several in a {@link FrameBatching} frame.
+   *
+   * @return {@code false} if the rest of the frame can't be decoded.
+   */
+  private boolean decodeAndForward(
+      final ChannelHandlerContext channelHandlerContext,
+      final WebSocketFrame webSocketFrame,
+      final PositionalFieldReader fieldReader
+  ) throws Exception {
+    final int commandCode = ChannelTools.commandDictionary( channelHandlerContext ) == null ?
+        CommandDictionary.NO_CODE : fieldReader.readIntegerPrimitive() ;
+    final int commandIndex ;
+    if( commandCode != CommandDictionary.NO_CODE ) {
+      commandIndex = CommandDictionary.inboundIndex( commandCode ) ;
+    } else if( indexedCommandDecoder != null ) {
+      commandIndex = indexedCommandDecoder.readCommandIndex( fieldReader ) ;
+    } else {
+      commandIndex = ByteTrie.NO_MATCH ;
+    }
+    final String commandName = commandIndex == ByteTrie.NO_MATCH ?
+        fieldReader.readDelimitedString() : null ;
+    final INBOUND_ENDPOINT_SPECIFIC endpointSpecific =
+        readEndpointSpecific( channelHandlerContext, fieldReader );
+    if( endpointSpecific == null ) {
+      LOGGER.error(
+          "Obtained null endpointSpecific for " +
+              commandLabel( commandName, commandIndex ) + " " +
+              "while reading " + webSocketFrame + ":\n" +
+              BytebufTools.fullDump( webSocketFrame.content() )
+      );
+      return false ;
+    }
+    final Command< INBOUND_ENDPOINT_SPECIFIC, INBOUND_DUTY > command = commandName == null ?
+        indexedCommandDecoder.decodeBody( endpointSpecific, commandIndex, fieldReader ) :
+        commandDecoder.decodeBody( endpointSpecific, commandName, fieldReader )
+    ;
+    if( command == null ) {
+      LOGGER.error( "Obtained null " + Command.class.getSimpleName() +
+          " for " + commandLabel( commandName, commandIndex ) + "." );
+      return false ;
+    }
+    forwardInbound( channelHandlerContext, command );
+    return true ;
+  }
+
+  private String commandLabel( final String commandName, final int commandIndex ) {
+    if( commandName == null ) {
+      return "#" + commandIndex + ( commandIndex >= 0 &&
+          commandIndex < indexedCommandDecoder.commandNames().size() ?
+          " '" + indexedCommandDecoder.commandNames().get( commandIndex ) + "'" : "" ) ;
+    } else {
+      return "'" + commandName + "'" ;
+    }
+  }
+
   protected abstract INBOUND_ENDPOINT_SPECIFIC readEndpointSpecific(
       ChannelHandlerContext channelHandlerContext,
       PositionalFieldReader fieldReader
@@ -101,22 +213,131 @@ public abstract class AbstractCommandWebsocketCodecTier<
       final Command< ? extends OUTBOUND_ENDPOINT_SPECIFIC, OUTBOUND_DUTY> command,
       final ChannelPromise promise
   ) throws Exception {
-    final ByteBuf byteBuf = channelHandlerContext.alloc().buffer() ;
+    final FrameBatching frameBatching = ChannelTools.frameBatching( channelHandlerContext ) ;
+    if( frameBatching == null ) {
+      final ByteBuf byteBuf = channelHandlerContext.alloc().buffer() ;
+      try {
+        encode( channelHandlerContext, command, byteBuf ) ;
+      } catch( final Exception e ) {
+        byteBuf.release() ;
+        throw e ;
+      } finally {
+        ReferenceCountUtil.release( command ) ;
+      }
+      forwardOutbound(
+          channelHandlerContext, newFrame( channelHandlerContext, byteBuf ), promise ) ;
+    } else {
+      appendToBatch( channelHandlerContext, frameBatching, command, promise ) ;
+    }
+  }
+
+  /**
+   * Without {@link FrameBatching}, the frame is a {@link CompositeByteBuf} made of the preamble
+   * and of the {@link PreencodedCommand#content()}, so there is no copy.
+   */
+  private void preencodedMessage(
+      final ChannelHandlerContext channelHandlerContext,
+      final PreencodedCommand< OUTBOUND_ENDPOINT_SPECIFIC > preencodedCommand,
+      final ChannelPromise promise
+  ) throws Exception {
+    final FrameBatching frameBatching = ChannelTools.frameBatching( channelHandlerContext ) ;
+    if( frameBatching == null ) {
+      final ByteBuf preamble = channelHandlerContext.alloc().buffer() ;
+      try {
+        encode( channelHandlerContext, preencodedCommand.description,
+            preencodedCommand.endpointSpecific, null, preamble ) ;
+      } catch( final Exception e ) {
+        preamble.release() ;
+        preencodedCommand.release() ;
+        throw e ;
+      }
+      final CompositeByteBuf composite = channelHandlerContext.alloc().compositeBuffer( 2 ) ;
+      composite.addComponents( true, preamble, preencodedCommand.content() ) ;
+      forwardOutbound(
+          channelHandlerContext, newFrame( channelHandlerContext, composite ), promise ) ;
+    } else {
+      appendToBatch( channelHandlerContext, frameBatching, preencodedCommand, promise ) ;
+    }
+  }
+
+  /**
+   * @param outbound a {@link Command}, or a {@link PreencodedCommand} whose body gets copied
+   *     but not released.
+   */
+  @SuppressWarnings( "unchecked" )
+  private void encode(
+      final ChannelHandlerContext channelHandlerContext,
+      final Object outbound,
+      final ByteBuf byteBuf
+  ) throws Exception {
+    if( outbound instanceof PreencodedCommand ) {
+      final PreencodedCommand< OUTBOUND_ENDPOINT_SPECIFIC > preencodedCommand =
+          ( PreencodedCommand< OUTBOUND_ENDPOINT_SPECIFIC > ) outbound ;
+      encode( channelHandlerContext, preencodedCommand.description,
+          preencodedCommand.endpointSpecific, null, byteBuf ) ;
+      byteBuf.writeBytes( preencodedCommand.content(),
+          preencodedCommand.content().readerIndex(), preencodedCommand.content().readableBytes() ) ;
+    } else {
+      final Command< ? extends OUTBOUND_ENDPOINT_SPECIFIC, OUTBOUND_DUTY > command =
+          ( Command< ? extends OUTBOUND_ENDPOINT_SPECIFIC, OUTBOUND_DUTY > ) outbound ;
+      encode( channelHandlerContext, command.description(), command.endpointSpecific,
+          command, byteBuf ) ;
+    }
+  }
+
+  /**
+   * @param command {@code null} to encode only the preamble.
+   */
+  private void encode(
+      final ChannelHandlerContext channelHandlerContext,
+      final Command.Description description,
+      final OUTBOUND_ENDPOINT_SPECIFIC endpointSpecific,
+      final Command< ? extends OUTBOUND_ENDPOINT_SPECIFIC, OUTBOUND_DUTY > command,
+      final ByteBuf byteBuf
+  ) throws Exception {
+    final boolean binary =
+        ChannelTools.fieldEncoding( channelHandlerContext ) == FieldEncoding.BINARY ;
     try {
-      final PositionalFieldWriter fieldWriter = writerCoating.coat( byteBuf ) ;
-      fieldWriter.writeDelimitedString( command.description().name() ) ;
-      if( command.description().tracked() ) {
-        writeEndpointSpecific( channelHandlerContext, fieldWriter, command.endpointSpecific ) ;
+      final PositionalFieldWriter fieldWriter = binary ?
+          binaryWriterCoating.coat( byteBuf ) :
+          writerCoating.coat( byteBuf )
+      ;
+      final CommandDictionary commandDictionary =
+          ChannelTools.commandDictionary( channelHandlerContext ) ;
+      if( commandDictionary == null ) {
+        fieldWriter.writeDelimitedString( description.name() ) ;
+      } else {
+        final int commandCode = commandDictionary.outboundCode( description.name() ) ;
+        fieldWriter.writeIntegerPrimitive( commandCode ) ;
+        if( commandCode == CommandDictionary.NO_CODE ) {
+          fieldWriter.writeDelimitedString( description.name() ) ;
+        }
+      }
+      if( description.tracked() ) {
+        writeEndpointSpecific( channelHandlerContext, fieldWriter, endpointSpecific ) ;
       } else {
         writeEndpointSpecific( channelHandlerContext, fieldWriter, null ) ;
       }
-      command.encodeBody( fieldWriter ) ;
-      forwardOutbound( channelHandlerContext, new TextWebSocketFrame( byteBuf ), promise ) ;
+      if( command != null ) {
+        command.encodeBody( fieldWriter ) ;
+      }
     } finally {
-      writerCoating.recycle() ;
+      if( binary ) {
+        binaryWriterCoating.recycle() ;
+      } else {
+        writerCoating.recycle() ;
+      }
     }
   }
 
+  private static WebSocketFrame newFrame(
+      final ChannelHandlerContext channelHandlerContext,
+      final ByteBuf byteBuf
+  ) {
+    return ChannelTools.fieldEncoding( channelHandlerContext ) == FieldEncoding.BINARY ?
+        new BinaryWebSocketFrame( byteBuf ) : new TextWebSocketFrame( byteBuf ) ;
+  }
+
   protected abstract void writeEndpointSpecific(
       ChannelHandlerContext channelHandlerContext,
       PositionalFieldWriter fieldWriter,
@@ -124,4 +345,155 @@ public abstract class AbstractCommandWebsocketCodecTier<
   ) throws IOException;
 
 
+// ========
+// Batching
+// ========
+
+  /**
+   * {@link Command}s encoded since the start of current event-loop task, separated by
+   * {@link FrameBatching#RECORD_SEPARATOR}. {@code null} when there is none.
+   * This {@link io.netty.channel.ChannelHandler} belongs to one {@link Channel} so only its
+   * event loop accesses batching state.
+   */
+  private ByteBuf batch = null ;
+
+  /**
+   * One {@link ChannelPromise} for each {@link Command} in {@link #batch}.
+   */
+  private final List< ChannelPromise > batchPromises = new ArrayList<>() ;
+
+  private boolean batchTaskScheduled = false ;
+
+  /**
+   * Set when a {@link #flush(ChannelHandlerContext)} happened while {@link #batch} was pending,
+   * so it happens after writing the {@link #batch}.
+   */
+  private boolean flushDeferred = false ;
+
+  /**
+   * @param outbound a {@link Command} or a {@link PreencodedCommand}, which gets released.
+   */
+  private void appendToBatch(
+      final ChannelHandlerContext channelHandlerContext,
+      final FrameBatching frameBatching,
+      final Object outbound,
+      final ChannelPromise promise
+  ) throws Exception {
+    if( batch == null ) {
+      batch = channelHandlerContext.alloc().buffer() ;
+    }
+    if( ! batchTaskScheduled ) {
+      batchTaskScheduled = true ;
+      channelHandlerContext.channel().eventLoop().execute( () -> {
+        batchTaskScheduled = false ;
+        writeBatch( channelHandlerContext ) ;
+      } ) ;
+    }
+    final int recordStart = batch.writerIndex() ;
+    final boolean first = batchPromises.isEmpty() ;
+    if( ! first ) {
+      batch.writeByte( FrameBatching.RECORD_SEPARATOR ) ;
+    }
+    try {
+      encode( channelHandlerContext, outbound, batch ) ;
+    } catch( final Exception e ) {
+      batch.writerIndex( recordStart ) ;
+      throw e ;
+    } finally {
+      ReferenceCountUtil.release( outbound ) ;
+    }
+    if( ! first && batch.readableBytes() > frameBatching.maximumLength ) {
+      final int recordLength = batch.writerIndex() - recordStart - 1 ;
+      final ByteBuf nextBatch = channelHandlerContext.alloc().buffer( recordLength ) ;
+      nextBatch.writeBytes( batch, recordStart + 1, recordLength ) ;
+      batch.writerIndex( recordStart ) ;
+      writeBatch( channelHandlerContext ) ;
+      batch = nextBatch ;
+    }
+    batchPromises.add( promise ) ;
+  }
+
+  private void writeBatch( final ChannelHandlerContext channelHandlerContext ) {
+    if( batch != null ) {
+      final ByteBuf byteBuf = batch ;
+      batch = null ;
+      if( batchPromises.isEmpty() ) {
+        byteBuf.release() ;
+      } else {
+        final ChannelPromise promise ;
+        if( batchPromises.size() == 1 ) {
+          promise = batchPromises.get( 0 ) ;
+        } else {
+          promise = channelHandlerContext.newPromise() ;
+          promise.addListener( new PromiseNotifier< Void, ChannelFuture >(
+              false, batchPromises.toArray( new ChannelPromise[ batchPromises.size() ] ) ) ) ;
+        }
+        batchPromises.clear() ;
+        forwardOutbound(
+            channelHandlerContext, newFrame( channelHandlerContext, byteBuf ), promise ) ;
+      }
+    }
+    if( flushDeferred ) {
+      flushDeferred = false ;
+      channelHandlerContext.flush() ;
+    }
+  }
+
+  /**
+   * Handles {@link PreencodedCommand}s, and keeps ordering with messages this tier doesn't
+   * encode, like {@link io.netty.handler.codec.http.websocketx.CloseWebSocketFrame}.
+   */
+  @SuppressWarnings( "unchecked" )
+  @Override
+  public void write(
+      final ChannelHandlerContext channelHandlerContext,
+      final Object outbound,
+      final ChannelPromise promise
+  ) throws Exception {
+    if( outbound instanceof PreencodedCommand ) {
+      preencodedMessage( channelHandlerContext,
+          ( PreencodedCommand< OUTBOUND_ENDPOINT_SPECIFIC > ) outbound, promise ) ;
+    } else {
+      if( batch != null && ! acceptOutboundMessage( outbound ) ) {
+        writeBatch( channelHandlerContext ) ;
+      }
+      super.write( channelHandlerContext, outbound, promise ) ;
+    }
+  }
+
+  @Override
+  public void flush( final ChannelHandlerContext channelHandlerContext ) throws Exception {
+    if( batch == null ) {
+      channelHandlerContext.flush() ;
+    } else {
+      flushDeferred = true ;
+    }
+  }
+
+  @Override
+  public void close(
+      final ChannelHandlerContext channelHandlerContext,
+      final ChannelPromise promise
+  ) throws Exception {
+    writeBatch( channelHandlerContext ) ;
+    super.close( channelHandlerContext, promise ) ;
+  }
+
+  @Override
+  public void handlerRemoved( final ChannelHandlerContext channelHandlerContext )
+      throws Exception
+  {
+    if( batch != null ) {
+      batch.release() ;
+      batch = null ;
+      final ChannelException channelException = new ChannelException(
+          "Removed " + this + " before writing batched " + Command.class.getSimpleName() + "s" ) ;
+      for( final ChannelPromise promise : batchPromises ) {
+        promise.tryFailure( channelException ) ;
+      }
+      batchPromises.clear() ;
+    }
+    super.handlerRemoved( channelHandlerContext ) ;
+  }
+
 }
@@ -0,0 +1,151 @@
+package com.otcdlink.chiron.middle.tier;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.otcdlink.chiron.codec.CommandBodyDecoder;
+import com.otcdlink.chiron.codec.IndexedCommandBodyDecoder;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.otcdlink.chiron.middle.tier.ConnectionDescriptor.HttpHeaderKeys.COMMAND_NAMES;
+
+/**
+ * Maps the {@link Command.Description#name()}s a peer can decode to small integers, so
+ * a WebSocket frame can start with an integer instead of a name.
+ *
+ * <h1>Negotiation</h1>
+ * <ul>
+ *   <li>
+ *     Downend lists the names of its {@link IndexedCommandBodyDecoder} in the
+ *     {@link ConnectionDescriptor.HttpHeaderKeys#COMMAND_NAMES} header of the handshake request.
+ *   </li><li>
+ *     If it got such a header, Upend lists the names of its own
+ *     {@link IndexedCommandBodyDecoder} in the handshake response.
+ *   </li><li>
+ *     If both did, each side keeps a {@link CommandDictionary} built from the names of
+ *     the other side. Otherwise nobody does, and frames start with the name.
+ *   </li>
+ * </ul>
+ * Once negotiated, frames start with the integer {@link #outboundCode(String)}, which is
+ * the index of the name plus one, or {@link #NO_CODE} followed by the name itself for a
+ * {@link Command} the peer didn't announce.
+ * <p>
+ * There is no announce if the header would exceed {@link #MAXIMUM_HEADER_LENGTH}, so both
+ * sides keep sending names.
+ */
+public final class CommandDictionary {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( CommandDictionary.class ) ;
+
+  /**
+   * Netty's {@code HttpObjectDecoder} rejects a handshake with more than 8 KB of headers
+   * by default, this leaves room for other headers.
+   */
+  public static final int MAXIMUM_HEADER_LENGTH = 4 * 1024 ;
+
+  /**
+   * Means a {@link Command.Description#name()} follows.
+   */
+  public static final int NO_CODE = 0 ;
+
+  private static final char SEPARATOR = ',' ;
+
+  private static final Splitter SPLITTER = Splitter.on( SEPARATOR ) ;
+
+  private static final Joiner JOINER = Joiner.on( SEPARATOR ) ;
+
+  /**
+   * Names the peer can decode.
+   */
+  private final ImmutableMap< String, Integer > outboundCodes ;
+
+  public CommandDictionary( final ImmutableList< String > peerCommandNames ) {
+    final ImmutableMap.Builder< String, Integer > builder = ImmutableMap.builder() ;
+    for( int i = 0 ; i < peerCommandNames.size() ; i ++ ) {
+      builder.put( peerCommandNames.get( i ), i + 1 ) ;
+    }
+    this.outboundCodes = builder.build() ;
+  }
+
+  /**
+   * @return a strictly positive value, or {@link #NO_CODE} if the peer didn't announce
+   *     this name.
+   */
+  public int outboundCode( final String commandName ) {
+    final Integer code = outboundCodes.get( commandName ) ;
+    return code == null ? NO_CODE : code ;
+  }
+
+  /**
+   * @return the value to pass to
+   *     {@link IndexedCommandBodyDecoder#decodeBody(Object, int, com.otcdlink.chiron.buffer.PositionalFieldReader)}.
+   */
+  public static int inboundIndex( final int code ) {
+    checkArgument( code != NO_CODE ) ;
+    return code - 1 ;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringTools.getNiceClassName( this ) + '{' + outboundCodes.size() + '}' ;
+  }
+
+
+// ===========
+// Negotiation
+// ===========
+
+  /**
+   * Adds the {@link ConnectionDescriptor.HttpHeaderKeys#COMMAND_NAMES} header if
+   * {@code commandBodyDecoder} is an {@link IndexedCommandBodyDecoder}, and if the header
+   * doesn't exceed {@link #MAXIMUM_HEADER_LENGTH}.
+   *
+   * @return {@code true} if the header was added.
+   */
+  public static boolean announce(
+      final HttpHeaders handshakeHeaders,
+      final CommandBodyDecoder< ?, ? > commandBodyDecoder
+  ) {
+    if( commandBodyDecoder instanceof IndexedCommandBodyDecoder ) {
+      final ImmutableList< String > commandNames =
+          ( ( IndexedCommandBodyDecoder< ?, ? > ) commandBodyDecoder ).commandNames() ;
+      for( final String commandName : commandNames ) {
+        checkArgument( ! commandName.isEmpty() && commandName.indexOf( SEPARATOR ) < 0,
+            "Bad command name: '" + commandName + "'" ) ;
+      }
+      final String headerValue = JOINER.join( commandNames ) ;
+      if( headerValue.length() > MAXIMUM_HEADER_LENGTH ) {
+        LOGGER.warn( "Not announcing " + commandNames.size() + " command names, " +
+            COMMAND_NAMES + " header would take " + headerValue.length() + " characters " +
+            "(more than " + MAXIMUM_HEADER_LENGTH + ")." ) ;
+        return false ;
+      }
+      handshakeHeaders.set( COMMAND_NAMES, headerValue ) ;
+      return true ;
+    } else {
+      return false ;
+    }
+  }
+
+  /**
+   * @return {@code null} if the peer didn't announce any name.
+   */
+  public static CommandDictionary from( final HttpHeaders handshakeHeaders ) {
+    final String commandNames = checkNotNull( handshakeHeaders ).get( COMMAND_NAMES ) ;
+    if( commandNames == null ) {
+      return null ;
+    } else if( commandNames.isEmpty() ) {
+      return new CommandDictionary( ImmutableList.of() ) ;
+    } else {
+      return new CommandDictionary( ImmutableList.copyOf( SPLITTER.split( commandNames ) ) ) ;
+    }
+  }
+
+}
@@ -3,6 +3,7 @@ package com.otcdlink.chiron.middle.tier;
 import com.google.common.base.CaseFormat;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableMap;
+import com.otcdlink.chiron.buffer.FieldEncoding;
 import com.otcdlink.chiron.toolbox.ToStringTools;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -11,6 +12,7 @@ import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.otcdlink.chiron.middle.tier.ConnectionDescriptor.HttpHeaderKeys.AUTHENTICATED;
+import static com.otcdlink.chiron.middle.tier.ConnectionDescriptor.HttpHeaderKeys.FIELD_ENCODING;
 import static com.otcdlink.chiron.middle.tier.ConnectionDescriptor.HttpHeaderKeys.VERSION;
 
 /**
@@ -25,14 +27,54 @@ public final class ConnectionDescriptor {
 
   public final TimeBoundary.ForAll timeBoundary ;
 
+  /**
+   * How {@link com.otcdlink.chiron.command.Command}s are encoded in both directions.
+   * Downend asks for one in the handshake request, Upend tells which one it picked
+   * in the handshake response.
+   *
+   * @see #negotiate(HttpHeaders)
+   */
+  public final FieldEncoding fieldEncoding ;
+
   public ConnectionDescriptor(
       final String upendVersion,
       final boolean authenticationRequired,
       final TimeBoundary.ForAll timeBoundary
+  ) {
+    this( upendVersion, authenticationRequired, timeBoundary, FieldEncoding.TEXT ) ;
+  }
+
+  public ConnectionDescriptor(
+      final String upendVersion,
+      final boolean authenticationRequired,
+      final TimeBoundary.ForAll timeBoundary,
+      final FieldEncoding fieldEncoding
   ) {
     this.upendVersion = checkNotNull( upendVersion ) ;
     this.authenticationRequired = authenticationRequired ;
     this.timeBoundary = checkNotNull( timeBoundary ) ;
+    this.fieldEncoding = checkNotNull( fieldEncoding ) ;
+  }
+
+  /**
+   * Upend-side: picks the {@link FieldEncoding} requested by Downend, or
+   * {@link FieldEncoding#TEXT} if Downend requested none (or one we don't know).
+   */
+  public ConnectionDescriptor negotiate( final HttpHeaders handshakeRequestHeaders ) {
+    final FieldEncoding requested =
+        FieldEncoding.safeValueOf( handshakeRequestHeaders.get( FIELD_ENCODING ) ) ;
+    return requested == fieldEncoding ? this :
+        new ConnectionDescriptor( upendVersion, authenticationRequired, timeBoundary, requested ) ;
+  }
+
+  /**
+   * Downend-side: adds the header asking for a {@link FieldEncoding} in the handshake request.
+   */
+  public static HttpHeaders requestFieldEncoding(
+      final HttpHeaders handshakeRequestHeaders,
+      final FieldEncoding fieldEncoding
+  ) {
+    return handshakeRequestHeaders.set( FIELD_ENCODING, fieldEncoding.name() ) ;
   }
 
   public HttpHeaders httpHeaders() {
@@ -42,6 +84,8 @@ public final class ConnectionDescriptor {
 
     httpHeaders.add( AUTHENTICATED, Boolean.toString( authenticationRequired ) ) ;
 
+    httpHeaders.add( FIELD_ENCODING, fieldEncoding.name() ) ;
+
     final ImmutableMap< TimeBoundary.ForAll.Key, Integer > timeBoundaryAsMap =
         timeBoundary.asMap() ;
     for(
@@ -57,6 +101,7 @@ public final class ConnectionDescriptor {
     return ToStringTools.getNiceClassName( this ) + '{' +
         "upendVersion=" + upendVersion + ';' +
         "authenticated=" + authenticationRequired + ';' +
+        "fieldEncoding=" + fieldEncoding + ';' +
         "timeBoundary=" + timeBoundary +
     '}' ;
   }
@@ -75,6 +120,9 @@ public final class ConnectionDescriptor {
     if( authenticationRequired != that.authenticationRequired ) {
       return false ;
     }
+    if( fieldEncoding != that.fieldEncoding ) {
+      return false ;
+    }
     return upendVersion.equals( that.upendVersion ) ;
 
   }
@@ -83,6 +131,7 @@ public final class ConnectionDescriptor {
   public int hashCode() {
     int result = upendVersion.hashCode() ;
     result = 31 * result + ( authenticationRequired ? 1 : 0 ) ;
+    result = 31 * result + fieldEncoding.hashCode() ;
     return result ;
   }
 
@@ -90,6 +139,17 @@ public final class ConnectionDescriptor {
   public interface HttpHeaderKeys {
     String VERSION = "Chiron-Version" ;
     String AUTHENTICATED = "Chiron-Authenticated" ;
+    String FIELD_ENCODING = "Chiron-FieldEncoding" ;
+
+    /**
+     * @see CommandDictionary
+     */
+    String COMMAND_NAMES = "Chiron-CommandNames" ;
+
+    /**
+     * @see FrameBatching
+     */
+    String FRAME_BATCHING = "Chiron-FrameBatching" ;
   }
 
   private static final String TIMEBOUNDARY_HEADER_PREFIX = "Chiron-TimeBoundary-" ;
@@ -114,7 +174,8 @@ public final class ConnectionDescriptor {
     return new ConnectionDescriptor(
         version == null ? "" : version,
         authenticated != null && Boolean.parseBoolean( authenticated ),
-        timeBoundary
+        timeBoundary,
+        FieldEncoding.safeValueOf( httpHeaders.get( FIELD_ENCODING ) )
     ) ;
   }
 
@@ -0,0 +1,78 @@
+package com.otcdlink.chiron.middle.tier;
+
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import io.netty.handler.codec.http.HttpHeaders;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.otcdlink.chiron.middle.tier.ConnectionDescriptor.HttpHeaderKeys.FRAME_BATCHING;
+
+/**
+ * Tells that a WebSocket frame may contain several {@link Command}s, each one but the first
+ * preceded by a {@link #RECORD_SEPARATOR}.
+ * {@link AbstractCommandWebsocketCodecTier} packs {@link Command}s written to the same
+ * {@link io.netty.channel.Channel} during the same event-loop task.
+ *
+ * <h1>Negotiation</h1>
+ * <ul>
+ *   <li>
+ *     Downend, if configured to, puts the maximum payload length of a frame it accepts
+ *     in the {@link ConnectionDescriptor.HttpHeaderKeys#FRAME_BATCHING} header of the
+ *     handshake request.
+ *   </li><li>
+ *     If it got such a header, Upend does the same in the handshake response.
+ *   </li><li>
+ *     Each side keeps a {@link FrameBatching} built from the header of the other side,
+ *     and doesn't send batches longer than {@link #maximumLength}.
+ *   </li>
+ * </ul>
+ */
+public final class FrameBatching {
+
+  /**
+   * ASCII "Record Separator". Decoders read it at the exact place they expect it, so it
+   * may also appear inside {@link com.otcdlink.chiron.buffer.FieldEncoding#BINARY} fields.
+   */
+  public static final byte RECORD_SEPARATOR = 0x1E ;
+
+  /**
+   * Payload length that a batch should not exceed, unless it contains only one
+   * {@link Command}.
+   */
+  public final int maximumLength ;
+
+  public FrameBatching( final int maximumLength ) {
+    checkArgument( maximumLength > 0, "Incorrect maximumLength: %s", maximumLength ) ;
+    this.maximumLength = maximumLength ;
+  }
+
+  /**
+   * Adds the {@link ConnectionDescriptor.HttpHeaderKeys#FRAME_BATCHING} header.
+   */
+  public static void announce( final HttpHeaders handshakeHeaders, final int maximumLength ) {
+    checkArgument( maximumLength > 0, "Incorrect maximumLength: %s", maximumLength ) ;
+    handshakeHeaders.set( FRAME_BATCHING, Integer.toString( maximumLength ) ) ;
+  }
+
+  /**
+   * @return {@code null} if the peer didn't announce a correct value.
+   */
+  public static FrameBatching from( final HttpHeaders handshakeHeaders ) {
+    final String maximumLength = checkNotNull( handshakeHeaders ).get( FRAME_BATCHING ) ;
+    if( maximumLength == null ) {
+      return null ;
+    }
+    try {
+      final int parsed = Integer.parseInt( maximumLength ) ;
+      return parsed > 0 ? new FrameBatching( parsed ) : null ;
+    } catch( final NumberFormatException e ) {
+      return null ;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return ToStringTools.getNiceClassName( this ) + '{' + maximumLength + '}' ;
+  }
+}
@@ -0,0 +1,105 @@
+package com.otcdlink.chiron.middle.tier;
+
+import com.otcdlink.chiron.buffer.BytebufTools;
+import com.otcdlink.chiron.buffer.FieldEncoding;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.DefaultByteBufHolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Outbound message for {@link AbstractCommandWebsocketCodecTier}, representing a
+ * {@link Command} whose body was already encoded with the {@link FieldEncoding} of the
+ * {@link io.netty.channel.Channel} it is written into.
+ * This happens when sending the same {@link Command} to many {@link io.netty.channel.Channel}s:
+ * {@link Bodies} encodes the body once, and each {@link PreencodedCommand} holds a
+ * {@link ByteBuf#retainedDuplicate()} of it, so only the preamble (name and endpoint-specific
+ * part) gets encoded for each {@link io.netty.channel.Channel}.
+ * <p>
+ * Writing a {@link PreencodedCommand} transfers ownership of its {@link #content()}.
+ * <p>
+ * A {@link CommandInterceptorTier} doesn't intercept a {@link PreencodedCommand}, which is
+ * not a {@link Command}.
+ */
+public final class PreencodedCommand< ENDPOINT_SPECIFIC > extends DefaultByteBufHolder {
+
+  public final Command.Description description ;
+
+  /**
+   * Written in the preamble only if {@link Command.Description#tracked()}.
+   */
+  public final ENDPOINT_SPECIFIC endpointSpecific ;
+
+  public PreencodedCommand(
+      final Command.Description description,
+      final ENDPOINT_SPECIFIC endpointSpecific,
+      final ByteBuf body
+  ) {
+    super( body ) ;
+    this.description = checkNotNull( description ) ;
+    this.endpointSpecific = checkNotNull( endpointSpecific ) ;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringTools.getNiceClassName( this ) + '{' +
+        description.name() + ';' +
+        endpointSpecific + ';' +
+        content().readableBytes() + " bytes" +
+        '}'
+    ;
+  }
+
+  /**
+   * Encodes the body of one {@link Command} for each {@link FieldEncoding} asked for, when
+   * first asked. Only one thread should use an instance, which should be
+   * {@link #release()}d after creating every {@link PreencodedCommand}.
+   */
+  public static final class Bodies {
+
+    private final Command< ?, ? > command ;
+
+    private final ByteBufAllocator allocator ;
+
+    private final ByteBuf[] bodies = new ByteBuf[ FieldEncoding.values().length ] ;
+
+    public Bodies( final Command< ?, ? > command, final ByteBufAllocator allocator ) {
+      this.command = checkNotNull( command ) ;
+      this.allocator = checkNotNull( allocator ) ;
+    }
+
+    /**
+     * @throws UncheckedIOException if {@link Command#encodeBody} failed.
+     */
+    public ByteBuf retainedBody( final FieldEncoding fieldEncoding ) {
+      ByteBuf body = bodies[ fieldEncoding.ordinal() ] ;
+      if( body == null ) {
+        body = allocator.buffer() ;
+        try {
+          command.encodeBody( fieldEncoding == FieldEncoding.BINARY ?
+              BytebufTools.coatBinary( body ) : BytebufTools.coat( body ) ) ;
+        } catch( final IOException e ) {
+          body.release() ;
+          throw new UncheckedIOException( "Could not encode " + command, e ) ;
+        }
+        bodies[ fieldEncoding.ordinal() ] = body ;
+      }
+      return body.retainedDuplicate() ;
+    }
+
+    public void release() {
+      for( int i = 0 ; i < bodies.length ; i ++ ) {
+        if( bodies[ i ] != null ) {
+          bodies[ i ].release() ;
+          bodies[ i ] = null ;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package com.otcdlink.chiron.buffer;
+
+import com.google.common.collect.ImmutableList;
+import com.otcdlink.chiron.codec.DecodeException;
+import com.otcdlink.chiron.command.Stamp;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinaryBytebufCoatTest {
+
+  @Test
+  public void mixNullityAndValues() throws Exception {
+    fieldWriter.writeDelimitedString( "Hello" ) ;
+    fieldWriter.writeNullableString( null ) ;
+    fieldWriter.writeNullableString( "" ) ;
+    fieldWriter.writeIntegerObject( 0 ) ;
+    fieldWriter.writeIntegerObject( null ) ;
+    fieldWriter.writeFloatObject( 0f ) ;
+    fieldWriter.writeLongObject( Long.MIN_VALUE ) ;
+    fieldWriter.writeBooleanObject( null ) ;
+
+    LOGGER.debug( "Coated buffer is:\n" + coat.prettyHexDump() ) ;
+
+    assertThat( fieldReader.readDelimitedString() ).isEqualTo( "Hello" ) ;
+    assertThat( fieldReader.readNullableString() ).isNull() ;
+    assertThat( fieldReader.readNullableString() ).isEqualTo( "" ) ;
+    assertThat( fieldReader.readIntegerObject() ).isEqualTo( 0 ) ;
+    assertThat( fieldReader.readIntegerObject() ).isNull() ;
+    assertThat( fieldReader.readFloatObject() ).isEqualTo( 0f ) ;
+    assertThat( fieldReader.readLongObject() ).isEqualTo( Long.MIN_VALUE ) ;
+    assertThat( fieldReader.readBooleanObject() ).isNull() ;
+    assertThat( fieldReader.readableBytes() ).isEqualTo( 0 ) ;
+  }
+
+  @Test
+  public void string() throws Exception {
+    final StringBuilder longString = new StringBuilder() ;
+    for( int i = 0 ; i < 100 ; i ++ ) {
+      longString.append( "éő" ) ;
+    }
+    writeRead(
+        fieldWriter::writeNullableString,
+        fieldReader::readNullableString,
+        null, "", "@#!§('%£áéíóőúű", "😀", longString.toString()
+    ) ;
+  }
+
+  @Test
+  public void integerObject() throws Exception {
+    writeRead(
+        fieldWriter::writeIntegerObject,
+        fieldReader::readIntegerObject,
+        null, 0, -1, 63, 64, -64, -65, Integer.MIN_VALUE, Integer.MAX_VALUE
+    ) ;
+  }
+
+  @Test
+  public void longObject() throws Exception {
+    writeRead(
+        fieldWriter::writeLongObject,
+        fieldReader::readLongObject,
+        null, 0L, -1L, 1L << 40, Long.MIN_VALUE, Long.MIN_VALUE + 1, Long.MAX_VALUE
+    ) ;
+  }
+
+  @Test
+  public void floatObject() throws Exception {
+    writeRead(
+        fieldWriter::writeFloatObject,
+        fieldReader::readFloatObject,
+        null, 0f, -0f, 1.5f, -1.5f, Float.MIN_VALUE, Float.MAX_VALUE, Float.NaN,
+        Float.NEGATIVE_INFINITY
+    ) ;
+  }
+
+  @Test
+  public void otherTypes() throws Exception {
+    writeRead( fieldWriter::writeBooleanObject, fieldReader::readBooleanObject,
+        null, true, false ) ;
+    writeRead( fieldWriter::writeBigDecimal, fieldReader::readBigDecimal,
+        null, BigDecimal.ZERO, new BigDecimal( "-123456789012345678901234567890.0012" ) ) ;
+    writeRead( fieldWriter::writeDateTime, fieldReader::readDateTime,
+        null, new DateTime( 2017, 10, 1, 12, 34, DateTimeZone.UTC ) ) ;
+    writeRead( fieldWriter::writeLocalDate, fieldReader::readLocalDate,
+        null, new LocalDate( 2017, 12, 31 ) ) ;
+    writeRead( fieldWriter::writeDuration, fieldReader::readDuration,
+        null, Duration.ZERO, new Duration( -1 ) ) ;
+  }
+
+  @Test
+  public void smallerThanText() throws Exception {
+    final ByteBuf textByteBuf = Unpooled.buffer() ;
+    final BytebufCoat textCoat = BytebufTools.coat( textByteBuf ) ;
+    for( final PositionalFieldWriter writer : new PositionalFieldWriter[] { coat, textCoat } ) {
+      writer.writeIntegerPrimitive( 123_456 ) ;
+      writer.writeLongPrimitive( 1_500_000_000_000L ) ;
+      writer.writeFloatPrimitive( 1.5f ) ;
+      writer.writeDelimitedString( "Hello" ) ;
+    }
+    assertThat( byteBuf.readableBytes() ).isEqualTo( 3 + 6 + 2 + 6 ) ;
+    assertThat( textByteBuf.readableBytes() ).isEqualTo( 7 + 14 + 4 + 6 ) ;
+  }
+
+  @Test
+  public void delimitedStringInTrie() throws Exception {
+    final ByteTrie byteTrie = new ByteTrie( ImmutableList.of( "echo", "\u00e9cho" ) ) ;
+    fieldWriter.writeDelimitedString( "\u00e9cho" ) ;
+    fieldWriter.writeDelimitedString( "ech" ) ;
+    fieldWriter.writeDelimitedString( "echo" ) ;
+
+    assertThat( fieldReader.readDelimitedString( byteTrie ) ).isEqualTo( 1 ) ;
+    assertThat( fieldReader.readDelimitedString( byteTrie ) ).isEqualTo( ByteTrie.NO_MATCH ) ;
+    assertThat( fieldReader.readDelimitedString() ).isEqualTo( "ech" ) ;
+    assertThat( fieldReader.readDelimitedString( byteTrie ) ).isEqualTo( 0 ) ;
+    assertThat( fieldReader.readableBytes() ).isEqualTo( 0 ) ;
+  }
+
+  @Test
+  public void stamp() throws Exception {
+    final Stamp stamp = Stamp.raw( Stamp.FLOOR_MILLISECONDS + 123_456_000, 789 ) ;
+    fieldWriter.writeStamp( stamp ) ;
+    fieldWriter.writeStamp( stamp ) ;
+
+    assertThat( fieldReader.readDelimitedString() )
+        .isEqualTo( stamp.asStringRoundedToFlooredSecond() ) ;
+    assertThat( fieldReader.readStamp() ).isEqualTo( stamp ) ;
+    assertThat( fieldReader.readableBytes() ).isEqualTo( 0 ) ;
+  }
+
+  @Test( expected = DecodeException.class )
+  public void truncatedString() throws Exception {
+    fieldWriter.writeDelimitedString( "Hello" ) ;
+    byteBuf.writerIndex( byteBuf.writerIndex() - 1 ) ;
+    fieldReader.readDelimitedString() ;
+  }
+
+  @Test( expected = DecodeException.class )
+  public void integerOverflow() throws Exception {
+    fieldWriter.writeLongPrimitive( Integer.MAX_VALUE + 1L ) ;
+    fieldReader.readIntegerPrimitive() ;
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( BinaryBytebufCoatTest.class ) ;
+
+  private final ByteBuf byteBuf = Unpooled.buffer() ;
+  private final BinaryBytebufCoat coat = BytebufTools.coatBinary( byteBuf ) ;
+  private final PositionalFieldReader fieldReader = coat ;
+  private final PositionalFieldWriter fieldWriter = coat ;
+
+  @SafeVarargs
+  private final < OBJECT > void writeRead(
+      final QuietWriter< OBJECT > writer,
+      final ReaderWithException< OBJECT > reader,
+      final OBJECT... values
+  ) throws DecodeException {
+    for( final OBJECT value : values ) {
+      writer.write( value ) ;
+    }
+    for( final OBJECT value : values ) {
+      final OBJECT read = reader.read() ;
+      assertThat( read ).isEqualTo( value ) ;
+    }
+    assertThat( byteBuf.readableBytes() ).isEqualTo( 0 ) ;
+  }
+
+  private interface QuietWriter< OBJECT > {
+    void write( OBJECT object ) ;
+  }
+
+  private interface ReaderWithException< OBJECT > {
+    OBJECT read() throws DecodeException ;
+  }
+
+}
@@ -0,0 +1,47 @@
+package com.otcdlink.chiron.buffer;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ByteTrieTest {
+
+  @Test
+  public void prefixes() throws Exception {
+    final ByteTrie byteTrie = new ByteTrie( ImmutableList.of( "ab", "a", "abc", "b", "" ) ) ;
+    assertThat( match( byteTrie, "a" ) ).isEqualTo( 1 ) ;
+    assertThat( match( byteTrie, "ab" ) ).isEqualTo( 0 ) ;
+    assertThat( match( byteTrie, "abc" ) ).isEqualTo( 2 ) ;
+    assertThat( match( byteTrie, "b" ) ).isEqualTo( 3 ) ;
+    assertThat( match( byteTrie, "" ) ).isEqualTo( 4 ) ;
+    assertThat( match( byteTrie, "abcd" ) ).isEqualTo( ByteTrie.NO_MATCH ) ;
+    assertThat( match( byteTrie, "c" ) ).isEqualTo( ByteTrie.NO_MATCH ) ;
+  }
+
+  @Test
+  public void leavesByteBufUnchanged() throws Exception {
+    final ByteTrie byteTrie = new ByteTrie( ImmutableList.of( "echo" ) ) ;
+    final ByteBuf byteBuf = Unpooled.copiedBuffer( "xxecho", Charsets.US_ASCII ) ;
+    assertThat( byteTrie.match( byteBuf, 2, 4 ) ).isEqualTo( 0 ) ;
+    assertThat( byteBuf.readerIndex() ).isEqualTo( 0 ) ;
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void duplicate() throws Exception {
+    new ByteTrie( ImmutableList.of( "a", "b", "a" ) ) ;
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  private static int match( final ByteTrie byteTrie, final String string ) {
+    final ByteBuf byteBuf = Unpooled.copiedBuffer( string, Charsets.UTF_8 ) ;
+    return byteTrie.match( byteBuf, 0, byteBuf.readableBytes() ) ;
+  }
+}
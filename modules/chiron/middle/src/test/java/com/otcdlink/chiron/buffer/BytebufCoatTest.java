@@ -1,12 +1,18 @@
 package com.otcdlink.chiron.buffer;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.PercentEscaper;
 import com.otcdlink.chiron.codec.DecodeException;
+import com.otcdlink.chiron.command.Stamp;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URLDecoder;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class BytebufCoatTest {
@@ -40,6 +46,39 @@ public class BytebufCoatTest {
 
   }
 
+  @Test
+  public void sameEscapingAsPercentEscaper() throws Exception {
+    final PercentEscaper percentEscaper = new PercentEscaper( "._$-", true ) ;
+    for( final String string : new String[] {
+        "", "Plain.ascii_$-09", "With space", "+%!~*'", "\u00e9\u0151", "\u20ac\uffff",
+        "\ud83d\ude00 smiley", "Tab\tand\nnew line"
+    } ) {
+      fieldWriter.writeDelimitedString( string ) ;
+      final String written = byteBuf.toString( Charsets.US_ASCII ) ;
+      assertThat( written ).isEqualTo( percentEscaper.escape( string ) + " " ) ;
+      assertThat( URLDecoder.decode( written.trim(), "UTF-8" ) ).isEqualTo( string ) ;
+      assertThat( fieldReader.readDelimitedString() ).isEqualTo( string ) ;
+      byteBuf.clear() ;
+    }
+  }
+
+  @Test
+  public void decodeLowercaseEscapeAndRawUtf8() throws Exception {
+    byteBuf.writeBytes( "%c3%a9\u00e9+x ".getBytes( Charsets.UTF_8 ) ) ;
+    assertThat( fieldReader.readDelimitedString() ).isEqualTo( "\u00e9\u00e9 x" ) ;
+  }
+
+  @Test( expected = DecodeException.class )
+  public void truncatedEscape() throws Exception {
+    byteBuf.writeBytes( "ab%4 ".getBytes( Charsets.US_ASCII ) ) ;
+    fieldReader.readDelimitedString() ;
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void unpairedSurrogate() throws Exception {
+    fieldWriter.writeDelimitedString( "\ud83d" ) ;
+  }
+
   @Test
   public void integerPrimitive() throws Exception {
     writeRead(
@@ -58,6 +97,102 @@ public class BytebufCoatTest {
     ) ;
   }
 
+  @Test
+  public void longPrimitive() throws Exception {
+    writeRead(
+        fieldWriter::writeLongPrimitive,
+        fieldReader::readLongPrimitive,
+        0L, -1L, 9L, 10L, 123L, 999_999_999_999_999_999L, Long.MIN_VALUE, Long.MAX_VALUE
+    ) ;
+  }
+
+  @Test
+  public void longObject() throws Exception {
+    writeRead(
+        fieldWriter::writeLongObject,
+        fieldReader::readLongObject,
+        null, 0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE
+    ) ;
+  }
+
+  @Test
+  public void floatObject() throws Exception {
+    writeRead(
+        fieldWriter::writeFloatObject,
+        fieldReader::readFloatObject,
+        null, 0f, -1.5f, 1.0E10f, Float.MIN_VALUE, Float.NaN, Float.NEGATIVE_INFINITY
+    ) ;
+  }
+
+  @Test
+  public void numbersLookLikeStrings() throws Exception {
+    fieldWriter.writeIntegerPrimitive( -12 ) ;
+    fieldWriter.writeLongObject( null ) ;
+    fieldWriter.writeLongPrimitive( Long.MIN_VALUE ) ;
+    fieldWriter.writeFloatPrimitive( 1.5f ) ;
+    assertThat( fieldReader.readDelimitedString() ).isEqualTo( "-12" ) ;
+    assertThat( fieldReader.readNullableString() ).isNull() ;
+    assertThat( fieldReader.readDelimitedString() ).isEqualTo( "" + Long.MIN_VALUE ) ;
+    assertThat( fieldReader.readDelimitedString() ).isEqualTo( "1.5" ) ;
+  }
+
+  @Test( expected = DecodeException.class )
+  public void integerOverflow() throws Exception {
+    fieldWriter.writeLongPrimitive( Integer.MAX_VALUE + 1L ) ;
+    fieldReader.readIntegerPrimitive() ;
+  }
+
+  @Test( expected = DecodeException.class )
+  public void notAnInteger() throws Exception {
+    fieldWriter.writeDelimitedString( "1x" ) ;
+    fieldReader.readIntegerPrimitive() ;
+  }
+
+  @Test( expected = DecodeException.class )
+  public void lonelyMinus() throws Exception {
+    fieldWriter.writeDelimitedString( "-" ) ;
+    fieldReader.readLongPrimitive() ;
+  }
+
+  @Test
+  public void delimitedStringInTrie() throws Exception {
+    final ByteTrie byteTrie = new ByteTrie( ImmutableList.of( "echo", "echo2", "a b" ) ) ;
+    fieldWriter.writeDelimitedString( "echo2" ) ;
+    fieldWriter.writeDelimitedString( "a b" ) ;
+    fieldWriter.writeDelimitedString( "unknown" ) ;
+    fieldWriter.writeDelimitedString( "echo" ) ;
+
+    assertThat( fieldReader.readDelimitedString( byteTrie ) ).isEqualTo( 1 ) ;
+    assertThat( fieldReader.readDelimitedString( byteTrie ) )
+        .describedAs( "Escaped, so falls back" ).isEqualTo( ByteTrie.NO_MATCH ) ;
+    assertThat( fieldReader.readDelimitedString() ).isEqualTo( "a b" ) ;
+    assertThat( fieldReader.readDelimitedString( byteTrie ) ).isEqualTo( ByteTrie.NO_MATCH ) ;
+    assertThat( fieldReader.readDelimitedString() ).isEqualTo( "unknown" ) ;
+    assertThat( fieldReader.readDelimitedString( byteTrie ) ).isEqualTo( 0 ) ;
+    assertThat( fieldReader.readableBytes() ).isEqualTo( 0 ) ;
+  }
+
+  @Test
+  public void stamp() throws Exception {
+    final Stamp stamp = Stamp.raw( Stamp.FLOOR_MILLISECONDS + 123_456_000, 789 ) ;
+    fieldWriter.writeStamp( stamp ) ;
+    fieldWriter.writeStamp( stamp ) ;
+    fieldWriter.writeAsciiUnsafe( "1:z " ) ;
+
+    assertThat( fieldReader.readDelimitedString() )
+        .isEqualTo( stamp.asStringRoundedToFlooredSecond() ) ;
+    assertThat( fieldReader.readStamp() ).isEqualTo( stamp ) ;
+    assertThat( fieldReader.readStamp() )
+        .isEqualTo( Stamp.raw( Stamp.FLOOR_MILLISECONDS + 1000, 35 ) ) ;
+    assertThat( fieldReader.readableBytes() ).isEqualTo( 0 ) ;
+  }
+
+  @Test( expected = DecodeException.class )
+  public void badStamp() throws Exception {
+    fieldWriter.writeAsciiUnsafe( "1:Z " ) ;
+    fieldReader.readStamp() ;
+  }
+
   @Test( expected = IllegalStateException.class )
   public void coatingState() throws Exception {
     coating.coat( byteBuf ) ;
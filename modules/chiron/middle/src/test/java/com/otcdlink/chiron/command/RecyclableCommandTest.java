@@ -0,0 +1,105 @@
+package com.otcdlink.chiron.command;
+
+import com.otcdlink.chiron.buffer.PositionalFieldWriter;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.Recycler;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RecyclableCommandTest {
+
+  @Test
+  public void reuseAfterRelease() throws Exception {
+    final SomeCommand first = SomeCommand.newInstance( "endpoint", "hello" ) ;
+    final List< String > received = new ArrayList<>() ;
+    first.callReceiver( received ) ;
+    assertThat( received ).containsExactly( "hello" ) ;
+    assertThat( ReferenceCountUtil.release( first ) ).isTrue() ;
+    assertThat( first.endpointSpecific ).isNull() ;
+    assertThat( first.message ).isNull() ;
+
+    final SomeCommand second = SomeCommand.newInstance( "endpoint", "world" ) ;
+    assertThat( second ).isSameAs( first ) ;
+    assertThat( second.message ).isEqualTo( "world" ) ;
+    second.release() ;
+  }
+
+  @Test
+  public void retain() throws Exception {
+    final SomeCommand command = SomeCommand.newInstance( "endpoint", "hello" ) ;
+    command.retain() ;
+    assertThat( command.release() ).isFalse() ;
+    assertThat( command.refCnt() ).isEqualTo( 1 ) ;
+    assertThat( command.release() ).isTrue() ;
+    assertThat( command.refCnt() ).isEqualTo( 0 ) ;
+  }
+
+  @Test( expected = IllegalReferenceCountException.class )
+  public void releaseTwice() throws Exception {
+    final SomeCommand command = SomeCommand.newInstance( "endpoint", "hello" ) ;
+    command.release() ;
+    command.release() ;
+  }
+
+  @Test
+  public void plainCommandReleaseDoesNothing() throws Exception {
+    final Command< String, List< String > > command = new Command< String, List< String > >(
+        "endpoint" ) {
+      @Override
+      public void callReceiver( final List< String > callableReceiver ) { }
+
+      @Override
+      public void encodeBody( final PositionalFieldWriter positionalFieldWriter ) { }
+    } ;
+    assertThat( ReferenceCountUtil.release( command ) ).isFalse() ;
+  }
+
+// =======
+// Fixture
+// =======
+
+  @Command.Description( name = "some" )
+  private static final class SomeCommand
+      extends RecyclableCommand< String, List< String > >
+  {
+    private static final Recycler< SomeCommand > RECYCLER = new Recycler< SomeCommand >() {
+      @Override
+      protected SomeCommand newObject( final Handle< SomeCommand > handle ) {
+        return new SomeCommand( handle ) ;
+      }
+    } ;
+
+    public static SomeCommand newInstance( final String endpoint, final String message ) {
+      final SomeCommand command = RECYCLER.get() ;
+      command.reuse( endpoint ) ;
+      command.message = message ;
+      return command ;
+    }
+
+    private String message ;
+
+    private SomeCommand( final Recycler.Handle< SomeCommand > handle ) {
+      super( handle, false ) ;
+    }
+
+    @Override
+    protected void clear() {
+      message = null ;
+    }
+
+    @Override
+    public void callReceiver( final List< String > callableReceiver ) {
+      callableReceiver.add( message ) ;
+    }
+
+    @Override
+    public void encodeBody( final PositionalFieldWriter positionalFieldWriter ) {
+      positionalFieldWriter.writeDelimitedString( message ) ;
+    }
+  }
+}
@@ -139,6 +139,31 @@ public class StampTest {
     check( generator.generate(), FLOOR_MILLISECONDS + 1010, 1 ) ;
   }
 
+  @Test
+  public void generateRange() throws Exception {
+    final UpdateableClock clock = UpdateableClock.newClock( FLOOR_MILLISECONDS ) ;
+    final Stamp.Generator generator = new Stamp.Generator( clock ) ;
+    check( generator.generate(), FLOOR_MILLISECONDS, 0 ) ;
+    final Stamp.Range range = generator.generate( 3 ) ;
+    assertThat( range.size ).isEqualTo( 3 ) ;
+    check( range.get( 0 ), FLOOR_MILLISECONDS, 1 ) ;
+    check( range.get( 2 ), FLOOR_MILLISECONDS, 3 ) ;
+    clock.increment( 10 ) ;
+    check( generator.generate(), FLOOR_MILLISECONDS + 10, 4 ) ;
+    clock.increment( 1000 ) ;
+    check( generator.generate( 2 ).get( 1 ), FLOOR_MILLISECONDS + 1010, 1 ) ;
+  }
+
+  @Test
+  public void generateRangeOverflowingCounter() throws Exception {
+    final UpdateableClock clock = UpdateableClock.newClock( FLOOR_MILLISECONDS ) ;
+    final Stamp.Generator generator = new Stamp.Generator( clock ) ;
+    final Stamp.Range range = generator.generate( ( int ) Stamp.Generator.MAX_COUNTER ) ;
+    check( range.get( range.size - 1 ), FLOOR_MILLISECONDS, Stamp.Generator.MAX_COUNTER - 1 ) ;
+    check( generator.generate( 2 ).get( 0 ), FLOOR_MILLISECONDS + 1000, 0 ) ;
+    check( generator.generate(), FLOOR_MILLISECONDS + 1000, 2 ) ;
+  }
+
 
   @Test
   public void concurrency() throws Exception {
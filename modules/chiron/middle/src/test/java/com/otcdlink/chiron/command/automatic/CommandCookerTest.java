@@ -8,15 +8,12 @@ import com.otcdlink.chiron.buffer.BytebufTools;
 import com.otcdlink.chiron.buffer.PositionalFieldReader;
 import com.otcdlink.chiron.buffer.PositionalFieldWriter;
 import com.otcdlink.chiron.command.Command;
-import com.otcdlink.chiron.command.Stamp;
 import com.otcdlink.chiron.command.codec.Codec;
 import com.otcdlink.chiron.toolbox.StringWrapper;
-import com.otcdlink.chiron.toolbox.clock.UpdateableClock;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import mockit.Expectations;
 import mockit.Injectable;
-import org.junit.Ignore;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,8 +25,8 @@ import java.util.List;
 import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
-@Ignore( "Work in progress, broke everything when introducing Javassist." )
 @SuppressWarnings( "TestMethodWithIncorrectSignature" )
 public class CommandCookerTest {
 
@@ -40,8 +37,7 @@ public class CommandCookerTest {
         FEATURE_REGISTRY,
         CODECS,
         COMMAND_NAME_PREFIX,
-        null,
-        new Stamp.Generator( clock )
+        null
     ) ;
     LOGGER.info( "Created " + cooker + "." ) ;
 
@@ -61,6 +57,56 @@ public class CommandCookerTest {
 
   }
 
+  @Test
+  public void encodeDecodePrimitive() throws Exception {
+    final CommandCooker< Endpoint, SomeFeature< Endpoint > > cooker = new CommandCooker<>(
+        PREAMBLE_CODEC_FACTORY,
+        FEATURE_REGISTRY,
+        CODECS,
+        COMMAND_NAME_PREFIX,
+        null
+    ) ;
+    final List<
+        Command< Endpoint, SomeFeature< Endpoint > >
+    > commands = new ArrayList<>() ;
+    cooker.createReceiver( commands::add ).increment( ENDPOINT, -12345 ) ;
+    final Command< Endpoint, SomeFeature< Endpoint > > incrementCommand = commands.get( 0 ) ;
+
+    final ByteBuf byteBuf = Unpooled.buffer() ;
+    final BytebufCoat coat = BytebufTools.threadLocalRecyclableCoating().coat( byteBuf ) ;
+    cooker.encodeTo( incrementCommand, coat ) ;
+    final Command< Endpoint, SomeFeature< Endpoint > > decoded = cooker.decodeFrom( coat ) ;
+    LOGGER.info( "Decoded " + decoded + "." ) ;
+
+    assertThat( decoded ).isEqualTo( incrementCommand ) ;
+    assertThat( decoded.toString() ).contains( "int1=-12345" ) ;
+  }
+
+  @Test
+  public void encodeDecodeBoxedPrimitive() throws Exception {
+    final CommandCooker< Endpoint, SomeFeature< Endpoint > > cooker = new CommandCooker<>(
+        PREAMBLE_CODEC_FACTORY,
+        FEATURE_REGISTRY,
+        CODECS,
+        COMMAND_NAME_PREFIX,
+        null
+    ) ;
+    final List<
+        Command< Endpoint, SomeFeature< Endpoint > >
+    > commands = new ArrayList<>() ;
+    cooker.createReceiver( commands::add ).price( ENDPOINT, 12.5 ) ;
+    final Command< Endpoint, SomeFeature< Endpoint > > priceCommand = commands.get( 0 ) ;
+
+    final ByteBuf byteBuf = Unpooled.buffer() ;
+    final BytebufCoat coat = BytebufTools.threadLocalRecyclableCoating().coat( byteBuf ) ;
+    cooker.encodeTo( priceCommand, coat ) ;
+    final Command< Endpoint, SomeFeature< Endpoint > > decoded = cooker.decodeFrom( coat ) ;
+    LOGGER.info( "Decoded " + decoded + "." ) ;
+
+    assertThat( decoded ).isEqualTo( priceCommand ) ;
+    assertThat( decoded.toString() ).contains( "double1=12.5" ) ;
+  }
+
   @Test
   public void receiver( @Injectable final SomeFeature< Endpoint > featureMock ) throws Exception {
 
@@ -69,8 +115,7 @@ public class CommandCookerTest {
         FEATURE_REGISTRY,
         CODECS,
         COMMAND_NAME_PREFIX,
-        null,
-        new Stamp.Generator( clock )
+        null
     ) ;
     LOGGER.info( "Created " + cooker + "." ) ;
 
@@ -106,8 +151,7 @@ public class CommandCookerTest {
           } else {
             return ImmutableMap.of() ;
           }
-        },
-        new Stamp.Generator( clock )
+        }
     ) ;
     LOGGER.info( "Created " + cooker + "." ) ;
 
@@ -128,6 +172,21 @@ public class CommandCookerTest {
 
   }
 
+  @Test
+  public void classNamePrefix() throws Exception {
+    assertThat( CommandClassGenerator.classNamePrefix(
+        ImmutableList.of( SomeFeature.class ), COMMAND_NAME_PREFIX ) )
+        .isEqualTo( CommandCookerTest.class.getPackage().getName() + ".automatic_Command" ) ;
+
+    assertThatThrownBy( () -> CommandClassGenerator.classNamePrefix(
+        ImmutableList.of( SomeFeature.class, Class.forName( "java.util.Collections$EmptySet" ) ),
+        COMMAND_NAME_PREFIX
+    ) )
+        .isInstanceOf( IllegalArgumentException.class )
+        .hasMessageContaining( "different packages" )
+    ;
+  }
+
 // =======
 // Fixture
 // =======
@@ -143,6 +202,12 @@ public class CommandCookerTest {
 
     @AsCommand( moreInterfaces = { Incrementer.class } )
     void increment( ENDPOINT_SPECIFIC endpointSpecific, int delta ) ;
+
+    /**
+     * {@link PositionalFieldWriter} has no primitive method for {@code double}.
+     */
+    @AsCommand
+    void price( ENDPOINT_SPECIFIC endpointSpecific, double price ) ;
   }
 
   private interface Incrementer {
@@ -161,7 +226,7 @@ public class CommandCookerTest {
 
   private static final Endpoint ENDPOINT = new Endpoint( "someEndpoint" ) ;
 
-  private static final ImmutableMap< Type, Codec > CODECS = ImmutableMap.of(
+  private static final ImmutableMap< Type, Codec< ? > > CODECS = ImmutableMap.of(
       String.class,
       new Codec< String >() {
         @Override
@@ -187,8 +252,21 @@ public class CommandCookerTest {
         {
           positionalFieldWriter.writeIntegerPrimitive( integer ); ;
         }
-      }
+      },
+      Double.TYPE,
+      new Codec< Double >() {
+        @Override
+        public Double decodeFrom( final PositionalFieldReader positionalFieldReader ) throws IOException {
+          return Double.parseDouble( positionalFieldReader.readDelimitedString() ) ;
+        }
 
+        @Override
+        public void encodeTo( final Double d, final PositionalFieldWriter positionalFieldWriter )
+            throws IOException
+        {
+          positionalFieldWriter.writeDelimitedString( Double.toString( d ) ) ;
+        }
+      }
   ) ;
 
   private static final FeatureRegistry FEATURE_REGISTRY = new FeatureRegistry(
@@ -254,6 +332,4 @@ public class CommandCookerTest {
 
     return commands.get( 0 ) ;
   }
-
-  private final UpdateableClock clock = UpdateableClock.newClock( Stamp.FLOOR_MILLISECONDS ) ;
 }
\ No newline at end of file
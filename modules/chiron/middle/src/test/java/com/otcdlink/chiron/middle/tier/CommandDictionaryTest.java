@@ -0,0 +1,101 @@
+package com.otcdlink.chiron.middle.tier;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.otcdlink.chiron.buffer.BytebufTools;
+import com.otcdlink.chiron.buffer.PositionalFieldReader;
+import com.otcdlink.chiron.codec.AbstractCommandResolver;
+import com.otcdlink.chiron.codec.CommandBodyDecoder;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandDictionaryTest {
+
+  @Test
+  public void announceAndResolve() throws Exception {
+    final HttpHeaders httpHeaders = new DefaultHttpHeaders() ;
+    assertThat( CommandDictionary.announce( httpHeaders, RESOLVER ) ).isTrue() ;
+    assertThat( httpHeaders.get( ConnectionDescriptor.HttpHeaderKeys.COMMAND_NAMES ) )
+        .isEqualTo( "zero,one" ) ;
+
+    final CommandDictionary commandDictionary = CommandDictionary.from( httpHeaders ) ;
+    final int code = commandDictionary.outboundCode( "one" ) ;
+    assertThat( code ).isGreaterThan( CommandDictionary.NO_CODE ) ;
+    assertThat( commandDictionary.outboundCode( "unknown" ) )
+        .isEqualTo( CommandDictionary.NO_CODE ) ;
+
+    RESOLVER.decodeBody(
+        "endpoint", CommandDictionary.inboundIndex( code ), reader( "Hello " ) ) ;
+    assertThat( DECODED.get() ).isEqualTo( "one endpoint Hello" ) ;
+
+    DECODED.set( null ) ;
+    RESOLVER.decodeBody( "endpoint", 2, reader( "" ) ) ;
+    assertThat( DECODED.get() ).isNull() ;
+  }
+
+  @Test
+  public void noAnnounce() throws Exception {
+    final HttpHeaders httpHeaders = new DefaultHttpHeaders() ;
+    final CommandBodyDecoder< String, Void > plainDecoder =
+        ( endpointSpecific, commandName, reader ) -> null ;
+    assertThat( CommandDictionary.announce( httpHeaders, plainDecoder ) ).isFalse() ;
+    assertThat( CommandDictionary.from( httpHeaders ) ).isNull() ;
+  }
+
+  @Test
+  public void noAnnounceWhenHeaderTooLong() throws Exception {
+    final ImmutableMap.Builder< String, AbstractCommandResolver.SingleDecoder > builder =
+        ImmutableMap.builder() ;
+    for( int i = 0 ; i < CommandDictionary.MAXIMUM_HEADER_LENGTH / 10 ; i ++ ) {
+      builder.put( String.format( "command%03d", i ), ( endpointSpecific, reader ) -> null ) ;
+    }
+    final HttpHeaders httpHeaders = new DefaultHttpHeaders() ;
+    assertThat( CommandDictionary.announce(
+        httpHeaders, new AbstractCommandResolver< String, Void >( builder.build() ) ) ).isFalse() ;
+    assertThat( CommandDictionary.from( httpHeaders ) ).isNull() ;
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void badName() throws Exception {
+    CommandDictionary.announce(
+        new DefaultHttpHeaders(),
+        new AbstractCommandResolver< String, Void >( ImmutableMap.of(
+            "a,b", ( endpointSpecific, reader ) -> null ) )
+    ) ;
+  }
+
+
+// =======
+// Fixture
+// =======
+
+  private static final AtomicReference< String > DECODED = new AtomicReference<>() ;
+
+  /**
+   * Just tells which {@link AbstractCommandResolver.SingleDecoder} was called
+   * through {@link #DECODED}.
+   */
+  private static final AbstractCommandResolver< String, Void > RESOLVER =
+      new AbstractCommandResolver<>( ImmutableMap.of(
+          "zero", ( endpointSpecific, reader ) -> {
+            DECODED.set( "zero " + endpointSpecific ) ;
+            return null ;
+          },
+          "one", ( endpointSpecific, reader ) -> {
+            DECODED.set( "one " + endpointSpecific + " " + reader.readDelimitedString() ) ;
+            return null ;
+          }
+      ) )
+  ;
+
+  private static PositionalFieldReader reader( final String content ) {
+    return BytebufTools.coat( Unpooled.copiedBuffer( content, Charsets.US_ASCII ) ) ;
+  }
+
+}
@@ -14,6 +14,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -132,6 +133,15 @@ public final class ExecutorPartitioner< KEY > {
 
   private static class PartitionedExecutor {
 
+    /**
+     * The producer adds to the queue right after incrementing the counter, so the task
+     * should show up after a few yields. Past them, the producer was probably descheduled,
+     * so parking avoids burning a core.
+     */
+    private static final int MAXIMUM_YIELDS = 100 ;
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos( 50 ) ;
+
     private final Executor delegate ;
     private final Queue< Runnable > queue ;
     private final AtomicInteger counter = new AtomicInteger() ;
@@ -160,8 +170,7 @@ public final class ExecutorPartitioner< KEY > {
           try {
             command.run() ;
             while( counter.decrementAndGet() > 0 ) {
-              final Runnable nextRunnable = queue.remove() ;
-              nextRunnable.run() ;
+              nextRunnable().run() ;
             }
           } catch( final Throwable throwable ) {
             if( delegate instanceof EventLoopGroup ) {
@@ -181,6 +190,23 @@ public final class ExecutorPartitioner< KEY > {
       }
     }
 
+    /**
+     * Waits for the producer which incremented the counter but didn't add to the queue yet.
+     */
+    private Runnable nextRunnable() {
+      int yields = 0 ;
+      Runnable nextRunnable ;
+      while( ( nextRunnable = queue.poll() ) == null ) {
+        if( yields < MAXIMUM_YIELDS ) {
+          yields ++ ;
+          Thread.yield() ;
+        } else {
+          LockSupport.parkNanos( this, PARK_NANOS ) ;
+        }
+      }
+      return nextRunnable ;
+    }
+
   }
 
   private static < V > Runnable wrapIntoRunnable(
@@ -198,7 +224,7 @@ public final class ExecutorPartitioner< KEY > {
 
   private PartitionedExecutor resolve( KEY key ) {
     final int keyHash = keyHasher.apply( key ) ;  // Implicit nullity check.
-    return partitionedExecutors[ keyHash % partitionedExecutors.length ] ;
+    return partitionedExecutors[ Math.floorMod( keyHash, partitionedExecutors.length ) ] ;
   }
 
   private String applyKeyStringifier( KEY key ) {
@@ -0,0 +1,250 @@
+package com.otcdlink.chiron.upend;
+
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.CommandConsumer;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import com.otcdlink.chiron.toolbox.concurrent.ExecutorPartitioner;
+import com.otcdlink.chiron.toolbox.concurrent.ExecutorTools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Passes each {@link Command} to a {@link #delegate} in one of {@link #partitionCount}
+ * single-threaded partitions, chosen from a key extracted from the {@link Command}.
+ * By default the key is {@link Designator#sessionIdentifier}, so {@link Command}s of the same
+ * session execute in the order of {@link #accept(Command)}, while different sessions execute
+ * in parallel.
+ * <p>
+ * A {@link Command} with a {@code null} key, or one for which {@link #barrierRequired} is
+ * {@code true}, executes as a {@link #barrier(Runnable)}: it waits for every {@link Command}
+ * accepted before to complete, and every {@link Command} accepted after waits for it.
+ * <p>
+ * {@link #accept(Command)} should always happen in the same thread, and a
+ * {@code JournalPersister} should happen before it, in the same thread. Then a
+ * single-threaded replay of the journal gives the same result as the live run, as long as
+ * {@link Command}s running in parallel only share state through barriers.
+ * Submissions are atomic anyway, so concurrent {@link #barrier(Runnable)}s can't interleave
+ * their tasks in the partitions, which would deadlock.
+ * <p>
+ * {@link #close()} stops the threads created by the constructor, once they executed
+ * everything accepted before.
+ */
+public final class PartitionedCommandConsumer< COMMAND extends Command< Designator, ? > >
+    implements CommandConsumer< COMMAND >
+{
+  private static final Logger LOGGER =
+      LoggerFactory.getLogger( PartitionedCommandConsumer.class ) ;
+
+  private final int partitionCount ;
+
+  private final CommandConsumer< COMMAND > delegate ;
+
+  /**
+   * Returns {@code null} for a {@link Command} that requires a {@link #barrier(Runnable)}.
+   */
+  private final Function< COMMAND, Object > keyExtractor ;
+
+  private final Predicate< COMMAND > barrierRequired ;
+
+  /**
+   * Keys are partition indices.
+   */
+  private final ExecutorPartitioner< Integer > executorPartitioner ;
+
+  /**
+   * {@code null} if the {@code ScheduledExecutorService} came from the caller, which remains
+   * in charge of shutting it down.
+   */
+  private final ScheduledExecutorService ownExecutorService ;
+
+  private final AtomicBoolean closed = new AtomicBoolean() ;
+
+  /**
+   * Makes each submission to {@link #executorPartitioner} atomic. Without it, two threads
+   * calling {@link #barrier(Runnable)} could submit in different orders to different
+   * partitions, then each partition would wait for a barrier that waits for it.
+   */
+  private final Object submissionLock = new Object() ;
+
+  public PartitionedCommandConsumer(
+      final int partitionCount,
+      final CommandConsumer< COMMAND > delegate
+  ) {
+    this( partitionCount, delegate, command -> command.endpointSpecific.sessionIdentifier,
+        command -> false ) ;
+  }
+
+  public PartitionedCommandConsumer(
+      final int partitionCount,
+      final CommandConsumer< COMMAND > delegate,
+      final Function< COMMAND, Object > keyExtractor,
+      final Predicate< COMMAND > barrierRequired
+  ) {
+    this(
+        partitionCount,
+        delegate,
+        keyExtractor,
+        barrierRequired,
+        Executors.newScheduledThreadPool( partitionCount, ExecutorTools.newThreadFactory(
+            PartitionedCommandConsumer.class.getSimpleName() ) ),
+        true
+    ) ;
+  }
+
+  /**
+   * Only for tests.
+   *
+   * @param scheduledExecutorService must have at least {@code partitionCount} threads,
+   *     or a {@link #barrier(Runnable)} would never complete.
+   */
+  public PartitionedCommandConsumer(
+      final int partitionCount,
+      final CommandConsumer< COMMAND > delegate,
+      final Function< COMMAND, Object > keyExtractor,
+      final Predicate< COMMAND > barrierRequired,
+      final ScheduledExecutorService scheduledExecutorService
+  ) {
+    this( partitionCount, delegate, keyExtractor, barrierRequired, scheduledExecutorService,
+        false ) ;
+  }
+
+  private PartitionedCommandConsumer(
+      final int partitionCount,
+      final CommandConsumer< COMMAND > delegate,
+      final Function< COMMAND, Object > keyExtractor,
+      final Predicate< COMMAND > barrierRequired,
+      final ScheduledExecutorService scheduledExecutorService,
+      final boolean ownExecutorService
+  ) {
+    checkArgument( partitionCount > 0, "Incorrect partitionCount: %s", partitionCount ) ;
+    this.partitionCount = partitionCount ;
+    this.delegate = checkNotNull( delegate ) ;
+    this.keyExtractor = checkNotNull( keyExtractor ) ;
+    this.barrierRequired = checkNotNull( barrierRequired ) ;
+    this.executorPartitioner = new ExecutorPartitioner<>(
+        partitionCount,
+        scheduledExecutorService,
+        ExecutorPartitioner.DEFAULT_QUEUE_SUPPLIER,
+        Function.identity(),
+        partition -> "partition-" + partition
+    ) ;
+    this.ownExecutorService = ownExecutorService ? scheduledExecutorService : null ;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringTools.getNiceClassName( this ) + '{' +
+        "partitionCount=" + partitionCount + ';' +
+        delegate +
+        '}'
+    ;
+  }
+
+  /**
+   * Refuses further {@link Command}s and {@link #barrier(Runnable)}s, and shuts down the
+   * threads created by the constructor (if any) once they executed everything accepted before.
+   * Should happen in the thread calling {@link #accept(Command)}. Does nothing if already
+   * closed.
+   *
+   * @return a {@code CompletableFuture} completing when everything accepted before completed.
+   */
+  public CompletableFuture< Void > close() {
+    final CompletableFuture< Void > drained ;
+    synchronized( submissionLock ) {
+      if( closed.get() ) {
+        return CompletableFuture.completedFuture( null ) ;
+      }
+      drained = barrier( () -> { } ) ;
+      closed.set( true ) ;
+    }
+    if( ownExecutorService != null ) {
+      ownExecutorService.shutdown() ;
+    }
+    LOGGER.info( "Closed " + this + "." ) ;
+    return drained ;
+  }
+
+  @Override
+  public void accept( final COMMAND command ) {
+    final Object key = keyExtractor.apply( command ) ;
+    if( key == null || barrierRequired.test( command ) ) {
+      barrier( () -> delegate.accept( command ) ) ;
+    } else {
+      synchronized( submissionLock ) {
+        checkState( ! closed.get(), "Closed" ) ;
+        executorPartitioner.execute(
+            Math.floorMod( key.hashCode(), partitionCount ),
+            () -> safeConsume( command )
+        ) ;
+      }
+    }
+  }
+
+  /**
+   * Runs given {@link Runnable} once every task submitted before completed, and before any
+   * task submitted after.
+   * Should happen in the thread calling {@link #accept(Command)}, and never in a partition
+   * thread (this would deadlock).
+   *
+   * @return a {@code CompletableFuture} completing when the {@link Runnable} completed.
+   */
+  public CompletableFuture< Void > barrier( final Runnable runnable ) {
+    checkNotNull( runnable ) ;
+    final CompletableFuture< Void > completion = new CompletableFuture<>() ;
+    final AtomicInteger arrivals = new AtomicInteger( partitionCount ) ;
+    final CountDownLatch barrierDone = new CountDownLatch( 1 ) ;
+    final Runnable arrival = () -> {
+      if( arrivals.decrementAndGet() == 0 ) {
+        try {
+          runnable.run() ;
+          completion.complete( null ) ;
+        } catch( final RuntimeException e ) {
+          LOGGER.error( "Barrier failed in " + this + ".", e ) ;
+          completion.completeExceptionally( e ) ;
+        } finally {
+          barrierDone.countDown() ;
+        }
+      } else {
+        try {
+          barrierDone.await() ;
+        } catch( final InterruptedException e ) {
+          Thread.currentThread().interrupt() ;
+          LOGGER.error( "Interrupted while waiting for a barrier in " + this + ".", e ) ;
+        }
+      }
+    } ;
+    synchronized( submissionLock ) {
+      checkState( ! closed.get(), "Closed" ) ;
+      for( int partition = 0 ; partition < partitionCount ; partition ++ ) {
+        executorPartitioner.execute( partition, arrival ) ;
+      }
+    }
+    return completion ;
+  }
+
+  /**
+   * An exception escaping from a partitioned task would leave following tasks of the same
+   * partition unexecuted.
+   */
+  private void safeConsume( final COMMAND command ) {
+    try {
+      delegate.accept( command ) ;
+    } catch( final RuntimeException e ) {
+      LOGGER.error( "Could not consume " + command + " in " + this + ".", e ) ;
+    }
+  }
+}
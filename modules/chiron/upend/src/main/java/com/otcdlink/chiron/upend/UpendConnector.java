@@ -4,6 +4,7 @@ import com.google.common.base.Joiner;
 import com.otcdlink.chiron.codec.CommandBodyDecoder;
 import com.otcdlink.chiron.command.Command;
 import com.otcdlink.chiron.command.CommandConsumer;
+import com.otcdlink.chiron.command.RecyclableCommand;
 import com.otcdlink.chiron.designator.Designator;
 import com.otcdlink.chiron.designator.RenderingAwareDesignator;
 import com.otcdlink.chiron.designator.SendingAware;
@@ -12,6 +13,7 @@ import com.otcdlink.chiron.middle.CommandFailureDuty;
 import com.otcdlink.chiron.middle.session.SessionIdentifier;
 import com.otcdlink.chiron.middle.tier.CommandInterceptor;
 import com.otcdlink.chiron.middle.tier.ConnectionDescriptor;
+import com.otcdlink.chiron.middle.tier.PreencodedCommand;
 import com.otcdlink.chiron.middle.tier.TimeBoundary;
 import com.otcdlink.chiron.middle.tier.WebsocketFragmenterTier;
 import com.otcdlink.chiron.middle.tier.WebsocketFrameSizer;
@@ -30,7 +32,10 @@ import com.otcdlink.chiron.upend.session.command.RenderingAwareCommand;
 import com.otcdlink.chiron.upend.tier.CatcherTier;
 import com.otcdlink.chiron.upend.tier.CommandReceiverTier;
 import com.otcdlink.chiron.upend.tier.CommandWebsocketCodecUpendTier;
+import com.otcdlink.chiron.upend.tier.FlushConsolidationTier;
 import com.otcdlink.chiron.upend.tier.HttpRequestRelayerTier;
+import com.otcdlink.chiron.upend.tier.InboundFlowControl;
+import com.otcdlink.chiron.upend.tier.OutboundQueueTier;
 import com.otcdlink.chiron.upend.tier.PongTier;
 import com.otcdlink.chiron.upend.tier.SessionEnforcerTier;
 import com.otcdlink.chiron.upend.tier.SessionPhaseWebsocketCodecUpendTier;
@@ -38,11 +43,13 @@ import com.otcdlink.chiron.upend.tier.UpendCommandInterceptorTier;
 import com.otcdlink.chiron.upend.tier.UpendTierName;
 import com.otcdlink.chiron.upend.tier.UpendUpgradeTier;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.ServerChannel;
@@ -63,6 +70,7 @@ import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.ReferenceCountUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,6 +82,7 @@ import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -123,7 +132,7 @@ public class UpendConnector<
 
     /**
      * Should forward {@link Command} objects to some execution queue (not process them
-     * synchronously, except inside tests).
+     * synchronously, except inside tests), unless there is an {@link #inboundFlowControl}.
      */
     public final CommandConsumer< Command<Designator, UPWARD_DUTY > > commandConsumer ;
 
@@ -143,6 +152,23 @@ public class UpendConnector<
 
     public final WebsocketFrameSizer websocketFrameSizer ;
 
+    /**
+     * {@code null} means one flush for each {@link UpendConnector#sendDownward(Command)}.
+     * Applies only to WebSocket {@link Channel}s, after the handshake.
+     */
+    public final FlushConsolidationTier.Policy flushConsolidation ;
+
+    /**
+     * {@code null} means writing regardless of {@link Channel#isWritable()}.
+     */
+    public final OutboundQueueTier.Policy outboundQueue ;
+
+    /**
+     * {@code null} means {@link #commandConsumer} gets called from Netty's event loops.
+     * Otherwise {@link #commandConsumer} gets called from a single thread of its own, and
+     * may process {@link Command}s synchronously.
+     */
+    public final InboundFlowControl.Policy inboundFlowControl ;
 
     private static final Pattern WEBSOCKET_PATH_PATTERN =
         Pattern.compile( "(/([a-zA-Z0-9\\-_]+))*/?" ) ;
@@ -152,7 +178,7 @@ public class UpendConnector<
     /**
      * This constructor supports the {@link #channelRegistrationHacker} for hacking a {@link Channel}
      * from tests; production code should not call it directly.
-     * This constructor performs every check needed, other constructors should call it.
+     * Use a {@link Builder} for optional tiers.
      */
     public Setup(
         final EventLoopGroup eventLoopGroup,
@@ -170,6 +196,49 @@ public class UpendConnector<
         final TimeBoundary.ForAll initialTimeBoundary,
         final WebsocketFrameSizer websocketFrameSizer
     ) {
+      this(
+          eventLoopGroup,
+          listenAddress,
+          sslEngineFactory,
+          websocketUrlPath,
+          applicationVersion,
+          sessionSupervisor,
+          commandConsumer,
+          designatorFactory,
+          websocketCommandDecoder,
+          immediateHttpRequestRelayer,
+          authenticatedHttpRequestRelayer,
+          commandInterceptorFactory,
+          initialTimeBoundary,
+          websocketFrameSizer,
+          null,
+          null,
+          null
+      ) ;
+    }
+
+    /**
+     * This constructor performs every check needed, other constructors should call it.
+     */
+    private Setup(
+        final EventLoopGroup eventLoopGroup,
+        final InetSocketAddress listenAddress,
+        final SslEngineFactory.ForServer sslEngineFactory,
+        final String websocketUrlPath,
+        final String applicationVersion,
+        final OutwardSessionSupervisor<Channel, InetAddress> sessionSupervisor,
+        final CommandConsumer<Command<Designator, UPWARD_DUTY>> commandConsumer,
+        final Designator.Factory designatorFactory,
+        final CommandBodyDecoder<Designator, UPWARD_DUTY> websocketCommandDecoder,
+        final HttpRequestRelayer immediateHttpRequestRelayer,
+        final HttpRequestRelayer authenticatedHttpRequestRelayer,
+        final CommandInterceptor.Factory commandInterceptorFactory,
+        final TimeBoundary.ForAll initialTimeBoundary,
+        final WebsocketFrameSizer websocketFrameSizer,
+        final FlushConsolidationTier.Policy flushConsolidation,
+        final OutboundQueueTier.Policy outboundQueue,
+        final InboundFlowControl.Policy inboundFlowControl
+    ) {
 
       // Socket stuff
       this.eventLoopGroup = checkNotNull( eventLoopGroup ) ;
@@ -192,6 +261,7 @@ public class UpendConnector<
         checkArgument( websocketCommandDecoder == null ) ;
         checkArgument( authenticatedHttpRequestRelayer == null ) ;
         checkArgument( commandInterceptorFactory == null ) ;
+        checkArgument( inboundFlowControl == null ) ;
       }
       this.commandInterceptorFactory = commandInterceptorFactory;
       this.commandConsumer = commandConsumer ;
@@ -230,6 +300,10 @@ public class UpendConnector<
       }
       this.immediateHttpRequestRelayer = immediateHttpRequestRelayer ;
       this.authenticatedHttpRequestRelayer = authenticatedHttpRequestRelayer;
+
+      this.flushConsolidation = flushConsolidation ;
+      this.outboundQueue = outboundQueue ;
+      this.inboundFlowControl = inboundFlowControl ;
     }
 
     public boolean websocketEnabled() {
@@ -271,10 +345,168 @@ public class UpendConnector<
           "listenAddress=" + listenAddress,
           websocketUrl == null ? null : "websocketUrl=" + websocketUrl.toExternalForm(),
           "applicationVersion=" + applicationVersion,
-          "initialTimeBoundary=" + initialTimeBoundary
+          "initialTimeBoundary=" + initialTimeBoundary,
+          flushConsolidation == null ? null : "flushConsolidation=" + flushConsolidation,
+          outboundQueue == null ? null : "outboundQueue=" + outboundQueue,
+          inboundFlowControl == null ? null : "inboundFlowControl=" + inboundFlowControl
       ) + '}' ;
     }
 
+    /**
+     * Collects the same parameters as {@link Setup}'s constructors, plus those of optional
+     * tiers. Unset parameters are {@code null}, {@link #build()} performs the checks.
+     */
+    public static final class Builder< UPWARD_DUTY > {
+      private EventLoopGroup eventLoopGroup = null ;
+      private InetSocketAddress listenAddress = null ;
+      private SslEngineFactory.ForServer sslEngineFactory = null ;
+      private String websocketUrlPath = null ;
+      private String applicationVersion = null ;
+      private OutwardSessionSupervisor< Channel, InetAddress > sessionSupervisor = null ;
+      private CommandConsumer< Command< Designator, UPWARD_DUTY > > commandConsumer = null ;
+      private Designator.Factory designatorFactory = null ;
+      private CommandBodyDecoder< Designator, UPWARD_DUTY > websocketCommandDecoder = null ;
+      private HttpRequestRelayer immediateHttpRequestRelayer = null ;
+      private HttpRequestRelayer authenticatedHttpRequestRelayer = null ;
+      private CommandInterceptor.Factory commandInterceptorFactory = null ;
+      private TimeBoundary.ForAll initialTimeBoundary = null ;
+      private WebsocketFrameSizer websocketFrameSizer = null ;
+      private FlushConsolidationTier.Policy flushConsolidation = null ;
+      private OutboundQueueTier.Policy outboundQueue = null ;
+      private InboundFlowControl.Policy inboundFlowControl = null ;
+
+      public Builder< UPWARD_DUTY > eventLoopGroup( final EventLoopGroup eventLoopGroup ) {
+        this.eventLoopGroup = eventLoopGroup ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > listenAddress( final InetSocketAddress listenAddress ) {
+        this.listenAddress = listenAddress ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > sslEngineFactory(
+          final SslEngineFactory.ForServer sslEngineFactory
+      ) {
+        this.sslEngineFactory = sslEngineFactory ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > websocketUrlPath( final String websocketUrlPath ) {
+        this.websocketUrlPath = websocketUrlPath ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > applicationVersion( final String applicationVersion ) {
+        this.applicationVersion = applicationVersion ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > sessionSupervisor(
+          final OutwardSessionSupervisor< Channel, InetAddress > sessionSupervisor
+      ) {
+        this.sessionSupervisor = sessionSupervisor ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > commandConsumer(
+          final CommandConsumer< Command< Designator, UPWARD_DUTY > > commandConsumer
+      ) {
+        this.commandConsumer = commandConsumer ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > designatorFactory(
+          final Designator.Factory designatorFactory
+      ) {
+        this.designatorFactory = designatorFactory ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > websocketCommandDecoder(
+          final CommandBodyDecoder< Designator, UPWARD_DUTY > websocketCommandDecoder
+      ) {
+        this.websocketCommandDecoder = websocketCommandDecoder ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > immediateHttpRequestRelayer(
+          final HttpRequestRelayer immediateHttpRequestRelayer
+      ) {
+        this.immediateHttpRequestRelayer = immediateHttpRequestRelayer ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > authenticatedHttpRequestRelayer(
+          final HttpRequestRelayer authenticatedHttpRequestRelayer
+      ) {
+        this.authenticatedHttpRequestRelayer = authenticatedHttpRequestRelayer ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > commandInterceptorFactory(
+          final CommandInterceptor.Factory commandInterceptorFactory
+      ) {
+        this.commandInterceptorFactory = commandInterceptorFactory ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > initialTimeBoundary(
+          final TimeBoundary.ForAll initialTimeBoundary
+      ) {
+        this.initialTimeBoundary = initialTimeBoundary ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > websocketFrameSizer(
+          final WebsocketFrameSizer websocketFrameSizer
+      ) {
+        this.websocketFrameSizer = websocketFrameSizer ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > flushConsolidation(
+          final FlushConsolidationTier.Policy flushConsolidation
+      ) {
+        this.flushConsolidation = flushConsolidation ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > outboundQueue( final OutboundQueueTier.Policy outboundQueue ) {
+        this.outboundQueue = outboundQueue ;
+        return this ;
+      }
+
+      public Builder< UPWARD_DUTY > inboundFlowControl(
+          final InboundFlowControl.Policy inboundFlowControl
+      ) {
+        this.inboundFlowControl = inboundFlowControl ;
+        return this ;
+      }
+
+      public Setup< UPWARD_DUTY > build() {
+        return new Setup<>(
+            eventLoopGroup,
+            listenAddress,
+            sslEngineFactory,
+            websocketUrlPath,
+            applicationVersion,
+            sessionSupervisor,
+            commandConsumer,
+            designatorFactory,
+            websocketCommandDecoder,
+            immediateHttpRequestRelayer,
+            authenticatedHttpRequestRelayer,
+            commandInterceptorFactory,
+            initialTimeBoundary,
+            websocketFrameSizer,
+            flushConsolidation,
+            outboundQueue,
+            inboundFlowControl
+        ) ;
+      }
+    }
+
     public interface SignonInboundDutyCommandCrafter< UPWARD_DUTY > {
       SignonInwardDuty create(
           final CommandConsumer< Command< Designator, UPWARD_DUTY > > commandConsumer
@@ -291,6 +523,14 @@ public class UpendConnector<
   private final Setup< UPWARD_DUTY > setup ;
   private final ChannelRegistrationHacker channelRegistrationHacker ;
   private final ChannelGroup channels ;
+  private final OutboundQueueTier.Metrics outboundQueueMetrics = new OutboundQueueTier.Metrics() ;
+
+  /**
+   * Created by {@link #start()} and closed by {@link #stop()}, so a restart gets a fresh thread.
+   * Remains {@code null} if there is no {@link Setup#inboundFlowControl}.
+   */
+  private volatile InboundFlowControl< Command< Designator, UPWARD_DUTY > >
+      inboundFlowControl = null ;
 
 
   public UpendConnector( final Setup< UPWARD_DUTY > setup ) {
@@ -311,6 +551,22 @@ public class UpendConnector<
     channels = new DefaultChannelGroup( setup.eventLoopGroup.next() ) ;
   }
 
+  /**
+   * Meaningful only with {@link Setup#outboundQueue}.
+   */
+  public OutboundQueueTier.Metrics outboundQueueMetrics() {
+    return outboundQueueMetrics ;
+  }
+
+  /**
+   * Returns {@code null} if there is no {@link Setup#inboundFlowControl}, or before the
+   * first {@link #start()}. Metrics reset at each {@link #start()}.
+   */
+  public InboundFlowControl.Metrics inboundFlowControlMetrics() {
+    final InboundFlowControl< ? > current = inboundFlowControl ;
+    return current == null ? null : current.metrics() ;
+  }
+
   @Override
   public String toString() {
     final String compositeScheme = setup.compositeScheme() ;
@@ -353,6 +609,10 @@ public class UpendConnector<
 
   public CompletableFuture< ? > start() {
     state.updateOrFail( STARTING, CREATED, STOPPED ) ;
+    if( setup.inboundFlowControl != null ) {
+      inboundFlowControl =
+          new InboundFlowControl<>( setup.inboundFlowControl, setup.commandConsumer ) ;
+    }
     final ServerBootstrap serverBootstrap = new ServerBootstrap() ;
 
     // Need to separate boss/worker groups only if workers keep busy for too long.
@@ -370,6 +630,10 @@ public class UpendConnector<
             }
         )
     ;
+    if( setup.outboundQueue != null && setup.outboundQueue.writeBufferWaterMark != null ) {
+      serverBootstrap.childOption(
+          ChannelOption.WRITE_BUFFER_WATER_MARK, setup.outboundQueue.writeBufferWaterMark ) ;
+    }
 
     final ChannelFuture channelFuture = serverBootstrap.bind( setup.listenAddress ) ;
     channelFuture.addListener( future -> {
@@ -404,7 +668,8 @@ public class UpendConnector<
               UpendConnector.this::afterWebsocketHandshake,
               connectionDescriptor(),
               setup.websocketUrl,
-              setup.websocketFrameSizer.maximumPayloadSize
+              setup.websocketFrameSizer.maximumPayloadSize,
+              setup.websocketCommandDecoder
           )
       ) ;
     }
@@ -429,7 +694,7 @@ public class UpendConnector<
     if( setup.commandConsumer != null ) {
       pipeline.addLast(
           UpendTierName.COMMAND_RECEIVER.tierName(),
-          new CommandReceiverTier<>( state, setup.commandConsumer )
+          new CommandReceiverTier<>( state, setup.commandConsumer, inboundFlowControl )
       ) ;
       addCommandInterceptorIfNeeded( setup, pipeline ) ;
       ChannelTools.decorateWithLogging(
@@ -438,6 +703,13 @@ public class UpendConnector<
 
     pipeline.addLast( UpendTierName.CATCHER.tierName(), new CatcherTier() ) ;
 
+    if( setup.outboundQueue != null ) {
+      pipeline.addLast(
+          UpendTierName.OUTBOUND_QUEUE.tierName(),
+          new OutboundQueueTier( setup.outboundQueue, outboundQueueMetrics, this::kickout )
+      ) ;
+    }
+
 
 
     // ChannelTools.dumpPipelineAsynchronously( pipeline ) ;
@@ -445,6 +717,19 @@ public class UpendConnector<
     // LOGGER.debug( "Built " + pipeline + " for " + socketChannel + "." ) ;
   }
 
+  /**
+   * Applies {@link OutboundQueueTier.SlowConsumerAction#KICKOUT}, or closes the {@link Channel}
+   * if there is no session.
+   */
+  private void kickout( final Channel channel ) {
+    final SessionIdentifier sessionIdentifier = channel.attr( ChannelTools.SESSION_KEY ).get() ;
+    if( sessionIdentifier == null || setup.sessionSupervisor == null ) {
+      channel.close() ;
+    } else {
+      setup.sessionSupervisor.kickout( null, sessionIdentifier ) ;
+    }
+  }
+
   private static < UPWARD_DUTY > void addCommandInterceptorIfNeeded(
       final Setup< UPWARD_DUTY > setup,
       final ChannelPipeline pipeline
@@ -513,6 +798,10 @@ public class UpendConnector<
       final ChannelGroupFuture channelGroupFuture = channels.flush().close() ;
       final CompletableFuture< ? > concluder = new CompletableFuture<>() ;
       channelGroupFuture.addListener( future -> {
+        if( inboundFlowControl != null ) {
+          /** No more Channel, so no more hand-off. */
+          inboundFlowControl.close() ;
+        }
         state.set( STOPPED ) ;
         if( future.isSuccess() ) {
           concluder.complete( null ) ;
@@ -616,6 +905,14 @@ public class UpendConnector<
       ) ;
     }
 
+    /** After the handshake, so it doesn't delay HTTP responses. */
+    if( setup.flushConsolidation != null ) {
+      pipeline.addLast(
+          UpendTierName.FLUSH_CONSOLIDATOR.tierName(),
+          new FlushConsolidationTier( setup.flushConsolidation )
+      ) ;
+    }
+
     if( channelRegistrationHacker != null ) {
       channelRegistrationHacker.afterChannelCreated( pipeline.channel(), channelRegistrar ) ;
     }
@@ -654,6 +951,9 @@ public class UpendConnector<
    * {@link RenderingAwareDesignator} with a direct reference to a {@link Channel} because it relates
    * to a sessionless HTTP request.
    * Otherwise the {@link Command} is invalid.
+   * <p>
+   * For a WebSocket session, the flush happens later if {@link Setup#flushConsolidation}
+   * says so, and so does the call to {@link SendingAware#sent()}.
    *
    * <h1>Design discussion</h1>
    * While this looks a bit hacky it's hard to do better. Since Upend may emit downward
@@ -664,6 +964,8 @@ public class UpendConnector<
    * @throws IllegalArgumentException if the {@link Command} is invalid.
    */
   public void sendDownward( final Command< Designator, ? > command ) {
+    /** Writing may release a {@link RecyclableCommand}. */
+    final Designator designator = command.endpointSpecific ;
     final Channel channel ;
     final SessionIdentifier sessionIdentifier = command.endpointSpecific.sessionIdentifier ;
     final Object outbound ;
@@ -726,13 +1028,79 @@ public class UpendConnector<
       if( ! keepAlive ) {
         channelFuture.addListener( ChannelFutureListener.CLOSE ) ;
       }
-      if( command.endpointSpecific instanceof SendingAware ) {
-        channelFuture.addListener( future -> {
-          if( future.isSuccess() ) {
-            ( ( SendingAware ) command.endpointSpecific ).sent() ;
-          }
-        } ) ;
+      notifyWhenSent( channelFuture, designator ) ;
+    }
+    if( channel == null || outbound != command ) {
+      /** No {@code Channel} took ownership of a {@link RecyclableCommand}. */
+      ReferenceCountUtil.release( command ) ;
+    }
+  }
+
+  /**
+   * Sends the same {@link Command} to every session for which {@code designatorResolver}
+   * returns a non-{@code null} {@link Designator}. The body gets encoded only once for each
+   * {@link com.otcdlink.chiron.buffer.FieldEncoding}, then each {@link Channel} receives a
+   * {@link PreencodedCommand} sharing the encoded bytes, so only the preamble (with the
+   * {@link Command.Tag} of the {@link Designator} if the {@link Command} is tracked) gets
+   * encoded for each session.
+   * This supports sessions over WebSocket only.
+   * <p>
+   * A {@link PreencodedCommand} is not a {@link Command}, so the tiers created by
+   * {@link Setup#commandInterceptorFactory} let it pass untouched, as they would do for
+   * any other message they don't know about. A {@link Command} needing interception should
+   * go through {@link #sendDownward(Command)}.
+   *
+   * @param command provides the body and the {@link Command.Description}, its
+   *     {@link Command#endpointSpecific} doesn't matter.
+   * @param designatorResolver returns {@code null} for sessions that should not receive
+   *     the {@link Command}. Returned {@link Designator} can be {@link SendingAware}.
+   */
+  public void broadcastDownward(
+      final Command< Designator, ? > command,
+      final Function< SessionIdentifier, Designator > designatorResolver
+  ) {
+    broadcastDownward( command, designatorResolver, ByteBufAllocator.DEFAULT ) ;
+  }
+
+  /**
+   * Only for tests.
+   *
+   * @param allocator allocates the bodies shared by every {@link PreencodedCommand}.
+   */
+  public void broadcastDownward(
+      final Command< Designator, ? > command,
+      final Function< SessionIdentifier, Designator > designatorResolver,
+      final ByteBufAllocator allocator
+  ) {
+    final PreencodedCommand.Bodies bodies = new PreencodedCommand.Bodies( command, allocator ) ;
+    try {
+      for( final Map.Entry< SessionIdentifier, Channel > entry : sessionChannelMap.entrySet() ) {
+        final Designator designator = designatorResolver.apply( entry.getKey() ) ;
+        if( designator != null ) {
+          final Channel channel = entry.getValue() ;
+          final ChannelFuture channelFuture = channel.writeAndFlush( new PreencodedCommand<>(
+              command.description(),
+              designator,
+              bodies.retainedBody( ChannelTools.fieldEncoding( channel ) )
+          ) ) ;
+          notifyWhenSent( channelFuture, designator ) ;
+        }
       }
+    } finally {
+      bodies.release() ;
+    }
+  }
+
+  private static void notifyWhenSent(
+      final ChannelFuture channelFuture,
+      final Designator designator
+  ) {
+    if( designator instanceof SendingAware ) {
+      channelFuture.addListener( future -> {
+        if( future.isSuccess() ) {
+          ( ( SendingAware ) designator ).sent() ;
+        }
+      } ) ;
     }
   }
 
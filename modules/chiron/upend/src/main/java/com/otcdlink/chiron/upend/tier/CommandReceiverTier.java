@@ -7,11 +7,16 @@ import com.otcdlink.chiron.toolbox.ReadableStateHolder;
 import com.otcdlink.chiron.upend.UpendConnector;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.ReferenceCountUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Passes each {@link Command} to a {@link CommandConsumer}, which becomes the owner of a
+ * {@link com.otcdlink.chiron.command.RecyclableCommand} and releases it.
+ */
 public class CommandReceiverTier< UPWARD_DUTY >
     extends SimpleChannelInboundHandler<Command< Designator, UPWARD_DUTY >>
 {
@@ -20,12 +25,28 @@ public class CommandReceiverTier< UPWARD_DUTY >
   private final ReadableStateHolder< UpendConnector.State > readableState ;
   private final CommandConsumer< Command<Designator, UPWARD_DUTY > > commandConsumer ;
 
+  /**
+   * {@code null} means passing {@link Command}s to {@link #commandConsumer} directly.
+   */
+  private final InboundFlowControl< Command< Designator, UPWARD_DUTY > > inboundFlowControl ;
+
   public CommandReceiverTier(
       final ReadableStateHolder<UpendConnector.State> readableState,
       final CommandConsumer< Command<Designator, UPWARD_DUTY > > commandConsumer
   ) {
+    this( readableState, commandConsumer, null ) ;
+  }
+
+  public CommandReceiverTier(
+      final ReadableStateHolder<UpendConnector.State> readableState,
+      final CommandConsumer< Command<Designator, UPWARD_DUTY > > commandConsumer,
+      final InboundFlowControl< Command< Designator, UPWARD_DUTY > > inboundFlowControl
+  ) {
+    /** No auto-release, the {@link CommandConsumer} owns what it gets. */
+    super( false ) ;
     this.readableState = checkNotNull( readableState ) ;
     this.commandConsumer = checkNotNull( commandConsumer ) ;
+    this.inboundFlowControl = inboundFlowControl ;
   }
 
   @Override
@@ -35,10 +56,26 @@ public class CommandReceiverTier< UPWARD_DUTY >
   ) throws Exception {
     final UpendConnector.State currentState = readableState.get() ;
     if( currentState == UpendConnector.State.STARTED ) {
-      commandConsumer.accept( command ) ;
-      LOGGER.debug( "Passing " + command + " to " + commandConsumer + "." ) ;
+      if( inboundFlowControl == null ) {
+        commandConsumer.accept( command ) ;
+        LOGGER.debug( "Passing " + command + " to " + commandConsumer + "." ) ;
+      } else {
+        inboundFlowControl.handoff( channelHandlerContext.channel(), command ) ;
+        LOGGER.debug( "Handed off " + command + " to " + inboundFlowControl + "." ) ;
+      }
     } else {
       LOGGER.info( "Quietly dropping " + command + " because in " + currentState + " state." ) ;
+      ReferenceCountUtil.release( command ) ;
+    }
+  }
+
+  @Override
+  public void channelInactive( final ChannelHandlerContext channelHandlerContext )
+      throws Exception
+  {
+    if( inboundFlowControl != null ) {
+      inboundFlowControl.forget( channelHandlerContext.channel() ) ;
     }
+    super.channelInactive( channelHandlerContext ) ;
   }
 }
@@ -0,0 +1,146 @@
+package com.otcdlink.chiron.upend.tier;
+
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Coalesces {@link #flush(ChannelHandlerContext)} calls coming from upper tiers or from
+ * {@link io.netty.channel.Channel#writeAndFlush(Object)}, which is what
+ * {@link com.otcdlink.chiron.upend.UpendConnector#sendDownward(com.otcdlink.chiron.command.Command)}
+ * does for each {@link com.otcdlink.chiron.command.Command}.
+ * A real flush (which means a {@code write} system call) happens after
+ * {@link Policy#maximumPendingFlushes}, or when {@link Policy#maximumDelayMicroseconds}
+ * elapsed since the first pending flush, or at the end of current event-loop task if
+ * this delay is 0.
+ * <p>
+ * A write completes (and notifies its {@link io.netty.channel.ChannelFuture}'s listeners)
+ * only after the real flush, so
+ * {@link com.otcdlink.chiron.designator.SendingAware#sent()} keeps its meaning.
+ * <p>
+ * There is one instance per {@link io.netty.channel.Channel}, only its event loop accesses
+ * the state.
+ */
+public final class FlushConsolidationTier extends ChannelDuplexHandler {
+
+  private final Policy policy ;
+
+  private int pendingFlushes = 0 ;
+
+  private boolean flushScheduled = false ;
+
+  public FlushConsolidationTier( final Policy policy ) {
+    this.policy = checkNotNull( policy ) ;
+  }
+
+  @Override
+  public void flush( final ChannelHandlerContext channelHandlerContext ) throws Exception {
+    if( ++ pendingFlushes >= policy.maximumPendingFlushes ) {
+      flushNow( channelHandlerContext ) ;
+    } else if( ! flushScheduled ) {
+      flushScheduled = true ;
+      final Runnable flushTask = () -> {
+        flushScheduled = false ;
+        flushNow( channelHandlerContext ) ;
+      } ;
+      if( policy.maximumDelayMicroseconds == 0 ) {
+        channelHandlerContext.executor().execute( flushTask ) ;
+      } else {
+        channelHandlerContext.executor().schedule(
+            flushTask, policy.maximumDelayMicroseconds, TimeUnit.MICROSECONDS ) ;
+      }
+    }
+  }
+
+  /**
+   * Lets the outbound buffer drain instead of waiting for a scheduled flush.
+   */
+  @Override
+  public void channelWritabilityChanged( final ChannelHandlerContext channelHandlerContext )
+      throws Exception
+  {
+    if( ! channelHandlerContext.channel().isWritable() ) {
+      flushNow( channelHandlerContext ) ;
+    }
+    super.channelWritabilityChanged( channelHandlerContext ) ;
+  }
+
+  @Override
+  public void close(
+      final ChannelHandlerContext channelHandlerContext,
+      final ChannelPromise promise
+  ) throws Exception {
+    flushNow( channelHandlerContext ) ;
+    super.close( channelHandlerContext, promise ) ;
+  }
+
+  @Override
+  public void disconnect(
+      final ChannelHandlerContext channelHandlerContext,
+      final ChannelPromise promise
+  ) throws Exception {
+    flushNow( channelHandlerContext ) ;
+    super.disconnect( channelHandlerContext, promise ) ;
+  }
+
+  @Override
+  public void handlerRemoved( final ChannelHandlerContext channelHandlerContext )
+      throws Exception
+  {
+    flushNow( channelHandlerContext ) ;
+    super.handlerRemoved( channelHandlerContext ) ;
+  }
+
+  private void flushNow( final ChannelHandlerContext channelHandlerContext ) {
+    if( pendingFlushes > 0 ) {
+      pendingFlushes = 0 ;
+      channelHandlerContext.flush() ;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return ToStringTools.nameAndCompactHash( this ) + '{' + policy + '}' ;
+  }
+
+  public static final class Policy {
+
+    /**
+     * Count of flushes causing an immediate flush, 1 means no consolidation.
+     */
+    public final int maximumPendingFlushes ;
+
+    /**
+     * Maximum delay before flushing, 0 means at the end of current event-loop task.
+     */
+    public final long maximumDelayMicroseconds ;
+
+    public Policy( final int maximumPendingFlushes ) {
+      this( maximumPendingFlushes, 0 ) ;
+    }
+
+    public Policy( final int maximumPendingFlushes, final long maximumDelayMicroseconds ) {
+      checkArgument( maximumPendingFlushes > 0,
+          "Incorrect maximumPendingFlushes: %s", maximumPendingFlushes ) ;
+      checkArgument( maximumDelayMicroseconds >= 0,
+          "Incorrect maximumDelayMicroseconds: %s", maximumDelayMicroseconds ) ;
+      this.maximumPendingFlushes = maximumPendingFlushes ;
+      this.maximumDelayMicroseconds = maximumDelayMicroseconds ;
+    }
+
+    @Override
+    public String toString() {
+      return ToStringTools.getNiceClassName( this ) + '{' +
+          "maximumPendingFlushes=" + maximumPendingFlushes + ';' +
+          "maximumDelayMicroseconds=" + maximumDelayMicroseconds +
+          '}'
+      ;
+    }
+  }
+}
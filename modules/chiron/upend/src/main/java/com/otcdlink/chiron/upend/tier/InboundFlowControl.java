@@ -0,0 +1,321 @@
+package com.otcdlink.chiron.upend.tier;
+
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.CommandConsumer;
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import com.otcdlink.chiron.toolbox.concurrent.ExecutorTools;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Bounded hand-off between {@link CommandReceiverTier}s, running in Netty's event loops,
+ * and a {@link CommandConsumer}, running in a single thread of its own.
+ * When the count of pending {@code COMMAND}s (handed off but not consumed yet) exceeds
+ * {@link Policy#maximumPendingCommands}, or when the count of pending {@code COMMAND}s
+ * for one {@link Channel} exceeds {@link Policy#maximumPendingCommandsPerSession},
+ * the {@link Channel} that handed off last stops reading (with
+ * {@link io.netty.channel.ChannelConfig#setAutoRead(boolean)}). It reads again when
+ * both counts fell to half their maximum.
+ * <p>
+ * Already-read {@code COMMAND}s are never dropped so the bounds are not strict: a paused
+ * {@link Channel} still delivers what Netty decoded from its last read.
+ * <p>
+ * There is one instance per start of {@link com.otcdlink.chiron.upend.UpendConnector},
+ * which calls {@link #close()} when it stops.
+ * Only the event loop of a {@link Channel} changes its {@code autoRead}.
+ */
+public final class InboundFlowControl< COMMAND extends Command< ?, ? > > {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( InboundFlowControl.class ) ;
+
+  private static final AttributeKey< AtomicInteger > PENDING_KEY =
+      AttributeKey.valueOf( InboundFlowControl.class.getSimpleName() + ".pending" ) ;
+
+  private final Policy policy ;
+
+  private final CommandConsumer< COMMAND > commandConsumer ;
+
+  /**
+   * Runs {@link CommandConsumer#accept(Object)}, must keep the order of submission.
+   */
+  private final Executor executor ;
+
+  /**
+   * {@code null} if {@link #executor} came from the caller, which remains in charge of
+   * shutting it down.
+   */
+  private final ExecutorService ownExecutorService ;
+
+  private final AtomicBoolean closed = new AtomicBoolean() ;
+
+  private final Metrics metrics = new Metrics() ;
+
+  private final ConcurrentMap< Channel, Pause > paused = new ConcurrentHashMap<>() ;
+
+  public InboundFlowControl(
+      final Policy policy,
+      final CommandConsumer< COMMAND > commandConsumer
+  ) {
+    this(
+        policy,
+        commandConsumer,
+        Executors.newSingleThreadExecutor(
+            ExecutorTools.newThreadFactory( InboundFlowControl.class.getSimpleName() ) ),
+        true
+    ) ;
+  }
+
+  /**
+   * Only for tests.
+   */
+  public InboundFlowControl(
+      final Policy policy,
+      final CommandConsumer< COMMAND > commandConsumer,
+      final Executor executor
+  ) {
+    this( policy, commandConsumer, executor, false ) ;
+  }
+
+  private InboundFlowControl(
+      final Policy policy,
+      final CommandConsumer< COMMAND > commandConsumer,
+      final Executor executor,
+      final boolean ownExecutor
+  ) {
+    this.policy = checkNotNull( policy ) ;
+    this.commandConsumer = checkNotNull( commandConsumer ) ;
+    this.executor = checkNotNull( executor ) ;
+    this.ownExecutorService = ownExecutor ? ( ExecutorService ) executor : null ;
+  }
+
+  public Metrics metrics() {
+    return metrics ;
+  }
+
+  /**
+   * Refuses further hand-offs, and shuts down the thread created by the constructor (if any)
+   * once it consumed every pending {@code COMMAND}. Does nothing if already closed.
+   */
+  public void close() {
+    if( closed.compareAndSet( false, true ) ) {
+      if( ownExecutorService != null ) {
+        ownExecutorService.shutdown() ;
+      }
+      LOGGER.info( "Closed " + this + "." ) ;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return ToStringTools.getNiceClassName( this ) + '{' + policy + ';' + metrics + '}' ;
+  }
+
+
+// ========
+// Hand-off
+// ========
+
+  /**
+   * Must run in the event loop of the {@link Channel}.
+   */
+  public void handoff( final Channel channel, final COMMAND command ) {
+    checkState( ! closed.get(), "Closed" ) ;
+    final int channelPending = pendingFor( channel ).incrementAndGet() ;
+    final int pending = metrics.pending.incrementAndGet() ;
+    if( pending > policy.maximumPendingCommands ||
+        channelPending > policy.maximumPendingCommandsPerSession
+    ) {
+      pause( channel ) ;
+    }
+    executor.execute( () -> consume( channel, command ) ) ;
+  }
+
+  /**
+   * Must run in the event loop of the {@link Channel}, when it becomes inactive.
+   */
+  public void forget( final Channel channel ) {
+    final Pause pause = paused.remove( channel ) ;
+    if( pause != null ) {
+      pause.end( metrics ) ;
+    }
+  }
+
+  private void consume( final Channel channel, final COMMAND command ) {
+    try {
+      commandConsumer.accept( command ) ;
+    } catch( final RuntimeException e ) {
+      LOGGER.error( "Could not consume " + command + " from " + channel + ".", e ) ;
+    } finally {
+      pendingFor( channel ).decrementAndGet() ;
+      metrics.pending.decrementAndGet() ;
+      for( final Map.Entry< Channel, Pause > entry : paused.entrySet() ) {
+        final Channel pausedChannel = entry.getKey() ;
+        if( resumable( pausedChannel ) && entry.getValue().resumeScheduled.compareAndSet(
+            false, true )
+        ) {
+          pausedChannel.eventLoop().execute( () -> resume( pausedChannel ) ) ;
+        }
+      }
+    }
+  }
+
+  private void pause( final Channel channel ) {
+    if( ! paused.containsKey( channel ) ) {
+      paused.put( channel, new Pause() ) ;
+      metrics.pauses.increment() ;
+      metrics.pausedChannels.incrementAndGet() ;
+      channel.config().setAutoRead( false ) ;
+      LOGGER.debug( "Paused reading from " + channel + ", " + metrics + "." ) ;
+    }
+  }
+
+  private void resume( final Channel channel ) {
+    final Pause pause = paused.get( channel ) ;
+    if( pause != null ) {
+      pause.resumeScheduled.set( false ) ;
+      if( resumable( channel ) ) {
+        paused.remove( channel ) ;
+        pause.end( metrics ) ;
+        channel.config().setAutoRead( true ) ;
+        LOGGER.debug( "Resumed reading from " + channel + ", " + metrics + "." ) ;
+      }
+    }
+  }
+
+  private boolean resumable( final Channel channel ) {
+    return metrics.pending.get() <= policy.maximumPendingCommands / 2 &&
+        pendingFor( channel ).get() <= policy.maximumPendingCommandsPerSession / 2 ;
+  }
+
+  private static AtomicInteger pendingFor( final Channel channel ) {
+    final AtomicInteger pending = channel.attr( PENDING_KEY ).get() ;
+    if( pending == null ) {
+      final AtomicInteger newPending = new AtomicInteger() ;
+      final AtomicInteger existing = channel.attr( PENDING_KEY ).setIfAbsent( newPending ) ;
+      return existing == null ? newPending : existing ;
+    } else {
+      return pending ;
+    }
+  }
+
+  private static final class Pause {
+    private final long startNanos = System.nanoTime() ;
+
+    /**
+     * Avoids flooding the event loop with redundant calls to {@link InboundFlowControl#resume(Channel)}.
+     */
+    private final AtomicBoolean resumeScheduled = new AtomicBoolean() ;
+
+    public void end( final Metrics metrics ) {
+      metrics.pausedNanos.add( System.nanoTime() - startNanos ) ;
+      metrics.pausedChannels.decrementAndGet() ;
+    }
+  }
+
+
+// ======
+// Policy
+// ======
+
+  public static final class Policy {
+
+    public final int maximumPendingCommands ;
+
+    /**
+     * {@link Integer#MAX_VALUE} means no limit other than {@link #maximumPendingCommands}.
+     */
+    public final int maximumPendingCommandsPerSession ;
+
+    public Policy( final int maximumPendingCommands ) {
+      this( maximumPendingCommands, Integer.MAX_VALUE ) ;
+    }
+
+    public Policy( final int maximumPendingCommands, final int maximumPendingCommandsPerSession ) {
+      checkArgument( maximumPendingCommands > 0,
+          "Incorrect maximumPendingCommands: %s", maximumPendingCommands ) ;
+      checkArgument( maximumPendingCommandsPerSession > 0,
+          "Incorrect maximumPendingCommandsPerSession: %s", maximumPendingCommandsPerSession ) ;
+      this.maximumPendingCommands = maximumPendingCommands ;
+      this.maximumPendingCommandsPerSession = maximumPendingCommandsPerSession ;
+    }
+
+    @Override
+    public String toString() {
+      return ToStringTools.getNiceClassName( this ) + '{' +
+          "maximumPendingCommands=" + maximumPendingCommands +
+          ( maximumPendingCommandsPerSession == Integer.MAX_VALUE ? "" :
+              ";maximumPendingCommandsPerSession=" + maximumPendingCommandsPerSession ) +
+          '}'
+      ;
+    }
+  }
+
+
+// =======
+// Metrics
+// =======
+
+  public static final class Metrics {
+
+    private final AtomicInteger pending = new AtomicInteger() ;
+    private final AtomicInteger pausedChannels = new AtomicInteger() ;
+    private final LongAdder pauses = new LongAdder() ;
+    private final LongAdder pausedNanos = new LongAdder() ;
+
+    /**
+     * Count of {@code COMMAND}s handed off but not consumed yet.
+     */
+    public int pendingCount() {
+      return pending.get() ;
+    }
+
+    /**
+     * Count of {@link Channel}s currently not reading.
+     */
+    public int pausedChannelCount() {
+      return pausedChannels.get() ;
+    }
+
+    /**
+     * Count of times a {@link Channel} stopped reading since the start.
+     */
+    public long pauseCount() {
+      return pauses.sum() ;
+    }
+
+    /**
+     * Sum of the durations of every pause that ended, for all {@link Channel}s.
+     */
+    public long pausedMilliseconds() {
+      return TimeUnit.NANOSECONDS.toMillis( pausedNanos.sum() ) ;
+    }
+
+    @Override
+    public String toString() {
+      return ToStringTools.getNiceClassName( this ) + '{' +
+          "pending=" + pendingCount() + ';' +
+          "pausedChannels=" + pausedChannelCount() + ';' +
+          "pauses=" + pauseCount() + ';' +
+          "pausedMilliseconds=" + pausedMilliseconds() +
+          '}'
+      ;
+    }
+  }
+}
@@ -0,0 +1,390 @@
+package com.otcdlink.chiron.upend.tier;
+
+import com.google.common.collect.Maps;
+import com.otcdlink.chiron.command.Conflatable;
+import com.otcdlink.chiron.middle.tier.AbstractCommandWebsocketCodecTier;
+import com.otcdlink.chiron.toolbox.ToStringTools;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps outbound messages in a queue while the {@link Channel} is not writable, instead of
+ * letting Netty's outbound buffer grow.
+ * {@link Channel#isWritable()} depends on {@link Policy#writeBufferWaterMark}.
+ * A queued {@link Conflatable} message replaces a queued message of the same class with
+ * an equal {@link Conflatable#conflationKey()}, and the {@link ChannelPromise} of the replaced
+ * message fails (so {@link com.otcdlink.chiron.designator.SendingAware#sent()} doesn't happen).
+ * <p>
+ * Like {@link AbstractCommandWebsocketCodecTier} does after encoding, this tier releases every
+ * message it discards, including a {@link com.otcdlink.chiron.command.RecyclableCommand},
+ * because writing a message transfers its ownership.
+ * <p>
+ * If the queue stays non-empty longer than {@link Policy#maximumQueueingDelayMs} or
+ * grows beyond {@link Policy#maximumQueueLength}, the {@link Policy#slowConsumerAction}
+ * applies.
+ * <p>
+ * There is one instance per {@link Channel}, only its event loop accesses the queue.
+ */
+public final class OutboundQueueTier extends ChannelDuplexHandler {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger( OutboundQueueTier.class ) ;
+
+  private static final ChannelException CONFLATED = noStackTrace( new ChannelException(
+      "Replaced by a newer " + Conflatable.class.getSimpleName() ) ) ;
+
+  private final Policy policy ;
+
+  private final Metrics metrics ;
+
+  /**
+   * Does the job for {@link SlowConsumerAction#KICKOUT}.
+   */
+  private final Consumer< Channel > kicker ;
+
+  private final ArrayDeque< Entry > queue = new ArrayDeque<>() ;
+
+  /**
+   * Queued {@link Entry}s with a {@link Conflatable} message, by class and conflation key.
+   */
+  private final Map< Object, Entry > conflatables = new HashMap<>() ;
+
+  private ScheduledFuture< ? > queueingTimeout = null ;
+
+  /**
+   * Once {@link SlowConsumerAction#KICKOUT} or {@link SlowConsumerAction#DISCONNECT}
+   * happened, messages pass through so a {@code CloseWebSocketFrame} can't get stuck.
+   */
+  private boolean evicted = false ;
+
+  public OutboundQueueTier(
+      final Policy policy,
+      final Metrics metrics,
+      final Consumer< Channel > kicker
+  ) {
+    this.policy = checkNotNull( policy ) ;
+    this.metrics = checkNotNull( metrics ) ;
+    this.kicker = checkNotNull( kicker ) ;
+  }
+
+  @Override
+  public void write(
+      final ChannelHandlerContext channelHandlerContext,
+      final Object outbound,
+      final ChannelPromise promise
+  ) throws Exception {
+    if( evicted || ( queue.isEmpty() && channelHandlerContext.channel().isWritable() ) ) {
+      channelHandlerContext.write( outbound, promise ) ;
+    } else {
+      enqueue( channelHandlerContext, outbound, promise ) ;
+    }
+  }
+
+  @Override
+  public void channelWritabilityChanged( final ChannelHandlerContext channelHandlerContext )
+      throws Exception
+  {
+    if( channelHandlerContext.channel().isWritable() ) {
+      drain( channelHandlerContext ) ;
+    }
+    super.channelWritabilityChanged( channelHandlerContext ) ;
+  }
+
+  @Override
+  public void handlerRemoved( final ChannelHandlerContext channelHandlerContext )
+      throws Exception
+  {
+    discard( new ChannelException( "Removed " + this ) ) ;
+    super.handlerRemoved( channelHandlerContext ) ;
+  }
+
+  @Override
+  public void channelInactive( final ChannelHandlerContext channelHandlerContext )
+      throws Exception
+  {
+    discard( new ChannelException( "Inactive " + channelHandlerContext.channel() ) ) ;
+    super.channelInactive( channelHandlerContext ) ;
+  }
+
+  private void enqueue(
+      final ChannelHandlerContext channelHandlerContext,
+      final Object outbound,
+      final ChannelPromise promise
+  ) {
+    final Object conflationKey = outbound instanceof Conflatable ?
+        Maps.immutableEntry( outbound.getClass(), ( ( Conflatable ) outbound ).conflationKey() ) :
+        null
+    ;
+    if( conflationKey != null ) {
+      final Entry conflated = conflatables.get( conflationKey ) ;
+      if( conflated != null ) {
+        ReferenceCountUtil.release( conflated.message ) ;
+        conflated.promise.tryFailure( CONFLATED ) ;
+        conflated.message = outbound ;
+        conflated.promise = promise ;
+        metrics.conflated.increment() ;
+        return ;
+      }
+    }
+    final Entry entry = new Entry( outbound, promise, conflationKey ) ;
+    queue.addLast( entry ) ;
+    if( conflationKey != null ) {
+      conflatables.put( conflationKey, entry ) ;
+    }
+    metrics.queued.increment() ;
+
+    if( queue.size() > policy.maximumQueueLength ) {
+      slowConsumer( channelHandlerContext, "queue length exceeds " + policy.maximumQueueLength ) ;
+    } else if( queueingTimeout == null ) {
+      queueingTimeout = channelHandlerContext.executor().schedule(
+          () -> {
+            queueingTimeout = null ;
+            if( ! queue.isEmpty() ) {
+              slowConsumer( channelHandlerContext,
+                  "queue not empty for " + policy.maximumQueueingDelayMs + " ms" ) ;
+            }
+          },
+          policy.maximumQueueingDelayMs,
+          TimeUnit.MILLISECONDS
+      ) ;
+    }
+  }
+
+  private void drain( final ChannelHandlerContext channelHandlerContext ) {
+    boolean wrote = false ;
+    while( ! queue.isEmpty() && channelHandlerContext.channel().isWritable() ) {
+      final Entry entry = queue.removeFirst() ;
+      if( entry.conflationKey != null ) {
+        conflatables.remove( entry.conflationKey ) ;
+      }
+      metrics.queued.decrement() ;
+      channelHandlerContext.write( entry.message, entry.promise ) ;
+      wrote = true ;
+    }
+    if( wrote ) {
+      channelHandlerContext.flush() ;
+    }
+    if( queue.isEmpty() ) {
+      cancelQueueingTimeout() ;
+    }
+  }
+
+  private void slowConsumer(
+      final ChannelHandlerContext channelHandlerContext,
+      final String reason
+  ) {
+    final Channel channel = channelHandlerContext.channel() ;
+    LOGGER.warn( "Slow consumer on " + channel + " (" + reason + "), " +
+        "applying " + policy.slowConsumerAction + " to " + queue.size() + " queued message(s)." ) ;
+    final int discarded = discard( new ChannelException(
+        "Discarded because of slow consumer (" + reason + ")" ) ) ;
+    switch( policy.slowConsumerAction ) {
+      case DROP :
+        metrics.dropped.add( discarded ) ;
+        break ;
+      case KICKOUT :
+        evicted = true ;
+        metrics.evicted.increment() ;
+        kicker.accept( channel ) ;
+        break ;
+      case DISCONNECT :
+        evicted = true ;
+        metrics.evicted.increment() ;
+        channelHandlerContext.close() ;
+        break ;
+      default :
+        throw new IllegalArgumentException( "Unsupported: " + policy.slowConsumerAction ) ;
+    }
+  }
+
+  /**
+   * @return the count of discarded messages.
+   */
+  private int discard( final ChannelException cause ) {
+    cancelQueueingTimeout() ;
+    final int discarded = queue.size() ;
+    Entry entry ;
+    while( ( entry = queue.pollFirst() ) != null ) {
+      ReferenceCountUtil.release( entry.message ) ;
+      entry.promise.tryFailure( cause ) ;
+      metrics.queued.decrement() ;
+    }
+    conflatables.clear() ;
+    return discarded ;
+  }
+
+  private void cancelQueueingTimeout() {
+    if( queueingTimeout != null ) {
+      queueingTimeout.cancel( false ) ;
+      queueingTimeout = null ;
+    }
+  }
+
+  private static < THROWABLE extends Throwable > THROWABLE noStackTrace(
+      final THROWABLE throwable
+  ) {
+    throwable.setStackTrace( new StackTraceElement[ 0 ] ) ;
+    return throwable ;
+  }
+
+  @Override
+  public String toString() {
+    return ToStringTools.nameAndCompactHash( this ) + '{' + policy + '}' ;
+  }
+
+  private static final class Entry {
+    private Object message ;
+    private ChannelPromise promise ;
+    private final Object conflationKey ;
+
+    private Entry(
+        final Object message,
+        final ChannelPromise promise,
+        final Object conflationKey
+    ) {
+      this.message = message ;
+      this.promise = promise ;
+      this.conflationKey = conflationKey ;
+    }
+  }
+
+
+// ======
+// Policy
+// ======
+
+  public enum SlowConsumerAction {
+
+    /**
+     * Discard queued messages, and keep on queueing.
+     */
+    DROP,
+
+    /**
+     * Discard queued messages and kick out the session, which closes the {@link Channel}.
+     */
+    KICKOUT,
+
+    /**
+     * Discard queued messages and close the {@link Channel}, which keeps the session valid
+     * so Downend can reconnect and resume it.
+     */
+    DISCONNECT,
+    ;
+  }
+
+  public static final class Policy {
+
+    /**
+     * Sets {@link Channel#isWritable()}, {@code null} means Netty's default.
+     */
+    public final WriteBufferWaterMark writeBufferWaterMark ;
+
+    public final int maximumQueueLength ;
+
+    public final long maximumQueueingDelayMs ;
+
+    public final SlowConsumerAction slowConsumerAction ;
+
+    public Policy(
+        final WriteBufferWaterMark writeBufferWaterMark,
+        final int maximumQueueLength,
+        final long maximumQueueingDelayMs,
+        final SlowConsumerAction slowConsumerAction
+    ) {
+      checkArgument( maximumQueueLength > 0,
+          "Incorrect maximumQueueLength: %s", maximumQueueLength ) ;
+      checkArgument( maximumQueueingDelayMs > 0,
+          "Incorrect maximumQueueingDelayMs: %s", maximumQueueingDelayMs ) ;
+      this.writeBufferWaterMark = writeBufferWaterMark ;
+      this.maximumQueueLength = maximumQueueLength ;
+      this.maximumQueueingDelayMs = maximumQueueingDelayMs ;
+      this.slowConsumerAction = checkNotNull( slowConsumerAction ) ;
+    }
+
+    @Override
+    public String toString() {
+      return ToStringTools.getNiceClassName( this ) + '{' +
+          ( writeBufferWaterMark == null ? "" : writeBufferWaterMark + ";" ) +
+          "maximumQueueLength=" + maximumQueueLength + ';' +
+          "maximumQueueingDelayMs=" + maximumQueueingDelayMs + ';' +
+          slowConsumerAction +
+          '}'
+      ;
+    }
+  }
+
+
+// =======
+// Metrics
+// =======
+
+  /**
+   * Shared by every {@link OutboundQueueTier} of the same
+   * {@link com.otcdlink.chiron.upend.UpendConnector}, readable from any thread.
+   */
+  public static final class Metrics {
+
+    private final LongAdder queued = new LongAdder() ;
+    private final LongAdder conflated = new LongAdder() ;
+    private final LongAdder dropped = new LongAdder() ;
+    private final LongAdder evicted = new LongAdder() ;
+
+    /**
+     * Count of messages currently queued, for all {@link Channel}s.
+     */
+    public long queueDepth() {
+      return queued.sum() ;
+    }
+
+    /**
+     * Count of queued messages replaced by a newer {@link Conflatable} since the start.
+     */
+    public long conflatedCount() {
+      return conflated.sum() ;
+    }
+
+    /**
+     * Count of messages discarded by {@link SlowConsumerAction#DROP} since the start.
+     */
+    public long droppedCount() {
+      return dropped.sum() ;
+    }
+
+    /**
+     * Count of {@link SlowConsumerAction#KICKOUT}s and {@link SlowConsumerAction#DISCONNECT}s
+     * since the start.
+     */
+    public long evictionCount() {
+      return evicted.sum() ;
+    }
+
+    @Override
+    public String toString() {
+      return ToStringTools.getNiceClassName( this ) + '{' +
+          "queueDepth=" + queueDepth() + ';' +
+          "conflated=" + conflatedCount() + ';' +
+          "dropped=" + droppedCount() + ';' +
+          "evicted=" + evictionCount() +
+          '}'
+      ;
+    }
+  }
+}
@@ -40,6 +40,8 @@ public class UpendTierName extends TierName {
   public static final UpendTierName COMMAND_INTERCEPTOR = createNew() ;
   public static final UpendTierName COMMAND_RECEIVER = createNew() ;
   public static final UpendTierName CATCHER = createNew() ;
+  public static final UpendTierName OUTBOUND_QUEUE = createNew() ;
+  public static final UpendTierName FLUSH_CONSOLIDATOR = createNew() ;
   public static final UpendTierName WEBSOCKET_PHASE_CODEC = createNew() ;
 
   @SuppressWarnings( "unused" )
@@ -1,12 +1,18 @@
 package com.otcdlink.chiron.upend.tier;
 
+import com.otcdlink.chiron.codec.CommandBodyDecoder;
+import com.otcdlink.chiron.codec.IndexedCommandBodyDecoder;
+import com.otcdlink.chiron.middle.ChannelTools;
+import com.otcdlink.chiron.middle.tier.CommandDictionary;
 import com.otcdlink.chiron.middle.tier.ConnectionDescriptor;
+import com.otcdlink.chiron.middle.tier.FrameBatching;
 import com.otcdlink.chiron.middle.tier.WebsocketTools;
 import com.otcdlink.chiron.toolbox.UrxTools;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
 import org.slf4j.Logger;
@@ -30,11 +36,30 @@ public class UpendUpgradeTier extends SimpleChannelInboundHandler< Object > {
   private final URL websocketUrl ;
   private final int maximumFramePayloadLength ;
 
+  /**
+   * May be {@code null}.
+   */
+  private final CommandBodyDecoder< ?, ? > commandDecoder ;
+
   public UpendUpgradeTier(
       final Claim claim,
       final ConnectionDescriptor connectionDescriptor,
       final URL websocketUrl,
       final int maximumFramePayloadLength
+  ) {
+    this( claim, connectionDescriptor, websocketUrl, maximumFramePayloadLength, null ) ;
+  }
+
+  /**
+   * @param commandDecoder if it is an {@link IndexedCommandBodyDecoder}, a
+   *     {@link CommandDictionary} gets negotiated with Downends that support it.
+   */
+  public UpendUpgradeTier(
+      final Claim claim,
+      final ConnectionDescriptor connectionDescriptor,
+      final URL websocketUrl,
+      final int maximumFramePayloadLength,
+      final CommandBodyDecoder< ?, ? > commandDecoder
   ) {
     super( false ) ;
     this.claim = checkNotNull( claim ) ;
@@ -42,6 +67,7 @@ public class UpendUpgradeTier extends SimpleChannelInboundHandler< Object > {
     this.websocketUrl = UrxTools.checkValidWebsocketUrl( websocketUrl ) ;
     checkArgument( maximumFramePayloadLength > 0 ) ;
     this.maximumFramePayloadLength = maximumFramePayloadLength ;
+    this.commandDecoder = commandDecoder ;
   }
 
 
@@ -77,10 +103,29 @@ public class UpendUpgradeTier extends SimpleChannelInboundHandler< Object > {
       WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(
           channelHandlerContext.channel() ) ;
     } else {
+      final ConnectionDescriptor negotiated =
+          connectionDescriptor.negotiate( fullHttpRequest.headers() ) ;
+      channelHandlerContext.channel().attr( ChannelTools.FIELD_ENCODING_KEY )
+          .set( negotiated.fieldEncoding ) ;
+      final HttpHeaders responseHeaders = negotiated.httpHeaders() ;
+      final CommandDictionary commandDictionary =
+          CommandDictionary.from( fullHttpRequest.headers() ) ;
+      if( commandDictionary != null &&
+          CommandDictionary.announce( responseHeaders, commandDecoder )
+      ) {
+        channelHandlerContext.channel().attr( ChannelTools.COMMAND_DICTIONARY_KEY )
+            .set( commandDictionary ) ;
+      }
+      final FrameBatching frameBatching = FrameBatching.from( fullHttpRequest.headers() ) ;
+      if( frameBatching != null ) {
+        FrameBatching.announce( responseHeaders, maximumFramePayloadLength ) ;
+        channelHandlerContext.channel().attr( ChannelTools.FRAME_BATCHING_KEY )
+            .set( frameBatching ) ;
+      }
       handshaker.handshake(
           channelHandlerContext.channel(),
           fullHttpRequest,
-          connectionDescriptor.httpHeaders(),
+          responseHeaders,
           channelHandlerContext.newPromise()
       ).addListener( future -> {
         if( future.isSuccess() ) {
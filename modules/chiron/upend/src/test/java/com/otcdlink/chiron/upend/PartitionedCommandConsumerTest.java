@@ -0,0 +1,209 @@
+package com.otcdlink.chiron.upend;
+
+import com.otcdlink.chiron.buffer.PositionalFieldWriter;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.Stamp;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.middle.session.SessionIdentifier;
+import com.otcdlink.chiron.toolbox.clock.Clock;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PartitionedCommandConsumerTest {
+
+  @Test
+  public void orderPerSession() throws Exception {
+    final Map< SessionIdentifier, List< Integer > > consumed = new ConcurrentHashMap<>() ;
+    final PartitionedCommandConsumer< PrivateCommand > partitionedCommandConsumer =
+        track( new PartitionedCommandConsumer<>( 2, command -> consumed.computeIfAbsent(
+            command.endpointSpecific.sessionIdentifier,
+            Ø -> Collections.synchronizedList( new ArrayList<>() )
+        ).add( command.number ) ) ) ;
+
+    final List< Integer > expected = new ArrayList<>() ;
+    for( int i = 0 ; i < 100 ; i ++ ) {
+      expected.add( i ) ;
+      for( final SessionIdentifier sessionIdentifier : SESSION_IDENTIFIERS ) {
+        partitionedCommandConsumer.accept( upward( sessionIdentifier, i ) ) ;
+      }
+    }
+    partitionedCommandConsumer.barrier( () -> { } ).get( TIMEOUT_S, TimeUnit.SECONDS ) ;
+
+    assertThat( consumed ).hasSize( SESSION_IDENTIFIERS.length ) ;
+    for( final SessionIdentifier sessionIdentifier : SESSION_IDENTIFIERS ) {
+      assertThat( consumed.get( sessionIdentifier ) ).isEqualTo( expected ) ;
+    }
+  }
+
+  @Test
+  public void parallelPartitions() throws Exception {
+    final CountDownLatch released = new CountDownLatch( 1 ) ;
+    final PartitionedCommandConsumer< PrivateCommand > partitionedCommandConsumer =
+        track( new PartitionedCommandConsumer<>(
+            2,
+            command -> {
+              if( command.number == 0 ) {
+                awaitQuiet( released ) ;
+              } else {
+                released.countDown() ;
+              }
+            },
+            command -> command.number,
+            command -> false
+        ) )
+    ;
+    partitionedCommandConsumer.accept( upward( SESSION_IDENTIFIERS[ 0 ], 0 ) ) ;
+    partitionedCommandConsumer.accept( upward( SESSION_IDENTIFIERS[ 0 ], 1 ) ) ;
+    partitionedCommandConsumer.barrier( () -> { } ).get( TIMEOUT_S, TimeUnit.SECONDS ) ;
+  }
+
+  @Test
+  public void barrier() throws Exception {
+    final AtomicInteger upwardCount = new AtomicInteger() ;
+    final List< Integer > seenByBarrier = Collections.synchronizedList( new ArrayList<>() ) ;
+    final PartitionedCommandConsumer< PrivateCommand > partitionedCommandConsumer =
+        track( new PartitionedCommandConsumer<>( 3, command -> {
+          if( command.endpointSpecific.sessionIdentifier == null ) {
+            seenByBarrier.add( upwardCount.get() ) ;
+          } else {
+            upwardCount.incrementAndGet() ;
+          }
+        } ) ) ;
+
+    for( int i = 0 ; i < 50 ; i ++ ) {
+      partitionedCommandConsumer.accept( upward( SESSION_IDENTIFIERS[ i % 3 ], i ) ) ;
+    }
+    partitionedCommandConsumer.accept( internal() ) ;
+    for( int i = 0 ; i < 50 ; i ++ ) {
+      partitionedCommandConsumer.accept( upward( SESSION_IDENTIFIERS[ i % 3 ], i ) ) ;
+    }
+    partitionedCommandConsumer.accept( internal() ) ;
+    partitionedCommandConsumer.barrier( () -> { } ).get( TIMEOUT_S, TimeUnit.SECONDS ) ;
+
+    assertThat( seenByBarrier ).containsExactly( 50, 100 ) ;
+  }
+
+  @Test
+  public void concurrentBarriers() throws Exception {
+    final PartitionedCommandConsumer< PrivateCommand > partitionedCommandConsumer =
+        track( new PartitionedCommandConsumer<>( 4, command -> { } ) ) ;
+    final List< CompletableFuture< Void > > completions =
+        Collections.synchronizedList( new ArrayList<>() ) ;
+    final List< Thread > threads = new ArrayList<>() ;
+    for( int t = 0 ; t < 4 ; t ++ ) {
+      threads.add( new Thread( () -> {
+        for( int i = 0 ; i < 200 ; i ++ ) {
+          completions.add( partitionedCommandConsumer.barrier( () -> { } ) ) ;
+        }
+      } ) ) ;
+    }
+    threads.forEach( Thread::start ) ;
+    for( final Thread thread : threads ) {
+      thread.join( TimeUnit.SECONDS.toMillis( TIMEOUT_S ) ) ;
+    }
+    CompletableFuture.allOf( completions.toArray( new CompletableFuture[ 0 ] ) )
+        .get( TIMEOUT_S, TimeUnit.SECONDS ) ;
+    assertThat( completions ).hasSize( 800 ) ;
+  }
+
+  @Test
+  public void closeAfterCompletion() throws Exception {
+    final AtomicInteger upwardCount = new AtomicInteger() ;
+    final PartitionedCommandConsumer< PrivateCommand > partitionedCommandConsumer =
+        new PartitionedCommandConsumer<>( 2, command -> upwardCount.incrementAndGet() ) ;
+    for( int i = 0 ; i < 50 ; i ++ ) {
+      partitionedCommandConsumer.accept( upward( SESSION_IDENTIFIERS[ i % 3 ], i ) ) ;
+    }
+    partitionedCommandConsumer.close().get( TIMEOUT_S, TimeUnit.SECONDS ) ;
+
+    assertThat( upwardCount.get() ).isEqualTo( 50 ) ;
+    assertThatThrownBy( () -> partitionedCommandConsumer.accept(
+        upward( SESSION_IDENTIFIERS[ 0 ], 50 ) ) )
+        .isInstanceOf( IllegalStateException.class ) ;
+  }
+
+// =======
+// Fixture
+// =======
+
+  private static final long TIMEOUT_S = 10 ;
+
+  private final List< PartitionedCommandConsumer< PrivateCommand > >
+      partitionedCommandConsumers = new ArrayList<>() ;
+
+  private PartitionedCommandConsumer< PrivateCommand > track(
+      final PartitionedCommandConsumer< PrivateCommand > partitionedCommandConsumer
+  ) {
+    partitionedCommandConsumers.add( partitionedCommandConsumer ) ;
+    return partitionedCommandConsumer ;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for( final PartitionedCommandConsumer< PrivateCommand > partitionedCommandConsumer :
+        partitionedCommandConsumers
+    ) {
+      partitionedCommandConsumer.close().get( TIMEOUT_S, TimeUnit.SECONDS ) ;
+    }
+  }
+
+  private static final Clock CLOCK = () -> Stamp.FLOOR_MILLISECONDS ;
+
+  private final Designator.Factory designatorFactory = new Designator.Factory(
+      new Stamp.Generator( CLOCK ) ) ;
+
+  private static final SessionIdentifier[] SESSION_IDENTIFIERS = {
+      new SessionIdentifier( "5e5510n-0" ),
+      new SessionIdentifier( "5e5510n-1" ),
+      new SessionIdentifier( "5e5510n-2" )
+  } ;
+
+  private PrivateCommand upward( final SessionIdentifier sessionIdentifier, final int number ) {
+    return new PrivateCommand( designatorFactory.upward( null, sessionIdentifier ), number ) ;
+  }
+
+  private PrivateCommand internal() {
+    return new PrivateCommand( designatorFactory.internal(), -1 ) ;
+  }
+
+  private static void awaitQuiet( final CountDownLatch countDownLatch ) {
+    try {
+      assertThat( countDownLatch.await( TIMEOUT_S, TimeUnit.SECONDS ) ).isTrue() ;
+    } catch( final InterruptedException e ) {
+      throw new RuntimeException( e ) ;
+    }
+  }
+
+  private static class PrivateCommand extends Command< Designator, Void > {
+
+    public final int number ;
+
+    private PrivateCommand( final Designator designator, final int number ) {
+      super( designator ) ;
+      this.number = number ;
+    }
+
+    @Override
+    public void callReceiver( final Void Ø ) {
+      throw new UnsupportedOperationException( "Do not call" ) ;
+    }
+
+    @Override
+    public void encodeBody( final PositionalFieldWriter positionalFieldWriter ) {
+      throw new UnsupportedOperationException( "Do not call" ) ;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.otcdlink.chiron.upend.tier;
+
+import com.otcdlink.chiron.buffer.PositionalFieldWriter;
+import com.otcdlink.chiron.command.Command;
+import com.otcdlink.chiron.command.RecyclableCommand;
+import com.otcdlink.chiron.command.Stamp;
+import com.otcdlink.chiron.designator.Designator;
+import com.otcdlink.chiron.fixture.RecyclableCommandLeakDetectorRule;
+import com.otcdlink.chiron.toolbox.StateHolder;
+import com.otcdlink.chiron.toolbox.clock.Clock;
+import com.otcdlink.chiron.upend.UpendConnector;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Recycler;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandReceiverTierTest {
+
+  @Rule
+  public final RecyclableCommandLeakDetectorRule leakDetectorRule =
+      new RecyclableCommandLeakDetectorRule() ;
+
+  @Test
+  public void consumerOwnsRecyclableCommand() throws Exception {
+    final EmbeddedChannel channel = newChannel( UpendConnector.State.STARTED ) ;
+    final PrivateCommand command = PrivateCommand.newInstance( designator(), "Hello" ) ;
+    channel.writeInbound( command ) ;
+
+    assertThat( consumed ).containsExactly( command ) ;
+    assertThat( command.refCnt() ).isEqualTo( 1 ) ;
+    assertThat( command.message ).isEqualTo( "Hello" ) ;
+    assertThat( command.release() ).isTrue() ;
+    assertThat( channel.finish() ).isFalse() ;
+  }
+
+  @Test
+  public void releaseWhenDropped() throws Exception {
+    final EmbeddedChannel channel = newChannel( UpendConnector.State.STOPPING ) ;
+    final PrivateCommand command = PrivateCommand.newInstance( designator(), "Hello" ) ;
+    channel.writeInbound( command ) ;
+
+    assertThat( consumed ).isEmpty() ;
+    assertThat( command.refCnt() ).isEqualTo( 0 ) ;
+    assertThat( channel.finish() ).isFalse() ;
+  }
+
+// =======
+// Fixture
+// =======
+
+  private static final Clock CLOCK = () -> Stamp.FLOOR_MILLISECONDS ;
+
+  private final Designator.Factory designatorFactory = new Designator.Factory(
+      new Stamp.Generator( CLOCK ) ) ;
+
+  private final List< Command< Designator, Void > > consumed = new ArrayList<>() ;
+
+  private EmbeddedChannel newChannel( final UpendConnector.State state ) {
+    return new EmbeddedChannel(
+        new CommandReceiverTier< Void >( new StateHolder<>( state ), consumed::add ) ) ;
+  }
+
+  private Designator designator() {
+    return designatorFactory.internal() ;
+  }
+
+  private static final class PrivateCommand extends RecyclableCommand< Designator, Void > {
+
+    private static final Recycler< PrivateCommand > RECYCLER = new Recycler< PrivateCommand >() {
+      @Override
+      protected PrivateCommand newObject( final Handle< PrivateCommand > handle ) {
+        return new PrivateCommand( handle ) ;
+      }
+    } ;
+
+    public static PrivateCommand newInstance( final Designator designator, final String message ) {
+      final PrivateCommand command = RECYCLER.get() ;
+      command.reuse( designator ) ;
+      command.message = message ;
+      return command ;
+    }
+
+    private String message ;
+
+    private PrivateCommand( final Recycler.Handle< PrivateCommand > handle ) {
+      super( handle, false ) ;
+    }
+
+    @Override
+    protected void clear() {
+      message = null ;
+    }
+
+    @Override
+    public void callReceiver( final Void Ø ) {
+      throw new UnsupportedOperationException( "Do not call" ) ;
+    }
+
+    @Override
+    public void encodeBody( final PositionalFieldWriter positionalFieldWriter ) {
+      throw new UnsupportedOperationException( "Do not call" ) ;
+    }
+  }
+}
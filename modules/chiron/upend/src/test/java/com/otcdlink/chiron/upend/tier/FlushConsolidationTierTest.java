@@ -0,0 +1,75 @@
+package com.otcdlink.chiron.upend.tier;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FlushConsolidationTierTest {
+
+  @Test
+  public void flushAtEndOfTask() throws Exception {
+    final EmbeddedChannel channel = createChannel( new FlushConsolidationTier.Policy( 10 ) ) ;
+    final ChannelFuture first = channel.writeAndFlush( "first" ) ;
+    final ChannelFuture second = channel.writeAndFlush( "second" ) ;
+    assertThat( channel.outboundMessages() ).isEmpty() ;
+    assertThat( first.isDone() ).isFalse() ;
+
+    channel.runPendingTasks() ;
+    assertThat( channel.outboundMessages() ).containsExactly( "first", "second" ) ;
+    assertThat( first.isSuccess() ).isTrue() ;
+    assertThat( second.isSuccess() ).isTrue() ;
+  }
+
+  @Test
+  public void flushAfterMaximumPendingFlushes() throws Exception {
+    final EmbeddedChannel channel = createChannel( new FlushConsolidationTier.Policy( 2 ) ) ;
+    channel.writeAndFlush( "first" ) ;
+    assertThat( channel.outboundMessages() ).isEmpty() ;
+    channel.writeAndFlush( "second" ) ;
+    assertThat( channel.outboundMessages() ).containsExactly( "first", "second" ) ;
+    channel.outboundMessages().clear() ;
+
+    channel.writeAndFlush( "third" ) ;
+    channel.runPendingTasks() ;
+    assertThat( channel.outboundMessages() ).containsExactly( "third" ) ;
+  }
+
+  /**
+   * {@code EmbeddedChannel} has no fake clock, so we check the scheduled flush instead of
+   * waiting for it to run.
+   */
+  @Test
+  public void flushAfterDelay() throws Exception {
+    final EmbeddedChannel channel = createChannel(
+        new FlushConsolidationTier.Policy( 10, TimeUnit.HOURS.toMicros( 1 ) ) ) ;
+    channel.writeAndFlush( "first" ) ;
+    channel.runPendingTasks() ;
+    assertThat( channel.outboundMessages() ).isEmpty() ;
+
+    final long nanosBeforeFlush = channel.runScheduledPendingTasks() ;
+    assertThat( nanosBeforeFlush ).isBetween(
+        TimeUnit.MINUTES.toNanos( 59 ), TimeUnit.HOURS.toNanos( 1 ) ) ;
+    assertThat( channel.outboundMessages() ).isEmpty() ;
+  }
+
+  @Test
+  public void flushBeforeClose() throws Exception {
+    final EmbeddedChannel channel = createChannel( new FlushConsolidationTier.Policy( 10 ) ) ;
+    final ChannelFuture written = channel.writeAndFlush( "first" ) ;
+    channel.close() ;
+    assertThat( written.isSuccess() ).isTrue() ;
+    assertThat( channel.outboundMessages() ).containsExactly( "first" ) ;
+  }
+
+// =======
+// Fixture
+// =======
+
+  private static EmbeddedChannel createChannel( final FlushConsolidationTier.Policy policy ) {
+    return new EmbeddedChannel( new FlushConsolidationTier( policy ) ) ;
+  }
+}
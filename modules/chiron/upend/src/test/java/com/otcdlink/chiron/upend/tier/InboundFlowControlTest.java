@@ -0,0 +1,165 @@
+package com.otcdlink.chiron.upend.tier;
+
+import com.otcdlink.chiron.buffer.PositionalFieldWriter;
+import com.otcdlink.chiron.command.Command;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InboundFlowControlTest {
+
+  @Test
+  public void pauseAndResume() throws Exception {
+    final InboundFlowControl< PrivateCommand > inboundFlowControl =
+        createInboundFlowControl( new InboundFlowControl.Policy( 4 ) ) ;
+    final EmbeddedChannel channel = new EmbeddedChannel() ;
+
+    for( int i = 0 ; i < 5 ; i ++ ) {
+      assertThat( channel.config().isAutoRead() ).isTrue() ;
+      inboundFlowControl.handoff( channel, new PrivateCommand( i ) ) ;
+    }
+    assertThat( channel.config().isAutoRead() ).isFalse() ;
+    assertThat( inboundFlowControl.metrics().pendingCount() ).isEqualTo( 5 ) ;
+    assertThat( inboundFlowControl.metrics().pausedChannelCount() ).isEqualTo( 1 ) ;
+    assertThat( inboundFlowControl.metrics().pauseCount() ).isEqualTo( 1 ) ;
+
+    runTasks( 2 ) ;
+    channel.runPendingTasks() ;
+    assertThat( channel.config().isAutoRead() )
+        .describedAs( "3 pending Commands, more than half the maximum" )
+        .isFalse() ;
+
+    runTasks( 1 ) ;
+    channel.runPendingTasks() ;
+    assertThat( channel.config().isAutoRead() ).isTrue() ;
+    assertThat( inboundFlowControl.metrics().pausedChannelCount() ).isEqualTo( 0 ) ;
+
+    runTasks( 2 ) ;
+    assertThat( consumed ).extracting( "endpointSpecific" )
+        .containsExactly( "0", "1", "2", "3", "4" ) ;
+    assertThat( inboundFlowControl.metrics().pendingCount() ).isEqualTo( 0 ) ;
+  }
+
+  @Test
+  public void pausePerSession() throws Exception {
+    final InboundFlowControl< PrivateCommand > inboundFlowControl =
+        createInboundFlowControl( new InboundFlowControl.Policy( 100, 2 ) ) ;
+    final EmbeddedChannel channel1 = new EmbeddedChannel() ;
+    final EmbeddedChannel channel2 = new EmbeddedChannel() ;
+
+    inboundFlowControl.handoff( channel1, new PrivateCommand( 0 ) ) ;
+    inboundFlowControl.handoff( channel1, new PrivateCommand( 1 ) ) ;
+    inboundFlowControl.handoff( channel2, new PrivateCommand( 2 ) ) ;
+    inboundFlowControl.handoff( channel1, new PrivateCommand( 3 ) ) ;
+    assertThat( channel1.config().isAutoRead() ).isFalse() ;
+    assertThat( channel2.config().isAutoRead() ).isTrue() ;
+
+    runTasks( 2 ) ;
+    channel1.runPendingTasks() ;
+    assertThat( channel1.config().isAutoRead() ).isTrue() ;
+  }
+
+  @Test
+  public void forgetInactiveChannel() throws Exception {
+    final InboundFlowControl< PrivateCommand > inboundFlowControl =
+        createInboundFlowControl( new InboundFlowControl.Policy( 1 ) ) ;
+    final EmbeddedChannel channel = new EmbeddedChannel() ;
+    inboundFlowControl.handoff( channel, new PrivateCommand( 0 ) ) ;
+    inboundFlowControl.handoff( channel, new PrivateCommand( 1 ) ) ;
+    assertThat( inboundFlowControl.metrics().pausedChannelCount() ).isEqualTo( 1 ) ;
+
+    channel.close() ;
+    inboundFlowControl.forget( channel ) ;
+    assertThat( inboundFlowControl.metrics().pausedChannelCount() ).isEqualTo( 0 ) ;
+    runTasks( 2 ) ;
+    assertThat( inboundFlowControl.metrics().pendingCount() ).isEqualTo( 0 ) ;
+  }
+
+  @Test
+  public void consumerFailure() throws Exception {
+    final InboundFlowControl< PrivateCommand > inboundFlowControl = new InboundFlowControl<>(
+        new InboundFlowControl.Policy( 1 ),
+        command -> { throw new RuntimeException( "Boom" ) ; },
+        tasks::add
+    ) ;
+    final EmbeddedChannel channel = new EmbeddedChannel() ;
+    inboundFlowControl.handoff( channel, new PrivateCommand( 0 ) ) ;
+    inboundFlowControl.handoff( channel, new PrivateCommand( 1 ) ) ;
+    runTasks( 2 ) ;
+    channel.runPendingTasks() ;
+    assertThat( inboundFlowControl.metrics().pendingCount() ).isEqualTo( 0 ) ;
+    assertThat( channel.config().isAutoRead() ).isTrue() ;
+  }
+
+  @Test
+  public void closeConsumesPendingThenStopsThread() throws Exception {
+    final CountDownLatch consumedAll = new CountDownLatch( 2 ) ;
+    final List< Thread > consumerThreads = new ArrayList<>() ;
+    final InboundFlowControl< PrivateCommand > inboundFlowControl = new InboundFlowControl<>(
+        new InboundFlowControl.Policy( 10 ),
+        command -> {
+          consumerThreads.add( Thread.currentThread() ) ;
+          consumedAll.countDown() ;
+        }
+    ) ;
+    final EmbeddedChannel channel = new EmbeddedChannel() ;
+    inboundFlowControl.handoff( channel, new PrivateCommand( 0 ) ) ;
+    inboundFlowControl.handoff( channel, new PrivateCommand( 1 ) ) ;
+    inboundFlowControl.close() ;
+
+    assertThat( consumedAll.await( TIMEOUT_S, TimeUnit.SECONDS ) ).isTrue() ;
+    final Thread consumerThread = consumerThreads.get( 0 ) ;
+    consumerThread.join( TimeUnit.SECONDS.toMillis( TIMEOUT_S ) ) ;
+    assertThat( consumerThread.isAlive() ).isFalse() ;
+    assertThatThrownBy( () -> inboundFlowControl.handoff( channel, new PrivateCommand( 2 ) ) )
+        .isInstanceOf( IllegalStateException.class ) ;
+  }
+
+// =======
+// Fixture
+// =======
+
+  private static final long TIMEOUT_S = 10 ;
+
+  private final Queue< Runnable > tasks = new ArrayDeque<>() ;
+
+  private final List< PrivateCommand > consumed = new ArrayList<>() ;
+
+  private InboundFlowControl< PrivateCommand > createInboundFlowControl(
+      final InboundFlowControl.Policy policy
+  ) {
+    return new InboundFlowControl<>( policy, consumed::add, tasks::add ) ;
+  }
+
+  private void runTasks( final int count ) {
+    for( int i = 0 ; i < count ; i ++ ) {
+      tasks.remove().run() ;
+    }
+  }
+
+  private static class PrivateCommand extends Command< String, Void > {
+
+    private PrivateCommand( final int number ) {
+      super( Integer.toString( number ) ) ;
+    }
+
+    @Override
+    public void callReceiver( final Void Ø ) {
+      throw new UnsupportedOperationException( "Do not call" ) ;
+    }
+
+    @Override
+    public void encodeBody( final PositionalFieldWriter positionalFieldWriter ) {
+      throw new UnsupportedOperationException( "Do not call" ) ;
+    }
+  }
+}
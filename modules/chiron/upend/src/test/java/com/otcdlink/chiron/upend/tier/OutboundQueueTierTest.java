@@ -0,0 +1,187 @@
+package com.otcdlink.chiron.upend.tier;
+
+import com.otcdlink.chiron.command.Conflatable;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.otcdlink.chiron.upend.tier.OutboundQueueTier.SlowConsumerAction.DISCONNECT;
+import static com.otcdlink.chiron.upend.tier.OutboundQueueTier.SlowConsumerAction.DROP;
+import static com.otcdlink.chiron.upend.tier.OutboundQueueTier.SlowConsumerAction.KICKOUT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutboundQueueTierTest {
+
+  @Test
+  public void queueWhileUnwritable() throws Exception {
+    final EmbeddedChannel channel = createChannel( policy( 10, DROP ) ) ;
+    writable( channel, false ) ;
+    final ChannelFuture first = channel.writeAndFlush( "first" ) ;
+    channel.writeAndFlush( "second" ) ;
+    assertThat( channel.outboundMessages() ).isEmpty() ;
+    assertThat( metrics.queueDepth() ).isEqualTo( 2 ) ;
+    assertThat( first.isDone() ).isFalse() ;
+
+    writable( channel, true ) ;
+    assertThat( channel.outboundMessages() ).containsExactly( "first", "second" ) ;
+    assertThat( metrics.queueDepth() ).isEqualTo( 0 ) ;
+    assertThat( first.isSuccess() ).isTrue() ;
+  }
+
+  @Test
+  public void conflate() throws Exception {
+    final EmbeddedChannel channel = createChannel( policy( 10, DROP ) ) ;
+    writable( channel, false ) ;
+    final Update update1 = new Update( "a", 1 ) ;
+    final Update update2 = new Update( "a", 2 ) ;
+    final ChannelFuture conflated = channel.writeAndFlush( update1 ) ;
+    channel.writeAndFlush( "other" ) ;
+    channel.writeAndFlush( update2 ) ;
+    assertThat( conflated.isDone() ).isTrue() ;
+    assertThat( conflated.isSuccess() ).isFalse() ;
+    assertThat( metrics.conflatedCount() ).isEqualTo( 1 ) ;
+    assertThat( metrics.queueDepth() ).isEqualTo( 2 ) ;
+
+    assertThat( update1.refCnt() ).isEqualTo( 0 ) ;
+
+    writable( channel, true ) ;
+    assertThat( channel.outboundMessages() ).containsExactly( update2, "other" ) ;
+    assertThat( update2.refCnt() ).isEqualTo( 1 ) ;
+  }
+
+  @Test
+  public void dropWhenQueueTooLong() throws Exception {
+    final EmbeddedChannel channel = createChannel( policy( 2, DROP ) ) ;
+    writable( channel, false ) ;
+    final ChannelFuture first = channel.writeAndFlush( "first" ) ;
+    channel.writeAndFlush( "second" ) ;
+    channel.writeAndFlush( "third" ) ;
+    assertThat( first.isSuccess() ).isFalse() ;
+    assertThat( metrics.droppedCount() ).isEqualTo( 3 ) ;
+    assertThat( metrics.queueDepth() ).isEqualTo( 0 ) ;
+    assertThat( channel.isOpen() ).isTrue() ;
+
+    writable( channel, true ) ;
+    channel.writeAndFlush( "fourth" ) ;
+    assertThat( channel.outboundMessages() ).containsExactly( "fourth" ) ;
+  }
+
+  @Test
+  public void releaseWhenDropped() throws Exception {
+    final EmbeddedChannel channel = createChannel( policy( 1, DROP ) ) ;
+    writable( channel, false ) ;
+    final ByteBuf first = Unpooled.buffer() ;
+    final ByteBuf second = Unpooled.buffer() ;
+    channel.writeAndFlush( first ) ;
+    channel.writeAndFlush( second ) ;
+    assertThat( metrics.droppedCount() ).isEqualTo( 2 ) ;
+    assertThat( first.refCnt() ).isEqualTo( 0 ) ;
+    assertThat( second.refCnt() ).isEqualTo( 0 ) ;
+  }
+
+  @Test
+  public void releaseWhenEvicted() throws Exception {
+    final EmbeddedChannel channel = createChannel( policy( 10, DISCONNECT ) ) ;
+    writable( channel, false ) ;
+    final ByteBuf byteBuf = Unpooled.buffer() ;
+    channel.writeAndFlush( byteBuf ) ;
+    Thread.sleep( QUEUEING_DELAY_MS * 2 ) ;
+    channel.runPendingTasks() ;
+    assertThat( metrics.evictionCount() ).isEqualTo( 1 ) ;
+    assertThat( byteBuf.refCnt() ).isEqualTo( 0 ) ;
+  }
+
+  @Test
+  public void kickoutAfterDelay() throws Exception {
+    final EmbeddedChannel channel = createChannel( policy( 10, KICKOUT ) ) ;
+    writable( channel, false ) ;
+    channel.writeAndFlush( "first" ) ;
+    Thread.sleep( QUEUEING_DELAY_MS * 2 ) ;
+    channel.runPendingTasks() ;
+    assertThat( kicked ).containsExactly( channel ) ;
+    assertThat( metrics.evictionCount() ).isEqualTo( 1 ) ;
+
+    channel.writeAndFlush( "close" ) ;
+    assertThat( channel.outboundMessages() )
+        .describedAs( "Passes through after eviction" )
+        .containsExactly( "close" ) ;
+  }
+
+  @Test
+  public void disconnectAfterDelay() throws Exception {
+    final EmbeddedChannel channel = createChannel( policy( 10, DISCONNECT ) ) ;
+    writable( channel, false ) ;
+    channel.writeAndFlush( "first" ) ;
+    Thread.sleep( QUEUEING_DELAY_MS * 2 ) ;
+    channel.runPendingTasks() ;
+    assertThat( channel.isOpen() ).isFalse() ;
+    assertThat( metrics.evictionCount() ).isEqualTo( 1 ) ;
+    assertThat( kicked ).isEmpty() ;
+  }
+
+// =======
+// Fixture
+// =======
+
+  private static final long QUEUEING_DELAY_MS = 10 ;
+
+  private final OutboundQueueTier.Metrics metrics = new OutboundQueueTier.Metrics() ;
+
+  private final List< Channel > kicked = new ArrayList<>() ;
+
+  private static OutboundQueueTier.Policy policy(
+      final int maximumQueueLength,
+      final OutboundQueueTier.SlowConsumerAction slowConsumerAction
+  ) {
+    return new OutboundQueueTier.Policy(
+        null, maximumQueueLength, QUEUEING_DELAY_MS, slowConsumerAction ) ;
+  }
+
+  private EmbeddedChannel createChannel( final OutboundQueueTier.Policy policy ) {
+    return new EmbeddedChannel( new OutboundQueueTier( policy, metrics, kicked::add ) ) ;
+  }
+
+  private static void writable( final EmbeddedChannel channel, final boolean writable ) {
+    channel.unsafe().outboundBuffer().setUserDefinedWritability( 1, writable ) ;
+    channel.runPendingTasks() ;
+  }
+
+  /**
+   * Reference-counted so we can check {@link OutboundQueueTier} releases it when conflating.
+   */
+  private static final class Update extends AbstractReferenceCounted implements Conflatable {
+    private final String key ;
+    private final int value ;
+
+    private Update( final String key, final int value ) {
+      this.key = key ;
+      this.value = value ;
+    }
+
+    @Override
+    protected void deallocate() { }
+
+    @Override
+    public ReferenceCounted touch( final Object hint ) {
+      return this ;
+    }
+
+    @Override
+    public Object conflationKey() {
+      return key ;
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + '{' + key + '=' + value + '}' ;
+    }
+  }
+}